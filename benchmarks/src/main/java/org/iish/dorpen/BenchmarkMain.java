@@ -0,0 +1,21 @@
+package org.iish.dorpen;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+public class BenchmarkMain {
+    /**
+     * The main method to run the benchmarks, always with the GC profiler to report the allocation rate of every phase.
+     *
+     * @param args String[] containing the JMH command line options, E.G. -p rootCodes=1000 to change the size of the dataset
+     * @throws Exception Exception for when the options are not valid or the benchmarks cannot be run
+     */
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
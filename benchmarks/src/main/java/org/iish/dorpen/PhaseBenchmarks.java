@@ -0,0 +1,225 @@
+package org.iish.dorpen;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks every phase of a run on its own, over a dataset of the DatasetGenerator with rootCodes root codes.
+ * Each phase changes the records, so every iteration measures a single run of the phase on a fresh Disaggregation
+ * that has been brought up to the phase in the setup, outside of the measurement.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class PhaseBenchmarks {
+
+    /**
+     * The generated dataset the phases run over, written once per trial.
+     * The phases log quietly and what they still print is discarded while the benchmarks run.
+     */
+    @State(Scope.Benchmark)
+    public static class Dataset {
+        @Param({"50", "200"})
+        public int rootCodes;
+        @Param({"1"})
+        public long seed;
+        @Param({"2"})
+        public int depth;
+        @Param({"0.55"})
+        public double multiLinkShare;
+        @Param({"5"})
+        public int years;
+        @Param({"0.05"})
+        public double missingShare;
+
+        Path directory;
+        String rawCsv;
+        String squareKilometresCsv;
+        String exportCsv;
+        String notesCsv;
+        private PrintStream out;
+
+        @Setup(Level.Trial)
+        public void write() throws IOException {
+            Log.setQuiet(true);
+            out = System.out;
+            System.setOut(new PrintStream(new OutputStream() {
+                @Override
+                public void write(int b) {
+                }
+            }));
+            directory = Files.createTempDirectory("emhcd-benchmark");
+            rawCsv = directory.resolve("raw.csv").toString();
+            squareKilometresCsv = directory.resolve("km2.csv").toString();
+            exportCsv = directory.resolve("export.csv").toString();
+            notesCsv = directory.resolve("notes.csv").toString();
+            new DatasetGenerator(rootCodes, seed, depth, multiLinkShare, years, missingShare).write(Paths.get(rawCsv), Paths.get(squareKilometresCsv));
+        }
+
+        @TearDown(Level.Trial)
+        public void delete() throws IOException {
+            Log.flush();
+            System.setOut(out);
+            for (String name : new String[]{"raw.csv", "km2.csv", "export.csv", "notes.csv"}) {
+                Files.deleteIfExists(directory.resolve(name));
+            }
+            Files.deleteIfExists(directory);
+        }
+
+        /**
+         * Runs the phases of a new Disaggregation up to and including the last phase given.
+         *
+         * @param last PipelinePhase the last phase to run, null to run none.
+         * @return Disaggregation the Disaggregation after the phases.
+         * @throws Exception if the dataset cannot be loaded.
+         */
+        Disaggregation runThrough(PipelinePhase last) throws Exception {
+            Disaggregation disaggregation = new Disaggregation();
+            if (last == null)
+                return disaggregation;
+            for (PipelinePhase phase : PipelinePhase.values()) {
+                phase.run(disaggregation, rawCsv, squareKilometresCsv, exportCsv, notesCsv);
+                if (phase == last)
+                    break;
+            }
+            return disaggregation;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class New {
+        Disaggregation disaggregation;
+
+        @Setup(Level.Iteration)
+        public void prepare(Dataset dataset) throws Exception {
+            disaggregation = dataset.runThrough(null);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class DataLoaded {
+        Disaggregation disaggregation;
+
+        @Setup(Level.Iteration)
+        public void prepare(Dataset dataset) throws Exception {
+            disaggregation = dataset.runThrough(PipelinePhase.LOAD_DATA);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Loaded {
+        Disaggregation disaggregation;
+
+        @Setup(Level.Iteration)
+        public void prepare(Dataset dataset) throws Exception {
+            disaggregation = dataset.runThrough(PipelinePhase.LOAD_SQUARE_KILOMETRES);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class LinksUpdated {
+        Disaggregation disaggregation;
+
+        @Setup(Level.Iteration)
+        public void prepare(Dataset dataset) throws Exception {
+            disaggregation = dataset.runThrough(PipelinePhase.UPDATE_LINKS);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class PreSplit {
+        Disaggregation disaggregation;
+
+        @Setup(Level.Iteration)
+        public void prepare(Dataset dataset) throws Exception {
+            disaggregation = dataset.runThrough(PipelinePhase.PRE_SPLIT);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Split {
+        Disaggregation disaggregation;
+
+        @Setup(Level.Iteration)
+        public void prepare(Dataset dataset) throws Exception {
+            disaggregation = dataset.runThrough(PipelinePhase.SPLIT);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Km2Split {
+        Disaggregation disaggregation;
+
+        @Setup(Level.Iteration)
+        public void prepare(Dataset dataset) throws Exception {
+            disaggregation = dataset.runThrough(PipelinePhase.KM2_SPLIT);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Converted {
+        Disaggregation disaggregation;
+
+        @Setup(Level.Iteration)
+        public void prepare(Dataset dataset) throws Exception {
+            disaggregation = dataset.runThrough(PipelinePhase.CONVERT);
+        }
+    }
+
+    @Benchmark
+    public Disaggregation loadData(New state, Dataset dataset) throws Exception {
+        state.disaggregation.loadData(dataset.rawCsv);
+        return state.disaggregation;
+    }
+
+    @Benchmark
+    public Disaggregation loadSquareKilometres(DataLoaded state, Dataset dataset) throws Exception {
+        state.disaggregation.loadSquareKilometres(dataset.squareKilometresCsv);
+        return state.disaggregation;
+    }
+
+    @Benchmark
+    public Disaggregation updateLinks(Loaded state) {
+        state.disaggregation.updateLinks();
+        return state.disaggregation;
+    }
+
+    @Benchmark
+    public Disaggregation preSplitTheRecords(LinksUpdated state) {
+        state.disaggregation.preSplitTheRecords();
+        return state.disaggregation;
+    }
+
+    @Benchmark
+    public Disaggregation splitRecords(PreSplit state) throws IOException {
+        state.disaggregation.splitRecords();
+        return state.disaggregation;
+    }
+
+    @Benchmark
+    public Disaggregation splitParentLinkCodesBykm2(Split state) {
+        state.disaggregation.splitParentLinkCodesBykm2();
+        return state.disaggregation;
+    }
+
+    @Benchmark
+    public Disaggregation convertRecordsToVillageComplex(Km2Split state) {
+        state.disaggregation.convertRecordsToVillageComplexForProcessingToCSV();
+        return state.disaggregation;
+    }
+
+    @Benchmark
+    public Disaggregation writeExport(Converted state, Dataset dataset) throws Exception {
+        state.disaggregation.writeExport(dataset.exportCsv, dataset.notesCsv);
+        return state.disaggregation;
+    }
+}
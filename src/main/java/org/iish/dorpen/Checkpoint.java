@@ -0,0 +1,288 @@
+package org.iish.dorpen;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * The binary file a run is checkpointed to, from which it can be resumed after a crash or a killed job.
+ * Numbers are written as variable length integers and the Link codes only once, after which they are referred to by their number,
+ * and the file ends with a checksum. It is written next to the checkpoint and then moved over it, so a crash while writing
+ * leaves the previous checkpoint intact.
+ */
+final class Checkpoint {
+
+    private static final int MAGIC = 0x454d4843; // EMHC
+    private static final int VERSION = 1;
+
+    /**
+     * Constructor for the Checkpoint class, which only holds the output and input of the file.
+     */
+    private Checkpoint() {
+    }
+
+    /**
+     * The output to write a checkpoint to.
+     */
+    static final class Output implements Closeable {
+        private final Path path;
+        private final Path temporary;
+        private final CRC32 checksum = new CRC32();
+        private final DataOutputStream out;
+        private final Map<String, Integer> strings = new HashMap<>(); // Contains the number of each string written before
+
+        /**
+         * Constructor for the Output class, which starts the checkpoint next to the path.
+         *
+         * @param path   Path the path of the checkpoint.
+         * @param inputs String the description of the input files the checkpoint belongs to.
+         * @throws IOException if the checkpoint cannot be written.
+         */
+        Output(Path path, String inputs) throws IOException {
+            this.path = path;
+            this.temporary = path.resolveSibling(path.getFileName() + ".tmp");
+            this.out = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)), checksum));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(inputs);
+        }
+
+        /**
+         * Writes a number, in fewer bytes the smaller it is.
+         *
+         * @param value long the number, negative numbers take the most bytes.
+         * @throws IOException if the checkpoint cannot be written.
+         */
+        void writeNumber(long value) throws IOException {
+            while ((value & ~0x7FL) != 0) {
+                out.writeByte((int) (value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out.writeByte((int) value);
+        }
+
+        /**
+         * Writes a boolean.
+         *
+         * @param value boolean the boolean.
+         * @throws IOException if the checkpoint cannot be written.
+         */
+        void writeBoolean(boolean value) throws IOException {
+            out.writeBoolean(value);
+        }
+
+        /**
+         * Writes a string, which is only written in full the first time and by its number after that.
+         *
+         * @param value String the string, or null.
+         * @throws IOException if the checkpoint cannot be written.
+         */
+        void writeString(String value) throws IOException {
+            if (value == null) {
+                writeNumber(1);
+                return;
+            }
+            Integer number = strings.get(value);
+            if (number != null) {
+                writeNumber(number + 2);
+                return;
+            }
+            writeNumber(0);
+            out.writeUTF(value);
+            strings.put(value, strings.size());
+        }
+
+        /**
+         * Writes the number of strings followed by the strings.
+         *
+         * @param values Collection<String> the strings.
+         * @throws IOException if the checkpoint cannot be written.
+         */
+        void writeStrings(Collection<String> values) throws IOException {
+            writeNumber(values.size());
+            for (String value : values) {
+                writeString(value);
+            }
+        }
+
+        /**
+         * Writes a number with decimals by its scale and unscaled value.
+         *
+         * @param value BigDecimal the number, or null.
+         * @throws IOException if the checkpoint cannot be written.
+         */
+        void writeDecimal(BigDecimal value) throws IOException {
+            if (value == null) {
+                writeNumber(0);
+                return;
+            }
+            byte[] unscaled = value.unscaledValue().toByteArray();
+            writeNumber(unscaled.length);
+            out.write(unscaled);
+            out.writeInt(value.scale());
+        }
+
+        /**
+         * Ends the checkpoint with the checksum and moves it over the previous checkpoint.
+         *
+         * @throws IOException if the checkpoint cannot be written.
+         */
+        void commit() throws IOException {
+            out.flush();
+            long value = checksum.getValue();
+            out.writeLong(value);
+            out.close();
+            try {
+                Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+
+        /**
+         * Closes the output, removing the checkpoint being written if it has not been committed.
+         *
+         * @throws IOException if the checkpoint cannot be closed.
+         */
+        @Override
+        public void close() throws IOException {
+            out.close();
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * The input to read a checkpoint from.
+     */
+    static final class Input implements Closeable {
+        private final CRC32 checksum = new CRC32();
+        private final DataInputStream in;
+        private final List<String> strings = new ArrayList<>(); // Contains the strings read before by their number
+
+        /**
+         * Constructor for the Input class, which checks that the checkpoint belongs to the input files.
+         *
+         * @param path   Path the path of the checkpoint.
+         * @param inputs String the description of the input files of the run.
+         * @throws IOException if the checkpoint cannot be read or belongs to other input files.
+         */
+        Input(Path path, String inputs) throws IOException {
+            this.in = new DataInputStream(new CheckedInputStream(new BufferedInputStream(Files.newInputStream(path)), checksum));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                throw new IOException("Not a checkpoint of this version: " + path);
+            String checkpointInputs = in.readUTF();
+            if (!checkpointInputs.equals(inputs))
+                throw new IOException("The checkpoint " + path + " belongs to other input files: " + checkpointInputs + " instead of " + inputs);
+        }
+
+        /**
+         * Reads a number.
+         *
+         * @return long the number.
+         * @throws IOException if the checkpoint cannot be read.
+         */
+        long readNumber() throws IOException {
+            long value = 0;
+            for (int shift = 0; ; shift += 7) {
+                int b = in.readUnsignedByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0)
+                    return value;
+            }
+        }
+
+        /**
+         * Reads a number that fits an int.
+         *
+         * @return int the number.
+         * @throws IOException if the checkpoint cannot be read.
+         */
+        int readInt() throws IOException {
+            return (int) readNumber();
+        }
+
+        /**
+         * Reads a boolean.
+         *
+         * @return boolean the boolean.
+         * @throws IOException if the checkpoint cannot be read.
+         */
+        boolean readBoolean() throws IOException {
+            return in.readBoolean();
+        }
+
+        /**
+         * Reads a string.
+         *
+         * @return String the string, or null.
+         * @throws IOException if the checkpoint cannot be read.
+         */
+        String readString() throws IOException {
+            int number = readInt();
+            if (number == 1)
+                return null;
+            if (number > 1)
+                return strings.get(number - 2);
+            String value = in.readUTF();
+            strings.add(value);
+            return value;
+        }
+
+        /**
+         * Reads the number of strings followed by the strings into the collection.
+         *
+         * @param values Collection<String> the collection to add the strings to.
+         * @param <C>    the type of the collection.
+         * @return C the collection.
+         * @throws IOException if the checkpoint cannot be read.
+         */
+        <C extends Collection<String>> C readStrings(C values) throws IOException {
+            int size = readInt();
+            for (int i = 0; i < size; i++) {
+                values.add(readString());
+            }
+            return values;
+        }
+
+        /**
+         * Reads a number with decimals.
+         *
+         * @return BigDecimal the number, or null.
+         * @throws IOException if the checkpoint cannot be read.
+         */
+        BigDecimal readDecimal() throws IOException {
+            int length = readInt();
+            if (length == 0)
+                return null;
+            byte[] unscaled = new byte[length];
+            in.readFully(unscaled);
+            return new BigDecimal(new BigInteger(unscaled), in.readInt());
+        }
+
+        /**
+         * Checks the checksum at the end of the checkpoint.
+         *
+         * @throws IOException if the checkpoint is damaged.
+         */
+        void verify() throws IOException {
+            long value = checksum.getValue();
+            if (in.readLong() != value)
+                throw new IOException("The checkpoint is damaged, its checksum does not match");
+        }
+
+        /**
+         * Closes the input.
+         *
+         * @throws IOException if the checkpoint cannot be closed.
+         */
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package org.iish.dorpen;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks per village complex, by its root Link codes as in the profile, whether the splitting of its records still converges.
+ * A complex is frozen when it has been considered in more passes than the budget, when the splitting of its records has taken
+ * more time than the budget, or when its records cycle: they change back to the Link codes and houses of an earlier pass in the same
+ * escalation mode, or they stay the same while the run escalates through every mode, so one complex cannot keep the whole run looping.
+ */
+final class ComplexConvergence {
+
+    static final int DEFAULT_MAX_PASSES = 1000;
+    static final long DEFAULT_TIME_BUDGET = TimeUnit.MINUTES.toNanos(10);
+    private static final int MODES = 4; // The escalation modes, by the number of homes or square kilometres, with or without the alternative splitting
+
+    /**
+     * The convergence of a root code, or of several root codes that are recorded together.
+     */
+    private static final class Complex {
+        final String code;
+        int passes;
+        long nanos;
+        long signature; // Combines the Link codes, years and houses of the records with multiple Link codes considered in the current pass
+        int mode = -1; // The escalation mode of the current pass, -1 when not considered in the current pass
+        long lastSignature; // The signature of the last pass it was considered in
+        int modesSinceChange; // Contains a bit per escalation mode it has been considered in since its signature last changed
+        final Set<Long> states = new HashSet<>(); // Contains the signatures along with the mode of the passes in which the signature changed
+        NoteState frozen;
+
+        /**
+         * Constructor for the Complex class.
+         *
+         * @param code String the root code or root codes.
+         */
+        private Complex(String code) {
+            this.code = code;
+        }
+    }
+
+    private final int maxPasses;
+    private final long timeBudget;
+    private final Map<String, Complex> complexes = new HashMap<>();
+    private final List<Complex> consideredInPass = new ArrayList<>(); // Contains the complexes considered in the current pass
+    private final SortedMap<String, NoteState> frozen = new TreeMap<>(); // Contains the reason per frozen complex
+
+    /**
+     * Constructor for the ComplexConvergence class.
+     *
+     * @param maxPasses  int the number of passes a complex may be considered in before it is frozen.
+     * @param timeBudget long the time in nanoseconds the splitting of a complex may take before it is frozen.
+     */
+    ComplexConvergence(int maxPasses, long timeBudget) {
+        if (maxPasses < 1)
+            throw new IllegalArgumentException("The maximum number of passes has to be at least 1: " + maxPasses);
+        if (timeBudget <= 0)
+            throw new IllegalArgumentException("The time budget has to be positive: " + timeBudget);
+        this.maxPasses = maxPasses;
+        this.timeBudget = timeBudget;
+    }
+
+    /**
+     * Attributes a record with multiple Link codes offered to the split strategies in the current pass to its complex.
+     *
+     * @param record Record the record offered to the split strategies.
+     * @param mode   int the escalation mode of the pass, 1 with square kilometres plus 2 with the alternative splitting.
+     */
+    void considered(Record record, int mode) {
+        Complex complex = complexes.computeIfAbsent(ComplexProfile.getRootCode(record.links), Complex::new);
+        if (complex.mode < 0) {
+            complex.mode = mode;
+            complex.signature = 0;
+            consideredInPass.add(complex);
+        }
+        long state = (record.links.hashCode() * 31L + record.year) * 31L + Objects.hashCode(record.houses);
+        state *= 0x9E3779B97F4A7C15L;
+        complex.signature += state ^ (state >>> 32);
+    }
+
+    /**
+     * Attributes time of the splitting to the complex of a record.
+     *
+     * @param record Record the record that is split.
+     * @param nanos  long the time it took.
+     */
+    void spent(Record record, long nanos) {
+        complexes.computeIfAbsent(ComplexProfile.getRootCode(record.links), Complex::new).nanos += nanos;
+    }
+
+    /**
+     * Ends the pass, counting it for the complexes considered in it and freezing those that exceed a budget or cycle.
+     *
+     * @return Map<String, NoteState> the complexes frozen in this pass with the reason, empty when none are.
+     */
+    Map<String, NoteState> endPass() {
+        Map<String, NoteState> frozenInPass = new TreeMap<>();
+        for (Complex complex : consideredInPass) {
+            complex.passes++;
+            boolean cycles = false;
+            if (complex.passes == 1 || complex.signature != complex.lastSignature) {
+                cycles = !complex.states.add(complex.signature * MODES + complex.mode);
+                complex.lastSignature = complex.signature;
+                complex.modesSinceChange = 0;
+            }
+            // Staying the same is waiting for the run to escalate, unless it already went through every mode.
+            complex.modesSinceChange |= 1 << complex.mode;
+            cycles |= complex.modesSinceChange == (1 << MODES) - 1;
+            complex.mode = -1;
+            if (complex.frozen != null)
+                continue;
+            if (cycles)
+                complex.frozen = NoteState.FROZEN_CYCLE;
+            else if (complex.passes >= maxPasses)
+                complex.frozen = NoteState.FROZEN_PASSES;
+            else if (complex.nanos >= timeBudget)
+                complex.frozen = NoteState.FROZEN_TIME;
+            if (complex.frozen != null) {
+                frozenInPass.put(complex.code, complex.frozen);
+                frozen.put(complex.code, complex.frozen);
+            }
+        }
+        consideredInPass.clear();
+        return frozenInPass;
+    }
+
+    /**
+     * Writes the complexes to a checkpoint, between two passes.
+     *
+     * @param out Checkpoint.Output the checkpoint to write to.
+     * @throws IOException if the checkpoint cannot be written.
+     */
+    void write(Checkpoint.Output out) throws IOException {
+        out.writeNumber(complexes.size());
+        for (Complex complex : complexes.values()) {
+            out.writeString(complex.code);
+            out.writeNumber(complex.passes);
+            out.writeNumber(complex.nanos);
+            out.writeNumber(complex.lastSignature);
+            out.writeNumber(complex.modesSinceChange);
+            out.writeNumber(complex.frozen != null ? complex.frozen.ordinal() + 1 : 0);
+            out.writeNumber(complex.states.size());
+            for (long state : complex.states) {
+                out.writeNumber(state);
+            }
+        }
+    }
+
+    /**
+     * Reads the complexes from a checkpoint, replacing the ones tracked.
+     *
+     * @param in Checkpoint.Input the checkpoint to read from.
+     * @throws IOException if the checkpoint cannot be read.
+     */
+    void read(Checkpoint.Input in) throws IOException {
+        complexes.clear();
+        frozen.clear();
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            Complex complex = new Complex(in.readString());
+            complex.passes = in.readInt();
+            complex.nanos = in.readNumber();
+            complex.lastSignature = in.readNumber();
+            complex.modesSinceChange = in.readInt();
+            int frozenState = in.readInt();
+            complex.frozen = frozenState > 0 ? NoteState.values()[frozenState - 1] : null;
+            int states = in.readInt();
+            for (int j = 0; j < states; j++) {
+                complex.states.add(in.readNumber());
+            }
+            complexes.put(complex.code, complex);
+            if (complex.frozen != null)
+                frozen.put(complex.code, complex.frozen);
+        }
+    }
+
+    /**
+     * Returns the reason the complex of a record is frozen.
+     *
+     * @param record Record the record to check.
+     * @return NoteState the reason, or null when the complex is not frozen.
+     */
+    NoteState getFrozen(Record record) {
+        return frozen.isEmpty() ? null : frozen.get(ComplexProfile.getRootCode(record.links));
+    }
+
+    /**
+     * Describes the reason a complex is frozen.
+     *
+     * @param reason NoteState the reason, E.G. FROZEN_CYCLE.
+     * @return String the description of the reason.
+     */
+    static String describe(NoteState reason) {
+        switch (reason) {
+            case FROZEN_PASSES:
+                return "the maximum number of passes is reached";
+            case FROZEN_TIME:
+                return "the time budget is used up";
+            case FROZEN_CYCLE:
+                return "its records cycle";
+            default:
+                return reason.name();
+        }
+    }
+
+    /**
+     * Returns the number of passes a complex has been considered in.
+     *
+     * @param code String the root code or root codes.
+     * @return int the number of passes.
+     */
+    int getPasses(String code) {
+        Complex complex = complexes.get(code);
+        return complex != null ? complex.passes : 0;
+    }
+}
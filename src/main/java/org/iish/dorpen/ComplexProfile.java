@@ -0,0 +1,163 @@
+package org.iish.dorpen;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Attributes the time of the splitting, the passes and the records created to the root Link codes, E.G. HO0001 for HO0001A-HO0001B,
+ * along with the escalation the splitting of a root code went through, to find the few village complexes that dominate a run.
+ * A record with the Link codes of several root codes is attributed to those root codes together, E.G. HO0001-HO0002.
+ */
+final class ComplexProfile {
+
+    /**
+     * The profile of a root code, or of several root codes that are recorded together.
+     */
+    static final class Complex {
+        final String code;
+        long nanos;
+        int passes;
+        int considered; // The number of times a record of the complex has been offered to the split strategies
+        int recordsCreated;
+        int records; // The number of records of the complex at the end of the run
+        boolean withSquareKilometres; // States whether it was considered in a pass after tried_with_number_of_homes was set
+        boolean withAlternativeSplitting; // States whether it was considered in a pass after tryAlternativeSplitting was set
+        private int lastPass = 0;
+
+        /**
+         * Constructor for the Complex class.
+         *
+         * @param code String the root code or root codes.
+         */
+        private Complex(String code) {
+            this.code = code;
+        }
+
+        /**
+         * Returns the escalation the splitting of the complex went through.
+         *
+         * @return String the escalation, E.G. homes > square kilometres > alternative.
+         */
+        String getEscalation() {
+            return "homes" + (withSquareKilometres ? " > square kilometres" : "") + (withAlternativeSplitting ? " > alternative" : "");
+        }
+    }
+
+    private final Map<String, Complex> complexes = new HashMap<>();
+
+    /**
+     * Returns the root code or root codes of the Link codes, E.G. HO0001 for [HO0001A, HO0001B].
+     *
+     * @param links List<String> the Link codes.
+     * @return String the root codes joined by -.
+     */
+    static String getRootCode(List<String> links) {
+        Set<String> roots = new TreeSet<>();
+        for (String link : links) {
+            roots.add(link.length() > 6 ? link.substring(0, 6) : link);
+        }
+        return String.join("-", roots);
+    }
+
+    /**
+     * Attributes the planning of the splitting of a record to its complex.
+     *
+     * @param record                  Record the record offered to the split strategies.
+     * @param pass                    int the number of the pass, starting at 1.
+     * @param nanos                   long the time the planning took.
+     * @param triedWithNumberOfHomes  boolean which states whether the pass uses square kilometres.
+     * @param tryAlternativeSplitting boolean which states whether the pass uses the alternative splitting.
+     */
+    void considered(Record record, int pass, long nanos, boolean triedWithNumberOfHomes, boolean tryAlternativeSplitting) {
+        Complex complex = complexes.computeIfAbsent(getRootCode(record.links), Complex::new);
+        complex.nanos += nanos;
+        complex.considered++;
+        if (complex.lastPass != pass) {
+            complex.lastPass = pass;
+            complex.passes++;
+        }
+        complex.withSquareKilometres |= triedWithNumberOfHomes;
+        complex.withAlternativeSplitting |= tryAlternativeSplitting;
+    }
+
+    /**
+     * Attributes the creation of records by the splitting of a record to its complex.
+     *
+     * @param record         Record the record that is split.
+     * @param nanos          long the time the creation took.
+     * @param recordsCreated int the number of records created.
+     */
+    void created(Record record, long nanos, int recordsCreated) {
+        Complex complex = complexes.computeIfAbsent(getRootCode(record.links), Complex::new);
+        complex.nanos += nanos;
+        complex.recordsCreated += recordsCreated;
+    }
+
+    /**
+     * Counts the records per complex at the end of the run, the records of root codes that needed no splitting included.
+     *
+     * @param records Collection<Record> the records at the end of the run.
+     */
+    void countRecords(Collection<Record> records) {
+        for (Complex complex : complexes.values()) {
+            complex.records = 0;
+        }
+        for (Record record : records) {
+            complexes.computeIfAbsent(getRootCode(record.links), Complex::new).records++;
+        }
+    }
+
+    /**
+     * Returns the complexes ranked from the slowest to the fastest, by passes and code when the time is equal.
+     *
+     * @return List<Complex> the ranked complexes.
+     */
+    List<Complex> getRanking() {
+        List<Complex> ranking = new ArrayList<>(complexes.values());
+        ranking.sort(Comparator.comparingLong((Complex complex) -> complex.nanos).reversed()
+                .thenComparing(Comparator.comparingInt((Complex complex) -> complex.passes).reversed())
+                .thenComparing(complex -> complex.code));
+        return ranking;
+    }
+
+    /**
+     * Writes the ranked complexes to a CSV file.
+     *
+     * @param path      String the path of the CSV file.
+     * @param csvFormat CSVFormat the format of the CSV file.
+     * @throws IOException if the file cannot be written.
+     */
+    void write(String path, CSVFormat csvFormat) throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(path))) {
+            CSVPrinter csvPrinter = new CSVPrinter(writer, csvFormat);
+            csvPrinter.printRecord("Rank", "Code", "Milliseconds", "Passes", "Considered", "Records", "Records created", "Escalation");
+            int rank = 1;
+            for (Complex complex : getRanking()) {
+                csvPrinter.printRecord(rank++, complex.code, String.format(Locale.ROOT, "%.3f", complex.nanos / 1e6), complex.passes,
+                        complex.considered, complex.records, complex.recordsCreated, complex.getEscalation());
+            }
+            csvPrinter.flush();
+        }
+    }
+
+    /**
+     * Logs the slowest complexes.
+     *
+     * @param number int the number of complexes to log.
+     */
+    void print(int number) {
+        Log.info("Slowest village complexes:");
+        int rank = 1;
+        for (Complex complex : getRanking()) {
+            if (rank > number)
+                break;
+            Log.info(String.format(Locale.ROOT, "%d. %s: %.3f ms, %d passes, %d records, %d created, %s",
+                    rank++, complex.code, complex.nanos / 1e6, complex.passes, complex.records, complex.recordsCreated, complex.getEscalation()));
+        }
+    }
+}
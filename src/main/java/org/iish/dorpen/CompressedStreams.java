@@ -0,0 +1,194 @@
+package org.iish.dorpen;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Opens the files read and written by the run, compressed with gzip when their name ends with .gz, E.G. raw.csv.gz.
+ * A gzip file is inflated on a thread of its own, which hands the inflated bytes to the parser in chunks through a bounded pipe,
+ * so the parsing does not wait for the inflating. With a single processor the file is inflated on the thread that reads it instead.
+ */
+final class CompressedStreams {
+
+    static final int CHUNK_SIZE = 1 << 16; // The number of bytes inflated or deflated at a time
+    private static final int CHUNKS = 16; // The number of inflated chunks the pipe holds before the inflating waits for the parser
+
+    /**
+     * Constructor for the CompressedStreams class, which only opens streams.
+     */
+    private CompressedStreams() {
+    }
+
+    /**
+     * Returns a boolean which states whether the file is compressed with gzip.
+     *
+     * @param path String the path of the file.
+     * @return a boolean which states whether the name of the file ends with .gz.
+     */
+    static boolean isGzip(String path) {
+        return path.toLowerCase(Locale.ROOT).endsWith(".gz");
+    }
+
+    /**
+     * Opens a file to read, inflating it if it is compressed with gzip.
+     *
+     * @param path String the path of the file.
+     * @return InputStream the bytes of the file, inflated.
+     * @throws IOException if the file cannot be read or is compressed in a way that is not supported.
+     */
+    static InputStream open(String path) throws IOException {
+        checkSupported(path);
+        InputStream file = new FileInputStream(path);
+        if (!isGzip(path))
+            return new BufferedInputStream(file, CHUNK_SIZE);
+        InputStream gzip;
+        try {
+            gzip = new GZIPInputStream(file, CHUNK_SIZE);
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+        if (Runtime.getRuntime().availableProcessors() < 2)
+            return gzip;
+        return new InflatingPipe(gzip, "inflate-" + new File(path).getName());
+    }
+
+    /**
+     * Creates a file to write, deflating it if its name ends with .gz.
+     *
+     * @param path String the path of the file.
+     * @return OutputStream the stream to write the bytes of the file to.
+     * @throws IOException if the file cannot be written or is to be compressed in a way that is not supported.
+     */
+    static OutputStream create(String path) throws IOException {
+        checkSupported(path);
+        OutputStream file = new FileOutputStream(path);
+        return isGzip(path) ? new GZIPOutputStream(file, CHUNK_SIZE) : new BufferedOutputStream(file, CHUNK_SIZE);
+    }
+
+    /**
+     * Checks that the file is not compressed with Zstandard, which is not supported.
+     *
+     * @param path String the path of the file.
+     * @throws IOException if the name of the file ends with .zst or .zstd.
+     */
+    private static void checkSupported(String path) throws IOException {
+        String name = path.toLowerCase(Locale.ROOT);
+        if (name.endsWith(".zst") || name.endsWith(".zstd"))
+            throw new IOException("Zstandard compression is not supported, compress the file with gzip instead: " + path);
+    }
+
+    /**
+     * Reads the inflated bytes of a gzip file, which are inflated on a thread of its own ahead of the reading.
+     */
+    private static final class InflatingPipe extends InputStream implements Runnable {
+        private static final byte[] END = new byte[0];
+
+        private final InputStream source;
+        private final BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<>(CHUNKS); // Contains the chunks inflated but not yet read
+        private final Thread thread;
+        private volatile IOException failure;
+        private volatile boolean closed = false;
+        private byte[] chunk = END; // The chunk being read
+        private int position = 0; // The position in the chunk being read
+        private boolean ended = false;
+
+        /**
+         * Constructor for the InflatingPipe class, which starts inflating.
+         *
+         * @param source InputStream the inflating stream of the file.
+         * @param name   String the name of the inflating thread.
+         */
+        private InflatingPipe(InputStream source, String name) {
+            this.source = source;
+            this.thread = new Thread(this, name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        /**
+         * Inflates the file chunk by chunk into the pipe, until the end of the file or until the pipe is closed.
+         */
+        @Override
+        public void run() {
+            try {
+                while (!closed) {
+                    byte[] buffer = new byte[CHUNK_SIZE];
+                    int length = 0;
+                    int read;
+                    while (length < buffer.length && (read = source.read(buffer, length, buffer.length - length)) >= 0) {
+                        length += read;
+                    }
+                    if (length > 0)
+                        chunks.put(length == buffer.length ? buffer : Arrays.copyOf(buffer, length));
+                    if (length < buffer.length)
+                        break;
+                }
+            } catch (IOException e) {
+                failure = e;
+            } catch (RuntimeException e) {
+                failure = new IOException(e);
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                try {
+                    source.close();
+                } catch (IOException ignored) {
+                }
+            }
+            try {
+                if (!closed)
+                    chunks.put(END);
+            } catch (InterruptedException ignored) {
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0)
+                return 0;
+            if (position == chunk.length) {
+                if (ended)
+                    return -1;
+                try {
+                    chunk = chunks.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for the file to be inflated");
+                }
+                position = 0;
+                if (chunk == END) {
+                    ended = true;
+                    if (failure != null)
+                        throw failure;
+                    return -1;
+                }
+            }
+            int length = Math.min(len, chunk.length - position);
+            System.arraycopy(chunk, position, b, off, length);
+            position += length;
+            return length;
+        }
+
+        /**
+         * Stops the inflating and drops the chunks that have not been read.
+         */
+        @Override
+        public void close() {
+            closed = true;
+            thread.interrupt();
+            chunks.clear();
+        }
+    }
+}
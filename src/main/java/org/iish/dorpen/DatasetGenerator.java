@@ -0,0 +1,332 @@
+package org.iish.dorpen;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Generates a synthetic raw data file and a matching square kilometre file in the formats described in the README,
+ * for performance work and for reproducing problems without the actual database.
+ * The same settings and seed always give the same files. Every root code is generated, written and forgotten
+ * before the next one, so the files can grow to tens of millions of rows without holding them in memory.
+ */
+public final class DatasetGenerator {
+    private static final int[] HISTORIC_YEARS = {1477, 1514, 1632, 1795, 1840};
+    private static final int MAX_ROOT_CODES = 36 * 36 * 36 * 36 - 1; // Root codes are HO followed by four base 36 digits
+    private static final int MAX_DEPTH = 10;
+
+    private final int rootCodes;
+    private final long seed;
+    private final int depth; // The number of levels of child codes below a root code
+    private final double multiLinkShare; // The share of the root codes with children that is written as one record with multiple Link codes per year
+    private final double missingShare; // The share of the numbers of houses and square kilometres that is left out
+    private final int[] years;
+    private long rowsWritten = 0;
+    private long squareKilometreRowsWritten = 0;
+
+    /**
+     * A Link code with its child codes and, for a code without children, its square kilometres.
+     */
+    private static class Code {
+        String linkCode;
+        List<Code> children = new ArrayList<>();
+        long km2; // The square kilometres in ten-thousandths
+    }
+
+    /**
+     * Constructor for the DatasetGenerator class.
+     *
+     * @param rootCodes      int the number of root codes, E.G. HO0001, to generate.
+     * @param seed           long the seed the files are generated from.
+     * @param depth          int the number of levels of child codes below a root code, E.G. 2 for HO0001AB.
+     * @param multiLinkShare double the share of root codes with children written as one record with multiple Link codes per year.
+     * @param numberOfYears  int the number of years, starting with the years of the actual database.
+     * @param missingShare   double the share of the numbers of houses and square kilometres that is left out.
+     */
+    DatasetGenerator(int rootCodes, long seed, int depth, double multiLinkShare, int numberOfYears, double missingShare) {
+        if (rootCodes < 1 || rootCodes > MAX_ROOT_CODES)
+            throw new IllegalArgumentException("The number of root codes must be between 1 and " + MAX_ROOT_CODES + ": " + rootCodes);
+        if (depth < 0 || depth > MAX_DEPTH)
+            throw new IllegalArgumentException("The depth must be between 0 and " + MAX_DEPTH + ": " + depth);
+        if (multiLinkShare < 0 || multiLinkShare > 1 || missingShare < 0 || missingShare > 1)
+            throw new IllegalArgumentException("The shares must be between 0 and 1: " + multiLinkShare + ", " + missingShare);
+        if (numberOfYears < 1)
+            throw new IllegalArgumentException("There must be at least one year: " + numberOfYears);
+        this.rootCodes = rootCodes;
+        this.seed = seed;
+        this.depth = depth;
+        this.multiLinkShare = multiLinkShare;
+        this.missingShare = missingShare;
+        this.years = new int[numberOfYears];
+        for (int i = 0; i < numberOfYears; i++) {
+            years[i] = i < HISTORIC_YEARS.length ? HISTORIC_YEARS[i] : HISTORIC_YEARS[HISTORIC_YEARS.length - 1] + 10 * (i - HISTORIC_YEARS.length + 1);
+        }
+    }
+
+    /**
+     * The main method to generate a dataset.
+     *
+     * @param args String[] containing the directory to write raw.csv and km2.csv to, the number of root codes
+     *             and optionally seed=, depth=, multiLinkShare=, years= and missingShare= settings
+     * @throws Exception Exception for when the arguments are not valid or the files cannot be written
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2)
+            throw new IllegalArgumentException("Usage: DatasetGenerator <directory> <root codes> [seed=1] [depth=2] [multiLinkShare=0.55] [years=5] [missingShare=0.05]");
+        Path directory = Paths.get(args[0]);
+        int rootCodes = Integer.parseInt(args[1]);
+        long seed = 1;
+        int depth = 2;
+        double multiLinkShare = 0.55;
+        int numberOfYears = HISTORIC_YEARS.length;
+        double missingShare = 0.05;
+        for (int i = 2; i < args.length; i++) {
+            String[] setting = args[i].split("=", 2);
+            if (setting.length != 2)
+                throw new IllegalArgumentException("Settings are given as name=value: " + args[i]);
+            switch (setting[0]) {
+                case "seed":
+                    seed = Long.parseLong(setting[1]);
+                    break;
+                case "depth":
+                    depth = Integer.parseInt(setting[1]);
+                    break;
+                case "multiLinkShare":
+                    multiLinkShare = Double.parseDouble(setting[1]);
+                    break;
+                case "years":
+                    numberOfYears = Integer.parseInt(setting[1]);
+                    break;
+                case "missingShare":
+                    missingShare = Double.parseDouble(setting[1]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown setting: " + setting[0]);
+            }
+        }
+
+        DatasetGenerator generator = new DatasetGenerator(rootCodes, seed, depth, multiLinkShare, numberOfYears, missingShare);
+        Files.createDirectories(directory);
+        System.out.println("Generating " + rootCodes + " root codes in " + directory);
+        generator.write(directory.resolve("raw.csv"), directory.resolve("km2.csv"));
+        System.out.println("Rows written to raw.csv: " + generator.getRowsWritten());
+        System.out.println("Rows written to km2.csv: " + generator.getSquareKilometreRowsWritten());
+    }
+
+    /**
+     * Writes the raw data file and the square kilometre file.
+     *
+     * @param rawCsv              Path the path of the raw data file.
+     * @param squareKilometresCsv Path the path of the square kilometre file.
+     * @throws IOException if the files cannot be written.
+     */
+    void write(Path rawCsv, Path squareKilometresCsv) throws IOException {
+        SplittableRandom random = new SplittableRandom(seed);
+        rowsWritten = 0;
+        squareKilometreRowsWritten = 0;
+        try (BufferedWriter raw = Files.newBufferedWriter(rawCsv, StandardCharsets.UTF_8);
+             BufferedWriter km2 = Files.newBufferedWriter(squareKilometresCsv, StandardCharsets.UTF_8)) {
+            raw.write("YEAR;LINK;HOUSES;KM2\n");
+            StringBuilder header = new StringBuilder("SHORT-ID");
+            for (int year : years) {
+                header.append(';').append(year);
+            }
+            km2.write(header.append('\n').toString());
+
+            StringBuilder row = new StringBuilder();
+            String previousRootWithoutChildren = null;
+            for (int i = 1; i <= rootCodes; i++) {
+                Code root = createCode(rootCode(i), 0, random);
+                // Contains the square kilometres per code in the order of writing and per year, -1 for a missing value
+                List<Code> codes = new ArrayList<>();
+                collect(root, codes);
+                long[][] km2PerYear = new long[codes.size()][years.length];
+                for (int c = 0; c < codes.size(); c++) {
+                    row.setLength(0);
+                    row.append(codes.get(c).linkCode);
+                    for (int y = 0; y < years.length; y++) {
+                        km2PerYear[c][y] = random.nextDouble() < missingShare ? -1 : codes.get(c).km2;
+                        row.append(';');
+                        if (km2PerYear[c][y] >= 0)
+                            appendSquareKilometres(row, km2PerYear[c][y]);
+                    }
+                    km2.write(row.append('\n').toString());
+                    squareKilometreRowsWritten++;
+                }
+
+                List<Code> leaves = new ArrayList<>();
+                collectLeaves(root, leaves);
+                for (int y = 0; y < years.length; y++) {
+                    if (root.children.isEmpty()) {
+                        writeRow(raw, row, years[y], codes, km2PerYear, y, random, 20, 3000, root);
+                    } else if (random.nextDouble() < multiLinkShare) {
+                        // The children together, or all the codes without children, in one record as in HO1351-HO1352
+                        List<Code> linked = random.nextDouble() < 0.64 || leaves.size() == root.children.size() ? root.children : leaves;
+                        writeRow(raw, row, years[y], codes, km2PerYear, y, random, 20, 3000, linked.toArray(new Code[0]));
+                    } else if (random.nextDouble() < 0.45) {
+                        writeRow(raw, row, years[y], codes, km2PerYear, y, random, 20, 3000, root);
+                    } else {
+                        for (Code child : root.children) {
+                            writeRow(raw, row, years[y], codes, km2PerYear, y, random, 5, 1500, child);
+                        }
+                    }
+                }
+
+                // Now and then two neighbouring root codes without children are recorded together in a single year
+                if (root.children.isEmpty()) {
+                    if (previousRootWithoutChildren != null && random.nextDouble() < multiLinkShare / 5) {
+                        row.setLength(0);
+                        row.append(years[random.nextInt(years.length)]).append(';').append(previousRootWithoutChildren).append('-').append(root.linkCode)
+                                .append(';').append(100 + random.nextInt(1901)).append(";\n");
+                        raw.write(row.toString());
+                        rowsWritten++;
+                    }
+                    previousRootWithoutChildren = root.linkCode;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of rows written to the raw data file by the last call of write, without the header.
+     *
+     * @return long the number of rows written.
+     */
+    long getRowsWritten() {
+        return rowsWritten;
+    }
+
+    /**
+     * Returns the number of rows written to the square kilometre file by the last call of write, without the header.
+     *
+     * @return long the number of rows written.
+     */
+    long getSquareKilometreRowsWritten() {
+        return squareKilometreRowsWritten;
+    }
+
+    /**
+     * Returns the root code for the number, HO followed by the number in four base 36 digits.
+     *
+     * @param number int the number of the root code.
+     * @return String the root code, E.G. HO0001.
+     */
+    private static String rootCode(int number) {
+        String digits = Integer.toString(number, 36).toUpperCase();
+        return "HO0000".substring(0, 6 - digits.length()) + digits;
+    }
+
+    /**
+     * Creates a code with its child codes, of which the codes without children get their square kilometres
+     * and the others the sum of the square kilometres of their children.
+     *
+     * @param linkCode String the Link code.
+     * @param level    int the level of the code, 0 for a root code.
+     * @param random   SplittableRandom the random values to use.
+     * @return Code the code with its child codes.
+     */
+    private Code createCode(String linkCode, int level, SplittableRandom random) {
+        Code code = new Code();
+        code.linkCode = linkCode;
+        if (level < depth && random.nextDouble() < (level == 0 ? 0.7 : 0.25)) {
+            int numberOfChildren = random.nextDouble() < 0.35 ? 3 : 2;
+            for (int c = 0; c < numberOfChildren; c++) {
+                Code child = createCode(linkCode + (char) ('A' + c), level + 1, random);
+                code.children.add(child);
+                code.km2 += child.km2;
+            }
+        } else {
+            code.km2 = 5000 + random.nextInt(195000);
+        }
+        return code;
+    }
+
+    /**
+     * Collects the code and all the codes below it, parents before their children.
+     *
+     * @param code  Code the code to start from.
+     * @param codes List<Code> the list to add the codes to.
+     */
+    private static void collect(Code code, List<Code> codes) {
+        codes.add(code);
+        for (Code child : code.children) {
+            collect(child, codes);
+        }
+    }
+
+    /**
+     * Collects the codes without children below the code, or the code itself if it has none.
+     *
+     * @param code   Code the code to start from.
+     * @param leaves List<Code> the list to add the codes without children to.
+     */
+    private static void collectLeaves(Code code, List<Code> leaves) {
+        if (code.children.isEmpty())
+            leaves.add(code);
+        for (Code child : code.children) {
+            collectLeaves(child, leaves);
+        }
+    }
+
+    /**
+     * Writes a raw data row for the codes in the year, with the sum of their square kilometres when it is known for all of them.
+     *
+     * @param raw        Writer the raw data file.
+     * @param row        StringBuilder the builder to reuse for the row.
+     * @param year       int the year of the row.
+     * @param codes      List<Code> the codes of the root code, in the order of km2PerYear.
+     * @param km2PerYear long[][] the square kilometres per code and year, -1 for a missing value.
+     * @param yearIndex  int the index of the year.
+     * @param random     SplittableRandom the random values to use.
+     * @param lowest     int the lowest number of houses.
+     * @param highest    int the highest number of houses.
+     * @param linked     Code... the codes of the row.
+     * @throws IOException if the row cannot be written.
+     */
+    private void writeRow(Writer raw, StringBuilder row, int year, List<Code> codes, long[][] km2PerYear, int yearIndex, SplittableRandom random, int lowest, int highest, Code... linked) throws IOException {
+        row.setLength(0);
+        row.append(year).append(';');
+        long km2 = 0;
+        for (int l = 0; l < linked.length; l++) {
+            if (l > 0)
+                row.append('-');
+            row.append(linked[l].linkCode);
+            long linkedKm2 = km2PerYear[codes.indexOf(linked[l])][yearIndex];
+            km2 = km2 < 0 || linkedKm2 < 0 ? -1 : km2 + linkedKm2;
+        }
+        row.append(';');
+        int houses = lowest + random.nextInt(highest - lowest + 1);
+        if (random.nextDouble() >= missingShare)
+            row.append(houses);
+        row.append(';');
+        if (km2 >= 0)
+            appendSquareKilometres(row, km2);
+        raw.write(row.append('\n').toString());
+        rowsWritten++;
+    }
+
+    /**
+     * Appends square kilometres given in ten-thousandths with four decimals, E.G. 124549 as 12.4549.
+     *
+     * @param row StringBuilder the row to append to.
+     * @param km2 long the square kilometres in ten-thousandths.
+     */
+    private static void appendSquareKilometres(StringBuilder row, long km2) {
+        long fraction = km2 % 10000;
+        row.append(km2 / 10000).append('.');
+        if (fraction < 1000)
+            row.append('0');
+        if (fraction < 100)
+            row.append('0');
+        if (fraction < 10)
+            row.append('0');
+        row.append(fraction);
+    }
+}
@@ -0,0 +1,2334 @@
+package org.iish.dorpen;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.*;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.stream.Collectors;
+
+/**
+ * The disaggregation of the house counts of village complexes into the counts of the villages they consist of.
+ * An instance holds the records and the Link codes of one run, from loading the CSV files up to the export.
+ */
+final class Disaggregation {
+    private final RecordStore records = new RecordStore(); // Contains the records from the csv by id, along with their totals
+    private Set<SquareKilometreRecord> squareKilometreRecords = new TreeSet<>();
+    private final SquareKilometreRatioTable squareKilometreRatios = new SquareKilometreRatioTable(); // Contains the km2 and the ratios calculated from them
+    private final Map<String, Set<String>> codesToIds = new HashMap<>(); // Contains information about link codes belonging to the ids
+    private final Map<String, Set<String>> codeHierarchy = new TreeMap<>(); // Contains information about possible children of parents
+    private final List<String> codes = new ArrayList<>(); // Contains all the codes from the csv file
+    private BigDecimal numberOfHouses = new BigDecimal(0);
+    private int record_id_counter = 2;
+    private Set<String> recordsToRemove = new TreeSet<>();
+    private final Map<String, Record> recordsToAdd = new LinkedHashMap<>(); // Contains the records created in a pass, in the order they are created in, which is the order they are numbered in
+    private final Set<Integer> years_from_data = new TreeSet<>();
+    private final SortedMap<String, VillageComplex> dorpenCollected = new TreeMap<>();
+    private int number_of_records_with_multiple_links = 0;
+    private int pass = 0; // The number of passes of the splitting done
+    private boolean tried_with_number_of_homes = false; // States whether the previous pass did not lower the number of records with multiple links
+    private boolean tryAlternativeSplitting = false; // States whether the alternative splitting is tried in the next pass
+    private final YearCoverageIndex.Cache yearCoverageCache = new YearCoverageIndex.Cache(); // Contains the coverage of the links per year, valid until the hierarchy changes
+    private final MissingValues missingValues; // Counts the missing values per phase of the processing
+    private final PhaseMetrics metrics = new PhaseMetrics(records); // Measures the phases of the processing and the passes of the splitting
+    private ComplexProfile profile; // Attributes the time of the splitting to the village complexes, null when not profiling
+    private Log.Logger log = Log.getRoot(); // Writes the lines of the engine, the logger of the run unless the engine is given one of its own
+    private final SplitStrategies splitStrategies = new SplitStrategies(); // Contains the strategies to split the records with multiple links
+    private ComplexConvergence convergence = new ComplexConvergence(ComplexConvergence.DEFAULT_MAX_PASSES, ComplexConvergence.DEFAULT_TIME_BUDGET); // Tracks per village complex whether the splitting converges
+    private boolean idsFromData = false; // States whether the ids of the records are read from the ID column, for a partition of a larger run
+    private int frozenRecordsWithMultipleLinks = 0; // The number of records with multiple links of the frozen village complexes, which are no longer split
+    private Path checkpointPath; // The checkpoint the splitting is written to between passes, null when not checkpointing
+    private String checkpointInputs; // Describes the input files the checkpoint belongs to
+    private long checkpointInterval; // The time in nanoseconds between two checkpoints
+    private long checkpointWritten; // The time the last checkpoint was written at, by System.nanoTime
+    private SortedMap<Integer, BigDecimal> checkedHousesPerYear = new TreeMap<>(); // Contains the houses per year at the last check of the number of houses
+    private long checkedRecordsPut = 0; // The number of records put in the store at the last check of the number of houses
+    private BigDecimal checkedHousesPut = new BigDecimal(0); // The number of houses put in the store at the last check of the number of houses
+
+    private static final BigDecimal ROUNDING_TOLERANCE = new BigDecimal("0.0005"); // The change allowed per new record and per house of the new records, as both the houses and the ratios are rounded to three decimals
+
+    static final CSVFormat csvFormat = CSVFormat.EXCEL
+            .withFirstRecordAsHeader()
+            .withDelimiter(';')
+            .withIgnoreEmptyLines()
+            .withNullString("");
+
+    /**
+     * Constructor for the Disaggregation class, which counts the missing values of its own.
+     */
+    Disaggregation() {
+        this(new MissingValues());
+    }
+
+    /**
+     * Constructor for the Disaggregation class.
+     *
+     * @param missingValues MissingValues the counter of the missing values, which may be shared with other runs.
+     */
+    Disaggregation(MissingValues missingValues) {
+        this.missingValues = missingValues;
+    }
+
+    /**
+     * Makes this run a partition of a larger run, see RootCodePartitions. The years are those of all the raw data,
+     * the ids of the records are read from the ID column, and the records created by the splitting are numbered after all the records.
+     *
+     * @param years        Set<Integer> the years of all the raw data.
+     * @param nextRecordId int the id of the first record created by the splitting.
+     */
+    void takePartOf(Set<Integer> years, int nextRecordId) {
+        years_from_data.addAll(years);
+        record_id_counter = nextRecordId;
+        idsFromData = true;
+    }
+
+    /**
+     * Returns the measurements of the phases of this run.
+     *
+     * @return PhaseMetrics the measurements, of which the phase is set by the caller.
+     */
+    PhaseMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Starts attributing the time of the splitting, the passes and the records created to the village complexes.
+     */
+    void enableProfile() {
+        profile = new ComplexProfile();
+    }
+
+    /**
+     * Sets the logger the engine writes its lines with, E.G. a quiet one for an engine that runs next to other engines,
+     * so the level of the rest of the run is left as it is.
+     *
+     * @param log Log.Logger the logger of the engine.
+     */
+    void setLogger(Log.Logger log) {
+        this.log = log;
+    }
+
+    /**
+     * Writes the village complexes ranked from the slowest to the fastest to a CSV file and prints the slowest ones.
+     *
+     * @param profilePath String the path of the CSV file.
+     * @param number      int the number of the slowest village complexes to print.
+     * @throws IOException if the file cannot be written.
+     */
+    void writeProfile(String profilePath, int number) throws IOException {
+        if (profile == null)
+            return;
+        profile.countRecords(records.values());
+        profile.write(profilePath, csvFormat);
+        profile.print(number);
+    }
+
+    /**
+     * Sets the budgets of the splitting of a village complex, after which it is frozen and its records are no longer split.
+     *
+     * @param maxPasses  int the number of passes a village complex may be considered in.
+     * @param timeBudget long the time in nanoseconds the splitting of a village complex may take.
+     */
+    void setConvergenceBudget(int maxPasses, long timeBudget) {
+        convergence = new ComplexConvergence(maxPasses, timeBudget);
+    }
+
+    /**
+     * Returns the counter of the missing values encountered during this run.
+     *
+     * @return MissingValues the counter, of which the phase is set by the caller.
+     */
+    MissingValues getMissingValues() {
+        return missingValues;
+    }
+
+    /**
+     * Returns the format used to convert the numbers to the local format.
+     * A DecimalFormat is not thread safe, so each loading of the records uses its own.
+     *
+     * @return DecimalFormat the format
+     */
+    static DecimalFormat createLocaleFormat() {
+        DecimalFormatSymbols symbols = new DecimalFormatSymbols();
+        symbols.setDecimalSeparator(',');
+
+        DecimalFormat df = new DecimalFormat("########,###", symbols);
+        df.setGroupingUsed(false);
+        return df;
+    }
+
+    /**
+     * Converts the number given to a local BigDecimal
+     *
+     * @param number String The number to convert to the local format
+     * @param df     DecimalFormat the format of createLocaleFormat
+     * @return BigDecimal The BigDecimal converted to the local format
+     */
+    static BigDecimal convertToLocale(String number, DecimalFormat df) {
+        return new BigDecimal(df.format(new BigDecimal(number).setScale(3, BigDecimal.ROUND_HALF_EVEN)));
+    }
+
+    /**
+     * Loads the data from the csv file, or from the first sheet of the xlsx file
+     *
+     * @param csvPath String The path to the CSV or XLSX file which contains the data to be processed
+     * @throws Exception thrown when the data is incorrect
+     */
+    void loadData(String csvPath) throws Exception {
+        DecimalFormat localeFormat = createLocaleFormat();
+        RowSource.read(csvPath, header -> {
+        }, record -> addRecord(idsFromData ? record.get("ID") : Integer.toString(record_id_counter), new RawData.Row(record, localeFormat)));
+        finishLoading();
+    }
+
+    /**
+     * Loads the data from the rows of the raw data parsed before, which may be shared with other runs as the rows are not changed.
+     * The ids of the records are numbered as when they are loaded from the file.
+     *
+     * @param rawData RawData the parsed rows of the raw data.
+     */
+    void loadData(RawData rawData) {
+        for (RawData.Row row : rawData.getRows()) {
+            addRecord(Integer.toString(record_id_counter), row);
+        }
+        finishLoading();
+    }
+
+    /**
+     * Adds a record of a row of the raw data, counting its missing values and adding it to the ids of its Link codes.
+     *
+     * @param id  String the id of the record.
+     * @param row RawData.Row the parsed row.
+     */
+    private void addRecord(String id, RawData.Row row) {
+        Record newRecord = new Record();
+        newRecord.id = id;
+        newRecord.year = row.year;
+        newRecord.houses = row.houses;
+        numberOfHouses = !missingValues.isMissing(newRecord.houses, MissingValues.Kind.HOUSES) ? numberOfHouses.add(newRecord.houses) : numberOfHouses.add(new BigDecimal(0));
+        newRecord.km2 = row.km2;
+        missingValues.isMissing(newRecord.km2, MissingValues.Kind.KM2);
+        newRecord.note = NoteState.SOURCE;
+        if (row.link != null) {
+            String[] links = row.link.split("-");
+            for (String code : links) {
+                if (code.substring(0, 2).contains("HO")) {
+                    newRecord.links.add(code);
+                    Set<String> ids = codesToIds.getOrDefault(code, new HashSet<>());
+                    ids.add(newRecord.id);
+                    codesToIds.put(code, ids);
+                } else {
+                    newRecord.links.add(code);
+                }
+            }
+        } else {
+            newRecord.links.add("");
+        }
+        records.put(newRecord);
+        years_from_data.add(newRecord.year);
+        if (!idsFromData)
+            record_id_counter++;
+    }
+
+    /**
+     * Logs the number of houses loaded and keeps the totals the number of houses is checked against while splitting.
+     */
+    private void finishLoading() {
+        log.info("Number of houses in total is: " + numberOfHouses);
+        checkedHousesPerYear = new TreeMap<>(records.getHousesPerYear());
+        checkedRecordsPut = records.getRecordsPut();
+        checkedHousesPut = records.getHousesPut();
+    }
+
+    /**
+     * Loads the records and the square kilometres at the same time, the square kilometres and the hierarchy of their Link codes
+     * on a separate thread while the records are parsed. The two touch none of the same state, apart from the missing values.
+     *
+     * @param csvPath              String The path to the CSV file which contains the data to be processed
+     * @param squareKilometresPath String The path to the CSV file with the Square Kilometres
+     * @throws Exception thrown when the data is incorrect
+     */
+    void loadInputs(String csvPath, String squareKilometresPath) throws Exception {
+        FutureTask<Void> squareKilometres = inBackground("load-square-kilometres", () -> {
+            loadSquareKilometres(squareKilometresPath);
+            return null;
+        });
+        loadData(csvPath);
+        await(squareKilometres);
+    }
+
+    /**
+     * Starts a task on a thread of its own. With a single processor the task is run right away instead,
+     * as the threads would only take turns.
+     *
+     * @param name String the name of the thread.
+     * @param task Callable<Void> the task to run.
+     * @return FutureTask<Void> the task, to wait for with await.
+     */
+    private static FutureTask<Void> inBackground(String name, Callable<Void> task) {
+        FutureTask<Void> future = new FutureTask<>(task);
+        if (Runtime.getRuntime().availableProcessors() < 2) {
+            future.run();
+            return future;
+        }
+        Thread thread = new Thread(future, name);
+        thread.setDaemon(true);
+        thread.start();
+        return future;
+    }
+
+    /**
+     * Waits for a task started with inBackground, or on a thread of a pool, throwing what the task has thrown.
+     *
+     * @param task FutureTask<Void> the task to wait for.
+     * @throws Exception the exception thrown by the task.
+     */
+    static void await(FutureTask<Void> task) throws Exception {
+        try {
+            task.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception)
+                throw (Exception) e.getCause();
+            if (e.getCause() instanceof Error)
+                throw (Error) e.getCause();
+            throw e;
+        }
+    }
+
+    /**
+     * Loads the data of CSV file, or of the first sheet of the XLSX file, with the Square Kilometres into a set of SquareKilometreRecords.
+     *
+     * @param csvPath in String format the path to the CSV or XLSX file.
+     * @throws Exception if the data from the CSV file cannot be loaded properly.
+     */
+    void loadSquareKilometres(String csvPath) throws Exception {
+        Set<Integer> years = new TreeSet<>();
+        RowSource.read(csvPath, header -> {
+            for (String year : header) {
+                if (!year.equals("SHORT-ID")) {
+                    years.add(Integer.parseInt(year));
+                }
+            }
+        }, record -> {
+            SquareKilometreRecord s = new SquareKilometreRecord();
+            s.linkCode = record.get("SHORT-ID");
+            for (int year : years) {
+                BigDecimal squareKm = record.get(Integer.toString(year)) != null ? new BigDecimal(record.get(Integer.toString(year))) : null;
+                missingValues.isMissing(squareKm, MissingValues.Kind.KM2);
+                s.km2.put(year, squareKm);
+            }
+            squareKilometreRecords.add(s);
+            squareKilometreRatios.put(s.linkCode, s.km2);
+
+            setParentRelation(s.linkCode);
+        });
+        squareKilometreRatios.build();
+    }
+
+    /**
+     * Sets the parent relation for each of the link codes.
+     *
+     * @param code in String format the Link code to update.
+     */
+    private void setParentRelation(String code) {
+        if (code.length() == 6)
+            return;
+
+        String parent = code.substring(0, code.length() - 1);
+        Set<String> codes = codeHierarchy.getOrDefault(parent, new HashSet<>());
+        codes.add(code);
+        codeHierarchy.put(parent, codes);
+
+        setParentRelation(parent);
+    }
+
+    /**
+     * Updates the links for the records
+     */
+    void updateLinks() {
+        new HashSet<>(codesToIds.keySet()).forEach(this::updateLinksForCode);
+    }
+
+    /**
+     * Updates the links so the lowest possible is given, and it is possible to work from down up.
+     *
+     * @param code in String format the Link code to update
+     */
+    private void updateLinksForCode(String code) {
+        if (!codes.contains(code)) {
+            codes.add(code);
+        }
+        if (codeHierarchy.containsKey(code)) {
+            // A code without ids has nothing to pass on to its children.
+            Set<String> codeIds = codesToIds.get(code);
+            if (codeIds == null) {
+                missingValues.count(MissingValues.Kind.CODE_IDS);
+                return;
+            }
+            for (String parentCode : codeHierarchy.get(code)) {
+                Set<String> ids = codesToIds.getOrDefault(parentCode, new HashSet<>());
+                ids.addAll(codeIds);
+                codesToIds.put(parentCode, ids);
+
+                updateLinksForCode(parentCode);
+            }
+            codesToIds.remove(code);
+        }
+    }
+
+    /**
+     * Processes the records that have been loaded to see whether the records can be split by checking the link codes that go
+     * along with the records. This by checking other records that contain the same link code(s).
+     * Furthermore checking whether the link codes need to be combined for processing in a later stage. This by checking whether
+     * the SquareKilometreRecord with the same link code exists and has values for those years present.
+     */
+    void preSplitTheRecords() {
+        List<String> temp_list = years_from_data.stream().sorted((t1, t2) -> (t1 <= t2) ? -1 : 1).map(map -> Integer.toString(map)).collect(Collectors.toList());
+
+        Set<String> records_to_alter = new TreeSet<>();
+
+        number_of_records_with_multiple_links = records.getRecordsWithMultipleLinks();
+        for (Record record : records.values()) {
+            for (Map.Entry<String, Set<String>> code_hierarchy : codeHierarchy.entrySet()) {
+                if (record.links.containsAll(code_hierarchy.getValue())) {
+                    records_to_alter.add(record.id);
+                } else if (record.links.contains(code_hierarchy.getKey())) {
+                    records_to_alter.add(record.id);
+                }
+            }
+        }
+
+        Set<String> squareKilometreLinkCodes = new TreeSet<>();
+        for (SquareKilometreRecord squareKilometreRecord : squareKilometreRecords) {
+            squareKilometreLinkCodes.add(squareKilometreRecord.linkCode);
+        }
+
+        Set<String> recordsToSplit = determineRecordsToSplit(squareKilometreLinkCodes);
+
+        // Checks whether the codes to be split exist in the square kilometres so in case of splitting with square kilometres
+        // the data is available and no records get lost...
+        Set<String> record_ids_not_to_alter = new TreeSet<>();
+        Set<String> squareRecordLinkCodes = new TreeSet<>();
+        checkCodesToSplitAndNotToSplit(temp_list, records_to_alter, record_ids_not_to_alter, squareRecordLinkCodes);
+
+        records_to_alter.removeAll(record_ids_not_to_alter);
+        // End of the check with squareKilometres
+
+        // Check for link codes not to combine
+        Set<String> link_codes_not_to_combine = determineCodesNotToCombineByNumberOfYearsSize();
+
+        // CHECK whether the km2 contains the parent of the link codes, otherwise don't combine them...
+        Set<String> link_codes_to_leave_out = determineLinkCodesToLeaveOutByCheckingSquareKilometres(squareRecordLinkCodes);
+
+        link_codes_to_leave_out.removeAll(link_codes_not_to_combine);
+
+        // Code to make sure some record link codes are not combined
+        // Depending on whether the number of codes found equals the number of years present.
+        Map<String, Set<String>> hier_to_check = new HashMap<>();
+        for (Map.Entry<String, Set<String>> hier_entry : codeHierarchy.entrySet()) {
+            Set<String> codes = new TreeSet<>();
+            for (Map.Entry<String, Set<String>> code_entry : codesToIds.entrySet()) {
+                for (String hier : hier_entry.getValue()) {
+                    if (code_entry.getKey().equals(hier)) {
+                        codes.addAll(code_entry.getValue());
+                    }
+                }
+            }
+            // Checks whether the size of codes equals the size of years_from_data.
+            if (codes.size() == years_from_data.size()) {
+                hier_to_check.put(hier_entry.getKey(), codes);
+            }
+        }
+
+        // Checking whether to remove the entries or not, saving them in a separate list
+        Set<String> entries_to_remove = new TreeSet<>();
+        entryLoop:
+        for (Map.Entry<String, Set<String>> entry : hier_to_check.entrySet()) {
+            for (String record_id : entry.getValue()) {
+                for (Record rec : records.values()) {
+                    if (rec.id.equals(record_id)) {
+                        if (!rec.links.containsAll(codeHierarchy.get(entry.getKey()))) {
+                            entries_to_remove.add(entry.getKey());
+                            continue entryLoop;
+                        }
+                    }
+                }
+            }
+        }
+        // Removing the entries to remove, due to incomplete children Link Codes
+        for (String entry_to_remove : entries_to_remove) {
+            hier_to_check.remove(entry_to_remove);
+        }
+
+        // Combining link codes if all records contain link codes.
+        combineLinkCodesBasedOnPreviousFilledLists(records_to_alter, recordsToSplit, link_codes_not_to_combine, link_codes_to_leave_out, hier_to_check);
+
+        // Updating the lists so there are no wrong calculations
+        codeHierarchy.clear();
+        codesToIds.clear();
+        yearCoverageCache.clear();
+        updateLinkRelations();
+        updateLinks();
+    }
+
+    /**
+     * Combines link codes based on the given sets with ids of records which should not be combined or split.
+     * These are gathered in different ways in the code that calls this record.
+     *
+     * @param records_to_alter          contains the record ids in String format which the link codes should be altered.
+     * @param recordsToSplit            contains the record ids in String format for which the link codes should be split.
+     * @param link_codes_not_to_combine contains the record ids in String format for which the link codes should not be combined.
+     * @param link_codes_to_leave_out   contains the records ids in String format for which the link codes should be left out of splitting.
+     * @param hier_to_check             contains the code hierarchy between records in Map<String, Set<String>> format for records to not be split.
+     */
+    private void combineLinkCodesBasedOnPreviousFilledLists(Set<String> records_to_alter, Set<String> recordsToSplit, Set<String> link_codes_not_to_combine, Set<String> link_codes_to_leave_out, Map<String, Set<String>> hier_to_check) {
+        for (Map.Entry<String, Set<String>> code_to_id : codesToIds.entrySet()) {
+            if (records_to_alter.containsAll(code_to_id.getValue())) { // Checks if all the ids for a HO code are present E.G. HO0061B=[279, 1367, 601]
+                for (Record record : records.values()) {
+                    if (code_to_id.getValue().contains(record.id)) { // Checks if the id of the record contains one of the ids for code_to_id E.G. 279
+                        if (codeHierarchy.entrySet().stream().anyMatch(map -> map.getValue().contains(code_to_id.getKey()))) { // Checks if one of the codehierachies contains the HO code of the code_to_id E.G. HO0061B
+                            for (Map.Entry<String, Set<String>> hier_entry : codeHierarchy.entrySet()) {
+                                if (hier_entry.getValue().contains(code_to_id.getKey())) { // Checks if the hierarchy_entry value contains the code_to_id key E.G. HO0061B (See above)
+                                    if (record.links.containsAll(hier_entry.getValue())) { // Checks if the links contains all the hierarchy_entry values E.G. HO0061=[HO0061A, HO0061B]
+                                        if (hier_entry.getValue().size() > 1) {
+                                            // Checks if the hierarchy key is present in the Set, if so it continues to the next hierarchy key
+                                            if (link_codes_not_to_combine.contains(hier_entry.getKey()))
+                                                continue;
+                                            // Checks if the hierarchy key is present in the Set, if so it continues to the next hierarchy key
+                                            if (!hier_to_check.keySet().contains(hier_entry.getKey()))
+                                                continue;
+                                            // Checks if the hierarchy key is present in the Set, if so it continues to the next hierarchy key
+                                            if (link_codes_to_leave_out.contains(hier_entry.getKey()))
+                                                continue;
+                                            // If all the previous is correct the link codes are adjusted accordingly
+                                            String parent = "";
+                                            boolean record_is_invalid = false;
+                                            for (String s : hier_entry.getValue()) {
+                                                if (!record.links.contains(s)) {
+                                                    record_is_invalid = true;
+                                                    break;
+                                                }
+                                            }
+                                            // If the record is valid the link codes will be replaced by the parent code.
+                                            if (!record_is_invalid) {
+                                                int links_before = record.links.size();
+                                                for (String s : hier_entry.getValue()) {
+                                                    record.links.remove(s);
+                                                }
+                                                for (Map.Entry<String, Set<String>> code_hierarchy_entry : codeHierarchy.entrySet()) {
+                                                    if (code_hierarchy_entry.getValue().contains(code_to_id.getKey())) {
+                                                        parent = code_hierarchy_entry.getKey();
+                                                    }
+                                                }
+                                                if (!parent.equals("") && !record.links.contains(parent)) {
+                                                    record.links.add(parent);
+                                                }
+                                                records.linksChanged(record, links_before);
+                                            }
+                                        }
+                                    }
+                                }
+                            }
+                        }
+                    }
+                }
+            } else if (recordsToSplit.containsAll(code_to_id.getValue())) { // Checks if recordsToSplit contains all values from code_to_id.
+                for (Record record : records.values()) {
+                    if (code_to_id.getValue().contains(record.id)) {
+                        if (codeHierarchy.entrySet().stream().anyMatch(map -> map.getValue().contains(code_to_id.getKey()))) {
+                            for (Map.Entry<String, Set<String>> hier_entry : codeHierarchy.entrySet()) {
+                                if (hier_entry.getValue().contains(code_to_id.getKey())) {
+                                    if (record.links.contains(hier_entry.getKey())) {
+                                        // Checks if the codeHierarchy entry value contains more than one value.
+                                        if (hier_entry.getValue().size() > 1) {
+                                            // Removes the parent code from the record.
+                                            int links_before = record.links.size();
+                                            record.links.remove(hier_entry.getKey());
+                                            for (String link : hier_entry.getValue()) {
+                                                // Adds the child codes to the record that comply to the parent code.
+                                                if (!record.links.contains(link)) {
+                                                    record.links.add(link);
+                                                }
+                                            }
+                                            records.linksChanged(record, links_before);
+                                        }
+                                    }
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Determines which link codes should be left out of the splitting/combining before processing the records.
+     * This is done by checking if the SquareKilometreRecord contains a value for the specific link code in the specific year.
+     * If all years needed contain a value, then the link code is not added to be left out.
+     *
+     * @param squareRecordLinkCodes in the format of Set<SquareKilometreRecord>.
+     * @return a set of link codes that should be left out for splitting/combining.
+     */
+    private Set<String> determineLinkCodesToLeaveOutByCheckingSquareKilometres(Set<String> squareRecordLinkCodes) {
+        Set<String> link_codes_to_leave_out = new TreeSet<>();
+        recordLoop:
+        for (Record record : records.values()) {
+            for (Map.Entry<String, Set<String>> code_hier : codeHierarchy.entrySet()) {
+                if (record.links.containsAll(code_hier.getValue())) { // Checks if the record.links contains all (code link) values from code_hier.
+                    if (squareRecordLinkCodes.contains(code_hier.getKey())) { // Checks if the squareRecordLinkCodes contains the code_hier link code.
+                        if (squareKilometreRatios.get(code_hier.getKey(), record.year) == null) {
+                            link_codes_to_leave_out.add(code_hier.getKey());
+                            continue recordLoop; // Continues to the next record after adding the codeHierarchy key link code (parent code).
+                        }
+                    } else { // This if the squareRecordLinkCodes doesn't contain the code_hier link code.
+                        link_codes_to_leave_out.add(code_hier.getKey());
+                    }
+                }
+            }
+        }
+        return link_codes_to_leave_out;
+    }
+
+    /**
+     * Determines which link codes should be left out for splitting/combining by checking the link codes in the codeHierarchy Map.
+     * If the number of ids in the entry of codeHierarchy is the same as the number of unique years in the dataset, the the link code is added to the result set.
+     *
+     * @return a set of link codes that should not be splitted/combined in String format.
+     */
+    private Set<String> determineCodesNotToCombineByNumberOfYearsSize() {
+        Set<String> link_codes_not_to_combine = new TreeSet<>();
+        for (Map.Entry<String, Set<String>> parentEntry : codeHierarchy.entrySet()) {
+            if (parentEntry.getKey().length() == 6) {
+                Set<String> ids = new HashSet<>();
+                for (String child : parentEntry.getValue()) {
+                    if (codesToIds.get(child) != null)
+                        ids.addAll(codesToIds.get(child));
+                }
+                if (ids.size() > years_from_data.size())
+                    link_codes_not_to_combine.add(parentEntry.getKey());
+            }
+        }
+        return link_codes_not_to_combine;
+    }
+
+    /**
+     * Checks which code can and which code cannot be split into child codes.
+     * This is done by checking with squareKilometreRecords and seeing if the size of records that compare is the same as temp_list (contains the years).
+     *
+     * @param temp_list               contains the unique years from the raw data set in the format List<String>
+     * @param records_to_alter        contains the records to be used to alter in the format Set<String>
+     * @param record_ids_not_to_alter is the Set<String> which will contain the record ids of records that should not be handled for splitting.
+     * @param squareRecordLinkCodes   is the Set<String> which will contain the link codes from all the square kilometre records.
+     */
+    private void checkCodesToSplitAndNotToSplit(List<String> temp_list, Set<String> records_to_alter, Set<String> record_ids_not_to_alter, Set<String> squareRecordLinkCodes) {
+        for (SquareKilometreRecord srecord : squareKilometreRecords) {
+            squareRecordLinkCodes.add(srecord.linkCode);
+        }
+        for (String record_id : records_to_alter) {
+            Record record_to_check = records.get(record_id);
+            List<Record> records_that_compare = new ArrayList<>();
+            for (Record record_to_compare : records.values()) {
+                if (record_to_compare.links.equals(record_to_check.links)) {
+                    records_that_compare.add(record_to_compare);
+                }
+            }
+            if (records_that_compare.size() == temp_list.size()) {
+                for (String link_to_check : record_to_check.links) {
+                    if (!squareRecordLinkCodes.contains(link_to_check)) {
+                        for (Record record_that_compares : records_that_compare)
+                            record_ids_not_to_alter.add(record_that_compares.id);
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Determines which records should be handled to split the link codes.
+     * This is done by comparing each record with the codeHierarchy or by checking them with the squareKilometreRecords.
+     *
+     * @param squareKilometreLinkCodes contains the link codes which should be checked on the possibility to split the link codes in the format Set<String>.
+     * @return a set with record ids that can be handled for splitting the link codes in the format Set<String>.
+     */
+    private Set<String> determineRecordsToSplit(Set<String> squareKilometreLinkCodes) {
+        Set<String> recordsToSplit = new TreeSet<>();
+        for (Map.Entry<String, Set<String>> code_hier : codeHierarchy.entrySet()) {
+            // If it doesn't contain the code_hier link code it will try to add the code to recordsToSplit.
+            if (!squareKilometreLinkCodes.contains(code_hier.getKey())) {
+                for (Record record : records.values()) {
+                    if (record.links.contains(code_hier.getKey())) {
+                        recordsToSplit.add(record.id);
+                    }
+                }
+            } else { // It will check with the square kilometres to see if the code_hier link code needs to be added to recordsToSplit.
+                for (int year_to_test : years_from_data) {
+                    BigDecimal squareKilometres = squareKilometreRatios.get(code_hier.getKey(), year_to_test);
+                    if (squareKilometres == null || squareKilometres.equals(BigDecimal.ZERO)) {
+                        for (String code : code_hier.getValue()) {
+                            for (Record record : records.values()) {
+                                if (record.links.contains(code)) {
+                                    recordsToSplit.add(record.id);
+                                } else if (record.links.contains(code_hier.getKey())) {
+                                    recordsToSplit.add(record.id);
+                                }
+                            }
+                        }
+                        break;
+                    }
+                }
+            }
+        }
+        return recordsToSplit;
+    }
+
+    /**
+     * Determines whether the Record entry given should be split by using square kilometres.
+     * This for example when the ratio between the same link codes is vastly different in following years.
+     *
+     * @param record is the Record entry for which it will be determined if the link codes need to be split in the format Map.Entry<String, Record>
+     * @return a boolean which states whether square kilometres need to be used or not.
+     */
+    boolean determineIfItNeedsToBeSplitWithSquareKilometres(Map.Entry<String, Record> record) {
+        return SplitRecorder.INSTANCE.decideSplitMode(record.getValue(), () -> doSquareKilometreRatiosDiffer(record));
+    }
+
+    /**
+     * Compares the ratios between the square kilometres of the Link codes of the record in its year with those in the years of the unique records.
+     *
+     * @param record Map.Entry<String, Record> the record to check.
+     * @return a boolean which states whether the ratios differ between the years.
+     */
+    private boolean doSquareKilometreRatiosDiffer(Map.Entry<String, Record> record) {
+        Map<String, Integer> yearToUsePerLink = new HashMap<>();
+        Map<String, Set<String>> temp_code_map = new TreeMap<>();
+        // Fills the temp_code_map based on the codeToIds map.
+        fillCodeMapBasedOnCodeToIds(record, temp_code_map);
+
+        // Checking if the code_map contains all links of one parent before combining them
+        determineCodesToRemoveAndToAppend(record, temp_code_map);
+
+        // Gets the unique values and the duplicate values
+        Set<String> temp_duplicates = collectDuplicateLinkCodes(temp_code_map);
+        Set<String> temp_uniques = collectUniquesLinkCodes(temp_code_map);
+        temp_uniques.removeAll(temp_duplicates);
+
+        // Removes the unique codes for where the record doesn't contain the specific Link code,
+        // so it doesn't use a child code for a parent or vice verse
+        removeIncompleteChildLinkCodes(record, temp_uniques);
+
+        // Looping through the unique codes to determine duplicate years in the Link codes
+        TreeSet<Integer> temp_years = new TreeSet<>();
+
+        Map<String, BigDecimal> temp_uniqueValuesToCalculateFrom = new HashMap<>();
+        determineUniqueValuesToCalculateFrom(temp_uniques, temp_years, temp_uniqueValuesToCalculateFrom);
+
+        // Fills the link_code_map stated here.
+        Map<Integer, Set<String>> link_code_map = new HashMap<>();
+        for (Map.Entry<String, BigDecimal> entry : temp_uniqueValuesToCalculateFrom.entrySet()) {
+            for (Record record_to_check : records.values()) {
+                if (record_to_check.id.equals(entry.getKey())) {
+                    if (link_code_map.containsKey(record_to_check.year)) {
+                        // Adds links to an existing year value.
+                        link_code_map.get(record_to_check.year).addAll(record_to_check.links);
+                    } else {
+                        // Creates a new year value with the link codes.
+                        link_code_map.put(record_to_check.year, new TreeSet<>(record_to_check.links));
+                    }
+                }
+            }
+        }
+
+        // Checks with the square kilometres which year to use for calculation, only years in which all the links have a value are used.
+        link_code_map_loop:
+        for (Map.Entry<Integer, Set<String>> entry : link_code_map.entrySet()) {
+            if (!entry.getKey().equals(record.getValue().year)) {
+                if (entry.getValue().containsAll(record.getValue().links)) {
+                    Map<String, Integer> yearToUse = new HashMap<>();
+                    for (String link : entry.getValue()) {
+                        if (!squareKilometreRatios.contains(link))
+                            continue;
+                        BigDecimal squareKilometresToCheck = squareKilometreRatios.get(link, entry.getKey());
+                        BigDecimal squareKilometresCurrentRecord = squareKilometreRatios.get(link, record.getValue().year);
+                        if (squareKilometresCurrentRecord == null || squareKilometresToCheck == null
+                                || squareKilometresCurrentRecord.compareTo(BigDecimal.ZERO) == 0
+                                || squareKilometresToCheck.compareTo(BigDecimal.ZERO) == 0) {
+                            continue link_code_map_loop;
+                        }
+                        yearToUse.put(link, entry.getKey());
+                    }
+                    yearToUsePerLink.putAll(yearToUse);
+                }
+            }
+        }
+
+        for (String link : record.getValue().links) {
+            // Compares the ratios between the years by using the square kilometre values from above, skipping the links without both values.
+            // If the ratios compare to one another it doesn't need to be split with square kilometres.
+            Integer yearToUse = yearToUsePerLink.get(link);
+            if (yearToUse == null) {
+                missingValues.count(MissingValues.Kind.KM2);
+                continue;
+            }
+            if (squareKilometreRatios.doRatiosDiffer(link, record.getValue().year, yearToUse))
+                return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Exports the information to a csv file, to an XLSX workbook with the notes as its second sheet if the export path ends with .xlsx,
+     * or in long format with the notes to a Parquet file if the export path ends with .parquet.
+     *
+     * @param exportPath String the path to which the export is exported
+     * @param notesPath  String the path to which the notes are exported, unused for a workbook or Parquet file
+     * @throws Exception NullPointerException is caught when an exception is thrown.
+     */
+    void export(String exportPath, String notesPath) throws Exception {
+        disaggregate();
+
+        metrics.enterPhase("writeExport");
+        if (exportPath.endsWith(".xlsx"))
+            writeWorkbook(exportPath);
+        else if (exportPath.endsWith(".parquet"))
+            writeParquet(exportPath);
+        else
+            writeExport(exportPath, notesPath);
+        metrics.finish();
+    }
+
+    /**
+     * Splits the records and converts them to village complexes, which can then be written.
+     *
+     * @throws IOException if a checkpoint cannot be written.
+     */
+    void disaggregate() throws IOException {
+        metrics.enterPhase("splitRecords");
+        splitRecords();
+        convertRecords();
+    }
+
+    /**
+     * Splits the parent Link codes of the records that have been split by square kilometres and converts the records to village complexes.
+     */
+    void convertRecords() {
+        log.info("Splitting the processed records from parent codes to child codes. E.G. HO0001 to HO0001A & HO0001B.");
+        // Making sure the records have link codes as small as possible.
+        // Whilst recalculating the number of homes per record.
+        // By using km2.
+        missingValues.enterPhase(MissingValues.Phase.KM2_SPLIT);
+        metrics.enterPhase("splitParentLinkCodesBykm2");
+        splitParentLinkCodesBykm2();
+
+        // Below is commented for believing to be not needed.
+//            //Reorder data for the splitting by other records.
+//            codeHierarchy.clear();
+//            codesToIds.clear();
+//            updateLinkRelations();
+//            updateLinks();
+//            // Then by using other records.
+//            splitParentLinkCodesToChildCodesBeforeExport();
+
+        // Counts the number of houses after the calculations are completed and then prints it to the screen.
+        log.info("Counting number of houses after processing.");
+        BigDecimal number_of_homes = records.getHouses();
+        log.info("Final number of duplicate links is: " + number_of_records_with_multiple_links);
+        if (frozenRecordsWithMultipleLinks > 0)
+            log.warn("Number of duplicate links left in frozen village complexes is: " + frozenRecordsWithMultipleLinks + ", see the notes file.");
+        log.info("Final number of houses is: " + number_of_homes);
+        log.info("Difference with the number of houses loaded is: " + number_of_homes.subtract(numberOfHouses));
+
+        // Converts the Records objects to VillageComplex objects.
+        log.info("Converting records for exporting to CSV files.");
+        missingValues.enterPhase(MissingValues.Phase.EXPORT);
+        metrics.enterPhase("convertRecordsToVillageComplex");
+        convertRecordsToVillageComplexForProcessingToCSV();
+    }
+
+    /**
+     * Splits the records with multiple Link codes pass by pass, until none are left
+     * or a pass with square kilometres and the alternative splitting no longer lowers their number.
+     * The records of a village complex that exceeds its budget or cycles are frozen, see ComplexConvergence, and left as they are.
+     */
+    void splitRecords() throws IOException {
+        Collections.sort(codes);
+
+        writeCheckpoint(true);
+        while (number_of_records_with_multiple_links != 0) {
+            if (!escalate(splitPass(null)))
+                break;
+            writeCheckpoint(false);
+        }
+        metrics.endPass();
+    }
+
+    /**
+     * Splits the records with multiple Link codes once, creating the new records in the order of planning and numbering them in that order.
+     * The pass of a partition split in lockstep with the others follows the schedule given, see SplitSchedule, and reports to it,
+     * and its new records are given the ids -0, -1 and so on, until they are numbered over all the partitions, see numberCreatedRecords.
+     *
+     * @param schedule SplitSchedule the schedule of the pass, null when the run splits all the raw data.
+     * @return int the number of records with multiple links after the pass, apart from those of the frozen village complexes.
+     */
+    int splitPass(SplitSchedule schedule) {
+        metrics.enterPass(pass + 1);
+        SplitRecorder.Pass passEvent = SplitRecorder.INSTANCE.beginPass();
+        // Plans the splitting of the records with multiple link codes, the first strategy with a plan decides.
+        List<SplitPlan> plans = new ArrayList<>();
+        List<Record> plannedRecords = new ArrayList<>(); // Contains the record of each plan, for the profile
+        Log.Progress progress = log.progress("Splitting pass " + (pass + 1), number_of_records_with_multiple_links);
+        for (Map.Entry<String, Record> record : records.entrySet()) {
+            if (record.getValue().links.size() > 1 && (record.getValue().note == null || !record.getValue().note.isFrozen())) {
+                if (schedule != null && schedule.endsBefore(record.getKey()))
+                    break;
+                if (schedule != null && schedule.resetsBefore(record.getKey()))
+                    tryAlternativeSplitting = false;
+                progress.step(); // Each record that has more than 1 link codes counts towards the progress shown in the command line.
+                convergence.considered(record.getValue(), (tried_with_number_of_homes ? 1 : 0) + (tryAlternativeSplitting ? 2 : 0));
+                long start = System.nanoTime();
+                SplitPlan plan = splitStrategies.plan(new SplitCandidate(this, record, tried_with_number_of_homes, tryAlternativeSplitting));
+                convergence.spent(record.getValue(), System.nanoTime() - start);
+                if (profile != null)
+                    profile.considered(record.getValue(), pass + 1, System.nanoTime() - start, tried_with_number_of_homes, tryAlternativeSplitting);
+                if (schedule != null)
+                    schedule.considered(record.getKey(), plan);
+                if (plan == null)
+                    continue;
+                plans.add(plan);
+                plannedRecords.add(record.getValue());
+                if (plan.resetsAlternativeSplitting)
+                    tryAlternativeSplitting = false;
+                if (plan.endsPass)
+                    break;
+            }
+        }
+        progress.finish();
+
+        // Calculates the number of houses for all the plans of a strategy at once, then creates the records in the order of planning.
+        Map<SplitStrategy, List<SplitPlan>> batches = new LinkedHashMap<>();
+        for (SplitPlan plan : plans) {
+            batches.computeIfAbsent(plan.strategy, strategy -> new ArrayList<>()).add(plan);
+        }
+        for (List<SplitPlan> batch : batches.values()) {
+            RatioKernel.calculate(batch);
+        }
+        for (int i = 0; i < plans.size(); i++) {
+            SplitPlan plan = plans.get(i);
+            long start = System.nanoTime();
+            int recordsBefore = recordsToAdd.size();
+            createRecords(plan);
+            convergence.spent(plannedRecords.get(i), System.nanoTime() - start);
+            if (profile != null)
+                profile.created(plannedRecords.get(i), System.nanoTime() - start, recordsToAdd.size() - recordsBefore);
+            if (schedule != null)
+                schedule.created(plannedRecords.get(i).id, recordsToAdd.size() - recordsBefore);
+            if (!plan.portions.isEmpty())
+                metrics.countSplit(plan.strategy.getName());
+        }
+
+        // Removes the records that have been modified
+        int recordsRemoved = recordsToRemove.size();
+        int recordsAdded = recordsToAdd.size();
+        for (String id : recordsToRemove) {
+            records.remove(id);
+        }
+        recordsToRemove.clear();
+
+        // Adds the new records that have been created, plus setting valid ids for each record in the order they have been created.
+        int created = 0;
+        for (Record record_to_add : recordsToAdd.values()) {
+            record_to_add.id = schedule != null ? "-" + created : Integer.toString(record_id_counter);
+            records.put(record_to_add);
+            if (schedule != null)
+                created++;
+            else
+                record_id_counter++;
+        }
+        recordsToAdd.clear();
+        pass++;
+        checkNumberOfHouses("pass " + pass);
+        freezeRecords(convergence.endPass(), pass);
+
+        // The number of records that contain more than one link code and are still split.
+        int duplicate_link_code_validator = records.getRecordsWithMultipleLinks() - frozenRecordsWithMultipleLinks;
+        passEvent.end(pass, plans.size(), recordsAdded, recordsRemoved, duplicate_link_code_validator);
+        if (schedule != null)
+            schedule.recordsWithMultipleLinks = duplicate_link_code_validator;
+        return duplicate_link_code_validator;
+    }
+
+    /**
+     * Checks whether the number of records with multiple link codes has declined. If not, the next pass calculates with square kilometres,
+     * and if the previous pass did so already, the next pass tries the alternative splitting. If it has, the Link codes are updated to the records.
+     *
+     * @param duplicate_link_code_validator int the number of records with multiple links after the pass, apart from those of the frozen village complexes.
+     * @return a boolean which states whether to go on splitting.
+     */
+    private boolean escalate(int duplicate_link_code_validator) {
+        if (duplicate_link_code_validator == number_of_records_with_multiple_links) {
+            if (tried_with_number_of_homes)
+                if (duplicate_link_code_validator > 0) {
+                    tryAlternativeSplitting = true;
+                    tried_with_number_of_homes = false;
+                } else
+                    return false;
+            else {
+                tried_with_number_of_homes = true;
+            }
+        } else {
+            // Updates the values to use on a run.
+            number_of_records_with_multiple_links = duplicate_link_code_validator;
+            updateLinksToRecords();
+        }
+        return true;
+    }
+
+    /**
+     * Builds the hierarchy of the Link codes and the ids of the Link codes again, after a pass has changed the records.
+     */
+    private void updateLinksToRecords() {
+        codeHierarchy.clear();
+        codesToIds.clear();
+        yearCoverageCache.clear();
+        updateLinkRelations();
+        updateLinks();
+    }
+
+    /**
+     * Starts writing a checkpoint of the splitting before the first pass and after every pass at most once per interval.
+     *
+     * @param path     String the path of the checkpoint.
+     * @param interval long the time in nanoseconds between two checkpoints, 0 to write one after every pass.
+     * @param inputs   String the description of the input files, a checkpoint of other input files is not resumed.
+     */
+    void enableCheckpoints(String path, long interval, String inputs) {
+        checkpointPath = Paths.get(path);
+        checkpointInterval = interval;
+        checkpointInputs = inputs;
+    }
+
+    /**
+     * Checks whether there is a checkpoint to resume from.
+     *
+     * @return a boolean which states whether the checkpoint exists.
+     */
+    boolean hasCheckpoint() {
+        return checkpointPath != null && Files.exists(checkpointPath);
+    }
+
+    /**
+     * Removes the checkpoint, once the export it was written for is complete.
+     *
+     * @throws IOException if the checkpoint cannot be removed.
+     */
+    void removeCheckpoint() throws IOException {
+        if (checkpointPath != null)
+            Files.deleteIfExists(checkpointPath);
+    }
+
+    /**
+     * Writes the records, the Link codes and the state of the splitting to the checkpoint, if the interval has passed.
+     *
+     * @param force boolean which states whether to write it regardless of the interval.
+     * @throws IOException if the checkpoint cannot be written.
+     */
+    private void writeCheckpoint(boolean force) throws IOException {
+        if (checkpointPath == null || (!force && System.nanoTime() - checkpointWritten < checkpointInterval))
+            return;
+        try (Checkpoint.Output out = new Checkpoint.Output(checkpointPath, checkpointInputs)) {
+            writeState(out);
+            out.commit();
+        }
+        checkpointWritten = System.nanoTime();
+        log.debug("Checkpoint written after pass " + pass + " to " + checkpointPath);
+    }
+
+    /**
+     * Writes the records, the Link codes and the state of the splitting.
+     *
+     * @param out Checkpoint.Output the checkpoint to write to.
+     * @throws IOException if the checkpoint cannot be written.
+     */
+    private void writeState(Checkpoint.Output out) throws IOException {
+        out.writeNumber(pass);
+        out.writeBoolean(tried_with_number_of_homes);
+        out.writeBoolean(tryAlternativeSplitting);
+        out.writeNumber(number_of_records_with_multiple_links);
+        out.writeNumber(frozenRecordsWithMultipleLinks);
+        out.writeNumber(record_id_counter);
+        out.writeDecimal(numberOfHouses);
+        out.writeNumber(years_from_data.size());
+        for (int year : years_from_data) {
+            out.writeNumber(year);
+        }
+        out.writeStrings(codes);
+        writeCodeMap(out, codeHierarchy);
+        writeCodeMap(out, codesToIds);
+        out.writeNumber(records.size());
+        for (Record record : records.values()) {
+            out.writeString(record.id);
+            out.writeNumber(record.year);
+            out.writeDecimal(record.houses);
+            out.writeDecimal(record.km2);
+            out.writeStrings(record.links);
+            out.writeNumber(record.note != null ? record.note.ordinal() + 1 : 0);
+            out.writeNumber(record.yearUsedToCalculate);
+        }
+        convergence.write(out);
+    }
+
+    /**
+     * Writes a map of Link codes to Link codes or ids to the checkpoint, in the order of the map.
+     *
+     * @param out Checkpoint.Output the checkpoint to write to.
+     * @param map Map<String, Set<String>> the map to write.
+     * @throws IOException if the checkpoint cannot be written.
+     */
+    private static void writeCodeMap(Checkpoint.Output out, Map<String, Set<String>> map) throws IOException {
+        out.writeNumber(map.size());
+        for (Map.Entry<String, Set<String>> entry : map.entrySet()) {
+            out.writeString(entry.getKey());
+            out.writeStrings(entry.getValue());
+        }
+    }
+
+    /**
+     * Reads a map of Link codes to Link codes or ids from the checkpoint into the map.
+     *
+     * @param in  Checkpoint.Input the checkpoint to read from.
+     * @param map Map<String, Set<String>> the map to read into.
+     * @throws IOException if the checkpoint cannot be read.
+     */
+    private static void readCodeMap(Checkpoint.Input in, Map<String, Set<String>> map) throws IOException {
+        map.clear();
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            String key = in.readString();
+            map.put(key, in.readStrings(new HashSet<>()));
+        }
+    }
+
+    /**
+     * Resumes the run from the checkpoint, in place of loading the records, updating the links and pre splitting the records.
+     * The square kilometres have to be loaded before, as they are not part of the checkpoint.
+     *
+     * @throws IOException if the checkpoint cannot be read, is damaged or belongs to other input files.
+     */
+    void resumeFromCheckpoint() throws IOException {
+        try (Checkpoint.Input in = new Checkpoint.Input(checkpointPath, checkpointInputs)) {
+            readState(in);
+            in.verify();
+        }
+        checkpointWritten = System.nanoTime();
+        log.info("Resumed after pass " + pass + " with " + records.size() + " records, of which " + number_of_records_with_multiple_links + " have multiple links.");
+    }
+
+    /**
+     * Starts the splitting of a partition that is split in lockstep with the other partitions, see PartitionLockstep, once it has been pre split.
+     * The partition is split pass by pass by splitPass, after which numberCreatedRecords and continueSplitting follow once the pass
+     * of all the partitions is settled, and in between the partition is spilled with spill and loaded back with load.
+     */
+    void startLockstep() {
+        Collections.sort(codes);
+    }
+
+    /**
+     * Returns the number of records with multiple links the splitting starts from or has reached.
+     *
+     * @return int the number of records with multiple links, apart from those of the frozen village complexes.
+     */
+    int getRecordsWithMultipleLinks() {
+        return number_of_records_with_multiple_links;
+    }
+
+    /**
+     * Spills the records, the Link codes and the state of the splitting of a partition to a file, in the format of a checkpoint.
+     *
+     * @param path      Path the file.
+     * @param partition String the smallest root code of the partition, by which the file is recognised.
+     * @throws IOException if the file cannot be written.
+     */
+    void spill(Path path, String partition) throws IOException {
+        try (Checkpoint.Output out = new Checkpoint.Output(path, partition)) {
+            writeState(out);
+            out.commit();
+        }
+    }
+
+    /**
+     * Loads the records, the Link codes and the state of the splitting of a partition back from the file it was spilled to.
+     * The square kilometres have to be loaded before, as they are not spilled.
+     *
+     * @param path      Path the file.
+     * @param partition String the smallest root code of the partition, by which the file is recognised.
+     * @throws IOException if the file cannot be read, is damaged or belongs to another partition.
+     */
+    void load(Path path, String partition) throws IOException {
+        try (Checkpoint.Input in = new Checkpoint.Input(path, partition)) {
+            readState(in);
+            in.verify();
+        }
+    }
+
+    /**
+     * Gives the records created by the last pass of a partition their ids, in place of -0, -1 and so on, in the order they have been created.
+     * The records of a plan are numbered from the id given for the plan, which follows the records created by the plans for records before it in all the partitions.
+     * The store counts the records as put again, so the number of houses is checked from here on.
+     *
+     * @param created  int[] the number of records created by every plan of the pass that created records, see SplitSchedule.
+     * @param firstIds int[] the id of the first record created by every plan.
+     */
+    void numberCreatedRecords(int[] created, int[] firstIds) {
+        int number = 0;
+        for (int i = 0; i < created.length; i++) {
+            for (int j = 0; j < created[i]; j++) {
+                Record record = records.remove("-" + number++);
+                record.id = Integer.toString(firstIds[i] + j);
+                records.put(record);
+            }
+        }
+        checkedRecordsPut = records.getRecordsPut();
+        checkedHousesPut = records.getHousesPut();
+    }
+
+    /**
+     * Continues the splitting of a partition after a pass, as splitRecords does after the pass of all the partitions, see PartitionLockstep.
+     *
+     * @param triedWithNumberOfHomes   boolean which states whether the next pass calculates with square kilometres.
+     * @param alternativeSplitting     boolean which states whether the next pass tries the alternative splitting.
+     * @param recordsWithMultipleLinks int the number of records with multiple links of all the partitions, apart from those of the frozen village complexes.
+     * @param nextRecordId             int the id of the first record created by the next pass in all the partitions.
+     * @param linksChanged             boolean which states whether the pass changed the number of records with multiple links, after which the Link codes are updated to the records.
+     */
+    void continueSplitting(boolean triedWithNumberOfHomes, boolean alternativeSplitting, int recordsWithMultipleLinks, int nextRecordId, boolean linksChanged) {
+        tried_with_number_of_homes = triedWithNumberOfHomes;
+        tryAlternativeSplitting = alternativeSplitting;
+        number_of_records_with_multiple_links = recordsWithMultipleLinks;
+        record_id_counter = nextRecordId;
+        if (linksChanged)
+            updateLinksToRecords();
+    }
+
+    /**
+     * Reads the records, the Link codes and the state of the splitting, after which the number of houses is checked against the records read.
+     *
+     * @param in Checkpoint.Input the checkpoint to read from.
+     * @throws IOException if the checkpoint cannot be read.
+     */
+    private void readState(Checkpoint.Input in) throws IOException {
+        pass = in.readInt();
+        tried_with_number_of_homes = in.readBoolean();
+        tryAlternativeSplitting = in.readBoolean();
+        number_of_records_with_multiple_links = in.readInt();
+        frozenRecordsWithMultipleLinks = in.readInt();
+        record_id_counter = in.readInt();
+        numberOfHouses = in.readDecimal();
+        int years = in.readInt();
+        for (int i = 0; i < years; i++) {
+            years_from_data.add(in.readInt());
+        }
+        codes.clear();
+        in.readStrings(codes);
+        readCodeMap(in, codeHierarchy);
+        readCodeMap(in, codesToIds);
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            Record record = new Record();
+            record.id = in.readString();
+            record.year = in.readInt();
+            record.houses = in.readDecimal();
+            record.km2 = in.readDecimal();
+            in.readStrings(record.links);
+            int note = in.readInt();
+            record.note = note > 0 ? NoteState.values()[note - 1] : null;
+            record.yearUsedToCalculate = in.readInt();
+            records.put(record);
+        }
+        convergence.read(in);
+        yearCoverageCache.clear();
+        checkedHousesPerYear = new TreeMap<>(records.getHousesPerYear());
+        checkedRecordsPut = records.getRecordsPut();
+        checkedHousesPut = records.getHousesPut();
+    }
+
+    /**
+     * Freezes the records with multiple Link codes of the village complexes, by giving them the reason as their NoteState,
+     * after which they are no longer split and are reported in the notes file.
+     *
+     * @param frozen Map<String, NoteState> the reason per village complex to freeze.
+     * @param pass   int the number of the pass after which they are frozen.
+     */
+    private void freezeRecords(Map<String, NoteState> frozen, int pass) {
+        if (frozen.isEmpty())
+            return;
+        Map<String, Integer> frozenPerComplex = new TreeMap<>();
+        for (Record record : records.values()) {
+            if (record.links.size() > 1 && (record.note == null || !record.note.isFrozen())) {
+                NoteState reason = convergence.getFrozen(record);
+                if (reason != null) {
+                    record.note = reason;
+                    frozenRecordsWithMultipleLinks++;
+                    frozenPerComplex.merge(ComplexProfile.getRootCode(record.links), 1, Integer::sum);
+                }
+            }
+        }
+        for (Map.Entry<String, NoteState> complex : frozen.entrySet()) {
+            log.warn("Froze village complex " + complex.getKey() + " after pass " + pass + " (" + convergence.getPasses(complex.getKey()) + " passes): "
+                    + ComplexConvergence.describe(complex.getValue()) + ", " + frozenPerComplex.getOrDefault(complex.getKey(), 0) + " records with multiple links are left as they are.");
+        }
+    }
+
+    /**
+     * Writes the village complexes to the export file and their notes to the notes file, each compressed with gzip if its path ends with .gz.
+     *
+     * @param exportPath String the path to which the export is exported
+     * @param notesPath  String the path to which the notes are exported
+     * @throws Exception if the CSV files cannot be written.
+     */
+    void writeExport(String exportPath, String notesPath) throws Exception {
+        metrics.countRecordsRead(dorpenCollected.size());
+        // The notes are written on a writer thread of their own while the export is written, both only read the village complexes.
+        log.info("Writing data to " + exportPath);
+        log.info("Writing data to " + notesPath);
+        FutureTask<Void> notes = inBackground("write-notes", () -> {
+            writeNotes(notesPath);
+            return null;
+        });
+        writeExportRows(exportPath);
+        await(notes);
+    }
+
+    /**
+     * Writes the village complexes and their notes as the two sheets of an XLSX workbook, streamed so the memory used stays flat.
+     *
+     * @param workbookPath String the path to which the workbook is exported
+     * @throws IOException if the workbook cannot be written.
+     */
+    void writeWorkbook(String workbookPath) throws IOException {
+        metrics.countRecordsRead(dorpenCollected.size());
+        log.info("Writing data to " + workbookPath);
+        List<String> headerRow = getHeaderRow();
+        try (XlsxExport workbook = new XlsxExport(headerRow)) {
+            for (VillageComplex dorpCollected : dorpenCollected.values()) {
+                workbook.addRow(getExportRow(dorpCollected, headerRow), getNotesRow(dorpCollected, headerRow));
+            }
+            workbook.write(workbookPath);
+        }
+    }
+
+    /**
+     * Writes the village complexes in long format to a Parquet file, a row per Link code and year with its number of houses and note.
+     * The years without a number of houses or a note, N/A in both the export and the notes, are left out.
+     *
+     * @param parquetPath String the path to which the Parquet file is exported
+     * @throws IOException if the Parquet file cannot be written.
+     */
+    void writeParquet(String parquetPath) throws IOException {
+        metrics.countRecordsRead(dorpenCollected.size());
+        log.info("Writing data to " + parquetPath);
+        List<String> headerRow = getHeaderRow();
+        try (ParquetExport parquet = new ParquetExport(parquetPath)) {
+            for (VillageComplex dorpCollected : dorpenCollected.values()) {
+                String linkCode = dorpCollected.linkCode.key.toString();
+                for (String year : headerRow.subList(1, headerRow.size())) {
+                    Tuple cell = dorpCollected.yearMap.get(year);
+                    if (cell == null) {
+                        missingValues.count(MissingValues.Kind.YEAR_CELL);
+                        continue;
+                    }
+                    parquet.addRow(linkCode, Integer.parseInt(year), getHouses(cell), cell.noteState, cell.otherYear);
+                }
+            }
+            parquet.finish();
+        }
+    }
+
+    /**
+     * Writes the number of houses, the note and the year used to calculate of the village complexes per year to a result store, see ResultStore.
+     *
+     * @param storePath String the path to which the result store is written
+     * @return long the number of results written.
+     * @throws IOException if the result store cannot be written.
+     */
+    long writeResultStore(String storePath) throws IOException {
+        List<String> headerRow = getHeaderRow();
+        try (ResultStore.Writer store = new ResultStore.Writer(storePath)) {
+            for (VillageComplex dorpCollected : dorpenCollected.values()) {
+                String linkCode = dorpCollected.linkCode.key.toString();
+                for (String year : headerRow.subList(1, headerRow.size())) {
+                    Tuple cell = dorpCollected.yearMap.get(year);
+                    if (cell != null)
+                        store.add(linkCode, Integer.parseInt(year), toExportedHouses(cell), cell.noteState, cell.otherYear);
+                }
+            }
+            store.finish();
+            return store.getResults();
+        }
+    }
+
+    /**
+     * Receives the rows of the village complexes in the export and in the notes.
+     */
+    interface RowWriter {
+        /**
+         * Writes the rows of a village complex.
+         *
+         * @param code                 String the Link code of the village complex.
+         * @param exportRow            List<String> the row in the export.
+         * @param notesRow             List<String> the row in the notes.
+         * @param notes                NoteState[] the note per year as the records have it, null for the years without a note.
+         * @param yearsUsedToCalculate int[] the year used to calculate per year, as named in the note.
+         * @throws IOException if the rows cannot be written.
+         */
+        void write(String code, List<String> exportRow, List<String> notesRow, NoteState[] notes, int[] yearsUsedToCalculate) throws IOException;
+    }
+
+    /**
+     * Hands the rows of the village complexes in the export and the notes over in the order of their Link codes, without the header row.
+     *
+     * @param writer RowWriter receives the rows.
+     * @throws IOException if the rows cannot be written.
+     */
+    void writeRows(RowWriter writer) throws IOException {
+        metrics.countRecordsRead(dorpenCollected.size());
+        List<String> headerRow = getHeaderRow();
+        for (VillageComplex dorpCollected : dorpenCollected.values()) {
+            NoteState[] notes = new NoteState[headerRow.size() - 1];
+            int[] yearsUsedToCalculate = new int[headerRow.size() - 1];
+            for (int i = 0; i < notes.length; i++) {
+                Tuple cell = dorpCollected.yearMap.get(headerRow.get(i + 1));
+                if (cell != null) {
+                    notes[i] = cell.noteState;
+                    yearsUsedToCalculate[i] = cell.otherYear;
+                }
+            }
+            writer.write(dorpCollected.linkCode.key.toString(), getExportRow(dorpCollected, headerRow), getNotesRow(dorpCollected, headerRow), notes, yearsUsedToCalculate);
+        }
+    }
+
+    /**
+     * Returns the header row of the export and the notes, the Code column followed by the years.
+     *
+     * @return List<String> the header row.
+     */
+    private List<String> getHeaderRow() {
+        return getHeaderRow(years_from_data);
+    }
+
+    /**
+     * Returns the header row of the export and the notes for the years given, the Code column followed by the years.
+     *
+     * @param years Set<Integer> the years.
+     * @return List<String> the header row.
+     */
+    static List<String> getHeaderRow(Set<Integer> years) {
+        List<String> headerRow = new ArrayList<>();
+        headerRow.add("Code");
+        @SuppressWarnings("ComparatorMethodParameterNotUsed")
+        List<String> temp_list = years.stream().sorted((t1, t2) -> (t1 <= t2) ? -1 : 1).map(map -> Integer.toString(map)).collect(Collectors.toList());
+        headerRow.addAll(temp_list);
+        return headerRow;
+    }
+
+    /**
+     * Returns the row of a village complex in the export, its Link code followed by the number of houses per year, counting the missing values.
+     *
+     * @param dorpCollected VillageComplex the village complex.
+     * @param headerRow     List<String> the header row.
+     * @return List<String> the row, with N/A for the years without a number of houses.
+     */
+    private List<String> getExportRow(VillageComplex dorpCollected, List<String> headerRow) {
+        List<String> dorpenOutput = new ArrayList<>();
+        for (String s : headerRow) {
+            switch (s) {
+                case "Code":
+                    dorpenOutput.add(dorpCollected.linkCode.key.toString());
+                    break;
+                default:
+                    Tuple cell = dorpCollected.yearMap.get(s);
+                    if (cell == null) {
+                        missingValues.count(MissingValues.Kind.YEAR_CELL);
+                        dorpenOutput.add("N/A");
+                    } else {
+                        BigDecimal numberOfHomes = getHouses(cell);
+                        dorpenOutput.add(numberOfHomes != null ? numberOfHomes.toString() : "N/A");
+                    }
+                    break;
+            }
+        }
+        return dorpenOutput;
+    }
+
+    /**
+     * Returns the number of houses of a village complex in a year as it is exported, counting it as missing when there is none.
+     *
+     * @param cell Tuple the number of houses with its note.
+     * @return BigDecimal the number of houses rounded to three decimals, 0 without decimals, or null when there is none.
+     */
+    private BigDecimal getHouses(Tuple cell) {
+        BigDecimal numberOfHomes = toExportedHouses(cell);
+        if (numberOfHomes == null)
+            missingValues.count(MissingValues.Kind.HOUSES);
+        return numberOfHomes;
+    }
+
+    /**
+     * Returns the number of houses of a village complex in a year as it is exported, without counting it as missing.
+     *
+     * @param cell Tuple the number of houses with its note.
+     * @return BigDecimal the number of houses rounded to three decimals, 0 without decimals, or null when there is none.
+     */
+    private static BigDecimal toExportedHouses(Tuple cell) {
+        if (cell.key != null && !cell.key.toString().equals("N/A")) {
+            BigDecimal numberOfHomes = new BigDecimal(cell.key.toString());
+            return numberOfHomes.compareTo(BigDecimal.ZERO) == 0 ? BigDecimal.ZERO : numberOfHomes.setScale(3, BigDecimal.ROUND_HALF_EVEN);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the row of a village complex in the notes, its Link code followed by the note per year.
+     *
+     * @param dorpCollected VillageComplex the village complex.
+     * @param headerRow     List<String> the header row.
+     * @return List<String> the row, with N/A for the years without a note.
+     */
+    private static List<String> getNotesRow(VillageComplex dorpCollected, List<String> headerRow) {
+        List<String> dorpenOutput = new ArrayList<>();
+        for (String s : headerRow) {
+            switch (s) {
+                case "Code":
+                    dorpenOutput.add(dorpCollected.linkCode.key.toString());
+                    break;
+                default:
+                    Tuple cell = dorpCollected.yearMap.get(s);
+                    dorpenOutput.add(cell != null && cell.noteState != null ? cell.noteState.getState(cell.otherYear) : "N/A");
+                    break;
+            }
+        }
+        return dorpenOutput;
+    }
+
+    /**
+     * Writes the number of houses of the village complexes per year to the export file.
+     *
+     * @param exportPath String the path to which the export is exported
+     * @throws IOException if the CSV file cannot be written.
+     */
+    private void writeExportRows(String exportPath) throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(CompressedStreams.create(exportPath)))) {
+            CSVPrinter csvPrinter = new CSVPrinter(writer, csvFormat);
+
+            List<String> headerRow = getHeaderRow();
+//            headerRow.add("YEAR");
+//            headerRow.add("LINK");
+//            headerRow.add("HOUSES");
+//            headerRow.add("KM2");
+
+            csvPrinter.printRecord(headerRow);
+
+            // NOTE using for testing purposes
+//            Log.debug("Printing the values to houses export.csv");
+//            for (Integer year : years_from_data) {
+//                for (Record record : records.values()) {
+//                    if (record.year == year) {
+//                        List<String> dorpenOutput = new ArrayList<>();
+//                        for (String s : headerRow) {
+//                            try {
+//                                switch (s) {
+//                                    case "YEAR":
+//                                        dorpenOutput.add(Integer.toString(record.year));
+//                                        break;
+//                                    case "LINK":
+//                                        dorpenOutput.add(record.links.toString());
+//                                        break;
+//                                    case "HOUSES":
+//                                        dorpenOutput.add(record.houses.toString());
+//                                        break;
+//                                    case "KM2":
+//                                        dorpenOutput.add(record.km2.toString());
+//                                        break;
+//                                    default:
+//                                        break;
+//                                }
+//                            } catch (Exception e) {
+//                                dorpenOutput.add("N/A");
+//                            }
+//                        }
+//                        csvPrinter.printRecord(dorpenOutput);
+//                    }
+//                }
+//            }
+//            csvPrinter.flush();
+//            csvPrinter.close();
+
+            // Converts the dorpenCollected so it can be saved in the CSV file!
+            // Exports the data gathered to the CSV export file.
+            for (VillageComplex dorpCollected : dorpenCollected.values()) {
+                csvPrinter.printRecord(getExportRow(dorpCollected, headerRow));
+            }
+            csvPrinter.flush();
+            csvPrinter.close();
+        }
+    }
+
+    /**
+     * Writes the notes of the number of houses of the village complexes per year to the notes file.
+     *
+     * @param notesPath String the path to which the notes are exported
+     * @throws IOException if the CSV file cannot be written.
+     */
+    private void writeNotes(String notesPath) throws IOException {
+        // Prints the notes data to a separate CSV file.
+        try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(CompressedStreams.create(notesPath)))) {
+            CSVPrinter csvPrinter = new CSVPrinter(writer, csvFormat);
+
+            List<String> headerRow = getHeaderRow();
+
+            csvPrinter.printRecord(headerRow);
+
+            for (VillageComplex dorpCollected : dorpenCollected.values()) {
+                csvPrinter.printRecord(getNotesRow(dorpCollected, headerRow));
+            }
+            csvPrinter.flush();
+            csvPrinter.close();
+        }
+    }
+
+    /**
+     * Converts the Record objects into VillageComplex objects to process them for exporting to a CSV file.
+     */
+    void convertRecordsToVillageComplexForProcessingToCSV() {
+        metrics.countRecordsRead(records.size());
+        List<String> codesUsed = new ArrayList<>(); // Contains the link codes that have already been used
+        // Looping through the link codes combined with the ids belonging to the code
+        for (String entry : codes) {
+            VillageComplex village = new VillageComplex();
+
+            // Adding the Link codes to a list for further processing, removing duplicates
+            // And adding the Link to the dorpenComplex map for processing
+            if (!codesUsed.contains(entry)) {
+                if (records.values().stream().anyMatch(map -> map.links.contains(entry))) {
+                    codesUsed.add(entry);
+                    village.linkCode = new Tuple(entry, "0", NoteState.SOURCE, entry, 0);
+                }
+            }
+
+            // Checking to see if the dorpencomplex Hashmap is empty
+            if (village.linkCode != null) {
+                // Looping through the records collected from the CSV file
+                for (Map.Entry<String, Record> recordEntry : records.entrySet()) {
+                    // Check if the record entry attribute 'links' contains the Link code from dorpencomplex Hashmap
+                    // If so, it adds the place of the record entry in the dorpencomplex Hashmap
+                    for (String link : recordEntry.getValue().links) {
+                        if (link.equals(village.linkCode.key)) {
+                            // Puts the year belonging to the record in the Hashmap dorpenComplex
+                            if (recordEntry.getValue().links.size() == 1) {
+                                village.linkCode.otherLinkCode = recordEntry.getValue().links.get(0);
+                                String linkCode = recordEntry.getValue().links.get(0);
+                                village.yearMap.put(Integer.toString(recordEntry.getValue().year), new Tuple(recordEntry.getValue().houses != null ? recordEntry.getValue().houses.toString() : "N/A", recordEntry.getValue().id, recordEntry.getValue().note, linkCode, recordEntry.getValue().yearUsedToCalculate));
+                            } else if (recordEntry.getValue().note != null && recordEntry.getValue().note.isFrozen()) {
+                                // The year of a Link code of a frozen village complex is noted as not split, unless a record of the Link code alone has it.
+                                village.yearMap.putIfAbsent(Integer.toString(recordEntry.getValue().year), new Tuple("N/A", recordEntry.getValue().id, recordEntry.getValue().note, String.join("-", recordEntry.getValue().links), recordEntry.getValue().year));
+                            }
+                            break;
+                        }
+                    }
+                }
+
+                // Checks if the length of the Link Code is longer than 6 characters
+                // If so, it gets the code from the codeHierarchy, by checking if the codehierarchy code equals the beginning of the dorpencomplex code
+                dorpenCollected.put(village.linkCode.key.toString(), village);
+            }
+        }
+    }
+
+    /**
+     * Splits the parent link codes by the link codes provided with the square kilometres.
+     * Then either splits the number of houses by using the km2 if it is available.
+     * Otherwise it will be split by dividing the number of houses by the number of link codes.
+     */
+    void splitParentLinkCodesBykm2(){
+        for(SquareKilometreRecord squareKilometreRecord : squareKilometreRecords){
+            setParentRelation(squareKilometreRecord.linkCode);
+        }
+
+        Map<Record, Set<String>> recordsToSplitToSmallerLinks = new HashMap<>();
+        for(Record record : records.values()){
+            // The records of frozen village complexes are left as they are.
+            if (record.note != null && record.note.isFrozen())
+                continue;
+            for(Map.Entry<String, Set<String>> code_hier_entry : codeHierarchy.entrySet()){
+                if(record.links.contains(code_hier_entry.getKey())){
+                    if(code_hier_entry.getValue().size() > 1){
+                        Set<String> codes = new TreeSet<>();
+                        for (String child : code_hier_entry.getValue()) {
+                            Set<String> grandchildren = codeHierarchy.get(child);
+                            // If one of the children has no children itself, the record is split into the children instead.
+                            if (grandchildren == null) {
+                                codes.addAll(code_hier_entry.getValue());
+                                break;
+                            }
+                            if (grandchildren.size() > 1) {
+                                codes.addAll(grandchildren);
+                            }
+                        }
+                        recordsToSplitToSmallerLinks.put(record, codes);
+                    }
+                }
+            }
+        }
+        Map<Record, SquareKilometreRatioTable.Shares> squareKilometresToSplitWith = new HashMap<>();
+        for(Map.Entry<Record, Set<String>> recordToSplit : recordsToSplitToSmallerLinks.entrySet()){
+            squareKilometresToSplitWith.put(recordToSplit.getKey(), squareKilometreRatios.getShares(new ArrayList<>(recordToSplit.getValue()), recordToSplit.getKey().year));
+        }
+
+        Set<String> recordsToRemoveFromRecords = new TreeSet<>();
+        Log.Progress progress = log.progress("Splitting by km2", squareKilometresToSplitWith.size());
+        for(Map.Entry<Record, SquareKilometreRatioTable.Shares> squareKilometreToSplit : squareKilometresToSplitWith.entrySet()){
+            SquareKilometreRatioTable.Shares shares = squareKilometreToSplit.getValue();
+            // The record is only split if every smaller link code has a value and there is a total to calculate the ratios with.
+            if (!shares.missing.isEmpty()) {
+                missingValues.count(MissingValues.Kind.KM2);
+                continue;
+            }
+            if (!shares.hasTotal())
+                continue;
+            boolean houses_missing = missingValues.isMissing(squareKilometreToSplit.getKey().houses, MissingValues.Kind.HOUSES);
+            progress.step();
+            Map<String, Record> recordsToAddKm2 = new HashMap<>();
+            for(Map.Entry<String, BigDecimal> map : shares.squareKilometres.entrySet()){
+                if (map.getValue().compareTo(BigDecimal.ZERO) != 0) {
+                    BigDecimal ratio = shares.getRatio(map.getKey());
+                    BigDecimal newNumberOfHomes = houses_missing ? null : squareKilometreToSplit.getKey().houses.multiply(ratio).setScale(3, BigDecimal.ROUND_HALF_EVEN);
+                    createNewRecord(squareKilometreToSplit.getKey(), newNumberOfHomes, map.getKey(), map.getValue(), NoteState.YEAR_SURFACE, squareKilometreToSplit.getKey().year, recordsToAddKm2);
+                } else {
+                    createNewRecord(squareKilometreToSplit.getKey(), houses_missing ? null : BigDecimal.ZERO, map.getKey(), map.getValue(), NoteState.YEAR_SURFACE, squareKilometreToSplit.getKey().year, recordsToAddKm2);
+                }
+            }
+            if(!recordsToAddKm2.isEmpty()) {
+                recordsToRemoveFromRecords.add(squareKilometreToSplit.getKey().id);
+                recordsToAdd.putAll(recordsToAddKm2);
+            }
+
+        }
+
+        progress.finish();
+        for (String id : recordsToRemoveFromRecords) {
+            records.remove(id);
+        }
+
+        for (Map.Entry<String, Record> entry : recordsToAdd.entrySet()) {
+            entry.getValue().id = Integer.toString(record_id_counter);
+            records.put(entry.getValue());
+            record_id_counter++;
+        }
+        checkNumberOfHouses("the splitting by km2");
+    }
+
+    /**
+     * Splits the link codes present in the records to child codes so these can be used for better splitting of the number of houses.
+     */
+//    private void splitParentLinkCodesToChildCodesBeforeExport() {
+//        int number_of_records = records.size();
+//        int future_number_of_records = 0;
+//        while (number_of_records != future_number_of_records) {
+//            Map<Record, Set<String>> recordsToSplitToSmallerLinks = new HashMap<>();
+//            for (Map.Entry<String, Set<String>> code_hier_entry : codeHierarchy.entrySet()) {
+//                for (Record record : records.values()) {
+//                    if (record.links.contains(code_hier_entry.getKey())) {
+//                        if (code_hier_entry.getValue().size() > 1) {
+//                            Set<String> codes = new TreeSet<>();
+//                            try {
+//                                for (String child : code_hier_entry.getValue()) {
+//                                    if (codeHierarchy.get(child).size() > 1) {
+//                                        codes.addAll(codeHierarchy.get(child));
+//                                    }
+//                                }
+//                            } catch (NullPointerException ex) {
+//                                codes.addAll(code_hier_entry.getValue());
+//                            }
+//                            recordsToSplitToSmallerLinks.put(record, codes);
+//                        }
+//                    }
+//                }
+//            }
+//
+//            Map<String, List<Record>> recordsToSplitWith = new HashMap<>();
+//            for (Map.Entry<Record, Set<String>> record_to_split : recordsToSplitToSmallerLinks.entrySet()) {
+//                List<Record> recordsToAdd = new ArrayList<>();
+//                for (Record record : records.values()) {
+//                    if (record_to_split.getValue().contains(record.links.get(0)) || record_to_split.getValue().contains(record.links.get(0))) {
+//                        boolean can_be_added = false;
+//                        if (recordsToAdd.size() > 0) {
+//                            for (Record test_record : recordsToAdd) {
+//                                if (test_record.year == record.year) {
+//                                    can_be_added = true;
+//                                }
+//                            }
+//                            if (can_be_added) {
+//                                recordsToAdd.add(record);
+//                            }
+//                        } else {
+//                            recordsToAdd.add(record);
+//                        }
+//                    }
+//                }
+//                recordsToSplitWith.put(record_to_split.getKey().links.get(0), recordsToAdd);
+//            }
+//
+//
+//            List<Record> recordsToRemoveFromDataset = new ArrayList<>();
+//            List<Record> recordsToAddToDataset = new ArrayList<>();
+//            for (Map.Entry<String, List<Record>> recordEntry : recordsToSplitWith.entrySet()) {
+//                try {
+//                    BigDecimal totalNumber = new BigDecimal(0);
+//                    for (Record record_to_collect_homes : recordEntry.getValue()) {
+//                        totalNumber = totalNumber.add(record_to_collect_homes.houses == null ? BigDecimal.ZERO : record_to_collect_homes.houses);
+//                    }
+//                    for (Record record_to_calculate_with : recordEntry.getValue()) {
+//                        BigDecimal ratio = record_to_calculate_with.houses.divide(totalNumber, 3, BigDecimal.ROUND_HALF_EVEN);
+//                        for (Map.Entry<Record, Set<String>> recordsToSplit : recordsToSplitToSmallerLinks.entrySet()) {
+//                            if (recordsToSplit.getValue().contains(record_to_calculate_with.links.get(0)) || recordsToSplit.getValue().contains(record_to_calculate_with.links.get(0).substring(0, record_to_calculate_with.links.get(0).length()))) {
+//                                BigDecimal result;
+//                                if (recordsToSplit.getKey().houses == null) {
+//                                    result = null;
+//                                } else {
+//                                    try {
+//                                        result = ratio.multiply(recordsToSplit.getKey().houses);
+//                                    } catch (NullPointerException ex) {
+//                                        result = BigDecimal.ZERO;
+//                                    }
+//                                }
+//                                Record newRecord = new Record();
+//                                newRecord.year = recordsToSplit.getKey().year;
+//                                newRecord.links.addAll(record_to_calculate_with.links);
+//                                newRecord.km2 = null;
+//                                newRecord.houses = result;
+//                                newRecord.yearUsedToCalculate = recordsToSplit.getKey().yearUsedToCalculate;
+//                                newRecord.note = recordsToSplit.getKey().note;
+//                                recordsToAddToDataset.add(newRecord);
+//                            }
+//                            if (!recordsToRemoveFromDataset.contains(recordsToSplit.getKey())) {
+//                                recordsToRemoveFromDataset.add(recordsToSplit.getKey());
+//                            }
+//                        }
+//                    }
+//                } catch (Exception ex) {
+//                    Log.debug(ex + " " + recordEntry);
+//                }
+//                System.out.print(".");
+//            }
+//            number_of_records = records.size();
+//
+//            for (Record record : recordsToRemoveFromDataset) {
+//                records.remove(record.id);
+//            }
+//
+//            for (Record record : recordsToAddToDataset) {
+//                record.id = Integer.toString(record_id_counter);
+//                records.put(Integer.toString(record_id_counter), record);
+//                record_id_counter++;
+//            }
+//            future_number_of_records = records.size();
+//        }
+//    }
+
+    /**
+     * Collects the values to calculate the new number of houses with by using the unique values to calculate from.
+     * Furthermore it set the NoteState of the unique value record for which the NoteState is not SOURCE.
+     *
+     * @param uniqueValuesToCalculateFrom                  contains the unique values to be used to calculate the new number of houses with.
+     * @param closest_year_for_calculating_number_of_homes contains the year to be used for the calculation of the new number of houses, here needed to check the unique_value_record containing the right year.
+     * @param valuesToCalculateWithMap                     is the Map which will contain the values that can be used to calculate the new number of houses with.
+     * @param noteState                                    is a NoteState object which will contain the NoteState of the unique_value_record if the NoteState is not SOURCE.
+     * @return the NoteState that has been given to the NoteState parameter.
+     */
+    NoteState fillValuesToCalculateWithAndGetNoteState(Map<String, BigDecimal> uniqueValuesToCalculateFrom, Integer closest_year_for_calculating_number_of_homes, Map<BigDecimal, List<String>> valuesToCalculateWithMap, NoteState noteState) {
+        for (Map.Entry<String, BigDecimal> uniqueValue : uniqueValuesToCalculateFrom.entrySet()) {
+            // Loop through the records to get the record for which the id and year are the same as the given unique value
+            for (Map.Entry<String, Record> unique_value_record : records.entrySet()) {
+                if (unique_value_record.getValue().id.equals(uniqueValue.getKey()) && unique_value_record.getValue().year == closest_year_for_calculating_number_of_homes) {
+                    valuesToCalculateWithMap.put(uniqueValue.getValue(), unique_value_record.getValue().links);
+                    if (unique_value_record.getValue().note != NoteState.SOURCE)
+                        noteState = unique_value_record.getValue().note;
+                }
+            }
+        }
+        return noteState;
+    }
+
+    /**
+     * Determines the best year to use for calculating the new number of houses with for the current Record.
+     * This is the year nearest to the closest year in which the links, raised to their parents in the CodeHierarchy object, are exactly those of the Record.
+     *
+     * @param record                                       is the Record which is used to check which year is best to use for splitting, whilst excluding it's year.
+     * @param closest_year_for_calculating_number_of_homes contains the closest year, which is kept if no year is complete.
+     * @param record_year_link_map                         contains the years with the codes which belong to the specific year.
+     * @return the year which is best used for calculating the new number of houses.
+     */
+    Integer determineTheBestYearToUseForSplitting(Map.Entry<String, Record> record, Integer closest_year_for_calculating_number_of_homes, Map<Integer, Set<String>> record_year_link_map) {
+        YearCoverageIndex yearIndex = new YearCoverageIndex(record.getValue().links, record_year_link_map, this::getParentCode, yearCoverageCache);
+        Integer nearest_complete_year = yearIndex.getNearestCompleteYear(closest_year_for_calculating_number_of_homes);
+        return nearest_complete_year != null ? nearest_complete_year : closest_year_for_calculating_number_of_homes;
+    }
+
+    /**
+     * Returns the parent of the Link Code, if the CodeHierarchy object contains the Link Code as a child of it.
+     *
+     * @param code String the Link Code to get the parent for.
+     * @return String the parent Link Code, or null if there is none.
+     */
+    private String getParentCode(String code) {
+        if (code.length() <= 6)
+            return null;
+        String parent = code.substring(0, code.length() - 1);
+        Set<String> children = codeHierarchy.get(parent);
+        return children != null && children.contains(code) ? parent : null;
+    }
+
+    /**
+     * Determines bothe the Records which should not be used in the calculation and fills the record_year_link_map with codes from records that only contain one link code.
+     *
+     * @param record                      the current Record for getting the year to check the year checked isn't the same year as that of the Record.
+     * @param code_map                    contains the codes that are used for calculating the new number of houses.
+     * @param years                       contains the years which are derived from the raw data file.
+     * @param uniqueValuesToCalculateFrom contains the unique values to calculate the new number of houses from.
+     * @param records_not_to_use          is the Set which will contain the records that should not be used for calculation.
+     * @param record_year_link_map        is the Map which will contain the years with the codes that can be used for calculation.
+     */
+    void determineRecordsNotToUseAndFillRecordYearLinkMap(Map.Entry<String, Record> record, Map<String, Set<String>> code_map, TreeSet<Integer> years, Map<String, BigDecimal> uniqueValuesToCalculateFrom, Set<String> records_not_to_use, Map<Integer, Set<String>> record_year_link_map) {
+        for (Integer year : years) {
+            if (!year.equals(record.getValue().year)) {
+                Set<String> links = new TreeSet<>();
+                for (Record record_year_to_check : records.values()) {
+                    if (uniqueValuesToCalculateFrom.keySet().contains(record_year_to_check.id)) {
+                        for (String code_map_link : code_map.keySet()) {
+                            if (record_year_to_check.links.contains(code_map_link) && record_year_to_check.links.size() == 1) {
+                                links.add(code_map_link);
+                            } else if (record_year_to_check.links.contains(code_map_link) && record_year_to_check.links.size() > 1) {
+                                records_not_to_use.add(record_year_to_check.id);
+                            }
+                        }
+                    }
+                }
+                record_year_link_map.put(year, links);
+            }
+        }
+    }
+
+    /**
+     * Creates a new record based upon the information provided
+     * A record created earlier with the same id is replaced, the new record is always a distinct object so there is no need to look for it first.
+     *
+     * @param record        Record The record from which the initial data comes from, used for the year and id for the new record.
+     * @param numberOfHomes BigDecimal The number of homes the new record has
+     * @param linkCode      String The link code for the new Record
+     * @param km2           BigDecimal The km2 of the record for that year
+     */
+    private void createNewRecord(Record record, BigDecimal numberOfHomes, String linkCode, BigDecimal km2, NoteState noteState, int yearUsedToCalculate, Map<String, Record> recordsToAddTo) {
+        Record newRecord = new Record();
+        newRecord.year = record.year;
+        newRecord.links.add(linkCode);
+        newRecord.km2 = km2;
+        newRecord.houses = numberOfHomes;
+        newRecord.yearUsedToCalculate = yearUsedToCalculate;
+        newRecord.note = noteState;
+
+        newRecord.id = record.id + record.year + linkCode + newRecord.houses;
+        SplitRecorder.INSTANCE.recordCreated(record, newRecord);
+
+        if (recordsToAddTo != null) {
+            recordsToAddTo.put(newRecord.id, newRecord);
+        } else {
+            recordsToAdd.put(newRecord.id, newRecord);
+        }
+    }
+
+    /**
+     * Creates the new records of a plan, of which the number of houses has been calculated, and marks the records it replaces for removal.
+     *
+     * @param plan SplitPlan the plan to create the records of.
+     */
+    private void createRecords(SplitPlan plan) {
+        for (SplitPlan.Portion portion : plan.portions) {
+            switch (portion.creation) {
+                case SINGLE_LINK:
+                    for (SplitPlan.Target target : portion.targets) {
+                        createNewRecord(portion.source, target.result, target.links.get(0), target.km2, portion.note, portion.yearUsedToCalculate, null);
+                    }
+                    break;
+                case PER_RESULT:
+                    // Targets with an equal result end up in one record
+                    Map<BigDecimal, List<String>> calculated_home_values = new HashMap<>();
+                    for (SplitPlan.Target target : portion.targets) {
+                        calculated_home_values.put(target.product, target.links);
+                    }
+                    for (Map.Entry<BigDecimal, List<String>> calculated_home_value : calculated_home_values.entrySet()) {
+                        Record newRecord = new Record();
+                        newRecord.houses = calculated_home_value.getKey().setScale(3, BigDecimal.ROUND_HALF_EVEN);
+                        newRecord.year = portion.source.year;
+                        newRecord.links = calculated_home_value.getValue();
+                        newRecord.yearUsedToCalculate = portion.yearUsedToCalculate;
+                        newRecord.note = portion.note;
+                        newRecord.id = portion.source.id + newRecord.year + newRecord.links.toString() + newRecord.houses;
+                        if (recordsToAdd.putIfAbsent(newRecord.id, newRecord) == null)
+                            SplitRecorder.INSTANCE.recordCreated(portion.source, newRecord);
+                    }
+                    break;
+                case WITHOUT_HOUSES:
+                    for (SplitPlan.Target target : portion.targets) {
+                        Record newRecord = new Record();
+                        newRecord.year = portion.source.year;
+                        newRecord.links.addAll(target.links);
+                        newRecord.houses = null;
+                        newRecord.note = portion.note;
+                        newRecord.id = portion.source.id + newRecord.year + newRecord.links.toString() + newRecord.houses;
+                        if (recordsToAdd.putIfAbsent(newRecord.id, newRecord) == null)
+                            SplitRecorder.INSTANCE.recordCreated(portion.source, newRecord);
+                    }
+                    break;
+            }
+        }
+        recordsToRemove.addAll(plan.recordsToRemove);
+    }
+
+    /**
+     * Checks the number of houses per year against the last check, which starts from the number of houses loaded.
+     * Splitting a record should keep the houses of its year, apart from rounding the new records and the ratios used to three decimals,
+     * so a change beyond that is reported as a leak of houses on the spot.
+     *
+     * @param stage String the stage of the processing since the last check, used in the report.
+     */
+    private void checkNumberOfHouses(String stage) {
+        BigDecimal tolerance = ROUNDING_TOLERANCE.multiply(BigDecimal.valueOf(records.getRecordsPut() - checkedRecordsPut).add(records.getHousesPut().subtract(checkedHousesPut)));
+        SortedMap<Integer, BigDecimal> leaks = records.getLeaks(checkedHousesPerYear, tolerance);
+        if (!leaks.isEmpty()) {
+            BigDecimal total_difference = new BigDecimal(0);
+            List<String> years = new ArrayList<>();
+            for (Map.Entry<Integer, BigDecimal> leak : leaks.entrySet()) {
+                years.add(leak.getKey() + ": " + leak.getValue());
+                total_difference = total_difference.add(leak.getValue());
+            }
+            log.warn("The number of houses changed during " + stage + " by " + total_difference + " " + years
+                    + ", the total is now " + records.getHouses() + " of the " + numberOfHouses + " loaded.");
+        }
+        checkedHousesPerYear = new TreeMap<>(records.getHousesPerYear());
+        checkedRecordsPut = records.getRecordsPut();
+        checkedHousesPut = records.getHousesPut();
+    }
+
+    /**
+     * Returns the record with the id.
+     *
+     * @param id String the id of the record.
+     * @return Record the record, or null if there is no record with the id.
+     */
+    Record getRecord(String id) {
+        return records.get(id);
+    }
+
+    /**
+     * Returns the children of the Link code according to the CodeHierarchy object.
+     *
+     * @param code String the Link code to get the children for.
+     * @return Set<String> the children, or null if the Link code has no children.
+     */
+    Set<String> getChildCodes(String code) {
+        return codeHierarchy.get(code);
+    }
+
+    /**
+     * Registers a strategy to split the records with multiple Link codes, which is asked before the built-in strategies.
+     * The strategies and the engine are package-private, so a strategy is added by code in this package rather than from outside the application.
+     *
+     * @param strategy SplitStrategy the strategy to register.
+     */
+    void registerSplitStrategy(SplitStrategy strategy) {
+        splitStrategies.register(strategy);
+    }
+
+    /**
+     * Collects the square kilometres that are needed to calculate the new number of homes for the specific record.
+     *
+     * @param record Map.Entry<String, Record> contains the record entry to be checked from the list of records.
+     * @return Shares the square kilometres of the Link Codes of the record in its year, along with their total and ratios.
+     */
+    SquareKilometreRatioTable.Shares collectSquareKmsToCalculateWith(Map.Entry<String, Record> record) {
+        return squareKilometreRatios.getShares(record.getValue().links, record.getValue().year);
+    }
+
+    /**
+     * Determines the closest year with which the new number of homes will be calculated with.
+     * The records with the values to calculate are checked in the order of their ids, the first with the smallest difference decides.
+     *
+     * @param years                 NavigableSet<Integer> holds the years belonging to the Link Codes
+     * @param equalValueToCalculate Map<String, BigDecimal> contains the values to calculate which have equal Link Codes.
+     * @return Integer the closest year to calculate the new number of homes, 0 if there is none.
+     */
+    Integer determineClosestYearForCalculatingNumberOfHomes(NavigableSet<Integer> years, Map<String, BigDecimal> equalValueToCalculate) {
+        int year_diff = Integer.MAX_VALUE;
+        Integer closest_year_to_calculate_from = 0;
+        for (String id : new TreeSet<>(equalValueToCalculate.keySet())) {
+            Record calculate_record = records.get(id);
+            if (calculate_record == null)
+                continue;
+            Integer yearToCalculateFrom = YearCoverageIndex.getNearestYear(years, calculate_record.year);
+            if (yearToCalculateFrom != null && Math.abs(yearToCalculateFrom - calculate_record.year) < year_diff) {
+                closest_year_to_calculate_from = yearToCalculateFrom;
+                year_diff = Math.abs(yearToCalculateFrom - calculate_record.year);
+            }
+        }
+        return closest_year_to_calculate_from;
+    }
+
+    /**
+     * Determines the unique values to calculate the new number of homes from
+     *
+     * @param uniques                     Set<String> holds the ids of the unique records, e.g. records with only one Link Code
+     * @param years                       TreeSet<Integer> holds the years belonging to the Link Code(s)
+     * @param uniqueValuesToCalculateFrom Map<String, BigDecimal> contains the unique values to calculate the new number of homes from.
+     */
+    void determineUniqueValuesToCalculateFrom(Set<String> uniques, TreeSet<Integer> years, Map<String, BigDecimal> uniqueValuesToCalculateFrom) {
+        for (String unique_code : uniques) {
+            Record unique_record = records.get(unique_code);
+            if (unique_record != null) {
+                uniqueValuesToCalculateFrom.put(unique_code, unique_record.houses);
+                years.add(unique_record.year);
+            }
+        }
+    }
+
+    /**
+     * Removes ids from the unique Set if the Link Codes for that id don't complete the parent Link Code.
+     *
+     * @param record  Map.Entry<String, Record> the record to check the link codes from
+     * @param uniques Set<String> the Set from which to remove the ids of incomplete Link Codes.
+     */
+    void removeIncompleteChildLinkCodes(Map.Entry<String, Record> record, Set<String> uniques) {
+        for (Record record_unique : records.values()) {
+            if (uniques.contains(record_unique.id)) {
+                for (String s : record_unique.links) {
+                    if (!record.getValue().links.contains(s)) {
+                        uniques.remove(record_unique.id);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Collects duplicate Link Codes, E.G. checks which Link Codes contain the same record ids and saves them to the duplicates set
+     *
+     * @param code_map   Map<String, Set<String> contains the ids belonging to a Link Code
+     * @return Set<String> which contains the duplicate ids
+     */
+    Set<String> collectDuplicateLinkCodes(Map<String, Set<String>> code_map) {
+        Set<String> duplicates = null;
+        for (String key : code_map.keySet()) {
+            if (duplicates == null) {
+                duplicates = new TreeSet<>(code_map.get(key));
+            } else {
+                duplicates.retainAll(code_map.get(key));
+            }
+        }
+        return duplicates;
+    }
+
+    /**
+     * Collects unique Link Codes, E.G. checks which Link Codes don't contain the same record ids and saves them to the uniques set
+     *
+     * @param code_map Map<String, Set<String> contains the ids belonging to a Link Code
+     * @return Set<String> which contains the unique ids
+     */
+    Set<String> collectUniquesLinkCodes(Map<String, Set<String>> code_map) {
+        Set<String> uniques = null;
+        for (String key : code_map.keySet()) {
+            if (uniques == null) {
+                uniques = new TreeSet<>(code_map.get(key));
+            } else {
+                uniques.addAll(code_map.get(key));
+            }
+        }
+        return uniques;
+    }
+
+    /**
+     * Determines the Link Codes to remove from the code_map and also the Link Codes to add to the code_map.
+     * Depending on whether or not the Link Codes are (complete) children of a parent Link Code
+     *
+     * @param record   Map.Entry<String, Record> the entry to check for if the link codes complete the parent code
+     * @param code_map Map<String, Set<String> the map containing the Link Code with the ids that contain that Link Code
+     */
+    void determineCodesToRemoveAndToAppend(Map.Entry<String, Record> record, Map<String, Set<String>> code_map) {
+        for (String link : record.getValue().links) {
+            Set<String> testSet = codeHierarchy.get(link.substring(0, link.length() - 1)) != null ? codeHierarchy.get(link.substring(0, link.length() - 1)) : new TreeSet<>();
+            if (code_map.values().containsAll(testSet)) {
+
+                Map<String, Set<String>> code_map_to_append = new TreeMap<>();
+                Set<String> codes_to_remove = new TreeSet<>();
+                Map.Entry<String, Set<String>> firstEntry = code_map.entrySet().iterator().next();
+                for (Map.Entry<String, Set<String>> next : code_map.entrySet()) {
+                    if (!next.equals(firstEntry)) {
+                        if (next.getKey().startsWith("HO")) {
+                            if (next.getKey().substring(0, 6).equals(firstEntry.getKey().substring(0, 6)) && next.getValue().equals(firstEntry.getValue())) {
+                                codes_to_remove.add(firstEntry.getKey());
+                                codes_to_remove.add(next.getKey());
+                                code_map_to_append.put(firstEntry.getKey().substring(0, 6), firstEntry.getValue());
+                            } else {
+                                codes_to_remove.clear();
+                            }
+                        } else {
+                            if (next.getKey().equals(firstEntry.getKey()) && next.getValue().equals(firstEntry.getValue())) {
+                                codes_to_remove.add(firstEntry.getKey());
+                                codes_to_remove.add(next.getKey());
+                                code_map_to_append.put(firstEntry.getKey(), firstEntry.getValue());
+                            } else {
+                                codes_to_remove.clear();
+                            }
+                        }
+                        firstEntry = next;
+                    }
+                }
+
+                for (String code_to_remove : codes_to_remove) {
+                    code_map.remove(code_to_remove);
+                }
+                code_map.putAll(code_map_to_append);
+            }
+        }
+    }
+
+    /**
+     * Fills the code_map based on the codeToIds Map.
+     * This by checking whether or not the codeToIds contain the Link code.
+     *
+     * @param record   Map.Entry<String, Record> the entry to check for in the codeToIds map
+     * @param code_map Map<String, Set<String> the map containing the Link Code with the ids that contain that Link Code
+     */
+    void fillCodeMapBasedOnCodeToIds(Map.Entry<String, Record> record, Map<String, Set<String>> code_map) {
+        for (String link : record.getValue().links) {
+            for (Map.Entry<String, Set<String>> codeToIdEntry : codesToIds.entrySet()) {
+                if (codesToIds.containsKey(link)) {
+                    if (codeToIdEntry.getKey().equals(link)) {
+                        if (code_map.entrySet().stream().noneMatch(map -> map.getValue().equals(codeToIdEntry))) {
+                            code_map.put(codeToIdEntry.getKey(), codeToIdEntry.getValue());
+                        }
+                    }
+                } else {
+                    List<Set<String>> childLinks = codeHierarchy.entrySet().stream().filter(map -> map.getKey().equals(link)).map(Map.Entry::getValue).collect(Collectors.toList());
+                    if (childLinks.size() > 0) {
+                        for (String child : childLinks.get(0)) {
+                            if (codeToIdEntry.getKey().equals(child)) {
+                                if (code_map.entrySet().stream().noneMatch(map -> map.getValue().contains(child)) && codeToIdEntry.getValue().contains(record.getKey())) {
+                                    code_map.put(codeToIdEntry.getKey(), codeToIdEntry.getValue());
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Updates the relations between the ids and the Link Codes aswell the Parent to Child relation for the Link Codes
+     */
+    private void updateLinkRelations() {
+        for (Record record : records.values()) {
+            for (String code : record.links) {
+                Set<String> ids = codesToIds.getOrDefault(code, new HashSet<>());
+                ids.add(record.id);
+                codesToIds.put(code, ids);
+
+                if (code.contains("HO")) {
+                    setParentRelation(code);
+                }
+            }
+        }
+    }
+
+    /**
+     * Class to contain multiple values for further calculation
+     */
+    private static class Tuple {
+        Object key;
+        String value;
+        String otherLinkCode;
+        NoteState noteState;
+        int otherYear;
+
+        /**
+         * Constructor for the Tuple class
+         *
+         * @param key            Object
+         * @param value          String
+         * @param noteState      NoteState
+         */
+        Tuple(Object key, String value, NoteState noteState, String otherLinkCode, int otherYear) {
+            this.key = key;
+            this.value = value;
+            this.noteState = noteState;
+            this.otherLinkCode = otherLinkCode;
+            this.otherYear = otherYear;
+        }
+    }
+
+    /**
+     * The SquareKilometreRecord class containing square kilometres per Link Code
+     */
+    private static class SquareKilometreRecord implements Comparable<SquareKilometreRecord> {
+        String linkCode;
+        Map<Integer, BigDecimal> km2 = new HashMap<>();
+
+        /**
+         * Compares the given SquareKilometreRecord with the current SquareKilometreRecord
+         *
+         * @param sq SquareKilometreRecord containing information about the square kilometres for a specific Link Code
+         * @return Integer
+         */
+        public int compareTo(SquareKilometreRecord sq) {
+            return linkCode.compareTo(sq.linkCode);
+        }
+
+        /**
+         * Returns the value of the SquareKilometreRecord as a String
+         *
+         * @return String
+         */
+        public String toString() {
+            return linkCode + " - " + km2.keySet() + " - " + km2.values();
+        }
+    }
+
+    /**
+     * The VillageComplex Class used to output the data to the CSV
+     */
+    private static class VillageComplex {
+        Tuple linkCode;
+        Map<String, Tuple> yearMap = new HashMap<>();
+
+        /**
+         * Returns the toString value of VillageComplex
+         *
+         * @return String
+         */
+        public String toString() {
+            return "Linkcode value: " + linkCode.value +
+                    " Linkcode key: " + linkCode.key +
+                    " Linkcode otherLinkCode: " + linkCode.otherLinkCode +
+                    " Linkcode noteState: " + linkCode.noteState +
+                    " yearMap: " + yearMap;
+        }
+    }
+}
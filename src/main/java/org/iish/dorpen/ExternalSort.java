@@ -0,0 +1,355 @@
+package org.iish.dorpen;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Sorts rows of strings by a key that do not need to fit in memory together. Rows are collected until they take about the bytes
+ * given, then sorted and spilled as a run to a temporary file, after which the runs are merged k-way while they are read back.
+ * Rows with the same key keep the order of their sequence number, so the sort is stable when the rows are numbered as they are added.
+ * The temporary file is removed once the sort is closed.
+ */
+final class ExternalSort implements Closeable {
+
+    private static final int ROW_OVERHEAD = 64; // The bytes a row takes in memory apart from its strings
+    private static final int STRING_OVERHEAD = 48; // The bytes a string takes in memory apart from its characters
+    private static final int BUFFER_SIZE = 1 << 16; // The number of bytes read of a run at a time while merging
+    private static final Comparator<Row> ORDER = Comparator.<Row, String>comparing(row -> row.key).thenComparingLong(row -> row.sequence);
+
+    /**
+     * A row of the sort, its key, its sequence number and its values, of which any can be null.
+     */
+    static final class Row {
+        final String key;
+        final long sequence;
+        final String[] values;
+
+        /**
+         * Constructor for the Row class.
+         *
+         * @param key      String the key the rows are sorted by.
+         * @param sequence long the sequence number, which orders the rows with the same key.
+         * @param values   String[] the values of the row.
+         */
+        Row(String key, long sequence, String[] values) {
+            this.key = key;
+            this.sequence = sequence;
+            this.values = values;
+        }
+    }
+
+    private final String name;
+    private final long runBytes;
+    private final List<Row> buffer = new ArrayList<>(); // Contains the rows that have not been spilled yet
+    private long bufferBytes = 0;
+    private Path file; // The temporary file of the runs, null until the first run is spilled
+    private FileOutputStream fileOutput;
+    private DataOutputStream output;
+    private final List<long[]> runs = new ArrayList<>(); // Contains the offset in the file and the number of rows of each run
+    private long size = 0;
+    private boolean merging = false;
+
+    /**
+     * Constructor for the ExternalSort class.
+     *
+     * @param name     String the name of the sort, used for its temporary file, E.G. partitions.
+     * @param runBytes long the number of bytes the rows may take in memory before they are spilled as a run.
+     */
+    ExternalSort(String name, long runBytes) {
+        this.name = name;
+        this.runBytes = runBytes;
+    }
+
+    /**
+     * Adds a row, spilling the rows collected so far as a run once they take the bytes given.
+     *
+     * @param key      String the key the rows are sorted by.
+     * @param sequence long the sequence number, which orders the rows with the same key.
+     * @param values   String[] the values of the row.
+     * @throws IOException if the run cannot be spilled.
+     */
+    void add(String key, long sequence, String[] values) throws IOException {
+        if (merging)
+            throw new IllegalStateException("Rows cannot be added to the " + name + " sort once it is merged");
+        buffer.add(new Row(key, sequence, values));
+        bufferBytes += ROW_OVERHEAD + STRING_OVERHEAD + 2L * key.length();
+        for (String value : values) {
+            bufferBytes += value != null ? STRING_OVERHEAD + 2L * value.length() : 8;
+        }
+        size++;
+        if (bufferBytes >= runBytes)
+            spill();
+    }
+
+    /**
+     * Returns the number of rows added.
+     *
+     * @return long the number of rows.
+     */
+    long size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of runs spilled to the temporary file.
+     *
+     * @return int the number of runs.
+     */
+    int getRuns() {
+        return runs.size();
+    }
+
+    /**
+     * Sorts the rows collected so far and writes them as a run to the temporary file.
+     *
+     * @throws IOException if the temporary file cannot be written.
+     */
+    private void spill() throws IOException {
+        if (buffer.isEmpty())
+            return;
+        if (file == null) {
+            file = Files.createTempFile("emhcd-" + name, ".runs");
+            fileOutput = new FileOutputStream(file.toFile());
+            output = new DataOutputStream(new BufferedOutputStream(fileOutput, BUFFER_SIZE));
+        }
+        buffer.sort(ORDER);
+        output.flush();
+        runs.add(new long[]{fileOutput.getChannel().position(), buffer.size()});
+        for (Row row : buffer) {
+            writeRow(output, row);
+        }
+        buffer.clear();
+        bufferBytes = 0;
+    }
+
+    /**
+     * Starts merging the rows, after which no rows can be added. When all the rows fit in memory they are not spilled at all.
+     *
+     * @return Merge the rows in the order of their key and sequence number.
+     * @throws IOException if the runs cannot be read.
+     */
+    Merge merge() throws IOException {
+        if (merging)
+            throw new IllegalStateException("The " + name + " sort is merged already");
+        merging = true;
+        if (file == null) {
+            buffer.sort(ORDER);
+            return new Merge(Collections.singletonList(new BufferRun(new ArrayList<>(buffer))));
+        }
+        spill();
+        output.close();
+        List<Run> readers = new ArrayList<>();
+        for (long[] run : runs) {
+            readers.add(new FileRun(file, run[0], run[1]));
+        }
+        return new Merge(readers);
+    }
+
+    /**
+     * Removes the temporary file.
+     *
+     * @throws IOException if the temporary file cannot be removed.
+     */
+    @Override
+    public void close() throws IOException {
+        buffer.clear();
+        if (output != null)
+            output.close();
+        if (file != null)
+            Files.deleteIfExists(file);
+    }
+
+    /**
+     * Writes a row to a run.
+     *
+     * @param output DataOutputStream the run.
+     * @param row    Row the row.
+     * @throws IOException if the run cannot be written.
+     */
+    private static void writeRow(DataOutputStream output, Row row) throws IOException {
+        writeString(output, row.key);
+        output.writeLong(row.sequence);
+        output.writeInt(row.values.length);
+        for (String value : row.values) {
+            writeString(output, value);
+        }
+    }
+
+    /**
+     * Writes a string as its length in UTF-8 bytes followed by the bytes, or -1 for null.
+     *
+     * @param output DataOutputStream the run.
+     * @param value  String the string, or null.
+     * @throws IOException if the run cannot be written.
+     */
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        if (value == null) {
+            output.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    /**
+     * Reads a string written by writeString.
+     *
+     * @param input DataInputStream the run.
+     * @return String the string, or null.
+     * @throws IOException if the run cannot be read.
+     */
+    private static String readString(DataInputStream input) throws IOException {
+        int length = input.readInt();
+        if (length < 0)
+            return null;
+        byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A sorted run being read while merging.
+     */
+    private interface Run extends Closeable {
+        /**
+         * Reads the next row of the run.
+         *
+         * @return Row the row, or null when the run has ended.
+         * @throws IOException if the run cannot be read.
+         */
+        Row next() throws IOException;
+    }
+
+    /**
+     * The rows that were never spilled, read from memory.
+     */
+    private static final class BufferRun implements Run {
+        private final Iterator<Row> rows;
+
+        /**
+         * Constructor for the BufferRun class.
+         *
+         * @param rows List<Row> the sorted rows.
+         */
+        private BufferRun(List<Row> rows) {
+            this.rows = rows.iterator();
+        }
+
+        @Override
+        public Row next() {
+            return rows.hasNext() ? rows.next() : null;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * A run spilled to the temporary file, read from its own position in the file.
+     */
+    private static final class FileRun implements Run {
+        private final DataInputStream input;
+        private long left; // The number of rows of the run not read yet
+
+        /**
+         * Constructor for the FileRun class.
+         *
+         * @param file   Path the temporary file.
+         * @param offset long the offset of the run in the file.
+         * @param rows   long the number of rows of the run.
+         * @throws IOException if the file cannot be opened.
+         */
+        private FileRun(Path file, long offset, long rows) throws IOException {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+            channel.position(offset);
+            this.input = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), BUFFER_SIZE));
+            this.left = rows;
+        }
+
+        @Override
+        public Row next() throws IOException {
+            if (left == 0)
+                return null;
+            left--;
+            String key = readString(input);
+            long sequence = input.readLong();
+            String[] values = new String[input.readInt()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = readString(input);
+            }
+            return new Row(key, sequence, values);
+        }
+
+        @Override
+        public void close() throws IOException {
+            input.close();
+        }
+    }
+
+    /**
+     * Merges the sorted runs, handing out the row that comes first among the current rows of the runs.
+     */
+    static final class Merge implements Closeable {
+        private final List<Run> runs;
+        private final PriorityQueue<Map.Entry<Row, Run>> heads = new PriorityQueue<>(Map.Entry.<Row, Run>comparingByKey(ORDER)); // Contains the current row of each run that has not ended
+
+        /**
+         * Constructor for the Merge class, which reads the first row of every run.
+         *
+         * @param runs List<Run> the sorted runs.
+         * @throws IOException if a run cannot be read.
+         */
+        private Merge(List<Run> runs) throws IOException {
+            this.runs = runs;
+            for (Run run : runs) {
+                advance(run);
+            }
+        }
+
+        /**
+         * Returns the next row in the order of the key and the sequence number.
+         *
+         * @return Row the row, or null when all the rows have been read.
+         * @throws IOException if a run cannot be read.
+         */
+        Row next() throws IOException {
+            Map.Entry<Row, Run> head = heads.poll();
+            if (head == null)
+                return null;
+            advance(head.getValue());
+            return head.getKey();
+        }
+
+        /**
+         * Reads the next row of a run into the heads, unless the run has ended.
+         *
+         * @param run Run the run.
+         * @throws IOException if the run cannot be read.
+         */
+        private void advance(Run run) throws IOException {
+            Row row = run.next();
+            if (row != null)
+                heads.add(new AbstractMap.SimpleImmutableEntry<>(row, run));
+        }
+
+        /**
+         * Closes the runs.
+         *
+         * @throws IOException if a run cannot be closed.
+         */
+        @Override
+        public void close() throws IOException {
+            for (Run run : runs) {
+                run.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,438 @@
+package org.iish.dorpen;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The logging of a run, with levels, rate-limited progress lines and a quiet mode.
+ * The static methods write with the logger of the run, an engine that runs next to others has a Logger of its own.
+ * Lines are handed to a background thread that writes them to System.out, so the processing never waits on the console,
+ * and nothing is written for the lines below the level. Diagnostics carry their own context instead of walking the stack.
+ */
+final class Log {
+
+    /**
+     * The level of a line, the lines below the level set are left out.
+     */
+    enum Level {
+        DEBUG,
+        INFO,
+        WARN,
+        ERROR
+    }
+
+    private static final long PROGRESS_INTERVAL = TimeUnit.SECONDS.toNanos(2); // The time between two progress lines of the same task
+    private static final BlockingQueue<Object> lines = new LinkedBlockingQueue<>(100000); // Contains the lines to write, or the latches of flush
+    private static final Logger root = new Logger(Level.INFO, true); // The logger of the run, used by the static methods
+    private static Thread writer;
+
+    /**
+     * Constructor for the Log class, which only holds static methods.
+     */
+    private Log() {
+    }
+
+    /**
+     * Returns the logger of the run, which the static methods write with.
+     *
+     * @return Logger the logger of the run.
+     */
+    static Logger getRoot() {
+        return root;
+    }
+
+    /**
+     * Sets the level of the run, below which lines are left out.
+     *
+     * @param level Level the lowest level to write.
+     */
+    static void setLevel(Level level) {
+        root.setLevel(level);
+    }
+
+    /**
+     * Sets the quiet mode of the run, see Logger.setQuiet.
+     *
+     * @param quiet boolean which states whether to be quiet.
+     */
+    static void setQuiet(boolean quiet) {
+        root.setQuiet(quiet);
+    }
+
+    /**
+     * Returns a boolean which states whether the quiet mode of the run is set, in which no progress is shown.
+     *
+     * @return a boolean which states whether the quiet mode is set.
+     */
+    static boolean isQuiet() {
+        return root.isQuiet();
+    }
+
+    /**
+     * Checks whether lines of the level are written by the run, to skip building a line that would be left out.
+     *
+     * @param level Level the level to check.
+     * @return a boolean which states whether lines of the level are written.
+     */
+    static boolean isEnabled(Level level) {
+        return root.isEnabled(level);
+    }
+
+    /**
+     * Writes a diagnostic line, which is left out unless the level is DEBUG.
+     *
+     * @param line String the line to write.
+     */
+    static void debug(String line) {
+        root.debug(line);
+    }
+
+    /**
+     * Writes a line about the processing.
+     *
+     * @param line String the line to write.
+     */
+    static void info(String line) {
+        root.info(line);
+    }
+
+    /**
+     * Writes a warning, which is written in the quiet mode as well.
+     *
+     * @param line String the line to write.
+     */
+    static void warn(String line) {
+        root.warn(line);
+    }
+
+    /**
+     * Writes an error, which is always written.
+     *
+     * @param line String the line to write.
+     */
+    static void error(String line) {
+        root.error(line);
+    }
+
+    /**
+     * Hands the line to the writer, if the level is enabled for the run.
+     *
+     * @param level Level the level of the line.
+     * @param line  String the line to write.
+     */
+    static void write(Level level, String line) {
+        root.write(level, line);
+    }
+
+    /**
+     * Waits until all the lines handed to the writer have been written.
+     */
+    static void flush() {
+        if (writer == null)
+            return;
+        CountDownLatch written = new CountDownLatch(1);
+        enqueue(written);
+        try {
+            written.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Starts showing the progress of a task of the run.
+     *
+     * @param task  String the name of the task, E.G. Splitting pass 3.
+     * @param total long the number of records the task is going to process.
+     * @return Progress the progress, to which every record done is reported.
+     */
+    static Progress progress(String task, long total) {
+        return root.progress(task, total);
+    }
+
+    /**
+     * A level of its own along with whether progress is shown, E.G. for an engine that runs next to other engines
+     * and should not write its progress, without changing what the rest of the run writes.
+     * The lines of every logger are written by the same writer.
+     */
+    static final class Logger {
+        private volatile Level level;
+        private volatile boolean progressShown;
+        private Level levelBeforeQuiet; // The level to return to when the quiet mode is left
+        private List<String> heldLines = null; // Contains the lines held until they are released, null when the lines are written right away
+
+        /**
+         * Constructor for the Logger class.
+         *
+         * @param level         Level the lowest level to write.
+         * @param progressShown boolean which states whether the progress is shown.
+         */
+        Logger(Level level, boolean progressShown) {
+            this.level = level;
+            this.progressShown = progressShown;
+            this.levelBeforeQuiet = level;
+        }
+
+        /**
+         * Returns a logger that writes the warnings and errors of this logger, but no progress and no lines about the processing,
+         * E.G. for an engine of which the progress would be mixed up with that of the engines running next to it.
+         *
+         * @return Logger the quiet logger.
+         */
+        Logger quiet() {
+            Logger quiet = new Logger(level, progressShown);
+            quiet.setQuiet(true);
+            return quiet;
+        }
+
+        /**
+         * Returns a logger that holds the lines of the level of this logger until they are released, E.G. for a pass
+         * that may be done again, of which only the lines of the pass that counts are written.
+         *
+         * @return Logger the logger, which holds its lines.
+         */
+        Logger held() {
+            Logger held = new Logger(level, progressShown);
+            held.levelBeforeQuiet = levelBeforeQuiet;
+            held.heldLines = new ArrayList<>();
+            return held;
+        }
+
+        /**
+         * Writes the lines held so far and forgets them, see held.
+         */
+        synchronized void release() {
+            if (heldLines == null)
+                return;
+            for (String line : heldLines) {
+                enqueue(line);
+            }
+            heldLines.clear();
+        }
+
+        /**
+         * Sets the level, below which lines are left out. In the quiet mode no level below WARN is written until the quiet mode is left.
+         *
+         * @param level Level the lowest level to write.
+         */
+        synchronized void setLevel(Level level) {
+            levelBeforeQuiet = level;
+            this.level = progressShown || level.compareTo(Level.WARN) >= 0 ? level : Level.WARN;
+        }
+
+        /**
+         * Returns the level, below which lines are left out.
+         *
+         * @return Level the lowest level written.
+         */
+        Level getLevel() {
+            return level;
+        }
+
+        /**
+         * Sets the quiet mode, in which only warnings and errors are written and no progress is shown.
+         * Leaving the quiet mode returns to the level from before it.
+         *
+         * @param quiet boolean which states whether to be quiet.
+         */
+        synchronized void setQuiet(boolean quiet) {
+            if (quiet && progressShown) {
+                levelBeforeQuiet = level;
+                if (level.compareTo(Level.WARN) < 0)
+                    level = Level.WARN;
+                progressShown = false;
+            } else if (!quiet && !progressShown) {
+                level = levelBeforeQuiet;
+                progressShown = true;
+            }
+        }
+
+        /**
+         * Returns a boolean which states whether the quiet mode is set, in which no progress is shown.
+         *
+         * @return a boolean which states whether the quiet mode is set.
+         */
+        boolean isQuiet() {
+            return !progressShown;
+        }
+
+        /**
+         * Checks whether lines of the level are written, to skip building a line that would be left out.
+         *
+         * @param level Level the level to check.
+         * @return a boolean which states whether lines of the level are written.
+         */
+        boolean isEnabled(Level level) {
+            return level.compareTo(this.level) >= 0;
+        }
+
+        /**
+         * Writes a diagnostic line, which is left out unless the level is DEBUG.
+         *
+         * @param line String the line to write.
+         */
+        void debug(String line) {
+            write(Level.DEBUG, line);
+        }
+
+        /**
+         * Writes a line about the processing.
+         *
+         * @param line String the line to write.
+         */
+        void info(String line) {
+            write(Level.INFO, line);
+        }
+
+        /**
+         * Writes a warning, which is written in the quiet mode as well.
+         *
+         * @param line String the line to write.
+         */
+        void warn(String line) {
+            write(Level.WARN, line);
+        }
+
+        /**
+         * Writes an error, which is always written.
+         *
+         * @param line String the line to write.
+         */
+        void error(String line) {
+            write(Level.ERROR, line);
+        }
+
+        /**
+         * Hands the line to the writer, if the level is enabled.
+         *
+         * @param level Level the level of the line.
+         * @param line  String the line to write.
+         */
+        void write(Level level, String line) {
+            if (!isEnabled(level))
+                return;
+            String text = level == Level.INFO ? line : level + " " + line;
+            synchronized (this) {
+                if (heldLines != null) {
+                    heldLines.add(text);
+                    return;
+                }
+            }
+            enqueue(text);
+        }
+
+        /**
+         * Starts showing the progress of a task.
+         *
+         * @param task  String the name of the task, E.G. Splitting pass 3.
+         * @param total long the number of records the task is going to process.
+         * @return Progress the progress, to which every record done is reported.
+         */
+        Progress progress(String task, long total) {
+            return new Progress(this, task, total);
+        }
+    }
+
+    /**
+     * The progress of a task, of which a line with the records done and the estimated time left is written at most every two seconds.
+     */
+    static final class Progress {
+        private final Logger logger;
+        private final String task;
+        private final long total;
+        private final long start = System.nanoTime();
+        private long done = 0;
+        private long lastLine = start;
+
+        /**
+         * Constructor for the Progress class.
+         *
+         * @param logger Logger the logger that shows the progress, unless it is quiet.
+         * @param task   String the name of the task.
+         * @param total  long the number of records the task is going to process.
+         */
+        private Progress(Logger logger, String task, long total) {
+            this.logger = logger;
+            this.task = task;
+            this.total = total;
+        }
+
+        /**
+         * Reports a record done, writing a progress line if the last one is long enough ago.
+         */
+        void step() {
+            done++;
+            if (logger.isQuiet())
+                return;
+            long now = System.nanoTime();
+            if (now - lastLine >= PROGRESS_INTERVAL) {
+                lastLine = now;
+                long left = done < total ? (now - start) / done * (total - done) : 0;
+                enqueue(String.format(Locale.ROOT, "%s: %d of %d records, %s left", task, done, total, formatDuration(left)));
+            }
+        }
+
+        /**
+         * Writes the line of the finished task, with the records done and the time it took.
+         */
+        void finish() {
+            if (!logger.isQuiet())
+                enqueue(String.format(Locale.ROOT, "%s: %d records done in %s", task, done, formatDuration(System.nanoTime() - start)));
+        }
+    }
+
+    /**
+     * Formats a duration as hours, minutes and seconds.
+     *
+     * @param nanos long the duration in nanoseconds.
+     * @return String the duration, E.G. 01:02:03.
+     */
+    private static String formatDuration(long nanos) {
+        long seconds = TimeUnit.NANOSECONDS.toSeconds(nanos);
+        return String.format(Locale.ROOT, "%02d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60);
+    }
+
+    /**
+     * Hands a line or a latch to the writer, starting the writer the first time.
+     *
+     * @param line Object the line to write, or the latch to count down once the lines before it have been written.
+     */
+    private static void enqueue(Object line) {
+        synchronized (Log.class) {
+            if (writer == null) {
+                writer = new Thread(Log::writeLines, "log-writer");
+                writer.setDaemon(true);
+                writer.start();
+            }
+        }
+        try {
+            lines.put(line);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writes the lines handed to the writer to System.out, as it is at the moment of writing.
+     */
+    private static void writeLines() {
+        try {
+            while (true) {
+                Object line = lines.take();
+                if (line instanceof CountDownLatch) {
+                    System.out.flush();
+                    ((CountDownLatch) line).countDown();
+                } else {
+                    System.out.println(line);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
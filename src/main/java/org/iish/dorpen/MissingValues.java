@@ -0,0 +1,133 @@
+package org.iish.dorpen;
+
+import java.math.BigDecimal;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Keeps track of the missing values encountered while processing the records.
+ * A missing number of houses, square kilometres or year cell is represented by null and is checked explicitly,
+ * so the processing never has to rely on a NullPointerException or ArithmeticException to find out a value is absent.
+ * The counting is synchronized, as the records and the square kilometres are loaded at the same time.
+ */
+final class MissingValues {
+
+    /**
+     * The kind of value that is missing.
+     */
+    enum Kind {
+        HOUSES,
+        KM2,
+        YEAR_CELL,
+        CODE_IDS // A Link code in the hierarchy for which no record ids are known
+    }
+
+    /**
+     * The phase of the processing in which the missing value has been encountered.
+     */
+    enum Phase {
+        LOAD,
+        UPDATE_LINKS,
+        PRE_SPLIT,
+        SPLIT,
+        KM2_SPLIT,
+        EXPORT
+    }
+
+    private final Map<Phase, long[]> counters = new EnumMap<>(Phase.class);
+    private Phase phase = Phase.LOAD;
+
+    /**
+     * Sets the phase to which the missing values encountered from now on are counted.
+     *
+     * @param phase Phase the phase that is being processed.
+     */
+    void enterPhase(Phase phase) {
+        this.phase = phase;
+    }
+
+    /**
+     * Checks whether the value is missing, counting it for the current phase if it is.
+     *
+     * @param value BigDecimal the value to check.
+     * @param kind  Kind the kind of value that is checked.
+     * @return a boolean which states whether the value is missing.
+     */
+    boolean isMissing(BigDecimal value, Kind kind) {
+        if (value == null) {
+            count(kind);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Counts a missing value of the given kind for the current phase.
+     *
+     * @param kind Kind the kind of value that is missing.
+     */
+    synchronized void count(Kind kind) {
+        counters.computeIfAbsent(phase, p -> new long[Kind.values().length])[kind.ordinal()]++;
+    }
+
+    /**
+     * Adds the missing values counted by another counter, E.G. by a pass of a partition once it is known to count, see PartitionLockstep.
+     *
+     * @param other MissingValues the other counter.
+     */
+    void add(MissingValues other) {
+        for (Phase p : Phase.values()) {
+            for (Kind kind : Kind.values()) {
+                long count = other.getCount(p, kind);
+                if (count > 0)
+                    add(p, kind, count);
+            }
+        }
+    }
+
+    /**
+     * Adds a number of missing values of the given kind to the given phase.
+     *
+     * @param phase Phase the phase.
+     * @param kind  Kind the kind of value that is missing.
+     * @param count long the number of missing values.
+     */
+    private synchronized void add(Phase phase, Kind kind, long count) {
+        counters.computeIfAbsent(phase, p -> new long[Kind.values().length])[kind.ordinal()] += count;
+    }
+
+    /**
+     * Forgets the missing values counted so far, E.G. those of a partition loaded again, which have been counted when it was loaded first.
+     */
+    synchronized void clear() {
+        counters.clear();
+    }
+
+    /**
+     * Returns the number of missing values of the given kind that have been encountered in the given phase.
+     *
+     * @param phase Phase the phase to get the count for.
+     * @param kind  Kind the kind of value to get the count for.
+     * @return long the number of missing values.
+     */
+    synchronized long getCount(Phase phase, Kind kind) {
+        long[] counts = counters.get(phase);
+        return counts != null ? counts[kind.ordinal()] : 0;
+    }
+
+    /**
+     * Logs the number of missing values per phase, leaving out the phases without missing values.
+     */
+    synchronized void print() {
+        for (Phase p : Phase.values()) {
+            long[] counts = counters.get(p);
+            if (counts == null)
+                continue;
+            StringBuilder line = new StringBuilder("Missing values during " + p + ":");
+            for (Kind kind : Kind.values()) {
+                line.append(' ').append(kind).append('=').append(counts[kind.ordinal()]);
+            }
+            Log.info(line.toString());
+        }
+    }
+}
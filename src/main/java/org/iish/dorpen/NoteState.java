@@ -0,0 +1,60 @@
+package org.iish.dorpen;
+
+/**
+ * An enum used to represent the state of the record which is saved in the notes export.
+ */
+public enum NoteState {
+    SOURCE,
+    YEAR,
+    YEAR_SOURCE,
+    YEAR_SURFACE,
+    SURFACE,
+    COMBINATION,
+    FROZEN_PASSES,
+    FROZEN_TIME,
+    FROZEN_CYCLE,
+    ROLL_UP,
+    ROLL_UP_PARTIAL;
+
+    /**
+     * Returns the state of the record as a String value. This represents the way the amount of houses is accumulated.
+     * @param year Integer
+     * @return String
+     */
+    public String getState(int year) {
+        switch (this) {
+            case SOURCE:
+                return "Bron";
+            case YEAR:
+                return "Jaar " + Integer.toString(year);
+            case YEAR_SOURCE:
+                return "Jaar " + Integer.toString(year) + ": Bron";
+            case YEAR_SURFACE:
+                return "Jaar " + Integer.toString(year) + ": Oppervlakte";
+            case SURFACE:
+                return "Oppervlakte";
+            case COMBINATION:
+                return Integer.toString(year) + " + Oppervlakte";
+            case FROZEN_PASSES:
+                return "Niet gesplitst: maximum aantal rondes";
+            case FROZEN_TIME:
+                return "Niet gesplitst: maximale tijd";
+            case FROZEN_CYCLE:
+                return "Niet gesplitst: herhaling";
+            case ROLL_UP:
+                return "Totaal";
+            case ROLL_UP_PARTIAL:
+                return "Totaal: onvolledig";
+            default:
+                return "Onbekend";
+        }
+    }
+
+    /**
+     * Checks whether the state is given to the records of a village complex whose splitting has been stopped.
+     * @return a boolean which states whether the village complex is frozen.
+     */
+    public boolean isFrozen() {
+        return this == FROZEN_PASSES || this == FROZEN_TIME || this == FROZEN_CYCLE;
+    }
+}
@@ -0,0 +1,754 @@
+package org.iish.dorpen;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The export in long format, a row per Link code and year, as a Parquet file for analysis in pandas, R or Spark.
+ * The columns are code, year, houses, note and year_used_to_calculate. The codes and the notes are dictionary encoded,
+ * and the houses and the year used to calculate are empty where the export has N/A, instead of holding a string.
+ * The file is written by this class itself, in version 1 data pages compressed with GZIP and a Thrift footer, so no Hadoop
+ * libraries are needed. Rows are written in row groups, so only the rows of one row group are kept in memory.
+ */
+final class ParquetExport implements Closeable {
+
+    static final int ROW_GROUP_SIZE = 100000; // The number of rows per row group
+
+    private static final byte[] MAGIC = "PAR1".getBytes(StandardCharsets.US_ASCII);
+    private static final int TYPE_INT32 = 1;
+    private static final int TYPE_DOUBLE = 5;
+    private static final int TYPE_BYTE_ARRAY = 6;
+    private static final int ENCODING_PLAIN = 0;
+    private static final int ENCODING_PLAIN_DICTIONARY = 2;
+    private static final int ENCODING_RLE = 3;
+    private static final int PAGE_DATA = 0;
+    private static final int PAGE_DICTIONARY = 2;
+    private static final int CODEC_GZIP = 2;
+    private static final int CONVERTED_UTF8 = 0;
+    private static final int MAX_GROUPS = 63; // The number of groups of eight bit packed values per run, as other writers limit it to
+
+    private final String path;
+    private final OutputStream out;
+    private long position = 0; // The number of bytes written to the file
+    private final DictionaryColumn code = new DictionaryColumn("code", false);
+    private final Int32Column year = new Int32Column("year", false);
+    private final DoubleColumn houses = new DoubleColumn("houses");
+    private final DictionaryColumn note = new DictionaryColumn("note", true);
+    private final Int32Column yearUsedToCalculate = new Int32Column("year_used_to_calculate", true);
+    private final List<Column> columns = Arrays.asList(code, year, houses, note, yearUsedToCalculate);
+    private final List<RowGroup> rowGroups = new ArrayList<>(); // Contains the row groups written so far, for the footer
+    private int rows = 0; // The number of rows of the current row group
+    private long totalRows = 0;
+    private boolean finished = false;
+
+    /**
+     * Constructor for the ParquetExport class, which starts the file.
+     *
+     * @param path String the path of the Parquet file.
+     * @throws IOException if the file cannot be written.
+     */
+    ParquetExport(String path) throws IOException {
+        this.path = path;
+        this.out = new BufferedOutputStream(new FileOutputStream(path));
+        write(MAGIC);
+    }
+
+    /**
+     * Adds the number of houses of a Link code in a year.
+     *
+     * @param linkCode            String the Link code.
+     * @param rowYear             int the year.
+     * @param numberOfHouses      BigDecimal the number of houses, or null when it is N/A.
+     * @param noteState           NoteState the way the number of houses is calculated, or null when there is none.
+     * @param yearUsedToCalculate int the year of which the number of houses is used to calculate it, or 0 when there is none.
+     * @throws IOException if the file cannot be written.
+     */
+    void addRow(String linkCode, int rowYear, BigDecimal numberOfHouses, NoteState noteState, int yearUsedToCalculate) throws IOException {
+        code.add(linkCode);
+        year.add(rowYear);
+        houses.add(numberOfHouses);
+        note.add(noteState != null ? noteState.name() : null);
+        this.yearUsedToCalculate.add(yearUsedToCalculate != 0 ? yearUsedToCalculate : null);
+        rows++;
+        if (rows == ROW_GROUP_SIZE)
+            writeRowGroup();
+    }
+
+    /**
+     * Writes the last row group and the footer, which completes the file.
+     *
+     * @throws IOException if the file cannot be written.
+     */
+    void finish() throws IOException {
+        if (rows > 0)
+            writeRowGroup();
+        byte[] footer = getFooter();
+        write(footer);
+        write(new byte[]{(byte) footer.length, (byte) (footer.length >>> 8), (byte) (footer.length >>> 16), (byte) (footer.length >>> 24)});
+        write(MAGIC);
+        out.flush();
+        finished = true;
+    }
+
+    /**
+     * Closes the file, removing it if it has not been finished, as it would not be readable.
+     *
+     * @throws IOException if the file cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        out.close();
+        if (!finished)
+            Files.deleteIfExists(Paths.get(path));
+    }
+
+    /**
+     * Writes the rows added since the last row group as a row group, a column chunk per column.
+     *
+     * @throws IOException if the file cannot be written.
+     */
+    private void writeRowGroup() throws IOException {
+        RowGroup rowGroup = new RowGroup(rows);
+        for (Column column : columns) {
+            ColumnChunk chunk = new ColumnChunk(column);
+            chunk.offset = position;
+            byte[] dictionary = column.getDictionaryPage();
+            if (dictionary != null) {
+                chunk.dictionaryOffset = position;
+                writePage(chunk, PAGE_DICTIONARY, dictionary, column.getDictionarySize(), ENCODING_PLAIN_DICTIONARY);
+            }
+            chunk.dataOffset = position;
+            writePage(chunk, PAGE_DATA, column.getDataPage(), rows, column.getEncoding());
+            rowGroup.chunks.add(chunk);
+            rowGroup.bytes += chunk.uncompressedSize;
+            column.clear();
+        }
+        rowGroups.add(rowGroup);
+        totalRows += rows;
+        rows = 0;
+    }
+
+    /**
+     * Compresses a page and writes it with its header.
+     *
+     * @param chunk     ColumnChunk the column chunk the page belongs to, of which the sizes are counted.
+     * @param pageType  int the type of the page, data or dictionary.
+     * @param page      byte[] the page as it is before compression.
+     * @param numValues int the number of values in the page.
+     * @param encoding  int the encoding of the values.
+     * @throws IOException if the file cannot be written.
+     */
+    private void writePage(ColumnChunk chunk, int pageType, byte[] page, int numValues, int encoding) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(page);
+        }
+        ThriftWriter header = new ThriftWriter();
+        header.i32(1, pageType);
+        header.i32(2, page.length);
+        header.i32(3, compressed.size());
+        if (pageType == PAGE_DICTIONARY) {
+            header.beginStruct(7);
+            header.i32(1, numValues);
+            header.i32(2, encoding);
+        } else {
+            header.beginStruct(5);
+            header.i32(1, numValues);
+            header.i32(2, encoding);
+            header.i32(3, ENCODING_RLE);
+            header.i32(4, ENCODING_RLE);
+        }
+        header.endStruct();
+        header.stop();
+        byte[] headerBytes = header.toByteArray();
+        write(headerBytes);
+        write(compressed.toByteArray());
+        chunk.uncompressedSize += headerBytes.length + page.length;
+        chunk.compressedSize += headerBytes.length + compressed.size();
+    }
+
+    /**
+     * Returns the footer of the file: the schema, the row groups and the offsets of their column chunks.
+     *
+     * @return byte[] the footer in the Thrift compact protocol.
+     */
+    private byte[] getFooter() {
+        ThriftWriter footer = new ThriftWriter();
+        footer.i32(1, 1);
+        footer.beginList(2, ThriftWriter.STRUCT, columns.size() + 1);
+        footer.beginElement();
+        footer.string(4, "schema");
+        footer.i32(5, columns.size());
+        footer.endStruct();
+        for (Column column : columns) {
+            footer.beginElement();
+            footer.i32(1, column.type);
+            footer.i32(3, column.optional ? 1 : 0);
+            footer.string(4, column.name);
+            if (column.type == TYPE_BYTE_ARRAY)
+                footer.i32(6, CONVERTED_UTF8);
+            footer.endStruct();
+        }
+        footer.i64(3, totalRows);
+        footer.beginList(4, ThriftWriter.STRUCT, rowGroups.size());
+        for (RowGroup rowGroup : rowGroups) {
+            footer.beginElement();
+            footer.beginList(1, ThriftWriter.STRUCT, rowGroup.chunks.size());
+            for (ColumnChunk chunk : rowGroup.chunks) {
+                footer.beginElement();
+                footer.i64(2, chunk.offset);
+                footer.beginStruct(3);
+                footer.i32(1, chunk.column.type);
+                footer.beginList(2, ThriftWriter.I32, 2);
+                footer.elementI32(chunk.column.getEncoding());
+                footer.elementI32(ENCODING_RLE);
+                footer.beginList(3, ThriftWriter.BINARY, 1);
+                footer.elementString(chunk.column.name);
+                footer.i32(4, CODEC_GZIP);
+                footer.i64(5, rowGroup.rows);
+                footer.i64(6, chunk.uncompressedSize);
+                footer.i64(7, chunk.compressedSize);
+                footer.i64(9, chunk.dataOffset);
+                if (chunk.dictionaryOffset >= 0)
+                    footer.i64(11, chunk.dictionaryOffset);
+                footer.endStruct();
+                footer.endStruct();
+            }
+            footer.i64(2, rowGroup.bytes);
+            footer.i64(3, rowGroup.rows);
+            footer.endStruct();
+        }
+        footer.string(6, "EMHCD");
+        footer.stop();
+        return footer.toByteArray();
+    }
+
+    /**
+     * Writes bytes to the file, counting them for the offsets of the pages.
+     *
+     * @param bytes byte[] the bytes.
+     * @throws IOException if the file cannot be written.
+     */
+    private void write(byte[] bytes) throws IOException {
+        out.write(bytes);
+        position += bytes.length;
+    }
+
+    /**
+     * A row group written to the file.
+     */
+    private static final class RowGroup {
+        final int rows;
+        long bytes;
+        final List<ColumnChunk> chunks = new ArrayList<>();
+
+        /**
+         * Constructor for the RowGroup class.
+         *
+         * @param rows int the number of rows.
+         */
+        private RowGroup(int rows) {
+            this.rows = rows;
+        }
+    }
+
+    /**
+     * The pages of a column in a row group, with their offsets and sizes.
+     */
+    private static final class ColumnChunk {
+        final Column column;
+        long offset;
+        long dictionaryOffset = -1;
+        long dataOffset;
+        long uncompressedSize;
+        long compressedSize;
+
+        /**
+         * Constructor for the ColumnChunk class.
+         *
+         * @param column Column the column.
+         */
+        private ColumnChunk(Column column) {
+            this.column = column;
+        }
+    }
+
+    /**
+     * A column of which the values of the current row group are kept until it is written.
+     */
+    private abstract static class Column {
+        final String name;
+        final int type;
+        final boolean optional;
+        final int[] definitionLevels = new int[ROW_GROUP_SIZE]; // Contains 1 for a value and 0 for an empty value per row, if optional
+        int size = 0;
+
+        /**
+         * Constructor for the Column class.
+         *
+         * @param name     String the name of the column.
+         * @param type     int the physical type of the values.
+         * @param optional boolean which states whether the values can be empty.
+         */
+        Column(String name, int type, boolean optional) {
+            this.name = name;
+            this.type = type;
+            this.optional = optional;
+        }
+
+        /**
+         * Counts a row, of which the value is empty or not.
+         *
+         * @param present boolean which states whether the row has a value.
+         */
+        void addLevel(boolean present) {
+            if (!present && !optional)
+                throw new IllegalArgumentException("The column " + name + " cannot be empty");
+            definitionLevels[size++] = present ? 1 : 0;
+        }
+
+        /**
+         * Returns the data page, the definition levels of an optional column followed by the values.
+         *
+         * @return byte[] the data page before compression.
+         * @throws IOException if the page cannot be encoded.
+         */
+        byte[] getDataPage() throws IOException {
+            ByteArrayOutputStream page = new ByteArrayOutputStream();
+            if (optional) {
+                ByteArrayOutputStream levels = new ByteArrayOutputStream();
+                writeHybrid(levels, definitionLevels, size, 1);
+                writeInt(page, levels.size());
+                levels.writeTo(page);
+            }
+            writeValues(page);
+            return page.toByteArray();
+        }
+
+        /**
+         * Writes the values that are not empty.
+         *
+         * @param page ByteArrayOutputStream the page to write to.
+         * @throws IOException if the values cannot be encoded.
+         */
+        abstract void writeValues(ByteArrayOutputStream page) throws IOException;
+
+        /**
+         * Returns the encoding of the values in the data page.
+         *
+         * @return int the encoding.
+         */
+        int getEncoding() {
+            return ENCODING_PLAIN;
+        }
+
+        /**
+         * Returns the dictionary page.
+         *
+         * @return byte[] the dictionary page before compression, or null when the column has no dictionary.
+         * @throws IOException if the page cannot be encoded.
+         */
+        byte[] getDictionaryPage() throws IOException {
+            return null;
+        }
+
+        /**
+         * Returns the number of values in the dictionary.
+         *
+         * @return int the number of values.
+         */
+        int getDictionarySize() {
+            return 0;
+        }
+
+        /**
+         * Removes the values of the row group written.
+         */
+        void clear() {
+            size = 0;
+        }
+    }
+
+    /**
+     * A column of strings, of which every different string is written once in the dictionary and the rows refer to it by its number.
+     */
+    private static final class DictionaryColumn extends Column {
+        private final Map<String, Integer> dictionary = new LinkedHashMap<>(); // Contains the number of each string in the dictionary
+        private final int[] indices = new int[ROW_GROUP_SIZE];
+        private int values = 0;
+
+        /**
+         * Constructor for the DictionaryColumn class.
+         *
+         * @param name     String the name of the column.
+         * @param optional boolean which states whether the values can be empty.
+         */
+        private DictionaryColumn(String name, boolean optional) {
+            super(name, TYPE_BYTE_ARRAY, optional);
+        }
+
+        /**
+         * Adds the value of a row.
+         *
+         * @param value String the value, or null when it is empty.
+         */
+        void add(String value) {
+            addLevel(value != null);
+            if (value != null)
+                indices[values++] = dictionary.computeIfAbsent(value, v -> dictionary.size());
+        }
+
+        @Override
+        void writeValues(ByteArrayOutputStream page) throws IOException {
+            int bitWidth = dictionary.size() > 1 ? 32 - Integer.numberOfLeadingZeros(dictionary.size() - 1) : 1;
+            page.write(bitWidth);
+            writeHybrid(page, indices, values, bitWidth);
+        }
+
+        @Override
+        int getEncoding() {
+            return ENCODING_PLAIN_DICTIONARY;
+        }
+
+        @Override
+        byte[] getDictionaryPage() throws IOException {
+            ByteArrayOutputStream page = new ByteArrayOutputStream();
+            for (String value : dictionary.keySet()) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                writeInt(page, bytes.length);
+                page.write(bytes);
+            }
+            return page.toByteArray();
+        }
+
+        @Override
+        int getDictionarySize() {
+            return dictionary.size();
+        }
+
+        @Override
+        void clear() {
+            super.clear();
+            dictionary.clear();
+            values = 0;
+        }
+    }
+
+    /**
+     * A column of whole numbers.
+     */
+    private static final class Int32Column extends Column {
+        private final int[] numbers = new int[ROW_GROUP_SIZE];
+        private int values = 0;
+
+        /**
+         * Constructor for the Int32Column class.
+         *
+         * @param name     String the name of the column.
+         * @param optional boolean which states whether the values can be empty.
+         */
+        private Int32Column(String name, boolean optional) {
+            super(name, TYPE_INT32, optional);
+        }
+
+        /**
+         * Adds the value of a row.
+         *
+         * @param value Integer the value, or null when it is empty.
+         */
+        void add(Integer value) {
+            addLevel(value != null);
+            if (value != null)
+                numbers[values++] = value;
+        }
+
+        @Override
+        void writeValues(ByteArrayOutputStream page) {
+            for (int i = 0; i < values; i++) {
+                writeInt(page, numbers[i]);
+            }
+        }
+
+        @Override
+        void clear() {
+            super.clear();
+            values = 0;
+        }
+    }
+
+    /**
+     * A column of numbers with decimals, which can be empty.
+     */
+    private static final class DoubleColumn extends Column {
+        private final double[] numbers = new double[ROW_GROUP_SIZE];
+        private int values = 0;
+
+        /**
+         * Constructor for the DoubleColumn class.
+         *
+         * @param name String the name of the column.
+         */
+        private DoubleColumn(String name) {
+            super(name, TYPE_DOUBLE, true);
+        }
+
+        /**
+         * Adds the value of a row.
+         *
+         * @param value BigDecimal the value, or null when it is empty.
+         */
+        void add(BigDecimal value) {
+            addLevel(value != null);
+            if (value != null)
+                numbers[values++] = value.doubleValue();
+        }
+
+        @Override
+        void writeValues(ByteArrayOutputStream page) {
+            for (int i = 0; i < values; i++) {
+                long bits = Double.doubleToLongBits(numbers[i]);
+                writeInt(page, (int) bits);
+                writeInt(page, (int) (bits >>> 32));
+            }
+        }
+
+        @Override
+        void clear() {
+            super.clear();
+            values = 0;
+        }
+    }
+
+    /**
+     * Writes a number as four bytes, the least significant byte first.
+     *
+     * @param out   ByteArrayOutputStream the output to write to.
+     * @param value int the number.
+     */
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        out.write(value);
+        out.write(value >>> 8);
+        out.write(value >>> 16);
+        out.write(value >>> 24);
+    }
+
+    /**
+     * Writes a number in as few bytes as it needs, seven bits per byte.
+     *
+     * @param out   ByteArrayOutputStream the output to write to.
+     * @param value long the number, taken as unsigned.
+     */
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    /**
+     * Writes numbers in the hybrid of run length encoding and bit packing of Parquet: a value repeated at least eight times
+     * is written once with the number of repeats, the other values are packed in groups of eight into bitWidth bits each.
+     *
+     * @param out      ByteArrayOutputStream the output to write to.
+     * @param numbers  int[] the numbers.
+     * @param count    int the number of numbers to write.
+     * @param bitWidth int the number of bits of the largest number.
+     */
+    private static void writeHybrid(ByteArrayOutputStream out, int[] numbers, int count, int bitWidth) {
+        int i = 0;
+        while (i < count) {
+            int repeats = getRepeats(numbers, count, i);
+            if (repeats >= 8) {
+                writeVarint(out, (long) repeats << 1);
+                for (int b = 0; b < bitWidth; b += 8) {
+                    out.write(numbers[i] >>> b);
+                }
+                i += repeats;
+                continue;
+            }
+            int start = i;
+            int groups = 0;
+            do {
+                i += 8;
+                groups++;
+            } while (i < count && groups < MAX_GROUPS && getRepeats(numbers, count, i) < 8);
+            writeVarint(out, (long) groups << 1 | 1);
+            long bits = 0;
+            int bitCount = 0;
+            for (int j = start; j < start + groups * 8; j++) {
+                bits |= (long) (j < count ? numbers[j] : 0) << bitCount;
+                bitCount += bitWidth;
+                while (bitCount >= 8) {
+                    out.write((int) bits);
+                    bits >>>= 8;
+                    bitCount -= 8;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of times the number at a position is repeated from there on.
+     *
+     * @param numbers int[] the numbers.
+     * @param count   int the number of numbers.
+     * @param start   int the position.
+     * @return int the number of times, at least 1.
+     */
+    private static int getRepeats(int[] numbers, int count, int start) {
+        int end = start + 1;
+        while (end < count && numbers[end] == numbers[start]) {
+            end++;
+        }
+        return end - start;
+    }
+
+    /**
+     * Writes Thrift structures in the compact protocol, as the headers of the pages and the footer of Parquet are.
+     */
+    private static final class ThriftWriter {
+        static final int I32 = 5;
+        static final int I64 = 6;
+        static final int BINARY = 8;
+        static final int LIST = 9;
+        static final int STRUCT = 12;
+
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private final Deque<Integer> enclosingFields = new ArrayDeque<>(); // Contains the last field of each structure around the current one
+        private int lastField = 0;
+
+        /**
+         * Writes the header of a field, by the difference with the last field if it is small.
+         *
+         * @param field int the number of the field.
+         * @param type  int the type of the field.
+         */
+        private void fieldHeader(int field, int type) {
+            if (field > lastField && field - lastField <= 15) {
+                out.write((field - lastField) << 4 | type);
+            } else {
+                out.write(type);
+                writeVarint(out, (field << 1) ^ (field >> 31));
+            }
+            lastField = field;
+        }
+
+        /**
+         * Writes a field with a 32 bit number.
+         *
+         * @param field int the number of the field.
+         * @param value int the number.
+         */
+        void i32(int field, int value) {
+            fieldHeader(field, I32);
+            writeVarint(out, ((value << 1) ^ (value >> 31)) & 0xFFFFFFFFL);
+        }
+
+        /**
+         * Writes a field with a 64 bit number.
+         *
+         * @param field int the number of the field.
+         * @param value long the number.
+         */
+        void i64(int field, long value) {
+            fieldHeader(field, I64);
+            writeVarint(out, (value << 1) ^ (value >> 63));
+        }
+
+        /**
+         * Writes a field with a string.
+         *
+         * @param field int the number of the field.
+         * @param value String the string.
+         */
+        void string(int field, String value) {
+            fieldHeader(field, BINARY);
+            elementString(value);
+        }
+
+        /**
+         * Starts a field with a structure, of which the fields are written until endStruct.
+         *
+         * @param field int the number of the field.
+         */
+        void beginStruct(int field) {
+            fieldHeader(field, STRUCT);
+            beginElement();
+        }
+
+        /**
+         * Starts a structure that is an element of a list.
+         */
+        void beginElement() {
+            enclosingFields.push(lastField);
+            lastField = 0;
+        }
+
+        /**
+         * Ends the current structure.
+         */
+        void endStruct() {
+            stop();
+            lastField = enclosingFields.pop();
+        }
+
+        /**
+         * Starts a field with a list, of which the elements are written next.
+         *
+         * @param field       int the number of the field.
+         * @param elementType int the type of the elements.
+         * @param size        int the number of elements.
+         */
+        void beginList(int field, int elementType, int size) {
+            fieldHeader(field, LIST);
+            if (size < 15) {
+                out.write(size << 4 | elementType);
+            } else {
+                out.write(0xF0 | elementType);
+                writeVarint(out, size);
+            }
+        }
+
+        /**
+         * Writes a 32 bit number that is an element of a list.
+         *
+         * @param value int the number.
+         */
+        void elementI32(int value) {
+            writeVarint(out, ((value << 1) ^ (value >> 31)) & 0xFFFFFFFFL);
+        }
+
+        /**
+         * Writes a string that is an element of a list.
+         *
+         * @param value String the string.
+         */
+        void elementString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(out, bytes.length);
+            out.write(bytes, 0, bytes.length);
+        }
+
+        /**
+         * Ends the fields of the outermost structure.
+         */
+        void stop() {
+            out.write(0);
+        }
+
+        /**
+         * Returns the bytes written.
+         *
+         * @return byte[] the bytes.
+         */
+        byte[] toByteArray() {
+            return out.toByteArray();
+        }
+    }
+}
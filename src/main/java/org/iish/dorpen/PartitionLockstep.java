@@ -0,0 +1,469 @@
+package org.iish.dorpen;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Splits the partitions of a partitioned run pass by pass in lockstep, see RootCodePartitions, so that every pass ends with the same records
+ * as the pass of a run of all the raw data, while only one partition is in memory at a time. Between the passes every partition is spilled
+ * to a file, see Disaggregation.spill, along with the file it was in before the pass, and the square kilometres of the partition are kept in a file of their own.
+ * <p>
+ * A pass of all the raw data depends on the partitions in three ways, see Disaggregation.splitRecords: the alternative splitting stops
+ * at the first plan that resets it and the pass ends at the first plan that ends it, in the order of the ids of the records of all the partitions,
+ * and the records created are numbered in the order of planning. So the pass is settled in rounds: every partition is split with the schedule
+ * known so far, see SplitSchedule, after which the first plan that resets or ends the pass over all the partitions is added to the schedule.
+ * A partition that considered a record after it is split again from the file of before the pass, until a round adds nothing,
+ * which takes at most three rounds as a pass resets and ends once. The lines and missing values of the pass of a partition only count once
+ * it is settled. The records created are then numbered after those of all the plans for records with a smaller id, and the number of records
+ * with multiple links of all the partitions decides how the splitting goes on, as in a run of all the raw data.
+ * <p>
+ * The shards of a sharded run each split the partitions of their own, and exchange the outcome of every round and the plans of every pass
+ * through the directory they share, see ShardExchange, so they go through the same rounds and passes.
+ */
+final class PartitionLockstep implements Closeable {
+
+    private static final long RUN_BYTES = Math.min(32L << 20, Runtime.getRuntime().maxMemory() / 8); // The bytes the plans of a sort may take in memory before they are spilled, at most an eighth of the heap
+
+    /**
+     * The last pass a partition has been split with in the pass being settled.
+     */
+    private static final class PartitionPass {
+        final SplitSchedule schedule;
+        final Log.Logger log; // Holds the lines of the pass until it is settled
+        final MissingValues missingValues; // Counts the missing values of the pass until it is settled
+        final int created; // The number of records created
+
+        /**
+         * Constructor for the PartitionPass class.
+         *
+         * @param schedule      SplitSchedule the schedule the partition has been split with, along with what the pass ran into.
+         * @param log           Log.Logger the logger holding the lines of the pass.
+         * @param missingValues MissingValues the missing values of the pass.
+         * @param created       int the number of records created.
+         */
+        PartitionPass(SplitSchedule schedule, Log.Logger log, MissingValues missingValues, int created) {
+            this.schedule = schedule;
+            this.log = log;
+            this.missingValues = missingValues;
+            this.created = created;
+        }
+    }
+
+    private final Path directory; // The temporary directory of the files of the partitions
+    private final ShardExchange exchange;
+    private final int shard;
+    private final Set<Integer> years;
+    private final MissingValues missingValues;
+    private final PhaseMetrics metrics;
+    private final Log.Logger log;
+    private final int maxPasses;
+    private final long timeBudget;
+    private final List<String> partitions = new ArrayList<>(); // Contains the smallest root code of every partition of this shard, in the order they are split in
+    private final List<PartitionPass> partitionPasses = new ArrayList<>(); // Contains the last pass of every partition in the pass being settled
+    private int recordsWithMultipleLinks = 0; // The number of records with multiple links of this shard until the splitting starts, then of all the partitions
+    private int nextRecordId;
+    private int pass = 0;
+    private boolean triedWithNumberOfHomes = false;
+    private boolean alternativeSplitting = false;
+    private boolean linksChanged = false; // States whether the last pass changed the number of records with multiple links
+    private ExternalSort numbering = null; // Contains the number of records and the first id of every plan of the last pass of this shard, by partition
+    private ExternalSort.Merge numbered = null;
+    private ExternalSort.Row nextNumbered = null;
+
+    /**
+     * Constructor for the PartitionLockstep class.
+     *
+     * @param exchangeDirectory Path the directory shared by the shards, null when the run is not sharded.
+     * @param shard             int the number of the shard of this run, starting at 1.
+     * @param shards            int the number of shards.
+     * @param years             Set<Integer> the years of all the raw data.
+     * @param nextRecordId      int the id of the first record created by the splitting.
+     * @param missingValues     MissingValues the counter of the missing values of all the partitions.
+     * @param metrics           PhaseMetrics the measurements of the run, of which the passes are measured.
+     * @param log               Log.Logger the logger of the partitions.
+     * @param maxPasses         int the number of passes a village complex may be considered in.
+     * @param timeBudget        long the time in nanoseconds the splitting of a village complex may take.
+     * @throws IOException if the temporary directory cannot be created, or the directory of the shards holds files of an earlier run.
+     */
+    PartitionLockstep(Path exchangeDirectory, int shard, int shards, Set<Integer> years, int nextRecordId, MissingValues missingValues,
+                      PhaseMetrics metrics, Log.Logger log, int maxPasses, long timeBudget) throws IOException {
+        this.directory = Files.createTempDirectory("emhcd-partitions");
+        this.exchange = new ShardExchange(exchangeDirectory != null ? exchangeDirectory : directory, shard, shards);
+        this.shard = shard;
+        this.years = years;
+        this.nextRecordId = nextRecordId;
+        this.missingValues = missingValues;
+        this.metrics = metrics;
+        this.log = log;
+        this.maxPasses = maxPasses;
+        this.timeBudget = timeBudget;
+    }
+
+    /**
+     * Loads a partition, updates its links and pre splits its records, after which it is spilled until the splitting starts.
+     * The partitions are added in the order of their smallest root code.
+     *
+     * @param partition            String the smallest root code of the partition.
+     * @param rawFile              Path the raw data of the partition.
+     * @param squareKilometresFile Path the square kilometres of the partition, which are copied as they are loaded again every pass.
+     * @throws Exception if the data is not valid or a file cannot be read or written.
+     */
+    void add(String partition, Path rawFile, Path squareKilometresFile) throws Exception {
+        int number = partitions.size();
+        partitions.add(partition);
+        partitionPasses.add(null);
+        Files.copy(squareKilometresFile, getPath(number, "km2.csv"));
+        Disaggregation disaggregation = new Disaggregation(missingValues);
+        disaggregation.takePartOf(years, nextRecordId);
+        disaggregation.setConvergenceBudget(maxPasses, timeBudget);
+        disaggregation.setLogger(log);
+        missingValues.enterPhase(MissingValues.Phase.LOAD);
+        disaggregation.loadInputs(rawFile.toString(), squareKilometresFile.toString());
+        missingValues.enterPhase(MissingValues.Phase.UPDATE_LINKS);
+        disaggregation.updateLinks();
+        missingValues.enterPhase(MissingValues.Phase.PRE_SPLIT);
+        disaggregation.preSplitTheRecords();
+        disaggregation.startLockstep();
+        disaggregation.spill(getPath(number, "after.bin"), partition);
+        recordsWithMultipleLinks += disaggregation.getRecordsWithMultipleLinks();
+    }
+
+    /**
+     * Splits the partitions pass by pass, until no records with multiple links are left in any of them
+     * or a pass with square kilometres and the alternative splitting no longer lowers their number, as in a run of all the raw data.
+     *
+     * @throws IOException if a file cannot be read or written, or another shard has failed.
+     */
+    void split() throws IOException {
+        int total = 0;
+        for (String[] values : exchange.exchange("start", Integer.toString(recordsWithMultipleLinks))) {
+            total += Integer.parseInt(values[0]);
+        }
+        recordsWithMultipleLinks = total;
+        while (recordsWithMultipleLinks != 0) {
+            metrics.enterPass(pass + 1);
+            boolean alternativeSplittingReset = settlePass();
+
+            // Numbers the records created in all the partitions in the order of planning, then goes on as a run of all the raw data.
+            int remaining = 0;
+            int created = 0;
+            for (PartitionPass partitionPass : partitionPasses) {
+                partitionPass.log.release();
+                missingValues.add(partitionPass.missingValues);
+                remaining += partitionPass.schedule.recordsWithMultipleLinks;
+                created += partitionPass.created;
+            }
+            int[] totals = new int[2];
+            for (String[] values : exchange.exchange("pass " + (pass + 1) + " totals", Integer.toString(remaining), Integer.toString(created))) {
+                totals[0] += Integer.parseInt(values[0]);
+                totals[1] += Integer.parseInt(values[1]);
+            }
+            if (totals[1] > 0)
+                numberPlans();
+            pass++;
+            nextRecordId += totals[1];
+            if (alternativeSplittingReset)
+                alternativeSplitting = false;
+            if (!escalate(totals[0]))
+                break;
+        }
+        metrics.endPass();
+    }
+
+    /**
+     * Checks whether the number of records with multiple links of all the partitions has declined, as Disaggregation.splitRecords does.
+     *
+     * @param remaining int the number of records with multiple links of all the partitions after the pass, apart from those of the frozen village complexes.
+     * @return a boolean which states whether to go on splitting.
+     */
+    private boolean escalate(int remaining) {
+        linksChanged = remaining != recordsWithMultipleLinks;
+        if (!linksChanged) {
+            if (triedWithNumberOfHomes)
+                if (remaining > 0) {
+                    alternativeSplitting = true;
+                    triedWithNumberOfHomes = false;
+                } else
+                    return false;
+            else
+                triedWithNumberOfHomes = true;
+        }
+        recordsWithMultipleLinks = remaining;
+        return true;
+    }
+
+    /**
+     * Splits every partition once and settles the schedule of the pass over all the partitions in rounds, see SplitSchedule.
+     *
+     * @return a boolean which states whether a plan has reset the alternative splitting.
+     * @throws IOException if a file cannot be read or written, or another shard has failed.
+     */
+    private boolean settlePass() throws IOException {
+        String alternativeUntil = null;
+        String endAt = null;
+        List<Integer> toSplit = new ArrayList<>();
+        for (int i = 0; i < partitions.size(); i++) {
+            toSplit.add(i);
+        }
+        for (int round = 1; ; round++) {
+            for (int i : toSplit) {
+                Disaggregation disaggregation;
+                if (round == 1) {
+                    disaggregation = continuePartition(i);
+                    disaggregation.spill(getPath(i, "before.bin"), partitions.get(i));
+                } else {
+                    disaggregation = loadPartition(i, "before.bin");
+                }
+                splitPartition(i, disaggregation, new SplitSchedule(alternativeUntil, endAt));
+            }
+
+            // Finds the first plan over all the partitions that resets the alternative splitting or ends the pass and is not in the schedule yet.
+            String resetAt = null;
+            String endedAt = null;
+            for (PartitionPass partitionPass : partitionPasses) {
+                if (alternativeUntil == null)
+                    resetAt = min(resetAt, partitionPass.schedule.resetAt);
+                if (endAt == null)
+                    endedAt = min(endedAt, partitionPass.schedule.endedAt);
+            }
+            for (String[] values : exchange.exchange("pass " + (pass + 1) + " round " + round, resetAt, endedAt)) {
+                resetAt = min(resetAt, values[0]);
+                endedAt = min(endedAt, values[1]);
+            }
+            String first = min(resetAt, endedAt);
+            if (first == null)
+                return alternativeUntil != null;
+
+            // The partitions that have considered records after the plan are split again with it, the plans after it may not be made.
+            toSplit.clear();
+            for (int i = 0; i < partitionPasses.size(); i++) {
+                SplitSchedule schedule = partitionPasses.get(i).schedule;
+                boolean considersAfter = schedule.lastConsidered != null && schedule.lastConsidered.compareTo(first) > 0;
+                boolean resetsAfter = schedule.resetAt != null && schedule.resetAt.compareTo(first) > 0;
+                if (first.equals(endedAt) && considersAfter || first.equals(resetAt) && (schedule.resetAt != null ? resetsAfter : alternativeSplitting && considersAfter))
+                    toSplit.add(i);
+            }
+            if (first.equals(resetAt))
+                alternativeUntil = first;
+            if (first.equals(endedAt))
+                endAt = first;
+        }
+    }
+
+    /**
+     * Splits a partition once with a schedule, after which it is spilled and its pass is kept until the pass is settled.
+     *
+     * @param number         int the number of the partition.
+     * @param disaggregation Disaggregation the partition, as it is before the pass.
+     * @param schedule       SplitSchedule the schedule known so far.
+     * @throws IOException if a file cannot be written.
+     */
+    private void splitPartition(int number, Disaggregation disaggregation, SplitSchedule schedule) throws IOException {
+        Log.Logger held = log.held();
+        disaggregation.setLogger(held);
+        disaggregation.getMissingValues().clear();
+        disaggregation.splitPass(schedule);
+        disaggregation.spill(getPath(number, "after.bin"), partitions.get(number));
+        int created = 0;
+        try (BufferedWriter writer = Files.newBufferedWriter(getPath(number, "plans.csv"), StandardCharsets.UTF_8)) {
+            for (int i = 0; i < schedule.plannedIds.size(); i++) {
+                writer.write(schedule.plannedIds.get(i) + ";" + schedule.created.get(i));
+                writer.newLine();
+                created += schedule.created.get(i);
+            }
+        }
+        schedule.plannedIds.clear();
+        schedule.created.clear();
+        partitionPasses.set(number, new PartitionPass(schedule, held, disaggregation.getMissingValues(), created));
+    }
+
+    /**
+     * Numbers the records created by the plans of all the shards in the order of the ids of the records of the plans, and keeps the first id
+     * of every plan of this shard by partition, to number the records once the partition is loaded again, see continuePartition.
+     *
+     * @throws IOException if a file cannot be read or written, or another shard has failed.
+     */
+    private void numberPlans() throws IOException {
+        String step = "pass " + (pass + 1) + " plans";
+        try (BufferedWriter writer = Files.newBufferedWriter(exchange.prepare(step), StandardCharsets.UTF_8)) {
+            for (int i = 0; i < partitions.size(); i++) {
+                for (String line : Files.readAllLines(getPath(i, "plans.csv"), StandardCharsets.UTF_8)) {
+                    writer.write(line + ";" + i);
+                    writer.newLine();
+                }
+            }
+        }
+        exchange.publish(step);
+        numbering = new ExternalSort("numbering", RUN_BYTES);
+        try (ExternalSort plans = new ExternalSort("plans", RUN_BYTES)) {
+            List<Path> paths = exchange.collect(step);
+            for (int i = 0; i < paths.size(); i++) {
+                try (BufferedReader reader = Files.newBufferedReader(paths.get(i), StandardCharsets.UTF_8)) {
+                    for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                        String[] values = line.split(";");
+                        plans.add(values[0], plans.size(), new String[]{values[1], i + 1 == shard ? values[2] : null});
+                    }
+                }
+            }
+            int firstId = nextRecordId;
+            try (ExternalSort.Merge merge = plans.merge()) {
+                for (ExternalSort.Row plan = merge.next(); plan != null; plan = merge.next()) {
+                    if (plan.values[1] != null)
+                        numbering.add(getKey(Integer.parseInt(plan.values[1])), numbering.size(), new String[]{plan.values[0], Integer.toString(firstId)});
+                    firstId += Integer.parseInt(plan.values[0]);
+                }
+            }
+        }
+        numbered = numbering.merge();
+        nextNumbered = numbered.next();
+    }
+
+    /**
+     * Loads a partition as it is after the last pass and continues its splitting as that of all the partitions goes on,
+     * numbering the records the pass created, see numberPlans. The missing values are counted right away, as this is done once per pass.
+     *
+     * @param number int the number of the partition.
+     * @return Disaggregation the partition.
+     * @throws IOException if a file cannot be read.
+     */
+    private Disaggregation continuePartition(int number) throws IOException {
+        Disaggregation disaggregation = loadPartition(number, "after.bin");
+        List<int[]> plans = new ArrayList<>();
+        while (nextNumbered != null && nextNumbered.key.equals(getKey(number))) {
+            plans.add(new int[]{Integer.parseInt(nextNumbered.values[0]), Integer.parseInt(nextNumbered.values[1])});
+            nextNumbered = numbered.next();
+        }
+        int[] created = new int[plans.size()];
+        int[] firstIds = new int[plans.size()];
+        for (int i = 0; i < plans.size(); i++) {
+            created[i] = plans.get(i)[0];
+            firstIds[i] = plans.get(i)[1];
+        }
+        disaggregation.numberCreatedRecords(created, firstIds);
+        disaggregation.continueSplitting(triedWithNumberOfHomes, alternativeSplitting, recordsWithMultipleLinks, nextRecordId, linksChanged);
+        missingValues.add(disaggregation.getMissingValues());
+        if (number == partitions.size() - 1)
+            closeNumbering();
+        return disaggregation;
+    }
+
+    /**
+     * Loads a partition from one of its files, counting the missing values of the loading apart, as they have been counted when it was loaded first.
+     *
+     * @param number int the number of the partition.
+     * @param file   String the file, after.bin or before.bin.
+     * @return Disaggregation the partition.
+     * @throws IOException if a file cannot be read.
+     */
+    private Disaggregation loadPartition(int number, String file) throws IOException {
+        Disaggregation disaggregation = new Disaggregation(new MissingValues());
+        disaggregation.setConvergenceBudget(maxPasses, timeBudget);
+        disaggregation.setLogger(log);
+        try {
+            disaggregation.loadSquareKilometres(getPath(number, "km2.csv").toString());
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("The square kilometres of partition " + partitions.get(number) + " cannot be loaded again", e);
+        }
+        disaggregation.load(getPath(number, file), partitions.get(number));
+        disaggregation.getMissingValues().clear();
+        disaggregation.getMissingValues().enterPhase(MissingValues.Phase.SPLIT);
+        return disaggregation;
+    }
+
+    /**
+     * Loads every partition as it is after the last pass, splits its parent Link codes by square kilometres and converts its records
+     * to village complexes, which are written by the writer.
+     *
+     * @param writer Disaggregation.RowWriter the writer of the rows of the village complexes.
+     * @throws IOException if a file cannot be read or the rows cannot be written.
+     */
+    void convert(Disaggregation.RowWriter writer) throws IOException {
+        for (int i = 0; i < partitions.size(); i++) {
+            Disaggregation disaggregation = continuePartition(i);
+            disaggregation.getMissingValues().clear();
+            disaggregation.convertRecords();
+            disaggregation.writeRows(writer);
+            missingValues.add(disaggregation.getMissingValues());
+        }
+    }
+
+    /**
+     * Closes the numbering of the plans of the last pass, once every partition has been numbered.
+     *
+     * @throws IOException if the sort cannot be closed.
+     */
+    private void closeNumbering() throws IOException {
+        if (numbered != null)
+            numbered.close();
+        if (numbering != null)
+            numbering.close();
+        numbered = null;
+        numbering = null;
+        nextNumbered = null;
+    }
+
+    /**
+     * Tells the other shards this shard has failed, on which they stop waiting for it.
+     */
+    void fail() {
+        exchange.fail();
+    }
+
+    /**
+     * Removes the files of the partitions.
+     *
+     * @throws IOException if the files cannot be removed.
+     */
+    @Override
+    public void close() throws IOException {
+        closeNumbering();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    /**
+     * Returns the path of a file of a partition.
+     *
+     * @param number int the number of the partition.
+     * @param name   String the name of the file, E.G. after.bin.
+     * @return Path the path of the file.
+     */
+    private Path getPath(int number, String name) {
+        return directory.resolve("partition " + number + " " + name);
+    }
+
+    /**
+     * Returns the key of a partition in the numbering, which sorts the partitions by their number.
+     *
+     * @param number int the number of the partition.
+     * @return String the key.
+     */
+    private static String getKey(int number) {
+        return String.format(Locale.ROOT, "%010d", number);
+    }
+
+    /**
+     * Returns the smaller of two ids, in the order the records are split in.
+     *
+     * @param first  String the first id, or null.
+     * @param second String the second id, or null.
+     * @return String the smaller id, null when both are null.
+     */
+    private static String min(String first, String second) {
+        if (first == null)
+            return second;
+        if (second == null)
+            return first;
+        return first.compareTo(second) <= 0 ? first : second;
+    }
+}
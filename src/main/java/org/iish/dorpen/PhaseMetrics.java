@@ -0,0 +1,243 @@
+package org.iish.dorpen;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Measures the phases of a run and the passes of the splitting: the wall time, the CPU time and the bytes allocated by the thread,
+ * the records touched, the splits per strategy and the records that still have multiple Link codes afterwards.
+ * Like the missing values, the phase being measured is set by the caller, after which the measurements can be written as JSON.
+ */
+final class PhaseMetrics {
+
+    /**
+     * The measurement of a phase or of a pass within a phase.
+     */
+    static final class Measurement {
+        final String name;
+        final int pass; // The number of the pass, 0 for a phase
+        final List<Measurement> passes = new ArrayList<>();
+        final Map<String, Integer> splitsPerStrategy = new TreeMap<>();
+        private final long startWall;
+        private final long startCpu;
+        private final long startAllocated;
+        private final long startTouched;
+        long wallNanos;
+        long cpuNanos = -1; // -1 when the CPU time of the thread cannot be measured
+        long allocatedBytes = -1; // -1 when the allocation of the thread cannot be measured
+        long recordsTouched;
+        int recordsWithMultipleLinks;
+        private boolean ended = false;
+
+        /**
+         * Constructor for the Measurement class, which starts the measurement.
+         *
+         * @param name         String the name of the phase.
+         * @param pass         int the number of the pass, 0 for a phase.
+         * @param startTouched long the number of records touched so far in the run.
+         */
+        private Measurement(String name, int pass, long startTouched) {
+            this.name = name;
+            this.pass = pass;
+            this.startWall = System.nanoTime();
+            this.startCpu = cpuTime();
+            this.startAllocated = allocatedBytes();
+            this.startTouched = startTouched;
+        }
+    }
+
+    private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    private final RecordStore records;
+    private final List<Measurement> phases = new ArrayList<>();
+    private Measurement phase;
+    private Measurement pass;
+    private long recordsRead = 0; // The number of records read by phases that do not put or remove records
+
+    /**
+     * Constructor for the PhaseMetrics class.
+     *
+     * @param records RecordStore the records of the run, of which the records put, removed and changed are counted as touched.
+     */
+    PhaseMetrics(RecordStore records) {
+        this.records = records;
+    }
+
+    /**
+     * Ends the measurement of the current phase, if any, and starts the measurement of the given phase.
+     *
+     * @param name String the name of the phase, E.G. updateLinks.
+     */
+    void enterPhase(String name) {
+        finish();
+        phase = new Measurement(name, 0, recordsTouched());
+        phases.add(phase);
+    }
+
+    /**
+     * Ends the measurement of the current pass, if any, and starts the measurement of the given pass within the current phase.
+     *
+     * @param number int the number of the pass, starting at 1.
+     */
+    void enterPass(int number) {
+        endPass();
+        if (phase == null)
+            return;
+        pass = new Measurement(phase.name, number, recordsTouched());
+        phase.passes.add(pass);
+    }
+
+    /**
+     * Ends the measurement of the current pass, if any.
+     */
+    void endPass() {
+        if (pass != null)
+            end(pass);
+        pass = null;
+    }
+
+    /**
+     * Ends the measurement of the current pass and phase, if any.
+     */
+    void finish() {
+        endPass();
+        if (phase != null)
+            end(phase);
+        phase = null;
+    }
+
+    /**
+     * Counts a split of a record by the strategy for the current phase and pass.
+     *
+     * @param strategy String the name of the strategy.
+     */
+    void countSplit(String strategy) {
+        if (phase != null)
+            phase.splitsPerStrategy.merge(strategy, 1, Integer::sum);
+        if (pass != null)
+            pass.splitsPerStrategy.merge(strategy, 1, Integer::sum);
+    }
+
+    /**
+     * Counts records read by a phase that does not put or remove them as touched.
+     *
+     * @param number long the number of records read.
+     */
+    void countRecordsRead(long number) {
+        recordsRead += number;
+    }
+
+    /**
+     * Writes the measurements as a JSON file.
+     *
+     * @param path String the path of the JSON file.
+     * @throws IOException if the file cannot be written.
+     */
+    void write(String path) throws IOException {
+        finish();
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(path))) {
+            StringBuilder json = new StringBuilder("{\n  \"phases\": [");
+            for (int i = 0; i < phases.size(); i++) {
+                json.append(i > 0 ? ",\n" : "\n");
+                append(json, phases.get(i), "    ");
+            }
+            json.append("\n  ]\n}\n");
+            writer.write(json.toString());
+        }
+    }
+
+    /**
+     * Appends a measurement as a JSON object, with its passes.
+     *
+     * @param json        StringBuilder the JSON to append to.
+     * @param measurement Measurement the measurement to append.
+     * @param indent      String the indentation of the object.
+     */
+    private static void append(StringBuilder json, Measurement measurement, String indent) {
+        json.append(indent).append("{");
+        if (measurement.pass > 0)
+            json.append("\"pass\": ").append(measurement.pass);
+        else
+            json.append("\"name\": \"").append(measurement.name).append('"');
+        json.append(", \"wallNanos\": ").append(measurement.wallNanos)
+                .append(", \"cpuNanos\": ").append(measurement.cpuNanos)
+                .append(", \"allocatedBytes\": ").append(measurement.allocatedBytes)
+                .append(", \"recordsTouched\": ").append(measurement.recordsTouched)
+                .append(", \"recordsWithMultipleLinks\": ").append(measurement.recordsWithMultipleLinks)
+                .append(", \"splitsPerStrategy\": {");
+        boolean first = true;
+        for (Map.Entry<String, Integer> splits : measurement.splitsPerStrategy.entrySet()) {
+            json.append(first ? "" : ", ").append('"').append(splits.getKey()).append("\": ").append(splits.getValue());
+            first = false;
+        }
+        json.append('}');
+        if (!measurement.passes.isEmpty()) {
+            json.append(", \"passes\": [");
+            for (int i = 0; i < measurement.passes.size(); i++) {
+                json.append(i > 0 ? ",\n" : "\n");
+                append(json, measurement.passes.get(i), indent + "  ");
+            }
+            json.append('\n').append(indent).append(']');
+        }
+        json.append('}');
+    }
+
+    /**
+     * Ends the measurement.
+     *
+     * @param measurement Measurement the measurement to end.
+     */
+    private void end(Measurement measurement) {
+        if (measurement.ended)
+            return;
+        measurement.ended = true;
+        measurement.wallNanos = System.nanoTime() - measurement.startWall;
+        long cpu = cpuTime();
+        if (cpu >= 0 && measurement.startCpu >= 0)
+            measurement.cpuNanos = cpu - measurement.startCpu;
+        long allocated = allocatedBytes();
+        if (allocated >= 0 && measurement.startAllocated >= 0)
+            measurement.allocatedBytes = allocated - measurement.startAllocated;
+        measurement.recordsTouched = recordsTouched() - measurement.startTouched;
+        measurement.recordsWithMultipleLinks = records.getRecordsWithMultipleLinks();
+    }
+
+    /**
+     * Returns the number of records touched so far in the run.
+     *
+     * @return long the number of records put, removed, changed and read.
+     */
+    private long recordsTouched() {
+        return records.getRecordsPut() + records.getRecordsRemoved() + records.getLinksChanged() + recordsRead;
+    }
+
+    /**
+     * Returns the CPU time of the current thread.
+     *
+     * @return long the CPU time in nanoseconds, -1 if it cannot be measured.
+     */
+    private static long cpuTime() {
+        return threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : -1;
+    }
+
+    /**
+     * Returns the number of bytes allocated by the current thread, which the JVMs of Oracle and OpenJDK can measure.
+     *
+     * @return long the number of bytes allocated, -1 if it cannot be measured.
+     */
+    private static long allocatedBytes() {
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean allocation = (com.sun.management.ThreadMXBean) threads;
+            if (allocation.isThreadAllocatedMemorySupported() && allocation.isThreadAllocatedMemoryEnabled())
+                return allocation.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
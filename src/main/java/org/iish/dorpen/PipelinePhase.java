@@ -0,0 +1,80 @@
+package org.iish.dorpen;
+
+/**
+ * The phases of a run, in the order Main runs them, each of which can be run on its own on a Disaggregation
+ * that has gone through the phases before it.
+ */
+enum PipelinePhase {
+    LOAD_DATA("loadData"),
+    LOAD_SQUARE_KILOMETRES("loadSquareKilometres"),
+    UPDATE_LINKS("updateLinks"),
+    PRE_SPLIT("preSplitTheRecords"),
+    SPLIT("splitRecords"),
+    KM2_SPLIT("splitParentLinkCodesBykm2"),
+    CONVERT("convertRecordsToVillageComplex"),
+    WRITE("writeExport");
+
+    final String methodName; // The name of the method of the phase, as used in the reports and settings
+
+    /**
+     * Constructor for the PipelinePhase enum.
+     *
+     * @param methodName String the name of the method of the phase.
+     */
+    PipelinePhase(String methodName) {
+        this.methodName = methodName;
+    }
+
+    /**
+     * Runs the phase on the Disaggregation.
+     *
+     * @param disaggregation      Disaggregation the Disaggregation that has gone through the phases before this one.
+     * @param rawCsv              String the path of the raw data file.
+     * @param squareKilometresCsv String the path of the square kilometre file.
+     * @param exportCsv           String the path of the export file.
+     * @param notesCsv            String the path of the notes file.
+     * @throws Exception if the files cannot be read or written.
+     */
+    void run(Disaggregation disaggregation, String rawCsv, String squareKilometresCsv, String exportCsv, String notesCsv) throws Exception {
+        switch (this) {
+            case LOAD_DATA:
+                disaggregation.loadData(rawCsv);
+                break;
+            case LOAD_SQUARE_KILOMETRES:
+                disaggregation.loadSquareKilometres(squareKilometresCsv);
+                break;
+            case UPDATE_LINKS:
+                disaggregation.updateLinks();
+                break;
+            case PRE_SPLIT:
+                disaggregation.preSplitTheRecords();
+                break;
+            case SPLIT:
+                disaggregation.splitRecords();
+                break;
+            case KM2_SPLIT:
+                disaggregation.splitParentLinkCodesBykm2();
+                break;
+            case CONVERT:
+                disaggregation.convertRecordsToVillageComplexForProcessingToCSV();
+                break;
+            case WRITE:
+                disaggregation.writeExport(exportCsv, notesCsv);
+                break;
+        }
+    }
+
+    /**
+     * Returns the phase with the method name.
+     *
+     * @param methodName String the name of the method of the phase, E.G. splitRecords.
+     * @return PipelinePhase the phase.
+     */
+    static PipelinePhase forMethodName(String methodName) {
+        for (PipelinePhase phase : values()) {
+            if (phase.methodName.equals(methodName))
+                return phase;
+        }
+        throw new IllegalArgumentException("Unknown phase: " + methodName);
+    }
+}
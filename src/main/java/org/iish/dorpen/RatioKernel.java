@@ -0,0 +1,123 @@
+package org.iish.dorpen;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Calculates the number of houses of the targets of a batch of plans in one call.
+ * The weights of all targets are laid out in one array with the offsets of the portions, the totals of the portions are
+ * determined in a first sweep and the results in a second sweep, after which the results are handed back to the targets.
+ * The sweeps are plain loops over BigDecimal values, one target at a time, as the numbers are not primitives the processor can calculate several of at once;
+ * the batch only saves going back and forth between the strategies and the calculation.
+ */
+final class RatioKernel {
+
+    /**
+     * Constructor for the RatioKernel class, which only holds static methods.
+     */
+    private RatioKernel() {
+    }
+
+    /**
+     * Calculates the number of houses of all the targets of the plans.
+     *
+     * @param batch List<SplitPlan> the plans to calculate, usually those made by one strategy in a pass.
+     */
+    static void calculate(List<SplitPlan> batch) {
+        List<SplitPlan.Portion> portions = new ArrayList<>();
+        for (SplitPlan plan : batch) {
+            portions.addAll(plan.portions);
+        }
+        int[] offsets = new int[portions.size() + 1];
+        for (int i = 0; i < portions.size(); i++) {
+            offsets[i + 1] = offsets[i] + portions.get(i).targets.size();
+        }
+        BigDecimal[] weights = new BigDecimal[offsets[portions.size()]];
+        for (int i = 0; i < portions.size(); i++) {
+            List<SplitPlan.Target> targets = portions.get(i).targets;
+            for (int j = 0; j < targets.size(); j++) {
+                weights[offsets[i] + j] = targets.get(j).weight;
+            }
+        }
+
+        BigDecimal[] totals = new BigDecimal[portions.size()];
+        for (int i = 0; i < portions.size(); i++) {
+            if (portions.get(i).calculation == SplitPlan.Calculation.SHARE) {
+                BigDecimal total = new BigDecimal(0);
+                for (int j = offsets[i]; j < offsets[i + 1]; j++) {
+                    if (weights[j] != null)
+                        total = total.add(weights[j]);
+                }
+                totals[i] = total;
+            }
+        }
+
+        BigDecimal[] products = new BigDecimal[weights.length];
+        BigDecimal[] results = new BigDecimal[weights.length];
+        for (int i = 0; i < portions.size(); i++) {
+            SplitPlan.Portion portion = portions.get(i);
+            BigDecimal houses = portion.houses;
+            switch (portion.calculation) {
+                case SHARE:
+                    for (int j = offsets[i]; j < offsets[i + 1]; j++) {
+                        BigDecimal ratio = weights[j] != null && totals[i].signum() != 0 ? weights[j].divide(totals[i], 9, BigDecimal.ROUND_HALF_EVEN) : BigDecimal.ZERO;
+                        products[j] = houses != null ? ratio.multiply(houses) : new BigDecimal(0);
+                        results[j] = products[j].setScale(3, BigDecimal.ROUND_HALF_EVEN);
+                    }
+                    break;
+                case RATIO:
+                    for (int j = offsets[i]; j < offsets[i + 1]; j++) {
+                        results[j] = houses != null && weights[j] != null ? houses.multiply(weights[j]).setScale(3, BigDecimal.ROUND_HALF_EVEN) : null;
+                    }
+                    break;
+                case PAIR:
+                    BigDecimal[] pair = calculatePair(portion.lowestNumber, portion.highestNumber, houses);
+                    for (int j = offsets[i]; j < offsets[i + 1]; j++) {
+                        int side = portion.targets.get(j - offsets[i]).side;
+                        results[j] = side >= 0 ? pair[side] : portion.unmatched;
+                    }
+                    break;
+                case EVEN:
+                    BigDecimal divisor = new BigDecimal(offsets[i + 1] - offsets[i]).setScale(3, BigDecimal.ROUND_HALF_EVEN);
+                    for (int j = offsets[i]; j < offsets[i + 1]; j++) {
+                        results[j] = houses.divide(divisor, BigDecimal.ROUND_HALF_EVEN);
+                    }
+                    break;
+                case FIXED:
+                    System.arraycopy(weights, offsets[i], results, offsets[i], offsets[i + 1] - offsets[i]);
+                    break;
+            }
+        }
+
+        for (int i = 0; i < portions.size(); i++) {
+            List<SplitPlan.Target> targets = portions.get(i).targets;
+            for (int j = 0; j < targets.size(); j++) {
+                targets.get(j).product = products[offsets[i] + j];
+                targets.get(j).result = results[offsets[i] + j];
+            }
+        }
+    }
+
+    /**
+     * Calculates the number of houses for the lowest and highest number, the lowest gets its part of the houses and the highest the remainder.
+     *
+     * @param lowestNumber  BigDecimal the lowest number to calculate with.
+     * @param highestNumber BigDecimal the highest number to calculate with.
+     * @param houses        BigDecimal the number of houses to split.
+     * @return BigDecimal[] the number of houses for the lowest and the highest number.
+     */
+    private static BigDecimal[] calculatePair(BigDecimal lowestNumber, BigDecimal highestNumber, BigDecimal houses) {
+        if (lowestNumber == null)
+            return new BigDecimal[]{null, houses};
+        if (highestNumber == null)
+            return new BigDecimal[]{houses, null};
+        if (houses == null || highestNumber.add(lowestNumber).signum() == 0)
+            // Without houses to split or a total to calculate the percentage with, nothing is split.
+            return new BigDecimal[]{BigDecimal.ZERO, BigDecimal.ZERO};
+        BigDecimal percentage = lowestNumber.divide(highestNumber.add(lowestNumber), 9, BigDecimal.ROUND_HALF_EVEN);
+        BigDecimal lowestResult = houses.multiply(percentage).setScale(3, BigDecimal.ROUND_HALF_EVEN);
+        BigDecimal highestResult = houses.subtract(lowestResult).setScale(3, BigDecimal.ROUND_HALF_EVEN);
+        return new BigDecimal[]{lowestResult, highestResult};
+    }
+}
@@ -0,0 +1,73 @@
+package org.iish.dorpen;
+
+import java.math.BigDecimal;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The rows of the raw data parsed once, to be loaded by several runs, E.G. one per version of the square kilometres.
+ * The rows are not changed after they are read, and their values are immutable, so the runs can load them at the same time.
+ * Every run makes records of its own of the rows, as the records are changed while they are split.
+ */
+final class RawData {
+
+    /**
+     * A row of the raw data, with its numbers parsed as they are when a record is loaded.
+     */
+    static final class Row {
+        final int year;
+        final BigDecimal houses; // The number of houses, null when it is missing
+        final BigDecimal km2; // The number of square kilometres in the local format, null when it is missing
+        final String link; // The Link codes separated by a dash, null when there are none
+
+        /**
+         * Constructor for the Row class, which parses the values of a row of the file.
+         *
+         * @param record       RowSource.Row the row of the file.
+         * @param localeFormat DecimalFormat the format of Disaggregation.createLocaleFormat, of which the caller has one of its own.
+         */
+        Row(RowSource.Row record, DecimalFormat localeFormat) {
+            this.year = Integer.parseInt(record.get("YEAR"));
+            this.houses = record.get("HOUSES") != null ? new BigDecimal(record.get("HOUSES")) : null;
+            this.km2 = record.get("KM2") != null ? Disaggregation.convertToLocale(record.get("KM2"), localeFormat).setScale(3, BigDecimal.ROUND_HALF_EVEN) : null;
+            this.link = record.get("LINK");
+        }
+    }
+
+    private final List<Row> rows;
+
+    /**
+     * Constructor for the RawData class.
+     *
+     * @param rows List<Row> the rows, which are no longer changed.
+     */
+    private RawData(List<Row> rows) {
+        this.rows = Collections.unmodifiableList(rows);
+    }
+
+    /**
+     * Reads the raw data from the CSV file, or from the first sheet of the XLSX file.
+     *
+     * @param path String the path of the CSV or XLSX file.
+     * @return RawData the parsed rows.
+     * @throws Exception if the file cannot be read or a number cannot be parsed.
+     */
+    static RawData read(String path) throws Exception {
+        DecimalFormat localeFormat = Disaggregation.createLocaleFormat();
+        List<Row> rows = new ArrayList<>();
+        RowSource.read(path, header -> {
+        }, record -> rows.add(new Row(record, localeFormat)));
+        return new RawData(rows);
+    }
+
+    /**
+     * Returns the rows in the order of the file.
+     *
+     * @return List<Row> the rows, which cannot be changed.
+     */
+    List<Row> getRows() {
+        return rows;
+    }
+}
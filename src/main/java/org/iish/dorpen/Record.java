@@ -0,0 +1,27 @@
+package org.iish.dorpen;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The Record class containing information about each Record
+ */
+class Record {
+    String id;
+    int year;
+    BigDecimal houses;
+    BigDecimal km2;
+    List<String> links = new ArrayList<>();
+    NoteState note;
+    int yearUsedToCalculate;
+
+    /**
+     * Returns the Record as a String
+     *
+     * @return String
+     */
+    public String toString() {
+        return "ID: " + id + " - Year: " + year + " - Houses: " + houses + " - KM2: " + km2 + " - Links: " + links.toString() + " - Note: " + note + " - Year used to calculate: " + yearUsedToCalculate;
+    }
+}
@@ -0,0 +1,214 @@
+package org.iish.dorpen;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+/**
+ * The records of a run by id, in the order of their ids.
+ * The total number of houses, the number of houses per year and the number of records with multiple Link codes are kept up to date
+ * while records are put and removed, so they never have to be counted by walking all the records.
+ * Changing the Link codes of a stored record has to be reported with linksChanged.
+ */
+final class RecordStore {
+    private final TreeMap<String, Record> records = new TreeMap<>();
+    private final SortedMap<String, Record> view = Collections.unmodifiableSortedMap(records);
+    private final SortedMap<Integer, BigDecimal> housesPerYear = new TreeMap<>(); // Contains the number of houses of the records per year
+    private BigDecimal houses = new BigDecimal(0);
+    private int recordsWithMultipleLinks = 0;
+    private long recordsPut = 0; // The number of records put since the store was created
+    private long recordsRemoved = 0; // The number of records removed since the store was created
+    private long linksChanged = 0; // The number of times the Link codes of a stored record have been changed
+    private BigDecimal housesPut = new BigDecimal(0); // The number of houses of the records put since the store was created
+
+    /**
+     * Returns the record with the id.
+     *
+     * @param id String the id of the record.
+     * @return Record the record, or null if there is no record with the id.
+     */
+    Record get(String id) {
+        return records.get(id);
+    }
+
+    /**
+     * Puts the record in the store by its id, replacing the record with the same id.
+     *
+     * @param record Record the record to put.
+     */
+    void put(Record record) {
+        Record previous = records.put(record.id, record);
+        if (previous != null)
+            subtract(previous);
+        add(record);
+        recordsPut++;
+        if (record.houses != null)
+            housesPut = housesPut.add(record.houses.abs());
+    }
+
+    /**
+     * Removes the record with the id.
+     *
+     * @param id String the id of the record to remove.
+     * @return Record the removed record, or null if there was no record with the id.
+     */
+    Record remove(String id) {
+        Record removed = records.remove(id);
+        if (removed != null) {
+            subtract(removed);
+            recordsRemoved++;
+        }
+        return removed;
+    }
+
+    /**
+     * Updates the number of records with multiple Link codes after the Link codes of a stored record have been changed.
+     *
+     * @param record                Record the record of which the Link codes have been changed.
+     * @param previousNumberOfLinks int the number of Link codes the record had before the change.
+     */
+    void linksChanged(Record record, int previousNumberOfLinks) {
+        linksChanged++;
+        if (previousNumberOfLinks > 1)
+            recordsWithMultipleLinks--;
+        if (record.links.size() > 1)
+            recordsWithMultipleLinks++;
+    }
+
+    /**
+     * Returns the records, which cannot be altered through the returned collection.
+     *
+     * @return Collection<Record> the records in the order of their ids.
+     */
+    Collection<Record> values() {
+        return view.values();
+    }
+
+    /**
+     * Returns the records with their ids, which cannot be altered through the returned set.
+     *
+     * @return Set<Map.Entry<String, Record>> the records in the order of their ids.
+     */
+    Set<Map.Entry<String, Record>> entrySet() {
+        return view.entrySet();
+    }
+
+    /**
+     * Returns the number of records.
+     *
+     * @return int the number of records.
+     */
+    int size() {
+        return records.size();
+    }
+
+    /**
+     * Returns the total number of houses, leaving out the records without a number of houses.
+     *
+     * @return BigDecimal the total number of houses.
+     */
+    BigDecimal getHouses() {
+        return houses;
+    }
+
+    /**
+     * Returns the number of houses per year, leaving out the records without a number of houses.
+     *
+     * @return SortedMap<Integer, BigDecimal> the number of houses per year, which cannot be altered.
+     */
+    SortedMap<Integer, BigDecimal> getHousesPerYear() {
+        return Collections.unmodifiableSortedMap(housesPerYear);
+    }
+
+    /**
+     * Compares the number of houses per year with the number of houses per year of an earlier moment,
+     * returning the years that changed by more than the tolerance, as splitting records should keep the houses of their year.
+     *
+     * @param previousHousesPerYear SortedMap<Integer, BigDecimal> the number of houses per year of the earlier moment.
+     * @param tolerance             BigDecimal the change of a year that is allowed for the rounding since the earlier moment.
+     * @return SortedMap<Integer, BigDecimal> the change per year of the years that changed beyond the tolerance, empty if there are none.
+     */
+    SortedMap<Integer, BigDecimal> getLeaks(SortedMap<Integer, BigDecimal> previousHousesPerYear, BigDecimal tolerance) {
+        Set<Integer> years = new TreeSet<>(previousHousesPerYear.keySet());
+        years.addAll(housesPerYear.keySet());
+        SortedMap<Integer, BigDecimal> leaks = new TreeMap<>();
+        for (int year : years) {
+            BigDecimal difference = housesPerYear.getOrDefault(year, BigDecimal.ZERO).subtract(previousHousesPerYear.getOrDefault(year, BigDecimal.ZERO));
+            if (difference.abs().compareTo(tolerance) > 0)
+                leaks.put(year, difference);
+        }
+        return leaks;
+    }
+
+    /**
+     * Returns the number of records with more than one Link code.
+     *
+     * @return int the number of records with multiple Link codes.
+     */
+    int getRecordsWithMultipleLinks() {
+        return recordsWithMultipleLinks;
+    }
+
+    /**
+     * Returns the number of records that have been put in the store, including those that have been removed since.
+     *
+     * @return long the number of records put.
+     */
+    long getRecordsPut() {
+        return recordsPut;
+    }
+
+    /**
+     * Returns the number of records that have been removed from the store.
+     *
+     * @return long the number of records removed.
+     */
+    long getRecordsRemoved() {
+        return recordsRemoved;
+    }
+
+    /**
+     * Returns the number of times the Link codes of a stored record have been changed.
+     *
+     * @return long the number of changes reported with linksChanged.
+     */
+    long getLinksChanged() {
+        return linksChanged;
+    }
+
+    /**
+     * Returns the number of houses of the records that have been put in the store, including those that have been removed since.
+     *
+     * @return BigDecimal the number of houses put.
+     */
+    BigDecimal getHousesPut() {
+        return housesPut;
+    }
+
+    /**
+     * Adds the record to the totals.
+     *
+     * @param record Record the record to add.
+     */
+    private void add(Record record) {
+        if (record.houses != null) {
+            houses = houses.add(record.houses);
+            housesPerYear.merge(record.year, record.houses, BigDecimal::add);
+        }
+        if (record.links.size() > 1)
+            recordsWithMultipleLinks++;
+    }
+
+    /**
+     * Subtracts the record from the totals.
+     *
+     * @param record Record the record to subtract.
+     */
+    private void subtract(Record record) {
+        if (record.houses != null) {
+            houses = houses.subtract(record.houses);
+            housesPerYear.merge(record.year, record.houses.negate(), BigDecimal::add);
+        }
+        if (record.links.size() > 1)
+            recordsWithMultipleLinks--;
+    }
+}
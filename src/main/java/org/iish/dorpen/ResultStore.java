@@ -0,0 +1,471 @@
+package org.iish.dorpen;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The results of a run in a file sorted by Link code and year, with per Link code and year the number of houses, the note
+ * and the year used to calculate, so the results of a few Link codes can be looked up without reading the whole export.
+ * The results are written in blocks of BLOCK_SIZE results, followed by an index of the first Link code and year of every block.
+ * The file is mapped into memory and only the index is read into the heap, so a lookup only reads the blocks it needs.
+ * The store is written from the village complexes of the run, with the note and the year used to calculate as the records have them,
+ * see Disaggregation.writeResultStore and RootCodePartitions, and the stores of the shards of a run are merged by ShardMerge.
+ * The results are looked up by using the following command, E.G. for the Link codes starting with HO1351 from 1600 to 1700:
+ * java -cp EMHCD.jar org.iish.dorpen.ResultStore "results.bin" HO1351* 1600-1700
+ */
+public final class ResultStore {
+
+    static final int BLOCK_SIZE = 128; // The number of results per block
+
+    private static final int MAGIC = 0x454D4852; // EMHR, at the start and the end of the file
+    private static final int VERSION = 1;
+    private static final int FOOTER_SIZE = 24; // The offset of the index, the number of blocks, the number of results and the magic
+    private static final int MAX_DATA_SIZE = 1 << 30; // The number of bytes of results, which leaves room for the index in a file that can be mapped
+    private static final byte SCALE_NULL = Byte.MIN_VALUE; // The scale of a number of houses that is missing
+    private static final byte SCALE_LARGE = Byte.MAX_VALUE; // The scale of a number of houses that does not fit in a long and is kept as text
+
+    private final MappedByteBuffer data;
+    private final long size;
+    private final String[] blockCodes; // Contains the Link code of the first result of every block
+    private final int[] blockYears; // Contains the year of the first result of every block
+    private final int[] blockOffsets; // Contains the offset in the file of every block
+    private final int[] blockSizes; // Contains the number of results of every block
+
+    /**
+     * Constructor for the ResultStore class, which maps the file into memory and reads its index.
+     *
+     * @param path String the path of the result store.
+     * @throws IOException if the file cannot be read or is not a result store.
+     */
+    public ResultStore(String path) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException("The result store is too large to map: " + path);
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (data.limit() < 8 + FOOTER_SIZE || data.getInt(0) != MAGIC || data.getInt(data.limit() - 4) != MAGIC)
+            throw new IOException("The file is not a result store, or has not been written completely: " + path);
+        if (data.getInt(4) != VERSION)
+            throw new IOException("The result store is of version " + data.getInt(4) + ", which cannot be read: " + path);
+        int footer = data.limit() - FOOTER_SIZE;
+        int blocks = data.getInt(footer + 8);
+        size = data.getLong(footer + 12);
+        blockCodes = new String[blocks];
+        blockYears = new int[blocks];
+        blockOffsets = new int[blocks];
+        blockSizes = new int[blocks];
+        ByteBuffer index = data.duplicate();
+        index.position((int) data.getLong(footer));
+        for (int block = 0; block < blocks; block++) {
+            blockCodes[block] = readString(index);
+            blockYears[block] = index.getInt();
+            blockOffsets[block] = (int) index.getLong();
+            blockSizes[block] = index.getInt();
+        }
+    }
+
+    /**
+     * The main method to look up results in a result store.
+     *
+     * @param args String[] containing the path of the result store, the Link code, the Link code prefix ending with * or * for all the Link codes,
+     *             and optionally the year or the first and last year separated by a dash
+     * @throws Exception Exception for when the arguments are not valid or the result store cannot be read
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2 || args.length > 3)
+            throw new IllegalArgumentException("Usage: ResultStore <result store> <Link code, Link code prefix ending with *, or *> [year or first-last year]");
+        int fromYear = Integer.MIN_VALUE;
+        int toYear = Integer.MAX_VALUE;
+        if (args.length == 3) {
+            String[] years = args[2].split("-", 2);
+            fromYear = Integer.parseInt(years[0]);
+            toYear = years.length == 2 ? Integer.parseInt(years[1]) : fromYear;
+        }
+        long opened = System.nanoTime();
+        ResultStore store = new ResultStore(args[0]);
+        long started = System.nanoTime();
+        List<Result> results = args[1].endsWith("*")
+                ? store.getPrefix(args[1].substring(0, args[1].length() - 1), fromYear, toYear)
+                : store.get(args[1], fromYear, toYear);
+        long ended = System.nanoTime();
+        System.out.println("Code;Year;Houses;Note;Year used to calculate");
+        for (Result result : results) {
+            System.out.println(result.getCode() + ";" + result.getYear() + ";" + (result.getHouses() != null ? result.getHouses() : "N/A") + ";"
+                    + (result.getNote() != null ? result.getNote().getState(result.getYearUsedToCalculate()) : "N/A") + ";"
+                    + (result.getYearUsedToCalculate() != 0 ? result.getYearUsedToCalculate() : ""));
+        }
+        // The time is written apart from the results, so the results can be redirected to a file as they are
+        System.err.println("Found " + results.size() + " of " + store.size() + " results in " + TimeUnit.NANOSECONDS.toMicros(ended - started)
+                + " microseconds, after opening the store in " + TimeUnit.NANOSECONDS.toMicros(started - opened) + " microseconds.");
+    }
+
+    /**
+     * Returns the number of results in the store.
+     *
+     * @return long the number of results.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Returns the results of a Link code in a range of years, in the order of their year.
+     *
+     * @param code     String the Link code, E.G. HO1351A.
+     * @param fromYear int the first year of the range.
+     * @param toYear   int the last year of the range.
+     * @return List<Result> the results.
+     */
+    public List<Result> get(String code, int fromYear, int toYear) {
+        List<Result> results = new ArrayList<>();
+        ByteBuffer buffer = data.duplicate();
+        for (int block = findBlock(code, fromYear); block < blockCodes.length; block++) {
+            buffer.position(blockOffsets[block]);
+            for (int i = 0; i < blockSizes[block]; i++) {
+                Result result = readResult(buffer);
+                int order = result.code.compareTo(code);
+                if (order > 0 || (order == 0 && result.year > toYear))
+                    return results;
+                if (order == 0 && result.year >= fromYear)
+                    results.add(result);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Returns the results of the Link codes starting with a prefix in a range of years, in the order of their Link code and year.
+     *
+     * @param prefix   String the start of the Link codes, E.G. HO1351 for HO1351, HO1351A and HO1351B, or an empty prefix for all the Link codes.
+     * @param fromYear int the first year of the range.
+     * @param toYear   int the last year of the range.
+     * @return List<Result> the results.
+     */
+    public List<Result> getPrefix(String prefix, int fromYear, int toYear) {
+        List<Result> results = new ArrayList<>();
+        ByteBuffer buffer = data.duplicate();
+        for (int block = findBlock(prefix, Integer.MIN_VALUE); block < blockCodes.length; block++) {
+            buffer.position(blockOffsets[block]);
+            for (int i = 0; i < blockSizes[block]; i++) {
+                Result result = readResult(buffer);
+                if (result.code.compareTo(prefix) < 0)
+                    continue;
+                if (!result.code.startsWith(prefix))
+                    return results;
+                if (result.year >= fromYear && result.year <= toYear)
+                    results.add(result);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Returns the last block of which the first result does not come after the Link code and year, as the results from there on are sorted.
+     *
+     * @param code String the Link code.
+     * @param year int the year.
+     * @return int the number of the block, or 0 when the first block comes after them.
+     */
+    private int findBlock(String code, int year) {
+        int found = 0;
+        int low = 0;
+        int high = blockCodes.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int order = blockCodes[middle].compareTo(code);
+            if (order == 0)
+                order = Integer.compare(blockYears[middle], year);
+            if (order <= 0) {
+                found = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Returns the results of the store one after the other, in the order of their Link code and year, reading a block at a time.
+     *
+     * @return Iterator<Result> the results.
+     */
+    Iterator<Result> iterator() {
+        ByteBuffer buffer = data.duplicate();
+        return new Iterator<Result>() {
+            private int block = 0;
+            private int read = 0; // The number of results read of the current block
+
+            @Override
+            public boolean hasNext() {
+                while (block < blockSizes.length && read == blockSizes[block]) {
+                    block++;
+                    read = 0;
+                }
+                return block < blockSizes.length;
+            }
+
+            @Override
+            public Result next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                if (read == 0)
+                    buffer.position(blockOffsets[block]);
+                read++;
+                return readResult(buffer);
+            }
+        };
+    }
+
+    /**
+     * Reads a result from a block.
+     *
+     * @param buffer ByteBuffer the file, at the result.
+     * @return Result the result.
+     */
+    private static Result readResult(ByteBuffer buffer) {
+        String code = readString(buffer);
+        int year = buffer.getInt();
+        BigDecimal houses = null;
+        byte scale = buffer.get();
+        if (scale == SCALE_LARGE)
+            houses = new BigDecimal(readString(buffer));
+        else if (scale != SCALE_NULL)
+            houses = BigDecimal.valueOf(buffer.getLong(), scale);
+        byte note = buffer.get();
+        int yearUsedToCalculate = buffer.getInt();
+        return new Result(code, year, houses, note >= 0 ? NoteState.values()[note] : null, yearUsedToCalculate);
+    }
+
+    /**
+     * Reads a string written as its length in UTF-8 bytes followed by the bytes.
+     *
+     * @param buffer ByteBuffer the file, at the string.
+     * @return String the string.
+     */
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The number of houses of a Link code in a year, with the note of how it is calculated.
+     */
+    public static final class Result {
+        private final String code;
+        private final int year;
+        private final BigDecimal houses;
+        private final NoteState note;
+        private final int yearUsedToCalculate;
+
+        /**
+         * Constructor for the Result class.
+         *
+         * @param code                String the Link code.
+         * @param year                int the year.
+         * @param houses              BigDecimal the number of houses, or null when it is N/A.
+         * @param note                NoteState the way the number of houses is calculated, or null when it is N/A.
+         * @param yearUsedToCalculate int the year of which the number of houses is used to calculate it, or 0 when there is none.
+         */
+        private Result(String code, int year, BigDecimal houses, NoteState note, int yearUsedToCalculate) {
+            this.code = code;
+            this.year = year;
+            this.houses = houses;
+            this.note = note;
+            this.yearUsedToCalculate = yearUsedToCalculate;
+        }
+
+        /**
+         * Returns the Link code.
+         *
+         * @return String the Link code.
+         */
+        public String getCode() {
+            return code;
+        }
+
+        /**
+         * Returns the year.
+         *
+         * @return int the year.
+         */
+        public int getYear() {
+            return year;
+        }
+
+        /**
+         * Returns the number of houses as it is in the export.
+         *
+         * @return BigDecimal the number of houses, or null when it is N/A.
+         */
+        public BigDecimal getHouses() {
+            return houses;
+        }
+
+        /**
+         * Returns the way the number of houses is calculated.
+         *
+         * @return NoteState the note, or null when it is N/A.
+         */
+        public NoteState getNote() {
+            return note;
+        }
+
+        /**
+         * Returns the year of which the number of houses is used to calculate it, the year named in the note.
+         *
+         * @return int the year, or 0 when there is none.
+         */
+        public int getYearUsedToCalculate() {
+            return yearUsedToCalculate;
+        }
+    }
+
+    /**
+     * Writes the results in the order of their Link code and year, in blocks followed by the index of the blocks.
+     * The years without a number of houses and a note, N/A in both the export and the notes, are left out.
+     */
+    static final class Writer implements Closeable {
+        private final String path;
+        private final DataOutputStream output;
+        private final List<String> blockCodes = new ArrayList<>(); // Contains the Link code of the first result of every block
+        private final List<int[]> blocks = new ArrayList<>(); // Contains the year, the offset and the number of results of every block
+        private String lastCode; // The Link code of the last result, null before the first
+        private int lastYear;
+        private long results = 0;
+        private boolean finished = false;
+
+        /**
+         * Constructor for the Writer class, which starts the file.
+         *
+         * @param path String the path of the result store.
+         * @throws IOException if the file cannot be written.
+         */
+        Writer(String path) throws IOException {
+            this.path = path;
+            this.output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path), CompressedStreams.CHUNK_SIZE));
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+        }
+
+        /**
+         * Returns the number of results written so far.
+         *
+         * @return long the number of results.
+         */
+        long getResults() {
+            return results;
+        }
+
+        /**
+         * Adds a result of another store, see add.
+         *
+         * @param result Result the result.
+         * @throws IOException if the file cannot be written, or the result comes before the last result.
+         */
+        void add(Result result) throws IOException {
+            add(result.code, result.year, result.houses, result.note, result.yearUsedToCalculate);
+        }
+
+        /**
+         * Adds a result after the results added before, starting a new block when the current block is full.
+         * A result without a number of houses and a note is left out.
+         *
+         * @param code                String the Link code.
+         * @param year                int the year.
+         * @param houses              BigDecimal the number of houses, or null when it is N/A.
+         * @param note                NoteState the way the number of houses is calculated, or null when it is N/A.
+         * @param yearUsedToCalculate int the year of which the number of houses is used to calculate it, ignored without a note.
+         * @throws IOException if the file cannot be written, or the result comes before the last result.
+         */
+        void add(String code, int year, BigDecimal houses, NoteState note, int yearUsedToCalculate) throws IOException {
+            if (houses == null && note == null)
+                return;
+            if (lastCode != null) {
+                int order = code.compareTo(lastCode);
+                if (order < 0 || (order == 0 && year <= lastYear))
+                    throw new IOException("The results are not in the order of Link code and year at " + code + " " + year);
+            }
+            if (output.size() >= MAX_DATA_SIZE)
+                throw new IOException("There are too many results for a result store");
+            if (blocks.isEmpty() || blocks.get(blocks.size() - 1)[2] == BLOCK_SIZE) {
+                blockCodes.add(code);
+                blocks.add(new int[]{year, output.size(), 0});
+            }
+            writeString(code);
+            output.writeInt(year);
+            if (houses == null) {
+                output.writeByte(SCALE_NULL);
+            } else if (houses.unscaledValue().bitLength() < 64 && houses.scale() > SCALE_NULL && houses.scale() < SCALE_LARGE) {
+                output.writeByte(houses.scale());
+                output.writeLong(houses.unscaledValue().longValue());
+            } else {
+                output.writeByte(SCALE_LARGE);
+                writeString(houses.toString());
+            }
+            output.writeByte(note != null ? note.ordinal() : -1);
+            output.writeInt(note != null ? yearUsedToCalculate : 0);
+            blocks.get(blocks.size() - 1)[2]++;
+            lastCode = code;
+            lastYear = year;
+            results++;
+        }
+
+        /**
+         * Writes the index of the blocks and the footer, which completes the file.
+         *
+         * @throws IOException if the file cannot be written.
+         */
+        void finish() throws IOException {
+            long indexOffset = output.size();
+            for (int block = 0; block < blocks.size(); block++) {
+                writeString(blockCodes.get(block));
+                output.writeInt(blocks.get(block)[0]);
+                output.writeLong(blocks.get(block)[1]);
+                output.writeInt(blocks.get(block)[2]);
+            }
+            output.writeLong(indexOffset);
+            output.writeInt(blocks.size());
+            output.writeLong(results);
+            output.writeInt(MAGIC);
+            output.flush();
+            finished = true;
+        }
+
+        /**
+         * Writes a string as its length in UTF-8 bytes followed by the bytes.
+         *
+         * @param value String the string.
+         * @throws IOException if the file cannot be written, or the string is too long.
+         */
+        private void writeString(String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > 0xFFFF)
+                throw new IOException("The Link code is too long for a result store: " + value.substring(0, 100));
+            output.writeShort(bytes.length);
+            output.write(bytes);
+        }
+
+        /**
+         * Closes the file, removing it if it has not been finished, as it would not be readable.
+         *
+         * @throws IOException if the file cannot be closed.
+         */
+        @Override
+        public void close() throws IOException {
+            output.close();
+            if (!finished)
+                Files.deleteIfExists(Paths.get(path));
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package org.iish.dorpen;
+
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.util.*;
+
+/**
+ * The totals of the number of houses at every level of the hierarchy of Link codes, E.G. HO1351 being HO1351A and HO1351B together,
+ * and HO1351A being HO1351AA and HO1351AB together. The parent of a Link code is the Link code without its last character,
+ * down to the root code of 6 characters, as in the hierarchy of the disaggregation.
+ * The totals are added up from the export in one pass: as the Link codes of the export are sorted, the parts of a Link code follow it,
+ * so a Link code is complete once a Link code comes along that is not one of its parts. Only the Link codes on the path
+ * from the root code to the current Link code are kept in memory, and every total is written right after the totals of its parts.
+ */
+final class RollUp {
+
+    /**
+     * A Link code on the path from the root code to the current Link code, with what its parts have added up to so far.
+     */
+    private static final class Node {
+        final String code;
+        final CSVRecord exportRow; // The row of the Link code in the export, null when it is not exported itself
+        final CSVRecord notesRow;
+        final BigDecimal[] sums; // Contains the total of the parts per year, null when no part has a number of houses in that year
+        final int[] partsWithHouses; // Contains the number of parts with a number of houses per year
+        int parts = 0;
+
+        /**
+         * Constructor for the Node class.
+         *
+         * @param code      String the Link code.
+         * @param years     int the number of years.
+         * @param exportRow CSVRecord the row in the export, or null when the Link code is not exported itself.
+         * @param notesRow  CSVRecord the row in the notes, or null when the Link code is not exported itself.
+         */
+        Node(String code, int years, CSVRecord exportRow, CSVRecord notesRow) {
+            this.code = code;
+            this.exportRow = exportRow;
+            this.notesRow = notesRow;
+            this.sums = new BigDecimal[years];
+            this.partsWithHouses = new int[years];
+        }
+    }
+
+    private final List<String> headerRow;
+    private final CSVPrinter exportPrinter;
+    private final CSVPrinter notesPrinter;
+    private final Deque<Node> path = new ArrayDeque<>(); // Contains the Link codes from the current Link code up to its root code
+    private long rows = 0;
+
+    /**
+     * Constructor for the RollUp class.
+     *
+     * @param headerRow     List<String> the header row of the export, the Code column followed by the years.
+     * @param exportPrinter CSVPrinter the printer of the totals.
+     * @param notesPrinter  CSVPrinter the printer of the notes of the totals.
+     */
+    private RollUp(List<String> headerRow, CSVPrinter exportPrinter, CSVPrinter notesPrinter) {
+        this.headerRow = headerRow;
+        this.exportPrinter = exportPrinter;
+        this.notesPrinter = notesPrinter;
+    }
+
+    /**
+     * Writes the totals of every Link code that has parts, in the format of the export and the notes, each compressed with gzip if its path ends with .gz.
+     * The total of a Link code in a year is its own number of houses when it has one, with its own note, as the numbers of its parts are a split of it.
+     * Otherwise it is the sum of the totals of its parts, noted as Totaal, or as Totaal: onvolledig when a part has no number of houses in that year.
+     *
+     * @param exportPath      String the path of the export.
+     * @param notesPath       String the path of the notes.
+     * @param rollUpPath      String the path to which the totals are written.
+     * @param rollUpNotesPath String the path to which the notes of the totals are written.
+     * @return long the number of Link codes of which the totals are written.
+     * @throws IOException if a file cannot be read or written, or the export is not sorted or does not have the same Link codes as the notes.
+     */
+    static long write(String exportPath, String notesPath, String rollUpPath, String rollUpNotesPath) throws IOException {
+        try (CSVParser export = CSVParser.parse(new InputStreamReader(CompressedStreams.open(exportPath)), Disaggregation.csvFormat);
+             CSVParser notes = CSVParser.parse(new InputStreamReader(CompressedStreams.open(notesPath)), Disaggregation.csvFormat);
+             BufferedWriter exportWriter = new BufferedWriter(new OutputStreamWriter(CompressedStreams.create(rollUpPath)));
+             BufferedWriter notesWriter = new BufferedWriter(new OutputStreamWriter(CompressedStreams.create(rollUpNotesPath)))) {
+            List<String> headerRow = new ArrayList<>(export.getHeaderMap().keySet());
+            if (!headerRow.equals(new ArrayList<>(notes.getHeaderMap().keySet())))
+                throw new IOException("The years of " + notesPath + " differ from those of " + exportPath);
+            CSVPrinter exportPrinter = new CSVPrinter(exportWriter, Disaggregation.csvFormat);
+            CSVPrinter notesPrinter = new CSVPrinter(notesWriter, Disaggregation.csvFormat);
+            exportPrinter.printRecord(headerRow);
+            notesPrinter.printRecord(headerRow);
+
+            RollUp rollUp = new RollUp(headerRow, exportPrinter, notesPrinter);
+            Iterator<CSVRecord> notesRows = notes.iterator();
+            String previous = null;
+            for (CSVRecord exportRow : export) {
+                CSVRecord notesRow = notesRows.hasNext() ? notesRows.next() : null;
+                String code = exportRow.get(0) != null ? exportRow.get(0) : "";
+                if (notesRow == null || !code.equals(notesRow.get(0) != null ? notesRow.get(0) : ""))
+                    throw new IOException("The notes of " + exportPath + " do not have the same Link codes as the export at " + code);
+                if (previous != null && code.compareTo(previous) <= 0)
+                    throw new IOException("The export " + exportPath + " is not in the order of its Link codes at " + code);
+                previous = code;
+                rollUp.add(code, exportRow, notesRow);
+            }
+            if (notesRows.hasNext())
+                throw new IOException("The notes of " + exportPath + " have more rows than the export");
+            rollUp.finish();
+            exportPrinter.flush();
+            notesPrinter.flush();
+            return rollUp.rows;
+        }
+    }
+
+    /**
+     * Adds a Link code of the export, after completing the Link codes of which it is not a part,
+     * and opening the Link codes between it and the Link codes it is a part of.
+     *
+     * @param code      String the Link code.
+     * @param exportRow CSVRecord the row in the export.
+     * @param notesRow  CSVRecord the row in the notes.
+     * @throws IOException if a total cannot be written.
+     */
+    private void add(String code, CSVRecord exportRow, CSVRecord notesRow) throws IOException {
+        while (!path.isEmpty() && !code.startsWith(path.peek().code)) {
+            complete(path.pop());
+        }
+        int length = path.isEmpty() ? 6 : path.peek().code.length() + 1;
+        for (; length < code.length(); length++) {
+            path.push(new Node(code.substring(0, length), headerRow.size() - 1, null, null));
+        }
+        path.push(new Node(code, headerRow.size() - 1, exportRow, notesRow));
+    }
+
+    /**
+     * Completes the Link codes that are left, up to their root codes.
+     *
+     * @throws IOException if a total cannot be written.
+     */
+    private void finish() throws IOException {
+        while (!path.isEmpty()) {
+            complete(path.pop());
+        }
+    }
+
+    /**
+     * Writes the totals of a Link code whose parts have all been added, if it has parts, and adds its totals to the Link code it is a part of.
+     *
+     * @param node Node the Link code.
+     * @throws IOException if the totals cannot be written.
+     */
+    private void complete(Node node) throws IOException {
+        Node parent = path.peek();
+        List<String> exportRow = new ArrayList<>();
+        List<String> notesRow = new ArrayList<>();
+        exportRow.add(node.code);
+        notesRow.add(node.code);
+        for (int year = 0; year < node.sums.length; year++) {
+            String houses = node.exportRow != null ? node.exportRow.get(year + 1) : null;
+            BigDecimal total;
+            if (houses != null && !houses.equals("N/A")) {
+                total = new BigDecimal(houses);
+                exportRow.add(houses);
+                notesRow.add(node.notesRow.get(year + 1) != null ? node.notesRow.get(year + 1) : "N/A");
+            } else if (node.partsWithHouses[year] > 0) {
+                total = node.sums[year];
+                exportRow.add(total.compareTo(BigDecimal.ZERO) == 0 ? "0" : total.setScale(3, BigDecimal.ROUND_HALF_EVEN).toString());
+                notesRow.add((node.partsWithHouses[year] == node.parts ? NoteState.ROLL_UP : NoteState.ROLL_UP_PARTIAL).getState(0));
+            } else {
+                total = null;
+                exportRow.add("N/A");
+                notesRow.add("N/A");
+            }
+            if (parent != null && total != null) {
+                parent.sums[year] = parent.sums[year] != null ? parent.sums[year].add(total) : total;
+                parent.partsWithHouses[year]++;
+            }
+        }
+        if (parent != null)
+            parent.parts++;
+        if (node.parts > 0) {
+            exportPrinter.printRecord(exportRow);
+            notesPrinter.printRecord(notesRow);
+            rows++;
+        }
+    }
+}
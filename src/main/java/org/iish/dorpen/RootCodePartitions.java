@@ -0,0 +1,442 @@
+package org.iish.dorpen;
+
+import org.apache.commons.csv.CSVPrinter;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * The low memory mode of a run, which disaggregates the raw data a partition of root codes at a time instead of all at once.
+ * Records only affect each other through their Link codes, and Link codes only those with the same root code, the first 6 characters,
+ * so the root codes that appear together on a row are joined into one partition and the partitions are disaggregated apart.
+ * The first pass reads the raw data to join the root codes, then spills the rows of the raw data and of the square kilometres
+ * sorted by partition to temporary files, see ExternalSort. The second pass loads and pre splits one partition at a time, after which
+ * the partitions are split pass by pass in lockstep, see PartitionLockstep, so the passes, and so the results, are those of a run of all the raw data.
+ * Then every partition is converted to village complexes, of which the rows of the export and the notes are merged back into the order of their Link codes.
+ * The memory used is bounded by the largest partition rather than by the raw data, apart from a string per root code.
+ * The partitions can be spread over shards, of which every run only disaggregates its own, see ShardMerge; the shards run at the same time,
+ * as they exchange the outcome of every pass through the directory they share.
+ * When a result store is written, the note and the year used to calculate of every year are added to the rows of the export,
+ * as the records have them, so the store is written along with the export and the notes, see ResultStore.
+ */
+final class RootCodePartitions {
+
+    private static final long RUN_BYTES = Math.min(32L << 20, Runtime.getRuntime().maxMemory() / 8); // The bytes the rows of a sort may take in memory before they are spilled, at most an eighth of the heap
+    private static final List<String> RAW_HEADER = Arrays.asList("ID", "YEAR", "LINK", "HOUSES", "KM2");
+
+    private final String rawPath;
+    private final String squareKilometresPath;
+    private final MissingValues missingValues = new MissingValues(); // Counts the missing values of all the partitions
+    private final PhaseMetrics metrics = new PhaseMetrics(new RecordStore()); // Measures the passes, the records are counted per partition
+    private final Map<String, String> roots = new HashMap<>(); // Contains the root code each root code is joined to, the smallest root code of a partition to itself
+    private final Set<Integer> years = new TreeSet<>(); // Contains the years of all the raw data
+    private final Log.Logger log = Log.getRoot().quiet(); // Writes the warnings and errors of the runs of the partitions, as there are as many runs as partitions
+    private List<String> squareKilometreHeader = new ArrayList<>();
+    private int rows = 0; // The number of rows of the raw data
+    private int maxPasses = ComplexConvergence.DEFAULT_MAX_PASSES;
+    private long timeBudget = ComplexConvergence.DEFAULT_TIME_BUDGET;
+    private String resultStorePath = null; // The path of the result store, null when none is written
+    private int shard = 1; // The number of the shard of this run, starting at 1
+    private int shards = 1; // The number of shards the partitions are spread over
+    private Path exchangeDirectory = null; // The directory shared by the shards, null when the run is not sharded
+
+    /**
+     * Constructor for the RootCodePartitions class.
+     *
+     * @param rawPath              String the path of the raw data.
+     * @param squareKilometresPath String the path of the square kilometres.
+     */
+    RootCodePartitions(String rawPath, String squareKilometresPath) {
+        this.rawPath = rawPath;
+        this.squareKilometresPath = squareKilometresPath;
+    }
+
+    /**
+     * Returns the counter of the missing values encountered in all the partitions.
+     *
+     * @return MissingValues the counter.
+     */
+    MissingValues getMissingValues() {
+        return missingValues;
+    }
+
+    /**
+     * Returns the measurements of the passes of this run.
+     *
+     * @return PhaseMetrics the measurements.
+     */
+    PhaseMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the budgets of the splitting of a village complex, see Disaggregation.
+     *
+     * @param maxPasses  int the number of passes a village complex may be considered in.
+     * @param timeBudget long the time in nanoseconds the splitting of a village complex may take.
+     */
+    void setConvergenceBudget(int maxPasses, long timeBudget) {
+        this.maxPasses = maxPasses;
+        this.timeBudget = timeBudget;
+    }
+
+    /**
+     * Writes a result store of the village complexes along with the export and the notes.
+     *
+     * @param path String the path to which the result store is written.
+     */
+    void enableResultStore(String path) {
+        resultStorePath = path;
+    }
+
+    /**
+     * Only disaggregates the partitions of a shard. A partition belongs to the shard given by the hash of its smallest root code,
+     * which is the same on every Java virtual machine, so runs of the same raw data on several machines each take their own share.
+     * The shards split their partitions in lockstep, so they have to run at the same time and share the directory given.
+     *
+     * @param shard     int the number of the shard, from 1 up to the number of shards.
+     * @param shards    int the number of shards.
+     * @param directory String the directory the shards share, see ShardMerge.getExchangeDirectory.
+     */
+    void setShard(int shard, int shards, String directory) {
+        if (shards < 1 || shard < 1 || shard > shards)
+            throw new IllegalArgumentException("The shard must be between 1 and the number of shards: " + shard + " of " + shards);
+        this.shard = shard;
+        this.shards = shards;
+        this.exchangeDirectory = Paths.get(directory);
+    }
+
+    /**
+     * Returns a boolean which states whether a partition belongs to the shard of this run.
+     *
+     * @param partition String the smallest root code of the partition.
+     * @return a boolean which states whether the partition is disaggregated by this run.
+     */
+    private boolean isInShard(String partition) {
+        return Math.floorMod(partition.hashCode(), shards) == shard - 1;
+    }
+
+    /**
+     * Disaggregates the raw data partition by partition and writes the export and the notes, in the same order as a run of all the raw data.
+     *
+     * The result store is written as well when it is enabled, see enableResultStore.
+     *
+     * @param exportPath String the path to which the export is exported
+     * @param notesPath  String the path to which the notes are exported
+     * @throws Exception if the data is not valid or a file cannot be read or written.
+     */
+    void export(String exportPath, String notesPath) throws Exception {
+        metrics.enterPhase("joinRootCodes");
+        joinRootCodes();
+        long partitions = roots.entrySet().stream().filter(root -> root.getKey().equals(root.getValue())).count();
+        Log.info("Joined the " + roots.size() + " root codes of " + rows + " rows into " + partitions + " partitions.");
+        if (shards > 1) {
+            long inShard = roots.entrySet().stream().filter(root -> root.getKey().equals(root.getValue()) && isInShard(root.getKey())).count();
+            Log.info("Disaggregating the " + inShard + " partitions of shard " + shard + " of " + shards + ".");
+        }
+
+        try (ExternalSort raw = new ExternalSort("raw", RUN_BYTES);
+             ExternalSort squareKilometres = new ExternalSort("km2", RUN_BYTES);
+             ExternalSort output = new ExternalSort("export", RUN_BYTES);
+             PartitionLockstep lockstep = new PartitionLockstep(exchangeDirectory, shard, shards, years, rows + 2, missingValues, metrics, log, maxPasses, timeBudget)) {
+            try {
+                metrics.enterPhase("spillPartitions");
+                spill(raw, squareKilometres);
+                Log.info("Spilled the raw data in " + raw.getRuns() + " runs and the square kilometres in " + squareKilometres.getRuns() + " runs.");
+
+                metrics.enterPhase("loadPartitions");
+                loadPartitions(raw, squareKilometres, lockstep);
+
+                metrics.enterPhase("splitRecords");
+                missingValues.enterPhase(MissingValues.Phase.SPLIT);
+                lockstep.split();
+
+                metrics.enterPhase("convertPartitions");
+                lockstep.convert((code, exportRow, notesRow, notes, yearsUsedToCalculate) -> add(output, code, exportRow, notesRow, notes, yearsUsedToCalculate));
+            } catch (Exception e) {
+                lockstep.fail();
+                throw e;
+            }
+
+            metrics.enterPhase("writeExport");
+            write(output, exportPath, notesPath);
+        }
+        metrics.finish();
+    }
+
+    /**
+     * Reads the raw data to join the root codes that appear together on a row and to collect the years.
+     *
+     * @throws Exception if the raw data cannot be read.
+     */
+    private void joinRootCodes() throws Exception {
+        RowSource.read(rawPath, header -> {
+        }, record -> {
+            years.add(Integer.valueOf(record.get("YEAR")));
+            List<String> rowRoots = getRoots(record.get("LINK"));
+            for (String root : rowRoots) {
+                join(rowRoots.get(0), root);
+            }
+            rows++;
+        });
+    }
+
+    /**
+     * Reads the raw data and the square kilometres again, adding every row of the partitions of the shard to the sort of its partition.
+     * The rows of the raw data are numbered as in a run of all the raw data, and the rows of the square kilometres
+     * of root codes that are not in the raw data are left out, apart from counting their missing values in the shard of their root code.
+     *
+     * @param raw              ExternalSort the sort of the rows of the raw data.
+     * @param squareKilometres ExternalSort the sort of the rows of the square kilometres.
+     * @throws Exception if a file cannot be read or a sort cannot be spilled.
+     */
+    private void spill(ExternalSort raw, ExternalSort squareKilometres) throws Exception {
+        int[] row = {0}; // The number of the row of the raw data
+        try {
+            RowSource.read(rawPath, header -> {
+            }, record -> {
+                String link = record.get("LINK");
+                String id = Integer.toString(row[0]++ + 2);
+                String partition = find(getRoots(link).get(0));
+                if (isInShard(partition))
+                    add(raw, partition, new String[]{id, record.get("YEAR"), link, record.get("HOUSES"), record.get("KM2")});
+            });
+            missingValues.enterPhase(MissingValues.Phase.LOAD);
+            RowSource.read(squareKilometresPath, header -> squareKilometreHeader = header, record -> {
+                String code = record.get("SHORT-ID");
+                String root = code != null ? getRoot(code) : "";
+                String partition = roots.containsKey(root) ? find(root) : root;
+                if (!isInShard(partition))
+                    return;
+                if (code != null && roots.containsKey(root)) {
+                    String[] values = new String[squareKilometreHeader.size()];
+                    for (int i = 0; i < values.length; i++) {
+                        values[i] = record.get(squareKilometreHeader.get(i));
+                    }
+                    add(squareKilometres, partition, values);
+                } else {
+                    for (String column : squareKilometreHeader) {
+                        if (!column.equals("SHORT-ID") && record.get(column) == null)
+                            missingValues.count(MissingValues.Kind.KM2);
+                    }
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Adds a row to a sort, numbered in the order it is added.
+     *
+     * @param sort      ExternalSort the sort.
+     * @param partition String the smallest root code of the partition of the row.
+     * @param values    String[] the values of the row.
+     */
+    private static void add(ExternalSort sort, String partition, String[] values) {
+        try {
+            sort.add(partition, sort.size(), values);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Loads and pre splits the partitions one by one in the order of their smallest root code, see PartitionLockstep.add.
+     *
+     * @param raw              ExternalSort the sort of the rows of the raw data.
+     * @param squareKilometres ExternalSort the sort of the rows of the square kilometres.
+     * @param lockstep         PartitionLockstep the lockstep the partitions are split in.
+     * @throws Exception if the data is not valid or a file cannot be read or written.
+     */
+    private void loadPartitions(ExternalSort raw, ExternalSort squareKilometres, PartitionLockstep lockstep) throws Exception {
+        Path rawFile = Files.createTempFile("emhcd-partition-raw", ".csv");
+        Path squareKilometresFile = Files.createTempFile("emhcd-partition-km2", ".csv");
+        Log.Progress progress = Log.progress("Loading partitions", rows);
+        try (ExternalSort.Merge rawRows = raw.merge();
+             ExternalSort.Merge squareKilometreRows = squareKilometres.merge()) {
+            List<String[]> partitionRows = new ArrayList<>();
+            List<String[]> partitionSquareKilometres = new ArrayList<>();
+            ExternalSort.Row row = rawRows.next();
+            ExternalSort.Row squareKilometreRow = squareKilometreRows.next();
+            while (row != null) {
+                String partition = row.key;
+                while (row != null && row.key.equals(partition)) {
+                    partitionRows.add(row.values);
+                    progress.step();
+                    row = rawRows.next();
+                }
+                while (squareKilometreRow != null && squareKilometreRow.key.compareTo(partition) <= 0) {
+                    partitionSquareKilometres.add(squareKilometreRow.values);
+                    squareKilometreRow = squareKilometreRows.next();
+                }
+                writeCsv(rawFile, RAW_HEADER, partitionRows);
+                writeCsv(squareKilometresFile, squareKilometreHeader, partitionSquareKilometres);
+                lockstep.add(partition, rawFile, squareKilometresFile);
+                partitionRows.clear();
+                partitionSquareKilometres.clear();
+            }
+        } finally {
+            Files.deleteIfExists(rawFile);
+            Files.deleteIfExists(squareKilometresFile);
+        }
+        progress.finish();
+    }
+
+    /**
+     * Adds the rows of a village complex to the output, followed by the name of the note and the year used to calculate of every year
+     * when a result store is written.
+     *
+     * @param output               ExternalSort the sort of the rows of the export and the notes, by Link code.
+     * @param code                 String the Link code of the village complex.
+     * @param exportRow            List<String> the row in the export.
+     * @param notesRow             List<String> the row in the notes.
+     * @param notes                NoteState[] the note per year as the records have it, null for the years without a note.
+     * @param yearsUsedToCalculate int[] the year used to calculate per year, as named in the note.
+     * @throws IOException if the output cannot be spilled.
+     */
+    private void add(ExternalSort output, String code, List<String> exportRow, List<String> notesRow, NoteState[] notes, int[] yearsUsedToCalculate) throws IOException {
+        List<String> values = new ArrayList<>(exportRow);
+        values.addAll(notesRow);
+        if (resultStorePath != null) {
+            for (int i = 0; i < notes.length; i++) {
+                values.add(notes[i] != null ? notes[i].name() : null);
+                values.add(Integer.toString(yearsUsedToCalculate[i]));
+            }
+        }
+        output.add(code, output.size(), values.toArray(new String[0]));
+    }
+
+    /**
+     * Writes the rows of the output, merged in the order of their Link codes, to the export and the notes,
+     * each compressed with gzip if its path ends with .gz, and to the result store when it is enabled.
+     *
+     * @param output     ExternalSort the sort of the rows of the export and the notes, by Link code.
+     * @param exportPath String the path to which the export is exported
+     * @param notesPath  String the path to which the notes are exported
+     * @throws IOException if the output cannot be read or the CSV files cannot be written.
+     */
+    private void write(ExternalSort output, String exportPath, String notesPath) throws IOException {
+        Log.info("Writing data to " + exportPath);
+        Log.info("Writing data to " + notesPath);
+        List<String> headerRow = Disaggregation.getHeaderRow(years);
+        try (ExternalSort.Merge rows = output.merge();
+             BufferedWriter exportWriter = new BufferedWriter(new OutputStreamWriter(CompressedStreams.create(exportPath)));
+             BufferedWriter notesWriter = new BufferedWriter(new OutputStreamWriter(CompressedStreams.create(notesPath)));
+             ResultStore.Writer store = resultStorePath != null ? new ResultStore.Writer(resultStorePath) : null) {
+            if (store != null)
+                Log.info("Writing the result store to " + resultStorePath);
+            CSVPrinter exportPrinter = new CSVPrinter(exportWriter, Disaggregation.csvFormat);
+            CSVPrinter notesPrinter = new CSVPrinter(notesWriter, Disaggregation.csvFormat);
+            exportPrinter.printRecord(headerRow);
+            notesPrinter.printRecord(headerRow);
+            for (ExternalSort.Row row = rows.next(); row != null; row = rows.next()) {
+                List<String> values = Arrays.asList(row.values);
+                exportPrinter.printRecord(values.subList(0, headerRow.size()));
+                notesPrinter.printRecord(values.subList(headerRow.size(), 2 * headerRow.size()));
+                if (store != null) {
+                    for (int i = 1; i < headerRow.size(); i++) {
+                        String houses = values.get(i);
+                        String note = values.get(2 * headerRow.size() + 2 * (i - 1));
+                        store.add(values.get(0), Integer.parseInt(headerRow.get(i)), houses.equals("N/A") ? null : new BigDecimal(houses),
+                                note != null ? NoteState.valueOf(note) : null, Integer.parseInt(values.get(2 * headerRow.size() + 2 * i - 1)));
+                    }
+                }
+            }
+            exportPrinter.flush();
+            notesPrinter.flush();
+            if (store != null) {
+                store.finish();
+                Log.info("Wrote " + store.getResults() + " results to the result store.");
+            }
+        }
+        Log.info("Wrote " + output.size() + " village complexes.");
+    }
+
+    /**
+     * Writes rows to a temporary CSV file in UTF-8, in the format of the raw data, of which the empty values are read back as null.
+     *
+     * @param path   Path the temporary file.
+     * @param header List<String> the header row.
+     * @param rows   List<String[]> the rows.
+     * @throws IOException if the file cannot be written.
+     */
+    private static void writeCsv(Path path, List<String> header, List<String[]> rows) throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(path), StandardCharsets.UTF_8))) {
+            CSVPrinter csvPrinter = new CSVPrinter(writer, Disaggregation.csvFormat);
+            csvPrinter.printRecord(header);
+            for (String[] row : rows) {
+                csvPrinter.printRecord((Object[]) row);
+            }
+            csvPrinter.flush();
+        }
+    }
+
+    /**
+     * Returns the root codes of the Link codes of a row, the Link codes being separated by a dash.
+     *
+     * @param link String the Link codes of the row, E.G. HO0001A-HO0002, or null when there are none.
+     * @return List<String> the root code of every Link code, E.G. HO0001 and HO0002, or an empty root code when there are none.
+     */
+    private static List<String> getRoots(String link) {
+        if (link == null)
+            return Collections.singletonList("");
+        List<String> rowRoots = new ArrayList<>();
+        for (String code : link.split("-")) {
+            rowRoots.add(getRoot(code));
+        }
+        return rowRoots;
+    }
+
+    /**
+     * Returns the root code of a Link code, its first 6 characters.
+     *
+     * @param code String the Link code, E.G. HO0001AB.
+     * @return String the root code, E.G. HO0001.
+     */
+    private static String getRoot(String code) {
+        return code.length() > 6 ? code.substring(0, 6) : code;
+    }
+
+    /**
+     * Returns the smallest root code of the partition of a root code, adding the root code as a partition of its own when it is new.
+     * The root codes passed on the way are joined to the smallest one directly, so the next find is shorter.
+     *
+     * @param root String the root code.
+     * @return String the smallest root code of the partition.
+     */
+    private String find(String root) {
+        String smallest = root;
+        String parent = roots.putIfAbsent(root, root);
+        while (parent != null && !parent.equals(smallest)) {
+            smallest = parent;
+            parent = roots.get(smallest);
+        }
+        String current = root;
+        while (!current.equals(smallest)) {
+            current = roots.put(current, smallest);
+        }
+        return smallest;
+    }
+
+    /**
+     * Joins the partitions of two root codes, the larger smallest root code being joined to the smaller one.
+     *
+     * @param first  String the first root code.
+     * @param second String the second root code.
+     */
+    private void join(String first, String second) {
+        String firstSmallest = find(first);
+        String secondSmallest = find(second);
+        int order = firstSmallest.compareTo(secondSmallest);
+        if (order < 0)
+            roots.put(secondSmallest, firstSmallest);
+        else if (order > 0)
+            roots.put(firstSmallest, secondSmallest);
+    }
+}
@@ -0,0 +1,228 @@
+package org.iish.dorpen;
+
+import org.apache.commons.csv.CSVParser;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.SAXHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Reads the rows of the raw data or the square kilometres, from a CSV file or from the first sheet of an XLSX workbook.
+ * The workbook is read with the event API of POI: the rows of the sheet are handed over one by one while the XML is parsed,
+ * so the sheet is never held in memory as a whole, only the strings shared by its cells are.
+ * Empty cells are null, as they are in the CSV files, and numbers are given as they are stored rather than as they are shown in Excel.
+ */
+final class RowSource {
+
+    /**
+     * A row of the file, of which the values are found by the name of their column in the header.
+     */
+    interface Row {
+        /**
+         * Returns the value of a column.
+         *
+         * @param column String the name of the column in the header, E.G. YEAR.
+         * @return String the value, or null when the cell is empty.
+         */
+        String get(String column);
+    }
+
+    /**
+     * Constructor for the RowSource class, which only reads files.
+     */
+    private RowSource() {
+    }
+
+    /**
+     * Returns a boolean which states whether the file is an XLSX workbook rather than a CSV file.
+     *
+     * @param path String the path of the file.
+     * @return a boolean which states whether the file is an XLSX workbook.
+     */
+    static boolean isWorkbook(String path) {
+        return path.toLowerCase(Locale.ROOT).endsWith(".xlsx");
+    }
+
+    /**
+     * Reads the file, handing over the header first and then every row after it.
+     *
+     * @param path   String the path of the CSV file or XLSX workbook.
+     * @param header Consumer<List<String>> receives the names of the columns.
+     * @param rows   Consumer<Row> receives the rows after the header.
+     * @throws Exception if the file cannot be read.
+     */
+    static void read(String path, Consumer<List<String>> header, Consumer<Row> rows) throws Exception {
+        if (CompressedStreams.isGzip(path) && isWorkbook(path.substring(0, path.length() - 3)))
+            throw new IOException("An XLSX workbook is compressed already and cannot be read compressed with gzip: " + path);
+        if (isWorkbook(path))
+            readWorkbook(path, header, rows);
+        else
+            readCsv(path, header, rows);
+    }
+
+    /**
+     * Reads a CSV file, separated by semicolons with the header on the first line, inflating it if it is compressed with gzip.
+     *
+     * @param path   String the path of the CSV file, E.G. raw.csv or raw.csv.gz.
+     * @param header Consumer<List<String>> receives the names of the columns.
+     * @param rows   Consumer<Row> receives the rows after the header.
+     * @throws IOException if the file cannot be read.
+     */
+    private static void readCsv(String path, Consumer<List<String>> header, Consumer<Row> rows) throws IOException {
+        try (CSVParser parser = CSVParser.parse(new InputStreamReader(CompressedStreams.open(path), StandardCharsets.UTF_8), Disaggregation.csvFormat)) {
+            header.accept(new ArrayList<>(parser.getHeaderMap().keySet()));
+            parser.forEach(record -> rows.accept(record::get));
+        }
+    }
+
+    /**
+     * Reads the first sheet of an XLSX workbook, of which the first row that is not empty is the header.
+     *
+     * @param path   String the path of the XLSX workbook.
+     * @param header Consumer<List<String>> receives the names of the columns.
+     * @param rows   Consumer<Row> receives the rows after the header.
+     * @throws Exception if the workbook cannot be read.
+     */
+    private static void readWorkbook(String path, Consumer<List<String>> header, Consumer<Row> rows) throws Exception {
+        try (OPCPackage workbook = OPCPackage.open(path, PackageAccess.READ)) {
+            XSSFReader reader = new XSSFReader(workbook);
+            Iterator<InputStream> sheets = reader.getSheetsData();
+            if (!sheets.hasNext())
+                throw new IOException("The workbook has no sheets: " + path);
+            XMLReader parser = SAXHelper.newXMLReader();
+            parser.setContentHandler(new XSSFSheetXMLHandler(reader.getStylesTable(), new ReadOnlySharedStringsTable(workbook),
+                    new SheetRows(header, rows), new StoredValueFormatter(), false));
+            try (InputStream sheet = sheets.next()) {
+                parser.parse(new InputSource(sheet));
+            }
+        }
+    }
+
+    /**
+     * Collects the cells of a sheet into rows and hands them over once a row ends.
+     */
+    private static final class SheetRows implements XSSFSheetXMLHandler.SheetContentsHandler {
+        private final Consumer<List<String>> header;
+        private final Consumer<Row> rows;
+        private final Map<String, Integer> columns = new HashMap<>(); // Contains the index of each column of the header by its name
+        private String[] values = new String[0]; // Contains the values of the current row by the index of their column
+        private boolean empty = true;
+
+        /**
+         * Constructor for the SheetRows class.
+         *
+         * @param header Consumer<List<String>> receives the names of the columns.
+         * @param rows   Consumer<Row> receives the rows after the header.
+         */
+        private SheetRows(Consumer<List<String>> header, Consumer<Row> rows) {
+            this.header = header;
+            this.rows = rows;
+        }
+
+        /**
+         * Starts a row with every value empty.
+         *
+         * @param rowNum int the number of the row in the sheet.
+         */
+        @Override
+        public void startRow(int rowNum) {
+            Arrays.fill(values, null);
+            empty = true;
+        }
+
+        /**
+         * Keeps the value of a cell that is not empty, the first row that is not empty being the header.
+         *
+         * @param cellReference  String the reference of the cell, E.G. B12.
+         * @param formattedValue String the value of the cell.
+         * @param comment        XSSFComment the comment of the cell, not used.
+         */
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            if (formattedValue == null || formattedValue.isEmpty())
+                return;
+            int column = new CellReference(cellReference).getCol();
+            if (columns.isEmpty() && column >= values.length)
+                values = Arrays.copyOf(values, column + 1);
+            if (column < values.length) {
+                values[column] = formattedValue;
+                empty = false;
+            }
+        }
+
+        /**
+         * Hands over the row, or takes it as the header when there is none yet. Empty rows are skipped, as empty lines are in the CSV files.
+         *
+         * @param rowNum int the number of the row in the sheet.
+         */
+        @Override
+        public void endRow(int rowNum) {
+            if (empty)
+                return;
+            if (columns.isEmpty()) {
+                List<String> names = new ArrayList<>();
+                for (int i = 0; i < values.length; i++) {
+                    if (values[i] != null) {
+                        columns.put(values[i], i);
+                        names.add(values[i]);
+                    }
+                }
+                header.accept(names);
+                return;
+            }
+            String[] row = values.clone();
+            rows.accept(column -> {
+                Integer index = columns.get(column);
+                if (index == null)
+                    throw new IllegalArgumentException("Mapping for " + column + " not found, expected one of " + columns.keySet());
+                return row[index];
+            });
+        }
+
+        /**
+         * Ignores the headers and footers of the sheet.
+         *
+         * @param text     String the text of the header or footer.
+         * @param isHeader boolean which states whether it is a header.
+         * @param tagName  String the kind of header or footer.
+         */
+        @Override
+        public void headerFooter(String text, boolean isHeader, String tagName) {
+        }
+    }
+
+    /**
+     * Gives numbers as they are stored, E.G. 12.4549 for a number shown as 12.45 or 1840 for a year, instead of in the format of their cell.
+     */
+    private static final class StoredValueFormatter extends DataFormatter {
+
+        /**
+         * Returns the number as stored, in its shortest form without an exponent.
+         *
+         * @param value        double the number.
+         * @param formatIndex  int the index of the format of the cell, not used.
+         * @param formatString String the format of the cell, not used.
+         * @return String the number.
+         */
+        @Override
+        public String formatRawCellContents(double value, int formatIndex, String formatString) {
+            BigDecimal number = new BigDecimal(Double.toString(value)).stripTrailingZeros();
+            return number.scale() < 0 ? number.setScale(0).toPlainString() : number.toPlainString();
+        }
+    }
+}
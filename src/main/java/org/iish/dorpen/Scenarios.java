@@ -0,0 +1,281 @@
+package org.iish.dorpen;
+
+import org.apache.commons.csv.CSVPrinter;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Runs of the same raw data with several versions of the square kilometres, E.G. to see what a newer database of square kilometres changes.
+ * The raw data is parsed once and shared by the runs, see RawData, and every run disaggregates on an engine of its own,
+ * as many at a time as there are processors, so the memory used grows with the number of processors rather than the number of scenarios.
+ * Once all the runs are done, their exports and notes are compared per Link code and year in a diff report,
+ * with a row for every Link code and year of which the number of houses or the note is not the same in every scenario.
+ */
+final class Scenarios {
+
+    private final String rawPath;
+    private final List<String> squareKilometresPaths;
+    private final List<MissingValues> missingValues = new ArrayList<>(); // Contains the counter of the missing values of every scenario
+    private int maxPasses = ComplexConvergence.DEFAULT_MAX_PASSES;
+    private long timeBudget = ComplexConvergence.DEFAULT_TIME_BUDGET;
+
+    /**
+     * Constructor for the Scenarios class.
+     *
+     * @param rawPath               String the path of the raw data.
+     * @param squareKilometresPaths List<String> the paths of the versions of the square kilometres, the first being the one the others are compared to.
+     */
+    Scenarios(String rawPath, List<String> squareKilometresPaths) {
+        this.rawPath = rawPath;
+        this.squareKilometresPaths = squareKilometresPaths;
+        for (int i = 0; i < squareKilometresPaths.size(); i++) {
+            missingValues.add(new MissingValues());
+        }
+    }
+
+    /**
+     * Returns the counter of the missing values encountered in a scenario.
+     *
+     * @param scenario int the index of the scenario, starting at 0.
+     * @return MissingValues the counter.
+     */
+    MissingValues getMissingValues(int scenario) {
+        return missingValues.get(scenario);
+    }
+
+    /**
+     * Sets the budgets of the splitting of a village complex, see Disaggregation.
+     *
+     * @param maxPasses  int the number of passes a village complex may be considered in.
+     * @param timeBudget long the time in nanoseconds the splitting of a village complex may take.
+     */
+    void setConvergenceBudget(int maxPasses, long timeBudget) {
+        this.maxPasses = maxPasses;
+        this.timeBudget = timeBudget;
+    }
+
+    /**
+     * Disaggregates every scenario and writes its export, notes and metrics, after which the diff report of the scenarios is written.
+     *
+     * @param exportPaths  List<String> the paths to which the exports are exported, by scenario.
+     * @param notesPaths   List<String> the paths to which the notes are exported, by scenario.
+     * @param metricsPaths List<String> the paths to which the metrics are written, by scenario.
+     * @param diffPath     String the path to which the diff report is written.
+     * @throws Exception if the data is not valid or a file cannot be read or written.
+     */
+    void export(List<String> exportPaths, List<String> notesPaths, List<String> metricsPaths, String diffPath) throws Exception {
+        Log.info("Parsing the raw data once for the " + squareKilometresPaths.size() + " scenarios.");
+        RawData rawData = RawData.read(rawPath);
+        Log.info("Parsed " + rawData.getRows().size() + " rows of the raw data.");
+
+        int threads = Math.min(Runtime.getRuntime().availableProcessors(), squareKilometresPaths.size());
+        for (int i = 0; i < squareKilometresPaths.size(); i++) {
+            Log.info("Scenario " + (i + 1) + " uses the square kilometres of " + squareKilometresPaths.get(i) + " and is exported to " + exportPaths.get(i));
+        }
+        Log.info("Disaggregating the scenarios " + threads + " at a time.");
+        // The engines write no progress of their own when they run at the same time, as their lines would be mixed up
+        Log.Logger log = threads > 1 ? Log.getRoot().quiet() : Log.getRoot();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<FutureTask<Void>> tasks = new ArrayList<>();
+            for (int i = 0; i < squareKilometresPaths.size(); i++) {
+                int scenario = i;
+                FutureTask<Void> task = new FutureTask<>(() -> {
+                    disaggregate(scenario, rawData, log, exportPaths.get(scenario), notesPaths.get(scenario), metricsPaths.get(scenario));
+                    return null;
+                });
+                tasks.add(task);
+                pool.execute(task);
+            }
+            for (FutureTask<Void> task : tasks) {
+                Disaggregation.await(task);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        Log.info("Disaggregated the " + squareKilometresPaths.size() + " scenarios.");
+
+        Log.info("Writing the differences between the scenarios to " + diffPath);
+        writeDiff(exportPaths, notesPaths, diffPath);
+    }
+
+    /**
+     * Disaggregates a scenario on an engine of its own and writes its export, notes and metrics.
+     *
+     * @param scenario    int the index of the scenario, starting at 0.
+     * @param rawData     RawData the parsed rows of the raw data, shared by the scenarios.
+     * @param log         Log.Logger the logger of the engine, quiet when the scenarios run at the same time.
+     * @param exportPath  String the path to which the export is exported
+     * @param notesPath   String the path to which the notes are exported
+     * @param metricsPath String the path to which the metrics are written
+     * @throws Exception if the data is not valid or a file cannot be read or written.
+     */
+    private void disaggregate(int scenario, RawData rawData, Log.Logger log, String exportPath, String notesPath, String metricsPath) throws Exception {
+        MissingValues missing = missingValues.get(scenario);
+        Disaggregation disaggregation = new Disaggregation(missing);
+        PhaseMetrics metrics = disaggregation.getMetrics();
+        disaggregation.setConvergenceBudget(maxPasses, timeBudget);
+        disaggregation.setLogger(log);
+
+        missing.enterPhase(MissingValues.Phase.LOAD);
+        metrics.enterPhase("loadInputs");
+        disaggregation.loadSquareKilometres(squareKilometresPaths.get(scenario));
+        disaggregation.loadData(rawData);
+        missing.enterPhase(MissingValues.Phase.UPDATE_LINKS);
+        metrics.enterPhase("updateLinks");
+        disaggregation.updateLinks();
+        missing.enterPhase(MissingValues.Phase.PRE_SPLIT);
+        metrics.enterPhase("preSplitTheRecords");
+        disaggregation.preSplitTheRecords();
+        missing.enterPhase(MissingValues.Phase.SPLIT);
+        disaggregation.export(exportPath, notesPath);
+        metrics.write(metricsPath);
+    }
+
+    /**
+     * Writes a row for every Link code and year of which the number of houses or the note differs between the scenarios,
+     * with the number of houses and the note of every scenario, and the change of the number of houses compared to the first scenario.
+     * A Link code that is not in the export of a scenario is left empty for that scenario, as the versions of the square kilometres
+     * may split the houses over other Link codes.
+     *
+     * @param exportPaths List<String> the paths of the exports, by scenario.
+     * @param notesPaths  List<String> the paths of the notes, by scenario.
+     * @param diffPath    String the path to which the diff report is written, compressed with gzip if it ends with .gz.
+     * @throws IOException if a file cannot be read or written.
+     */
+    private void writeDiff(List<String> exportPaths, List<String> notesPaths, String diffPath) throws IOException {
+        int scenarios = exportPaths.size();
+        List<ShardMerge.Shard> exports = new ArrayList<>();
+        long[] differences = new long[scenarios]; // Contains the number of Link codes and years that differ from the first scenario, by scenario
+        long rows = 0;
+        try {
+            for (int i = 0; i < scenarios; i++) {
+                exports.add(new ShardMerge.Shard(i, exportPaths.get(i), notesPaths.get(i)));
+            }
+            List<String> headerRow = exports.get(0).headerRow;
+            for (ShardMerge.Shard export : exports) {
+                if (!export.headerRow.equals(headerRow))
+                    throw new IOException("The years of the scenarios differ, while they are of the same raw data");
+            }
+
+            // Contains every export that has rows left, the export with the first Link code at the head
+            PriorityQueue<ShardMerge.Shard> heads = new PriorityQueue<>(Comparator.<ShardMerge.Shard, String>comparing(export -> export.code).thenComparingInt(export -> export.index));
+            for (ShardMerge.Shard export : exports) {
+                if (export.advance())
+                    heads.add(export);
+            }
+            try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(CompressedStreams.create(diffPath)))) {
+                CSVPrinter csvPrinter = new CSVPrinter(writer, Disaggregation.csvFormat);
+                csvPrinter.printRecord(getDiffHeaderRow());
+                ShardMerge.Shard[] current = new ShardMerge.Shard[scenarios]; // Contains the export of every scenario that has the current Link code
+                while (!heads.isEmpty()) {
+                    String code = heads.peek().code;
+                    Arrays.fill(current, null);
+                    while (!heads.isEmpty() && heads.peek().code.equals(code)) {
+                        ShardMerge.Shard export = heads.poll();
+                        current[export.index] = export;
+                    }
+                    for (int column = 1; column < headerRow.size(); column++) {
+                        List<String> diffRow = getDiffRow(code, headerRow.get(column), current, column, differences);
+                        if (diffRow != null) {
+                            csvPrinter.printRecord(diffRow);
+                            rows++;
+                        }
+                    }
+                    for (ShardMerge.Shard export : current) {
+                        if (export != null && export.advance())
+                            heads.add(export);
+                    }
+                }
+                csvPrinter.flush();
+            }
+        } finally {
+            for (ShardMerge.Shard export : exports) {
+                export.close();
+            }
+        }
+        Log.info("Wrote " + rows + " Link codes and years that differ between the scenarios.");
+        for (int i = 1; i < scenarios; i++) {
+            Log.info("Scenario " + (i + 1) + " differs from scenario 1 in " + differences[i] + " Link codes and years.");
+        }
+    }
+
+    /**
+     * Returns the header row of the diff report: the Link code and the year, then the number of houses and the note of every scenario,
+     * and the change of the number of houses of every scenario after the first.
+     *
+     * @return List<String> the header row.
+     */
+    private List<String> getDiffHeaderRow() {
+        List<String> headerRow = new ArrayList<>(Arrays.asList("Code", "Year"));
+        for (int i = 0; i < squareKilometresPaths.size(); i++) {
+            headerRow.add("Houses " + getName(i));
+        }
+        for (int i = 0; i < squareKilometresPaths.size(); i++) {
+            headerRow.add("Note " + getName(i));
+        }
+        for (int i = 1; i < squareKilometresPaths.size(); i++) {
+            headerRow.add("Change " + getName(i));
+        }
+        return headerRow;
+    }
+
+    /**
+     * Returns the name of a scenario in the diff report, its number and the file name of its square kilometres.
+     *
+     * @param scenario int the index of the scenario, starting at 0.
+     * @return String the name, E.G. 2 (km2 2018-05-30.csv).
+     */
+    private String getName(int scenario) {
+        return (scenario + 1) + " (" + new File(squareKilometresPaths.get(scenario)).getName() + ")";
+    }
+
+    /**
+     * Returns the row of the diff report of a Link code in a year, counting the scenarios that differ from the first one.
+     *
+     * @param code        String the Link code.
+     * @param year        String the year.
+     * @param current     ShardMerge.Shard[] the export of every scenario at the Link code, null for the scenarios without it.
+     * @param column      int the column of the year in the export and the notes.
+     * @param differences long[] the number of Link codes and years that differ from the first scenario, by scenario.
+     * @return List<String> the row, or null when the number of houses and the note are the same in every scenario.
+     */
+    private static List<String> getDiffRow(String code, String year, ShardMerge.Shard[] current, int column, long[] differences) {
+        String[] houses = new String[current.length];
+        String[] notes = new String[current.length];
+        boolean differs = false;
+        for (int i = 0; i < current.length; i++) {
+            houses[i] = current[i] != null ? current[i].exportRow.get(column) : null;
+            notes[i] = current[i] != null ? current[i].notesRow.get(column) : null;
+            if (i > 0 && (!Objects.equals(houses[i], houses[0]) || !Objects.equals(notes[i], notes[0]))) {
+                differs = true;
+                differences[i]++;
+            }
+        }
+        if (!differs)
+            return null;
+        List<String> diffRow = new ArrayList<>(Arrays.asList(code, year));
+        diffRow.addAll(Arrays.asList(houses));
+        diffRow.addAll(Arrays.asList(notes));
+        for (int i = 1; i < current.length; i++) {
+            boolean numbers = isNumber(houses[0]) && isNumber(houses[i]);
+            diffRow.add(numbers ? new BigDecimal(houses[i]).subtract(new BigDecimal(houses[0])).toString() : null);
+        }
+        return diffRow;
+    }
+
+    /**
+     * Returns a boolean which states whether a number of houses of the export is a number rather than N/A or missing.
+     *
+     * @param houses String the number of houses, or null when the Link code is not in the export.
+     * @return a boolean which states whether it is a number.
+     */
+    private static boolean isNumber(String houses) {
+        return houses != null && !houses.equals("N/A");
+    }
+}
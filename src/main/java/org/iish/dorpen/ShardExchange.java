@@ -0,0 +1,142 @@
+package org.iish.dorpen;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Exchanges the values and files of the shards of a run through a directory they share, as the partitions of all the shards
+ * are split in lockstep, see PartitionLockstep. The file of a shard for a step is written next to its place and then moved there,
+ * after which the shard waits until the files of all the shards for the step are there. A shard that fails leaves a file saying so,
+ * on which the other shards stop waiting. A run of a single shard exchanges its files with itself.
+ * The files stay in the directory until the shards are merged, see ShardMerge, so a shard refuses a directory with files of its own.
+ */
+final class ShardExchange {
+
+    private static final long POLL_INTERVAL = 20; // The milliseconds between two looks for the files of the other shards
+
+    private final Path directory;
+    private final int shard;
+    private final int shards;
+
+    /**
+     * Constructor for the ShardExchange class.
+     *
+     * @param directory Path the directory shared by the shards, which is created if it does not exist.
+     * @param shard     int the number of the shard of this run, from 1 up to the number of shards.
+     * @param shards    int the number of shards.
+     * @throws IOException if the directory cannot be created, or holds the files of this shard of an earlier run.
+     */
+    ShardExchange(Path directory, int shard, int shards) throws IOException {
+        this.directory = directory;
+        this.shard = shard;
+        this.shards = shards;
+        Files.createDirectories(directory);
+        try (Stream<Path> files = Files.list(directory)) {
+            if (files.anyMatch(file -> file.getFileName().toString().endsWith("." + shard)))
+                throw new IOException("The directory of the shards holds the files of an earlier run of shard " + shard + ", remove it before running the shards again: " + directory);
+        }
+    }
+
+    /**
+     * Returns the path a file of this shard for a step is written to, after which it is handed over with publish.
+     *
+     * @param step String the name of the step, E.G. pass 3 plans.
+     * @return Path the path to write the file to.
+     */
+    Path prepare(String step) {
+        return directory.resolve(step + "." + shard + ".tmp");
+    }
+
+    /**
+     * Hands the file of this shard for a step over to the other shards, by moving it to its place.
+     *
+     * @param step String the name of the step.
+     * @throws IOException if the file cannot be moved.
+     */
+    void publish(String step) throws IOException {
+        Files.move(prepare(step), getPath(step, shard), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Waits until the files of all the shards for a step are there.
+     *
+     * @param step String the name of the step.
+     * @return List<Path> the file of every shard, in the order of the shards.
+     * @throws IOException if a shard has failed, or the directory cannot be read.
+     */
+    List<Path> collect(String step) throws IOException {
+        List<Path> paths = new ArrayList<>();
+        for (int i = 1; i <= shards; i++) {
+            Path path = getPath(step, i);
+            while (!Files.exists(path)) {
+                for (int j = 1; j <= shards; j++) {
+                    if (Files.exists(getPath("failed", j)))
+                        throw new IOException("Shard " + j + " of " + shards + " has failed, see its log");
+                }
+                try {
+                    Thread.sleep(POLL_INTERVAL);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for shard " + i + " of " + shards);
+                }
+            }
+            paths.add(path);
+        }
+        return paths;
+    }
+
+    /**
+     * Exchanges values with the other shards for a step.
+     *
+     * @param step   String the name of the step.
+     * @param values String[] the values of this shard, none of which is empty or holds a line break, null when missing.
+     * @return List<String[]> the values of every shard, in the order of the shards.
+     * @throws IOException if a file cannot be written or read, or a shard has failed.
+     */
+    List<String[]> exchange(String step, String... values) throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (String value : values) {
+            lines.add(value != null ? value : "");
+        }
+        Files.write(prepare(step), lines, StandardCharsets.UTF_8);
+        publish(step);
+        List<String[]> exchanged = new ArrayList<>();
+        for (Path path : collect(step)) {
+            String[] read = Files.readAllLines(path, StandardCharsets.UTF_8).toArray(new String[0]);
+            for (int i = 0; i < read.length; i++) {
+                if (read[i].isEmpty())
+                    read[i] = null;
+            }
+            exchanged.add(Arrays.copyOf(read, values.length));
+        }
+        return exchanged;
+    }
+
+    /**
+     * Leaves a file saying this shard has failed, on which the other shards stop waiting.
+     */
+    void fail() {
+        try {
+            Files.write(getPath("failed", shard), new byte[0]);
+        } catch (IOException e) {
+            Log.error("Could not tell the other shards that shard " + shard + " has failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the path of the file of a shard for a step.
+     *
+     * @param step  String the name of the step.
+     * @param shard int the number of the shard.
+     * @return Path the path of the file.
+     */
+    private Path getPath(String step, int shard) {
+        return directory.resolve(step + "." + shard);
+    }
+}
@@ -0,0 +1,369 @@
+package org.iish.dorpen;
+
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.*;
+
+/**
+ * Merges the partial export and notes files of the shards of a run into the export and notes files of the whole run.
+ * Every shard disaggregates the partitions of root codes that hash to it, see RootCodePartitions, and writes its village complexes
+ * in the order of their Link codes. The shards run at the same time and split their partitions in lockstep with those of the other shards,
+ * through the directory they share, see getExchangeDirectory, so the numbers of houses are the same as those of a run of all the raw data.
+ * As a Link code belongs to one partition only, the partial files are merged k-way by Link code into the same files as a run of all the raw data,
+ * reading a row of every shard at a time. The result stores of shards run with --result-store are merged the same way, by Link code and year, see ResultStore.
+ * After the merge the directory the shards shared is removed.
+ * The merge is called by using the following command once every shard is done, E.G. for 4 shards:
+ * java -cp EMHCD.jar org.iish.dorpen.ShardMerge .\output\ .\output\ 4
+ */
+public final class ShardMerge {
+
+    /**
+     * Constructor for the ShardMerge class, which only merges files.
+     */
+    private ShardMerge() {
+    }
+
+    /**
+     * The main method to merge the files of the shards.
+     *
+     * @param args String[] containing the directory of the partial export files, the directory of the partial notes files,
+     *             the number of shards and optionally --gzip to compress the merged files, --result-store to merge the result stores of the shards
+     *             and --roll-up to write the totals at every level of the hierarchy of Link codes of the merged files
+     * @throws Exception Exception for when the arguments are not valid or the files cannot be merged
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3)
+            throw new IllegalArgumentException("Usage: ShardMerge <export directory> <notes directory> <shards> [--gzip] [--result-store] [--roll-up]");
+        boolean gzip = false;
+        boolean resultStore = false;
+        boolean rollUp = false;
+        for (int i = 3; i < args.length; i++) {
+            if (args[i].equals("--gzip"))
+                gzip = true;
+            else if (args[i].equals("--result-store"))
+                resultStore = true;
+            else if (args[i].equals("--roll-up"))
+                rollUp = true;
+            else
+                throw new IllegalArgumentException("Unknown option: " + args[i]);
+        }
+        int shards = Integer.parseInt(args[2]);
+        if (shards < 1)
+            throw new IllegalArgumentException("There must be at least one shard: " + shards);
+        List<String> exportPaths = new ArrayList<>();
+        List<String> notesPaths = new ArrayList<>();
+        List<String> storePaths = new ArrayList<>();
+        for (int shard = 1; shard <= shards; shard++) {
+            exportPaths.add(findShardFile(getExportPath(args[0], shard, shards, ".csv")));
+            notesPaths.add(findShardFile(getNotesPath(args[1], shard, shards, ".csv")));
+            if (resultStore) {
+                storePaths.add(getResultStorePath(args[0], shard, shards, ".bin"));
+                if (!new File(storePaths.get(shard - 1)).isFile())
+                    throw new FileNotFoundException("The shard has not written a result store, run the shards with --result-store as well: " + storePaths.get(shard - 1));
+            }
+        }
+
+        String extension = gzip ? ".csv.gz" : ".csv";
+        String date = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()).replaceAll("-", "T");
+        String exportPath = args[0] + "\\Early Modern House Count Disaggregation Export " + date + extension;
+        String notesPath = args[1] + "\\Early Modern House Count Disaggregation Export notes " + date + extension;
+        String rollUpPath = args[0] + "\\Early Modern House Count Disaggregation Export roll-up " + date + extension;
+        String rollUpNotesPath = args[1] + "\\Early Modern House Count Disaggregation Export notes roll-up " + date + extension;
+        String storePath = args[0] + "\\Early Modern House Count Disaggregation Export results " + date + ".bin";
+        try {
+            Log.info("Merging the export of " + shards + " shards to " + exportPath);
+            Log.info("Merging the notes of " + shards + " shards to " + notesPath);
+            long rows = merge(exportPaths, notesPaths, exportPath, notesPath);
+            Log.info("Merged " + rows + " village complexes.");
+            if (resultStore) {
+                Log.info("Merging the result stores of " + shards + " shards to " + storePath);
+                Log.info("Merged " + mergeResultStores(storePaths, storePath) + " results.");
+            }
+            if (rollUp) {
+                Log.info("Writing the roll-up to " + rollUpPath);
+                Log.info("Writing the notes of the roll-up to " + rollUpNotesPath);
+                Log.info("Wrote the totals of " + RollUp.write(exportPath, notesPath, rollUpPath, rollUpNotesPath) + " Link codes with parts.");
+            }
+            removeExchangeDirectory(getExchangeDirectory(args[0], shards));
+        } finally {
+            Log.flush();
+        }
+    }
+
+    /**
+     * Returns the path of the partial export file of a shard, which has a fixed name so the merge finds it.
+     *
+     * @param directory String the directory of the export.
+     * @param shard     int the number of the shard, starting at 1.
+     * @param shards    int the number of shards.
+     * @param extension String the extension, .csv or .csv.gz.
+     * @return String the path of the partial export file.
+     */
+    static String getExportPath(String directory, int shard, int shards, String extension) {
+        return directory + "\\Early Modern House Count Disaggregation Export shard " + shard + " of " + shards + extension;
+    }
+
+    /**
+     * Returns the path of the partial notes file of a shard, which has a fixed name so the merge finds it.
+     *
+     * @param directory String the directory of the notes.
+     * @param shard     int the number of the shard, starting at 1.
+     * @param shards    int the number of shards.
+     * @param extension String the extension, .csv or .csv.gz.
+     * @return String the path of the partial notes file.
+     */
+    static String getNotesPath(String directory, int shard, int shards, String extension) {
+        return directory + "\\Early Modern House Count Disaggregation Export notes shard " + shard + " of " + shards + extension;
+    }
+
+    /**
+     * Returns the path of the partial result store of a shard, which has a fixed name so the merge finds it.
+     *
+     * @param directory String the directory of the export.
+     * @param shard     int the number of the shard, starting at 1.
+     * @param shards    int the number of shards.
+     * @param extension String the extension, .bin.
+     * @return String the path of the partial result store.
+     */
+    static String getResultStorePath(String directory, int shard, int shards, String extension) {
+        return directory + "\\Early Modern House Count Disaggregation Export results shard " + shard + " of " + shards + extension;
+    }
+
+    /**
+     * Returns the directory the shards of a run share while they split their partitions in lockstep, see ShardExchange,
+     * which has a fixed name so every shard finds it and the merge removes it.
+     *
+     * @param directory String the directory of the export.
+     * @param shards    int the number of shards.
+     * @return String the path of the directory.
+     */
+    static String getExchangeDirectory(String directory, int shards) {
+        return directory + "\\Early Modern House Count Disaggregation Export shards of " + shards;
+    }
+
+    /**
+     * Removes the directory the shards have shared along with its files, once the shards are merged, so the shards can be run again.
+     *
+     * @param directory String the path of the directory.
+     * @throws IOException if the directory cannot be removed.
+     */
+    private static void removeExchangeDirectory(String directory) throws IOException {
+        File[] files = new File(directory).listFiles();
+        if (files == null)
+            return;
+        for (File file : files) {
+            Files.delete(file.toPath());
+        }
+        Files.delete(Paths.get(directory));
+    }
+
+    /**
+     * Returns the path of the partial file of a shard as it is, or compressed with gzip if only that exists.
+     *
+     * @param path String the path of the partial file, ending with .csv.
+     * @return String the path of the file that exists.
+     * @throws FileNotFoundException if the shard has written neither.
+     */
+    private static String findShardFile(String path) throws FileNotFoundException {
+        if (new File(path).isFile())
+            return path;
+        if (new File(path + ".gz").isFile())
+            return path + ".gz";
+        throw new FileNotFoundException("The shard has not been written, or is still running: " + path);
+    }
+
+    /**
+     * Merges the partial export and notes files of the shards by Link code, each file compressed with gzip if its path ends with .gz.
+     *
+     * @param exportPaths List<String> the partial export files, by shard.
+     * @param notesPaths  List<String> the partial notes files, by shard.
+     * @param exportPath  String the path to which the export is exported
+     * @param notesPath   String the path to which the notes are exported
+     * @return long the number of village complexes merged.
+     * @throws IOException if a file cannot be read or written, or the shards do not belong to the same run.
+     */
+    static long merge(List<String> exportPaths, List<String> notesPaths, String exportPath, String notesPath) throws IOException {
+        List<Shard> shards = new ArrayList<>();
+        try {
+            for (int i = 0; i < exportPaths.size(); i++) {
+                shards.add(new Shard(i, exportPaths.get(i), notesPaths.get(i)));
+            }
+            List<String> headerRow = shards.get(0).headerRow;
+            for (Shard shard : shards) {
+                if (!shard.headerRow.equals(headerRow))
+                    throw new IOException("The years of " + shard.exportPath + " differ from those of " + shards.get(0).exportPath + ", the shards are not of the same run");
+            }
+
+            // Contains every shard that has rows left, the shard with the first Link code at the head
+            PriorityQueue<Shard> heads = new PriorityQueue<>(Comparator.<Shard, String>comparing(shard -> shard.code).thenComparingInt(shard -> shard.index));
+            for (Shard shard : shards) {
+                if (shard.advance())
+                    heads.add(shard);
+            }
+            long rows = 0;
+            try (BufferedWriter exportWriter = new BufferedWriter(new OutputStreamWriter(CompressedStreams.create(exportPath)));
+                 BufferedWriter notesWriter = new BufferedWriter(new OutputStreamWriter(CompressedStreams.create(notesPath)))) {
+                CSVPrinter exportPrinter = new CSVPrinter(exportWriter, Disaggregation.csvFormat);
+                CSVPrinter notesPrinter = new CSVPrinter(notesWriter, Disaggregation.csvFormat);
+                exportPrinter.printRecord(headerRow);
+                notesPrinter.printRecord(headerRow);
+                String previous = null;
+                while (!heads.isEmpty()) {
+                    Shard shard = heads.poll();
+                    if (shard.code.equals(previous))
+                        throw new IOException("The Link code " + previous + " is in more than one shard, the shards are not of the same run");
+                    previous = shard.code;
+                    exportPrinter.printRecord(shard.exportRow);
+                    notesPrinter.printRecord(shard.notesRow);
+                    rows++;
+                    if (shard.advance())
+                        heads.add(shard);
+                }
+                exportPrinter.flush();
+                notesPrinter.flush();
+            }
+            return rows;
+        } finally {
+            for (Shard shard : shards) {
+                shard.close();
+            }
+        }
+    }
+
+    /**
+     * Merges the partial result stores of the shards by Link code and year.
+     *
+     * @param storePaths List<String> the partial result stores, by shard.
+     * @param storePath  String the path to which the result store is written.
+     * @return long the number of results merged.
+     * @throws IOException if a result store cannot be read or written, or a result is in more than one shard.
+     */
+    static long mergeResultStores(List<String> storePaths, String storePath) throws IOException {
+        // Contains every shard that has results left, the shard with the first Link code and year at the head
+        PriorityQueue<StoreShard> heads = new PriorityQueue<>(Comparator.<StoreShard, String>comparing(shard -> shard.result.getCode())
+                .thenComparingInt(shard -> shard.result.getYear()));
+        for (String path : storePaths) {
+            StoreShard shard = new StoreShard(path);
+            if (shard.advance())
+                heads.add(shard);
+        }
+        try (ResultStore.Writer store = new ResultStore.Writer(storePath)) {
+            ResultStore.Result previous = null;
+            while (!heads.isEmpty()) {
+                StoreShard shard = heads.poll();
+                ResultStore.Result result = shard.result;
+                if (previous != null && result.getCode().equals(previous.getCode()) && result.getYear() == previous.getYear())
+                    throw new IOException("The result of " + result.getCode() + " in " + result.getYear() + " is in more than one shard, the shards are not of the same run");
+                previous = result;
+                store.add(result);
+                if (shard.advance())
+                    heads.add(shard);
+            }
+            store.finish();
+            return store.getResults();
+        }
+    }
+
+    /**
+     * The partial export and notes files of a shard, or the export and notes files of a scenario, read a row of each at a time.
+     */
+    static final class Shard implements Closeable {
+        final int index; // The index of the shard, starting at 0
+        private final String exportPath;
+        private final CSVParser export;
+        private final CSVParser notes;
+        private final Iterator<CSVRecord> exportRows;
+        private final Iterator<CSVRecord> notesRows;
+        final List<String> headerRow;
+        String code; // The Link code of the current row
+        CSVRecord exportRow; // The current row of the export
+        CSVRecord notesRow; // The current row of the notes
+
+        /**
+         * Constructor for the Shard class, which opens the files and reads their header rows.
+         *
+         * @param index      int the index of the shard, starting at 0.
+         * @param exportPath String the partial export file.
+         * @param notesPath  String the partial notes file.
+         * @throws IOException if a file cannot be read, or the header rows of the files differ.
+         */
+        Shard(int index, String exportPath, String notesPath) throws IOException {
+            this.index = index;
+            this.exportPath = exportPath;
+            this.export = CSVParser.parse(new InputStreamReader(CompressedStreams.open(exportPath)), Disaggregation.csvFormat);
+            this.notes = CSVParser.parse(new InputStreamReader(CompressedStreams.open(notesPath)), Disaggregation.csvFormat);
+            this.exportRows = export.iterator();
+            this.notesRows = notes.iterator();
+            this.headerRow = new ArrayList<>(export.getHeaderMap().keySet());
+            if (!headerRow.equals(new ArrayList<>(notes.getHeaderMap().keySet())))
+                throw new IOException("The years of " + notesPath + " differ from those of " + exportPath);
+        }
+
+        /**
+         * Reads the next row of the export and of the notes, which are of the same Link code.
+         *
+         * @return a boolean which states whether there is a next row.
+         * @throws IOException if the files do not have the same Link codes.
+         */
+        boolean advance() throws IOException {
+            if (!exportRows.hasNext()) {
+                if (notesRows.hasNext())
+                    throw new IOException("The notes of " + exportPath + " have more rows than the export");
+                return false;
+            }
+            exportRow = exportRows.next();
+            notesRow = notesRows.hasNext() ? notesRows.next() : null;
+            code = exportRow.get(0) != null ? exportRow.get(0) : "";
+            if (notesRow == null || !code.equals(notesRow.get(0) != null ? notesRow.get(0) : ""))
+                throw new IOException("The notes of " + exportPath + " do not have the same Link codes as the export at " + code);
+            return true;
+        }
+
+        /**
+         * Closes the files.
+         *
+         * @throws IOException if a file cannot be closed.
+         */
+        @Override
+        public void close() throws IOException {
+            export.close();
+            notes.close();
+        }
+    }
+
+    /**
+     * The partial result store of a shard, read a result at a time.
+     */
+    private static final class StoreShard {
+        private final Iterator<ResultStore.Result> results;
+        ResultStore.Result result; // The current result
+
+        /**
+         * Constructor for the StoreShard class, which opens the result store.
+         *
+         * @param path String the partial result store.
+         * @throws IOException if the result store cannot be read.
+         */
+        StoreShard(String path) throws IOException {
+            this.results = new ResultStore(path).iterator();
+        }
+
+        /**
+         * Reads the next result.
+         *
+         * @return a boolean which states whether there is a next result.
+         */
+        boolean advance() {
+            if (!results.hasNext())
+                return false;
+            result = results.next();
+            return true;
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package org.iish.dorpen;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+/**
+ * A record with multiple Link codes that is offered to the split strategies in a pass.
+ * The information the strategies decide on is determined the first time it is asked for and kept for the other strategies.
+ */
+final class SplitCandidate {
+    final Disaggregation disaggregation;
+    final Map.Entry<String, Record> record;
+    final boolean triedWithNumberOfHomes; // States whether the previous pass did not lower the number of records with multiple links
+    final boolean tryAlternativeSplitting; // States whether the alternative splitting is tried in this pass
+
+    private Map<String, Set<String>> codeMap;
+    private Set<String> duplicates;
+    private Set<String> uniques;
+    private TreeSet<Integer> years;
+    private Map<String, BigDecimal> uniqueValuesToCalculateFrom;
+    private Map<String, BigDecimal> equalValueToCalculate;
+    private Integer closestYear;
+    private Map<BigDecimal, List<String>> valuesInClosestYear;
+    private List<Record> duplicateRecords;
+    private Boolean needsSquareKilometres;
+
+    /**
+     * Constructor for the SplitCandidate class.
+     *
+     * @param disaggregation          Disaggregation the run the record belongs to.
+     * @param record                  Map.Entry<String, Record> the record to split.
+     * @param triedWithNumberOfHomes  boolean which states whether the previous pass did not lower the number of records with multiple links.
+     * @param tryAlternativeSplitting boolean which states whether the alternative splitting is tried in this pass.
+     */
+    SplitCandidate(Disaggregation disaggregation, Map.Entry<String, Record> record, boolean triedWithNumberOfHomes, boolean tryAlternativeSplitting) {
+        this.disaggregation = disaggregation;
+        this.record = record;
+        this.triedWithNumberOfHomes = triedWithNumberOfHomes;
+        this.tryAlternativeSplitting = tryAlternativeSplitting;
+    }
+
+    /**
+     * Returns the number of Link codes of the record.
+     *
+     * @return int the number of Link codes.
+     */
+    int getNumberOfLinks() {
+        return record.getValue().links.size();
+    }
+
+    /**
+     * Returns the Link codes of the record with the ids of the records containing them, combined where all children of a parent are present.
+     *
+     * @return Map<String, Set<String>> the ids per Link code.
+     */
+    Map<String, Set<String>> getCodeMap() {
+        if (codeMap == null) {
+            codeMap = new TreeMap<>();
+            disaggregation.fillCodeMapBasedOnCodeToIds(record, codeMap);
+            disaggregation.determineCodesToRemoveAndToAppend(record, codeMap);
+        }
+        return codeMap;
+    }
+
+    /**
+     * Returns the ids of the records that contain all the Link codes of the record, ergo: the records that need to be split up.
+     *
+     * @return Set<String> the ids of the duplicate records.
+     */
+    Set<String> getDuplicates() {
+        if (duplicates == null)
+            duplicates = disaggregation.collectDuplicateLinkCodes(getCodeMap());
+        return duplicates;
+    }
+
+    /**
+     * Returns the ids of the records that contain some of the Link codes of the record, and no Link codes the record doesn't contain.
+     *
+     * @return Set<String> the ids of the unique records.
+     */
+    Set<String> getUniques() {
+        if (uniques == null) {
+            uniques = disaggregation.collectUniquesLinkCodes(getCodeMap());
+            uniques.removeAll(getDuplicates());
+            // Removes the unique codes for where the record doesn't contain the specific Link code,
+            // so it doesn't use a child code for a parent or vice verse
+            disaggregation.removeIncompleteChildLinkCodes(record, uniques);
+        }
+        return uniques;
+    }
+
+    /**
+     * Returns the years of the unique records.
+     *
+     * @return TreeSet<Integer> the years of the unique records.
+     */
+    TreeSet<Integer> getYears() {
+        determineUniqueValues();
+        return years;
+    }
+
+    /**
+     * Returns the number of houses of the unique records.
+     *
+     * @return Map<String, BigDecimal> the number of houses per id of the unique records.
+     */
+    Map<String, BigDecimal> getUniqueValuesToCalculateFrom() {
+        determineUniqueValues();
+        return uniqueValuesToCalculateFrom;
+    }
+
+    /**
+     * Determines the years and number of houses of the unique records.
+     */
+    private void determineUniqueValues() {
+        if (uniqueValuesToCalculateFrom == null) {
+            years = new TreeSet<>();
+            uniqueValuesToCalculateFrom = new HashMap<>();
+            disaggregation.determineUniqueValuesToCalculateFrom(getUniques(), years, uniqueValuesToCalculateFrom);
+        }
+    }
+
+    /**
+     * Returns the number of houses of the duplicate records, these are the values to split.
+     *
+     * @return Map<String, BigDecimal> the number of houses per id of the duplicate records.
+     */
+    Map<String, BigDecimal> getEqualValueToCalculate() {
+        if (equalValueToCalculate == null) {
+            equalValueToCalculate = new HashMap<>();
+            for (Record duplicate_record : getDuplicateRecords()) {
+                equalValueToCalculate.put(duplicate_record.id, duplicate_record.houses);
+            }
+        }
+        return equalValueToCalculate;
+    }
+
+    /**
+     * Returns the year of the unique records closest to the years of the duplicate records.
+     *
+     * @return Integer the closest year, 0 if there is none.
+     */
+    Integer getClosestYear() {
+        if (closestYear == null)
+            closestYear = disaggregation.determineClosestYearForCalculatingNumberOfHomes(getYears(), getEqualValueToCalculate());
+        return closestYear;
+    }
+
+    /**
+     * Returns the Link codes of the unique records in the closest year, per number of houses.
+     * Only the numbers of houses that are present and not zero are used.
+     *
+     * @return Map<BigDecimal, List<String>> the Link codes per number of houses.
+     */
+    Map<BigDecimal, List<String>> getValuesInClosestYear() {
+        if (valuesInClosestYear == null) {
+            valuesInClosestYear = new HashMap<>();
+            for (Map.Entry<String, BigDecimal> uniqueValue : getUniqueValuesToCalculateFrom().entrySet()) {
+                Record unique_value_record = disaggregation.getRecord(uniqueValue.getKey());
+                if (unique_value_record != null && unique_value_record.year == getClosestYear()) {
+                    if (uniqueValue.getValue() != null && uniqueValue.getValue().compareTo(BigDecimal.ZERO) != 0) {
+                        valuesInClosestYear.put(uniqueValue.getValue(), unique_value_record.links);
+                    }
+                }
+            }
+        }
+        return valuesInClosestYear;
+    }
+
+    /**
+     * Returns the duplicate records in the order of their ids.
+     *
+     * @return List<Record> the duplicate records.
+     */
+    List<Record> getDuplicateRecords() {
+        if (duplicateRecords == null) {
+            duplicateRecords = new ArrayList<>();
+            for (String duplicate : getDuplicates()) {
+                Record duplicate_record = disaggregation.getRecord(duplicate);
+                if (duplicate_record != null) {
+                    duplicateRecords.add(duplicate_record);
+                }
+            }
+        }
+        return duplicateRecords;
+    }
+
+    /**
+     * Checks whether all the duplicate records have the same Link codes.
+     *
+     * @return a boolean which states whether the Link codes of the duplicate records compare.
+     */
+    boolean doLinksCompare() {
+        for (Record rec : getDuplicateRecords()) {
+            if (!rec.links.equals(getDuplicateRecords().get(0).links)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether the record needs to be split by using square kilometres, because the ratio between the Link codes differs between the years.
+     *
+     * @return a boolean which states whether square kilometres need to be used.
+     */
+    boolean needsSquareKilometres() {
+        if (needsSquareKilometres == null)
+            needsSquareKilometres = disaggregation.determineIfItNeedsToBeSplitWithSquareKilometres(record);
+        return needsSquareKilometres;
+    }
+
+    /**
+     * Checks whether square kilometres are to be used, either because the previous pass did not lower the number of records
+     * with multiple links or because the record needs them.
+     *
+     * @return a boolean which states whether square kilometres are to be used.
+     */
+    boolean usesSquareKilometres() {
+        return triedWithNumberOfHomes || needsSquareKilometres();
+    }
+
+    /**
+     * Checks whether the record, with more than two Link codes, can be split by using the unique records of another year.
+     * This is the case when there are enough unique records and all duplicate records have the same Link codes.
+     *
+     * @return a boolean which states whether the record can be split by year.
+     */
+    boolean isSplittableByYear() {
+        return getNumberOfLinks() > 2 && getUniques().size() >= getNumberOfLinks() && doLinksCompare() && getDuplicateRecords().size() > 1 && !needsSquareKilometres();
+    }
+}
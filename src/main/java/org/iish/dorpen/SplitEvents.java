@@ -0,0 +1,163 @@
+package org.iish.dorpen;
+
+import jdk.jfr.*;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * The Java Flight Recorder events of the splitting, to see in a recording which village complexes and split strategies take the time.
+ * All events are disabled by default, in which case creating and committing them costs next to nothing,
+ * and can be enabled per event in the recording settings, E.G. org.iish.dorpen.SplitPass#enabled=true.
+ * Only SplitRecorder uses this class, and only when the runtime has the flight recorder.
+ */
+final class SplitEvents {
+
+    /**
+     * Constructor for the SplitEvents class, which only holds the event classes.
+     */
+    private SplitEvents() {
+    }
+
+    @Name("org.iish.dorpen.SplitPass")
+    @Label("Split Pass")
+    @Description("A pass over the records with multiple Link codes")
+    @Category({"Early Modern House Count Disaggregation", "Splitting"})
+    @Enabled(false)
+    @StackTrace(false)
+    static final class SplitPass extends Event {
+        @Label("Pass")
+        int pass;
+        @Label("Plans")
+        int plans;
+        @Label("Records Added")
+        int recordsAdded;
+        @Label("Records Removed")
+        int recordsRemoved;
+        @Label("Records With Multiple Links")
+        @Description("The number of records with multiple Link codes after the pass")
+        int recordsWithMultipleLinks;
+    }
+
+    @Name("org.iish.dorpen.SplitModeDecision")
+    @Label("Split Mode Decision")
+    @Description("The decision whether a record needs to be split with square kilometres")
+    @Category({"Early Modern House Count Disaggregation", "Splitting"})
+    @Enabled(false)
+    @StackTrace(false)
+    static final class SplitModeDecision extends Event {
+        @Label("Links")
+        String links;
+        @Label("Year")
+        int year;
+        @Label("Needs Square Kilometres")
+        boolean needsSquareKilometres;
+    }
+
+    @Name("org.iish.dorpen.SplitStrategyInvocation")
+    @Label("Split Strategy Invocation")
+    @Description("A split strategy asked to plan the splitting of a record")
+    @Category({"Early Modern House Count Disaggregation", "Splitting"})
+    @Enabled(false)
+    @StackTrace(false)
+    static final class SplitStrategyInvocation extends Event {
+        @Label("Strategy")
+        String strategy;
+        @Label("Links")
+        String links;
+        @Label("Year")
+        int year;
+        @Label("Planned")
+        @Description("Whether the strategy made a plan for the record")
+        boolean planned;
+        @Label("Portions")
+        int portions;
+    }
+
+    @Name("org.iish.dorpen.RecordCreated")
+    @Label("Record Created")
+    @Description("A record created by splitting another record")
+    @Category({"Early Modern House Count Disaggregation", "Splitting"})
+    @Enabled(false)
+    @StackTrace(false)
+    static final class RecordCreated extends Event {
+        @Label("Source")
+        @Description("The id of the record that is split")
+        String source;
+        @Label("Links")
+        String links;
+        @Label("Year")
+        int year;
+        @Label("Houses")
+        String houses;
+        @Label("Note")
+        String note;
+    }
+
+    /**
+     * The recorder that records the events of the splitting, loaded by SplitRecorder if the runtime has jdk.jfr.Event.
+     */
+    static final class Recorder extends SplitRecorder {
+
+        @Override
+        Pass beginPass() {
+            SplitPass event = new SplitPass();
+            event.begin();
+            return (pass, plans, recordsAdded, recordsRemoved, recordsWithMultipleLinks) -> {
+                event.end();
+                if (event.shouldCommit()) {
+                    event.pass = pass;
+                    event.plans = plans;
+                    event.recordsAdded = recordsAdded;
+                    event.recordsRemoved = recordsRemoved;
+                    event.recordsWithMultipleLinks = recordsWithMultipleLinks;
+                    event.commit();
+                }
+            };
+        }
+
+        @Override
+        boolean decideSplitMode(Record record, BooleanSupplier decision) {
+            SplitModeDecision event = new SplitModeDecision();
+            event.begin();
+            boolean needsSquareKilometres = decision.getAsBoolean();
+            event.end();
+            if (event.shouldCommit()) {
+                event.links = record.links.toString();
+                event.year = record.year;
+                event.needsSquareKilometres = needsSquareKilometres;
+                event.commit();
+            }
+            return needsSquareKilometres;
+        }
+
+        @Override
+        SplitPlan invoke(SplitStrategy strategy, SplitCandidate candidate) {
+            SplitStrategyInvocation event = new SplitStrategyInvocation();
+            event.begin();
+            SplitPlan plan = strategy.plan(candidate);
+            event.end();
+            if (event.shouldCommit()) {
+                event.strategy = strategy.getName();
+                event.links = candidate.record.getValue().links.toString();
+                event.year = candidate.record.getValue().year;
+                event.planned = plan != null;
+                event.portions = plan != null ? plan.portions.size() : 0;
+                event.commit();
+            }
+            return plan;
+        }
+
+        @Override
+        void recordCreated(Record source, Record record) {
+            RecordCreated event = new RecordCreated();
+            if (event.isEnabled()) {
+                event.source = source.id;
+                event.links = record.links.toString();
+                event.year = record.year;
+                event.houses = record.houses != null ? record.houses.toString() : null;
+                event.note = record.note != null ? record.note.name() : null;
+                event.commit();
+            }
+        }
+    }
+}
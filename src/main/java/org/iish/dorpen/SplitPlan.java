@@ -0,0 +1,159 @@
+package org.iish.dorpen;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+/**
+ * The plan of a SplitStrategy for splitting one record.
+ * A plan consists of portions, each portion divides a number of houses over its targets, and of the ids of the records to remove.
+ * The number of houses of the targets is filled in by the RatioKernel.
+ */
+final class SplitPlan {
+
+    /**
+     * The calculation used to divide the houses of a portion over its targets.
+     */
+    enum Calculation {
+        SHARE, // The weight of each target within the total of the weights, rounded to 9 decimals, a missing number of houses gives 0
+        RATIO, // The weight of each target is the ratio itself, a missing number of houses or ratio gives null
+        PAIR, // The lowest and highest number of the portion are used, the lowest side gets its part and the highest side the remainder
+        EVEN, // The houses are divided evenly over the targets
+        FIXED // The weight of each target is its number of houses
+    }
+
+    /**
+     * The way the new records of a portion are created.
+     */
+    enum Creation {
+        SINGLE_LINK, // A record per target, a later record with the same id replaces the earlier one
+        PER_RESULT, // A record per distinct unrounded result, a later record with the same id is left out
+        WITHOUT_HOUSES // A record per target without a number of houses, noted as source
+    }
+
+    final SplitStrategy strategy;
+    final List<Portion> portions = new ArrayList<>();
+    final Set<String> recordsToRemove = new TreeSet<>(); // Contains the ids of the records that are replaced by the new records
+    boolean endsPass; // States whether no more records are split in this pass after this one
+    boolean resetsAlternativeSplitting; // States whether the alternative splitting is no longer tried after this one
+
+    /**
+     * Constructor for the SplitPlan class.
+     *
+     * @param strategy SplitStrategy the strategy that made the plan.
+     */
+    SplitPlan(SplitStrategy strategy) {
+        this.strategy = strategy;
+    }
+
+    /**
+     * Adds a portion to the plan.
+     *
+     * @param calculation         Calculation the calculation to divide the houses with.
+     * @param creation            Creation the way the new records are created.
+     * @param source              Record the record the new records originate from, used for the year and id of the new records.
+     * @param houses              BigDecimal the number of houses to divide, null if missing.
+     * @param note                NoteState the NoteState given to the new records.
+     * @param yearUsedToCalculate int the year given to the new records as the year used to calculate with.
+     * @return Portion the portion added, to which the targets are to be added.
+     */
+    Portion addPortion(Calculation calculation, Creation creation, Record source, BigDecimal houses, NoteState note, int yearUsedToCalculate) {
+        Portion portion = new Portion(calculation, creation, source, houses, note, yearUsedToCalculate);
+        portions.add(portion);
+        return portion;
+    }
+
+    /**
+     * Marks the record to be removed at the end of the pass.
+     *
+     * @param id String the id of the record.
+     */
+    void removeRecord(String id) {
+        recordsToRemove.add(id);
+    }
+
+    /**
+     * A number of houses divided over a list of targets.
+     */
+    static final class Portion {
+        final Calculation calculation;
+        final Creation creation;
+        final Record source;
+        final BigDecimal houses;
+        final NoteState note;
+        final int yearUsedToCalculate;
+        final List<Target> targets = new ArrayList<>();
+        BigDecimal lowestNumber; // The lowest number to divide with, for the PAIR calculation
+        BigDecimal highestNumber; // The highest number to divide with, for the PAIR calculation
+        BigDecimal unmatched; // The result for the targets on neither side, for the PAIR calculation
+
+        /**
+         * Constructor for the Portion class.
+         *
+         * @param calculation         Calculation the calculation to divide the houses with.
+         * @param creation            Creation the way the new records are created.
+         * @param source              Record the record the new records originate from.
+         * @param houses              BigDecimal the number of houses to divide.
+         * @param note                NoteState the NoteState given to the new records.
+         * @param yearUsedToCalculate int the year used to calculate with.
+         */
+        private Portion(Calculation calculation, Creation creation, Record source, BigDecimal houses, NoteState note, int yearUsedToCalculate) {
+            this.calculation = calculation;
+            this.creation = creation;
+            this.source = source;
+            this.houses = houses;
+            this.note = note;
+            this.yearUsedToCalculate = yearUsedToCalculate;
+        }
+
+        /**
+         * Adds a target with one Link code.
+         *
+         * @param link   String the Link code of the target.
+         * @param weight BigDecimal the weight of the target, depending on the calculation.
+         * @param km2    BigDecimal the square kilometres given to the new record.
+         * @return Target the target added.
+         */
+        Target addTarget(String link, BigDecimal weight, BigDecimal km2) {
+            return addTarget(Collections.singletonList(link), weight, km2);
+        }
+
+        /**
+         * Adds a target.
+         *
+         * @param links  List<String> the Link codes of the target.
+         * @param weight BigDecimal the weight of the target, depending on the calculation.
+         * @param km2    BigDecimal the square kilometres given to the new record.
+         * @return Target the target added.
+         */
+        Target addTarget(List<String> links, BigDecimal weight, BigDecimal km2) {
+            Target target = new Target(links, weight, km2);
+            targets.add(target);
+            return target;
+        }
+    }
+
+    /**
+     * A Link code, or Link codes, receiving part of the houses of a portion.
+     */
+    static final class Target {
+        final List<String> links;
+        final BigDecimal weight;
+        final BigDecimal km2;
+        int side = -1; // The side of the PAIR calculation the target is on, 0 for the lowest and 1 for the highest number
+        BigDecimal product; // The unrounded result of the SHARE calculation
+        BigDecimal result; // The number of houses of the target
+
+        /**
+         * Constructor for the Target class.
+         *
+         * @param links  List<String> the Link codes of the target.
+         * @param weight BigDecimal the weight of the target.
+         * @param km2    BigDecimal the square kilometres given to the new record.
+         */
+        private Target(List<String> links, BigDecimal weight, BigDecimal km2) {
+            this.links = links;
+            this.weight = weight;
+            this.km2 = km2;
+        }
+    }
+}
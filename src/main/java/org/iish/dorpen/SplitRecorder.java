@@ -0,0 +1,88 @@
+package org.iish.dorpen;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Records the events of the splitting for the Java Flight Recorder, see SplitEvents.
+ * The runtime is checked once for jdk.jfr.Event, which Java 8 only has from 8u262 on; without it the events are left out,
+ * as this class records nothing and the event classes are never loaded.
+ */
+class SplitRecorder {
+
+    // Contains the recorder of the run, which records the events if the runtime has the flight recorder
+    static final SplitRecorder INSTANCE = load();
+
+    // Contains the pass of a recorder that records nothing
+    private static final Pass NO_PASS = (pass, plans, recordsAdded, recordsRemoved, recordsWithMultipleLinks) -> {
+    };
+
+    /**
+     * Loads the recorder of the flight recorder if the runtime has jdk.jfr.Event, and one that records nothing otherwise.
+     *
+     * @return SplitRecorder the recorder.
+     */
+    private static SplitRecorder load() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return (SplitRecorder) Class.forName("org.iish.dorpen.SplitEvents$Recorder").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return new SplitRecorder();
+        }
+    }
+
+    /**
+     * A pass over the records with multiple Link codes, which is recorded once it has ended.
+     */
+    interface Pass {
+        /**
+         * Ends the pass and records it.
+         *
+         * @param pass                     int the number of the pass.
+         * @param plans                    int the number of plans made.
+         * @param recordsAdded             int the number of records added.
+         * @param recordsRemoved           int the number of records removed.
+         * @param recordsWithMultipleLinks int the number of records with multiple Link codes after the pass.
+         */
+        void end(int pass, int plans, int recordsAdded, int recordsRemoved, int recordsWithMultipleLinks);
+    }
+
+    /**
+     * Begins a pass over the records with multiple Link codes.
+     *
+     * @return Pass the pass to end once it is done.
+     */
+    Pass beginPass() {
+        return NO_PASS;
+    }
+
+    /**
+     * Decides whether a record needs to be split with square kilometres, recording the decision.
+     *
+     * @param record   Record the record.
+     * @param decision BooleanSupplier the decision.
+     * @return a boolean which states whether square kilometres need to be used.
+     */
+    boolean decideSplitMode(Record record, BooleanSupplier decision) {
+        return decision.getAsBoolean();
+    }
+
+    /**
+     * Asks a strategy for a plan to split the record of the candidate, recording the invocation.
+     *
+     * @param strategy  SplitStrategy the strategy to ask.
+     * @param candidate SplitCandidate the record to split.
+     * @return SplitPlan the plan of the strategy, or null if it does not apply.
+     */
+    SplitPlan invoke(SplitStrategy strategy, SplitCandidate candidate) {
+        return strategy.plan(candidate);
+    }
+
+    /**
+     * Records a record created by splitting another record.
+     *
+     * @param source Record the record that is split.
+     * @param record Record the record created.
+     */
+    void recordCreated(Record source, Record record) {
+    }
+}
@@ -0,0 +1,84 @@
+package org.iish.dorpen;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The schedule of a pass of a partition that is split in lockstep with the other partitions, see PartitionLockstep.
+ * In a run of all the raw data the alternative splitting stops at the first plan that resets it and the pass ends at the first plan
+ * that ends it, whichever partition their records belong to, so the partition is given the ids of the records of those plans
+ * as they are known so far. The pass of the partition reports its own first plans of the kind and the last record it considered,
+ * from which the schedule of all the partitions is settled, along with the number of records created per plan, by which they are numbered.
+ * The ids are compared as strings, in the order the records are split in.
+ */
+final class SplitSchedule {
+
+    final String alternativeUntil; // The id of the last record the alternative splitting is tried for, null when not known to stop
+    final String endAt; // The id of the last record split in the pass, null when not known to end
+    String resetAt = null; // The id of the first record of which the plan reset the alternative splitting, null when none did
+    String endedAt = null; // The id of the record of which the plan ended the pass, null when none did
+    String lastConsidered = null; // The id of the last record considered, null when none were
+    final List<String> plannedIds = new ArrayList<>(); // Contains the id of the record of every plan that created records, in the order of planning
+    final List<Integer> created = new ArrayList<>(); // Contains the number of records created by every plan of plannedIds
+    int recordsWithMultipleLinks = 0; // The number of records with multiple links after the pass, apart from those of the frozen village complexes
+
+    /**
+     * Constructor for the SplitSchedule class.
+     *
+     * @param alternativeUntil String the id of the last record the alternative splitting is tried for, null when not known to stop.
+     * @param endAt            String the id of the last record split in the pass, null when not known to end.
+     */
+    SplitSchedule(String alternativeUntil, String endAt) {
+        this.alternativeUntil = alternativeUntil;
+        this.endAt = endAt;
+    }
+
+    /**
+     * Returns a boolean which states whether the alternative splitting has stopped before a record.
+     *
+     * @param id String the id of the record.
+     * @return a boolean which states whether the alternative splitting is no longer tried for the record.
+     */
+    boolean resetsBefore(String id) {
+        return alternativeUntil != null && id.compareTo(alternativeUntil) > 0;
+    }
+
+    /**
+     * Returns a boolean which states whether the pass has ended before a record.
+     *
+     * @param id String the id of the record.
+     * @return a boolean which states whether the record is no longer split in the pass.
+     */
+    boolean endsBefore(String id) {
+        return endAt != null && id.compareTo(endAt) > 0;
+    }
+
+    /**
+     * Notes a record that has been considered, along with its plan.
+     *
+     * @param id   String the id of the record.
+     * @param plan SplitPlan the plan for the record, or null if no strategy applied.
+     */
+    void considered(String id, SplitPlan plan) {
+        lastConsidered = id;
+        if (plan == null)
+            return;
+        if (plan.resetsAlternativeSplitting && resetAt == null)
+            resetAt = id;
+        if (plan.endsPass)
+            endedAt = id;
+    }
+
+    /**
+     * Notes the number of records created by a plan.
+     *
+     * @param id      String the id of the record of the plan.
+     * @param records int the number of records created, plans that created none are left out.
+     */
+    void created(String id, int records) {
+        if (records == 0)
+            return;
+        plannedIds.add(id);
+        created.add(records);
+    }
+}
@@ -0,0 +1,481 @@
+package org.iish.dorpen;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+/**
+ * The split strategies of a run, in the order in which they are asked for a plan.
+ * Registered strategies are asked before the built-in ones, so they can take over any record and leave the rest to the built-in strategies.
+ */
+final class SplitStrategies {
+    private final List<SplitStrategy> registered = new ArrayList<>();
+    private final List<SplitStrategy> builtIn = Arrays.asList(
+            new TwoValues(),
+            new SquareKilometres(),
+            new OneValue(),
+            new Years(),
+            new NullHomes(),
+            new AlternativeYears());
+
+    /**
+     * Registers a strategy, which is asked for a plan after the strategies registered earlier and before the built-in ones.
+     *
+     * @param strategy SplitStrategy the strategy to register.
+     */
+    void register(SplitStrategy strategy) {
+        registered.add(strategy);
+    }
+
+    /**
+     * Asks the strategies in turn for a plan to split the record of the candidate.
+     *
+     * @param candidate SplitCandidate the record to split.
+     * @return SplitPlan the plan of the first strategy that applies, or null if none applies.
+     */
+    SplitPlan plan(SplitCandidate candidate) {
+        for (SplitStrategy strategy : registered) {
+            SplitPlan plan = invoke(strategy, candidate);
+            if (plan != null)
+                return plan;
+        }
+        for (SplitStrategy strategy : builtIn) {
+            SplitPlan plan = invoke(strategy, candidate);
+            if (plan != null)
+                return plan;
+        }
+        return null;
+    }
+
+    /**
+     * Asks the strategy for a plan, recording the invocation for the flight recorder.
+     *
+     * @param strategy  SplitStrategy the strategy to ask.
+     * @param candidate SplitCandidate the record to split.
+     * @return SplitPlan the plan of the strategy, or null if it does not apply.
+     */
+    private static SplitPlan invoke(SplitStrategy strategy, SplitCandidate candidate) {
+        return SplitRecorder.INSTANCE.invoke(strategy, candidate);
+    }
+
+    /**
+     * Splits a record with two Link codes by the two values of the unique records in the closest year, if square kilometres are not needed.
+     */
+    static final class TwoValues implements SplitStrategy {
+
+        @Override
+        public String getName() {
+            return "two-values";
+        }
+
+        @Override
+        public SplitPlan plan(SplitCandidate candidate) {
+            if (candidate.getNumberOfLinks() != 2)
+                return null;
+            Map<BigDecimal, List<String>> valuesToCalculateWithMap = candidate.getValuesInClosestYear();
+            if (valuesToCalculateWithMap.size() != 2 || candidate.needsSquareKilometres())
+                return null;
+
+            Record record = candidate.record.getValue();
+            // Sort the values so the first value is the smallest one for calculation purposes
+            List<BigDecimal> values = new ArrayList<>(valuesToCalculateWithMap.keySet());
+            Collections.sort(values);
+            BigDecimal lowest = values.get(0);
+            BigDecimal highest = values.get(1);
+            Map<List<String>, Integer> sides = new HashMap<>();
+            sides.put(valuesToCalculateWithMap.get(lowest), 0);
+            sides.put(valuesToCalculateWithMap.get(highest), 1);
+
+            SplitPlan plan = new SplitPlan(this);
+            for (Map.Entry<String, BigDecimal> valueToCalculate : candidate.getEqualValueToCalculate().entrySet()) {
+                BigDecimal houses = valueToCalculate.getValue();
+                // The houses are only split if there are houses and a total to calculate the percentage with.
+                boolean splits = !candidate.disaggregation.getMissingValues().isMissing(houses, MissingValues.Kind.HOUSES)
+                        && houses.signum() != 0 && lowest.add(highest).signum() != 0;
+                if (splits) {
+                    if (valueToCalculate.getKey().equals(candidate.record.getKey())) {
+                        SplitPlan.Portion portion = plan.addPortion(SplitPlan.Calculation.PAIR, SplitPlan.Creation.SINGLE_LINK, record, houses, NoteState.YEAR_SOURCE, candidate.getClosestYear());
+                        portion.lowestNumber = lowest;
+                        portion.highestNumber = highest;
+                        portion.unmatched = BigDecimal.ZERO;
+                        for (String record_link : record.links) {
+                            // The last of the Link codes containing the link decides
+                            SplitPlan.Target target = portion.addTarget(record_link, null, null);
+                            for (Map.Entry<List<String>, Integer> side : sides.entrySet()) {
+                                if (side.getKey().contains(record_link))
+                                    target.side = side.getValue();
+                            }
+                        }
+                        plan.removeRecord(valueToCalculate.getKey());
+                    }
+                } else if (record.houses != null && record.houses.equals(BigDecimal.ZERO)) {
+                    SplitPlan.Portion portion = plan.addPortion(SplitPlan.Calculation.FIXED, SplitPlan.Creation.SINGLE_LINK, record, record.houses, NoteState.YEAR_SOURCE, candidate.getClosestYear());
+                    for (String link : record.links) {
+                        portion.addTarget(link, record.houses, null);
+                    }
+                    plan.removeRecord(record.id);
+                } else if (record.houses == null) {
+                    addPortionWithoutHouses(plan, record);
+                    plan.removeRecord(record.id);
+                }
+            }
+            return plan;
+        }
+    }
+
+    /**
+     * Splits a record by the square kilometres of its Link codes, when the previous pass did not lower the number of records with
+     * multiple links or when the ratios differ between the years. Only one record is split this way in a pass.
+     */
+    static final class SquareKilometres implements SplitStrategy {
+
+        @Override
+        public String getName() {
+            return "square-kilometres";
+        }
+
+        @Override
+        public SplitPlan plan(SplitCandidate candidate) {
+            Record record = candidate.record.getValue();
+            if (candidate.getNumberOfLinks() == 2 && candidate.usesSquareKilometres()) {
+                SplitPlan plan = new SplitPlan(this);
+                SquareKilometreRatioTable.Shares shares = candidate.disaggregation.collectSquareKmsToCalculateWith(candidate.record);
+                if (shares.squareKilometres.size() > 0 && shares.hasTotal()) {
+                    SplitPlan.Portion portion = plan.addPortion(SplitPlan.Calculation.RATIO, SplitPlan.Creation.SINGLE_LINK, record, record.houses, NoteState.YEAR_SURFACE, record.year);
+                    for (Map.Entry<String, BigDecimal> entry : shares.squareKilometres.entrySet()) {
+                        portion.addTarget(entry.getKey(), shares.getRatio(entry.getKey()), entry.getValue());
+                    }
+                    plan.removeRecord(candidate.record.getKey());
+                    plan.endsPass = true;
+                }
+                return plan;
+            }
+            if (candidate.getNumberOfLinks() > 2 && !candidate.isSplittableByYear() && candidate.usesSquareKilometres() && record.houses != null) {
+                SplitPlan plan = new SplitPlan(this);
+                SquareKilometreRatioTable.Shares shares = candidate.disaggregation.collectSquareKmsToCalculateWith(candidate.record);
+                if (shares.total != null) {
+                    addSquareKilometrePortions(plan, candidate, shares, false);
+                } else {
+                    SplitPlan.Portion portion = plan.addPortion(SplitPlan.Calculation.EVEN, SplitPlan.Creation.SINGLE_LINK, record, record.houses, NoteState.YEAR_SOURCE, record.year);
+                    for (String link : record.links) {
+                        portion.addTarget(link, null, null);
+                    }
+                    plan.removeRecord(record.id);
+                    plan.endsPass = true;
+                }
+                return plan;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Splits a record with two Link codes by the two unique records in the closest year, if there is only one value to calculate with.
+     */
+    static final class OneValue implements SplitStrategy {
+
+        @Override
+        public String getName() {
+            return "one-value";
+        }
+
+        @Override
+        public SplitPlan plan(SplitCandidate candidate) {
+            if (candidate.getNumberOfLinks() != 2 || candidate.getValuesInClosestYear().size() != 1 || candidate.usesSquareKilometres())
+                return null;
+
+            SplitPlan plan = new SplitPlan(this);
+            List<Record> recordsToUseForCalculation = new ArrayList<>();
+            for (String id : new TreeSet<>(candidate.getUniqueValuesToCalculateFrom().keySet())) {
+                Record rec = candidate.disaggregation.getRecord(id);
+                if (rec != null && rec.year == candidate.getClosestYear()) {
+                    recordsToUseForCalculation.add(rec);
+                }
+            }
+            if (recordsToUseForCalculation.size() != 2)
+                return plan;
+
+            Record record = candidate.record.getValue();
+            Record lowest = recordsToUseForCalculation.get(0);
+            Record highest = recordsToUseForCalculation.get(1);
+            if (lowest.houses != null && highest.houses != null)
+                candidate.disaggregation.getMissingValues().isMissing(record.houses, MissingValues.Kind.HOUSES);
+            Map<List<String>, Integer> sides = new HashMap<>();
+            sides.put(lowest.links, 0);
+            sides.put(highest.links, 1);
+
+            SplitPlan.Portion portion = plan.addPortion(SplitPlan.Calculation.PAIR, SplitPlan.Creation.SINGLE_LINK, record, record.houses, NoteState.YEAR_SOURCE, candidate.getClosestYear());
+            portion.lowestNumber = lowest.houses;
+            portion.highestNumber = highest.houses;
+            portion.unmatched = null;
+            for (String record_link : record.links) {
+                // The first of the Link codes containing the link decides
+                SplitPlan.Target target = portion.addTarget(record_link, null, null);
+                for (Map.Entry<List<String>, Integer> side : sides.entrySet()) {
+                    if (side.getKey().contains(record_link)) {
+                        target.side = side.getValue();
+                        break;
+                    }
+                }
+            }
+            plan.removeRecord(record.id);
+            return plan;
+        }
+    }
+
+    /**
+     * Splits a record with more than two Link codes by the unique records of the best year, if all duplicate records have the same Link codes.
+     * When there are fewer values than Link codes, it waits for the alternative splitting and then tries the square kilometres first.
+     */
+    static final class Years implements SplitStrategy {
+
+        @Override
+        public String getName() {
+            return "years";
+        }
+
+        @Override
+        public SplitPlan plan(SplitCandidate candidate) {
+            if (!candidate.isSplittableByYear())
+                return null;
+
+            Map<String, BigDecimal> uniqueValuesToCalculateFrom = candidate.getUniqueValuesToCalculateFrom();
+            Set<String> records_not_to_use = new TreeSet<>();
+            Integer closest_year_for_calculating_number_of_homes = determineBestYear(candidate, candidate.getYears(), uniqueValuesToCalculateFrom, records_not_to_use);
+
+            Map<BigDecimal, List<String>> valuesToCalculateWithMap = new HashMap<>();
+            NoteState noteState = null;
+            noteState = candidate.disaggregation.fillValuesToCalculateWithAndGetNoteState(uniqueValuesToCalculateFrom, closest_year_for_calculating_number_of_homes, valuesToCalculateWithMap, noteState);
+
+            SplitPlan plan = new SplitPlan(this);
+            if (valuesToCalculateWithMap.size() < candidate.getNumberOfLinks()) {
+                if (!candidate.tryAlternativeSplitting)
+                    return plan;
+                addSquareKilometrePortions(plan, candidate, candidate.disaggregation.collectSquareKmsToCalculateWith(candidate.record), true);
+                if (plan.endsPass) {
+                    plan.resetsAlternativeSplitting = true;
+                    return plan;
+                }
+            }
+            addYearPortions(plan, candidate, closest_year_for_calculating_number_of_homes, valuesToCalculateWithMap, noteState);
+            return plan;
+        }
+    }
+
+    /**
+     * Splits a record with more than two Link codes and without houses into records without houses, when square kilometres are to be used.
+     */
+    static final class NullHomes implements SplitStrategy {
+
+        @Override
+        public String getName() {
+            return "null-homes";
+        }
+
+        @Override
+        public SplitPlan plan(SplitCandidate candidate) {
+            Record record = candidate.record.getValue();
+            if (candidate.getNumberOfLinks() <= 2 || record.houses != null || candidate.isSplittableByYear() || !candidate.usesSquareKilometres())
+                return null;
+            SplitPlan plan = new SplitPlan(this);
+            addPortionWithoutHouses(plan, record);
+            plan.removeRecord(record.id);
+            return plan;
+        }
+    }
+
+    /**
+     * Splits a record with more than two Link codes which is the only duplicate record, by the records of the best year
+     * including those sharing Link codes with the duplicate records. This is tried once, when nothing else lowered the number of records with multiple links.
+     */
+    static final class AlternativeYears implements SplitStrategy {
+
+        @Override
+        public String getName() {
+            return "alternative-years";
+        }
+
+        @Override
+        public SplitPlan plan(SplitCandidate candidate) {
+            if (!candidate.tryAlternativeSplitting || candidate.getNumberOfLinks() <= 2 || candidate.isSplittableByYear() || candidate.usesSquareKilometres())
+                return null;
+            if (candidate.getUniques().size() < candidate.getNumberOfLinks() || !candidate.doLinksCompare() || candidate.getDuplicateRecords().size() != 1)
+                return null;
+
+            Set<String> new_uniques = new TreeSet<>();
+            for (Map.Entry<String, Set<String>> code_from_map : candidate.getCodeMap().entrySet()) {
+                new_uniques.addAll(code_from_map.getValue());
+            }
+
+            // Looping through the unique codes to determine duplicate years in the Link codes
+            TreeSet<Integer> years = new TreeSet<>();
+            Map<String, BigDecimal> uniqueValuesToCalculateFrom = new HashMap<>();
+            candidate.disaggregation.determineUniqueValuesToCalculateFrom(new_uniques, years, uniqueValuesToCalculateFrom);
+
+            Set<String> records_not_to_use = new TreeSet<>();
+            Integer closest_year_for_calculating_number_of_homes = determineBestYear(candidate, years, uniqueValuesToCalculateFrom, records_not_to_use);
+            for (String record_not_to_use : records_not_to_use)
+                uniqueValuesToCalculateFrom.remove(record_not_to_use);
+
+            Map<BigDecimal, List<String>> valuesToCalculateWithMap = new HashMap<>();
+            NoteState noteState = null;
+            noteState = candidate.disaggregation.fillValuesToCalculateWithAndGetNoteState(uniqueValuesToCalculateFrom, closest_year_for_calculating_number_of_homes, valuesToCalculateWithMap, noteState);
+
+            SplitPlan plan = new SplitPlan(this);
+            addYearPortions(plan, candidate, closest_year_for_calculating_number_of_homes, valuesToCalculateWithMap, noteState);
+            plan.resetsAlternativeSplitting = true;
+            return plan;
+        }
+    }
+
+    /**
+     * Determines the best year to split with, leaving out the Link codes of the unique records that have multiple Link codes.
+     *
+     * @param candidate                   SplitCandidate the record to split.
+     * @param years                       TreeSet<Integer> the years of the unique records.
+     * @param uniqueValuesToCalculateFrom Map<String, BigDecimal> the number of houses of the unique records.
+     * @param records_not_to_use          Set<String> which will contain the ids of the unique records not to use.
+     * @return Integer the year which is best used for calculating the new number of houses.
+     */
+    private static Integer determineBestYear(SplitCandidate candidate, TreeSet<Integer> years, Map<String, BigDecimal> uniqueValuesToCalculateFrom, Set<String> records_not_to_use) {
+        Disaggregation disaggregation = candidate.disaggregation;
+        // Determines the year closest to the years of the records with the values to calculate
+        Integer closest_year_for_calculating_number_of_homes = disaggregation.determineClosestYearForCalculatingNumberOfHomes(years, candidate.getEqualValueToCalculate());
+
+        // Collecting the records belonging to the unique values to calculate from.
+        Map<Integer, Set<String>> record_year_link_map = new HashMap<>();
+        disaggregation.determineRecordsNotToUseAndFillRecordYearLinkMap(candidate.record, candidate.getCodeMap(), years, uniqueValuesToCalculateFrom, records_not_to_use, record_year_link_map);
+
+        Map<Integer, Set<String>> record_year_link_not_to_use_map = new HashMap<>();
+        for (String record_not_to_use : records_not_to_use) {
+            Record record_to_check_for_use = disaggregation.getRecord(record_not_to_use);
+            if (record_to_check_for_use != null) {
+                record_year_link_not_to_use_map.put(record_to_check_for_use.year, new TreeSet<>(record_to_check_for_use.links));
+            }
+        }
+
+        // This should remove the links for records that should not be used, resulting in the correct year in the
+        // following piece of code.
+        for (Map.Entry<Integer, Set<String>> record_year_link_entry : record_year_link_map.entrySet()) {
+            Set<String> links_not_to_use = record_year_link_not_to_use_map.get(record_year_link_entry.getKey());
+            if (links_not_to_use != null) {
+                record_year_link_entry.getValue().removeIf(links_not_to_use::contains);
+            }
+        }
+
+        // looping through the collected records to determine which year is complete in the sense of links
+        return disaggregation.determineTheBestYearToUseForSplitting(candidate.record, closest_year_for_calculating_number_of_homes, record_year_link_map);
+    }
+
+    /**
+     * Adds a portion for each duplicate record, dividing its houses over the Link codes of the values to calculate with.
+     * Without a total there is no ratio to calculate with, so the records are left as is.
+     *
+     * @param plan                                         SplitPlan the plan to add the portions to.
+     * @param candidate                                    SplitCandidate the record to split.
+     * @param closest_year_for_calculating_number_of_homes Integer the year to be used to set on the new records.
+     * @param valuesToCalculateWithMap                     Map<BigDecimal, List<String>> the values to calculate the new number of houses with.
+     * @param noteState                                    NoteState the NoteState to be given to the new records, YEAR_SOURCE if null.
+     */
+    private static void addYearPortions(SplitPlan plan, SplitCandidate candidate, Integer closest_year_for_calculating_number_of_homes, Map<BigDecimal, List<String>> valuesToCalculateWithMap, NoteState noteState) {
+        BigDecimal total_to_calculate_from = new BigDecimal(0);
+        for (BigDecimal bd : valuesToCalculateWithMap.keySet()) {
+            if (bd != null)
+                total_to_calculate_from = total_to_calculate_from.add(bd);
+        }
+        if (total_to_calculate_from.signum() == 0 && valuesToCalculateWithMap.keySet().stream().anyMatch(Objects::nonNull)) {
+            candidate.disaggregation.getMissingValues().count(MissingValues.Kind.HOUSES);
+            return;
+        }
+        for (Map.Entry<String, BigDecimal> entry_to_recalculate : candidate.getEqualValueToCalculate().entrySet()) {
+            Record source = candidate.disaggregation.getRecord(entry_to_recalculate.getKey());
+            SplitPlan.Portion portion = plan.addPortion(SplitPlan.Calculation.SHARE, SplitPlan.Creation.PER_RESULT, source, entry_to_recalculate.getValue(),
+                    noteState != null ? noteState : NoteState.YEAR_SOURCE, closest_year_for_calculating_number_of_homes);
+            for (Map.Entry<BigDecimal, List<String>> entry : valuesToCalculateWithMap.entrySet()) {
+                portion.addTarget(entry.getValue(), entry.getKey(), null);
+            }
+            plan.removeRecord(entry_to_recalculate.getKey());
+        }
+    }
+
+    /**
+     * Adds the portions dividing the houses of the record by the square kilometres of its Link codes, or of the children of its Link codes.
+     * The plan ends the pass if the record is split properly, otherwise the records that could be created are added without removing the record.
+     *
+     * @param plan        SplitPlan the plan to add the portions to.
+     * @param candidate   SplitCandidate the record to split.
+     * @param shares      SquareKilometreRatioTable.Shares the square kilometres of the Link codes of the record in its year.
+     * @param alternative boolean which states whether this is the alternative splitting, in which also single children are used.
+     */
+    private static void addSquareKilometrePortions(SplitPlan plan, SplitCandidate candidate, SquareKilometreRatioTable.Shares shares, boolean alternative) {
+        Record record = candidate.record.getValue();
+        MissingValues missingValues = candidate.disaggregation.getMissingValues();
+        SplitPlan.Portion portion = plan.addPortion(SplitPlan.Calculation.RATIO, SplitPlan.Creation.SINGLE_LINK, record, record.houses, NoteState.YEAR_SURFACE, record.year);
+        Map<String, BigDecimal> squareKilometresToCalculateWithMap = shares.squareKilometres;
+        if (squareKilometresToCalculateWithMap.size() == record.links.size() && shares.hasTotal()) {
+            if (alternative)
+                missingValues.isMissing(record.houses, MissingValues.Kind.HOUSES);
+            for (Map.Entry<String, BigDecimal> entry : squareKilometresToCalculateWithMap.entrySet()) {
+                portion.addTarget(entry.getKey(), shares.getRatio(entry.getKey()), entry.getValue());
+            }
+            plan.removeRecord(record.id);
+            plan.endsPass = true;
+            return;
+        }
+        boolean record_creation_succeeded = false;
+        for (String record_link_code : record.links) {
+            Set<String> children = candidate.disaggregation.getChildCodes(record_link_code);
+            if (squareKilometresToCalculateWithMap.get(record_link_code) != null) {
+                record_creation_succeeded = addSquareKilometreTarget(portion, shares, record_link_code, missingValues);
+            } else if (children != null && (alternative || children.size() > 1)) {
+                for (String code_hier_child : children) {
+                    if (squareKilometresToCalculateWithMap.keySet().containsAll(children)) {
+                        if (squareKilometresToCalculateWithMap.get(code_hier_child) != null) {
+                            record_creation_succeeded = addSquareKilometreTarget(portion, shares, code_hier_child, missingValues);
+                        }
+                    }
+                }
+            } else {
+                portion.addTarget(record_link_code, null, BigDecimal.ZERO);
+                if (!alternative)
+                    record_creation_succeeded = true;
+            }
+        }
+        if (record_creation_succeeded) {
+            plan.removeRecord(record.id);
+            plan.endsPass = true;
+        }
+    }
+
+    /**
+     * Adds a target for the Link code with its ratio of the square kilometres, if the ratio and the houses are present.
+     *
+     * @param portion       SplitPlan.Portion the portion to add the target to.
+     * @param shares        SquareKilometreRatioTable.Shares the square kilometres and ratios to use.
+     * @param link_code     String the Link code of the target.
+     * @param missingValues MissingValues the counter of the missing values.
+     * @return a boolean which states whether the target has been added.
+     */
+    private static boolean addSquareKilometreTarget(SplitPlan.Portion portion, SquareKilometreRatioTable.Shares shares, String link_code, MissingValues missingValues) {
+        BigDecimal toCalculateBigDecimal = shares.squareKilometres.get(link_code);
+        if (missingValues.isMissing(toCalculateBigDecimal, MissingValues.Kind.KM2) || missingValues.isMissing(portion.houses, MissingValues.Kind.HOUSES))
+            return false;
+        BigDecimal ratio = shares.getRatio(link_code);
+        if (ratio == null)
+            return false;
+        portion.addTarget(link_code, ratio, toCalculateBigDecimal);
+        return true;
+    }
+
+    /**
+     * Adds a portion giving each Link code of the record a new record without houses.
+     *
+     * @param plan   SplitPlan the plan to add the portion to.
+     * @param record Record the record to split.
+     */
+    private static void addPortionWithoutHouses(SplitPlan plan, Record record) {
+        SplitPlan.Portion portion = plan.addPortion(SplitPlan.Calculation.FIXED, SplitPlan.Creation.WITHOUT_HOUSES, record, null, NoteState.SOURCE, 0);
+        for (String link : record.links) {
+            portion.addTarget(link, null, null);
+        }
+    }
+}
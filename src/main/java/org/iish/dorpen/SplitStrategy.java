@@ -0,0 +1,25 @@
+package org.iish.dorpen;
+
+/**
+ * A way of splitting a record with multiple Link codes into records with fewer Link codes.
+ * In every pass the strategies are asked in turn for a plan for each record with multiple Link codes, the first plan returned is used.
+ * The plans of a pass are calculated per strategy at once by the RatioKernel, after which the new records are created in the order the plans were made.
+ */
+interface SplitStrategy {
+
+    /**
+     * Returns the name of the strategy.
+     *
+     * @return String the name of the strategy.
+     */
+    String getName();
+
+    /**
+     * Plans how the record of the candidate is split.
+     *
+     * @param candidate SplitCandidate the record to split, along with the information of the pass about it.
+     * @return SplitPlan the plan, a plan without portions if the strategy applies but cannot split the record in this pass,
+     * or null if the strategy does not apply so the next strategy is asked.
+     */
+    SplitPlan plan(SplitCandidate candidate);
+}
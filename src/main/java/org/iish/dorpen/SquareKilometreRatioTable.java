@@ -0,0 +1,185 @@
+package org.iish.dorpen;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+/**
+ * Holds the square kilometres per Link code and year together with the ratios derived from them.
+ * The ratio of each child within the total of its siblings is calculated once for every parent and year,
+ * ratios for other combinations of Link codes are calculated the first time they are asked for and kept from then on.
+ */
+final class SquareKilometreRatioTable {
+    private final Map<String, Map<Integer, BigDecimal>> squareKilometres = new HashMap<>(); // Contains the km2 per year for each Link code
+    private final Map<String, List<String>> children = new HashMap<>(); // Contains the sorted children of each parent Link code
+    private final Map<String, Map<Integer, Shares>> sharesPerParent = new HashMap<>(); // Contains the shares of the children of a parent per year
+    private final Map<List<String>, Map<Integer, Shares>> sharesPerLinks = new HashMap<>(); // Contains the shares of other combinations of Link codes per year
+    private final Map<String, Map<Long, Boolean>> yearRatioDifferences = new HashMap<>(); // Contains whether the ratio between two years differs for a Link code
+
+    /**
+     * Adds the square kilometres of a Link code to the table, the first values added for a Link code are kept.
+     *
+     * @param linkCode String the Link code the square kilometres belong to.
+     * @param km2      Map<Integer, BigDecimal> the square kilometres per year, a year without value maps to null.
+     */
+    void put(String linkCode, Map<Integer, BigDecimal> km2) {
+        squareKilometres.putIfAbsent(linkCode, km2);
+    }
+
+    /**
+     * Calculates the ratios of the children of every parent Link code for every year.
+     * This should be called once all the square kilometres have been added.
+     */
+    void build() {
+        children.clear();
+        sharesPerParent.clear();
+        sharesPerLinks.clear();
+        yearRatioDifferences.clear();
+
+        Map<String, Set<String>> hierarchy = new HashMap<>();
+        Set<Integer> years = new TreeSet<>();
+        for (Map.Entry<String, Map<Integer, BigDecimal>> entry : squareKilometres.entrySet()) {
+            years.addAll(entry.getValue().keySet());
+            String code = entry.getKey();
+            while (code.length() > 6) {
+                String parent = code.substring(0, code.length() - 1);
+                hierarchy.computeIfAbsent(parent, p -> new TreeSet<>()).add(code);
+                code = parent;
+            }
+        }
+        for (Map.Entry<String, Set<String>> entry : hierarchy.entrySet()) {
+            List<String> siblings = new ArrayList<>(entry.getValue());
+            children.put(entry.getKey(), siblings);
+            Map<Integer, Shares> sharesPerYear = new HashMap<>();
+            for (int year : years) {
+                sharesPerYear.put(year, new Shares(siblings, year));
+            }
+            sharesPerParent.put(entry.getKey(), sharesPerYear);
+        }
+    }
+
+    /**
+     * Checks whether the table contains square kilometres for the Link code.
+     *
+     * @param linkCode String the Link code to check.
+     * @return a boolean which states whether the Link code is present.
+     */
+    boolean contains(String linkCode) {
+        return squareKilometres.containsKey(linkCode);
+    }
+
+    /**
+     * Returns the square kilometres of a Link code in a year.
+     *
+     * @param linkCode String the Link code to get the square kilometres for.
+     * @param year     int the year to get the square kilometres for.
+     * @return BigDecimal the square kilometres, or null if these are unknown.
+     */
+    BigDecimal get(String linkCode, int year) {
+        Map<Integer, BigDecimal> km2 = squareKilometres.get(linkCode);
+        return km2 != null ? km2.get(year) : null;
+    }
+
+    /**
+     * Returns the shares of the given Link codes within their total square kilometres in a year.
+     * If the Link codes are exactly the children of one parent, the shares calculated while building the table are used.
+     *
+     * @param linkCodes List<String> the Link codes to get the shares for, in the order they should be iterated.
+     * @param year      int the year to get the shares for.
+     * @return Shares the square kilometres, total and ratios of the Link codes.
+     */
+    Shares getShares(List<String> linkCodes, int year) {
+        if (!linkCodes.isEmpty()) {
+            String first = linkCodes.get(0);
+            if (first.length() > 6) {
+                String parent = first.substring(0, first.length() - 1);
+                if (linkCodes.equals(children.get(parent))) {
+                    Shares shares = sharesPerParent.get(parent).get(year);
+                    if (shares != null)
+                        return shares;
+                }
+            }
+        }
+        return sharesPerLinks
+                .computeIfAbsent(new ArrayList<>(linkCodes), l -> new HashMap<>())
+                .computeIfAbsent(year, y -> new Shares(linkCodes, y));
+    }
+
+    /**
+     * Checks whether the ratio of the square kilometres of a Link code between two years differs.
+     * The ratio of each year is its part of the total of both years, rounded to three decimals.
+     *
+     * @param linkCode  String the Link code to compare the years for.
+     * @param year      int the year of the record.
+     * @param otherYear int the year to compare with.
+     * @return a boolean which states whether the ratios differ, false if one of the values is missing or the total is zero.
+     */
+    boolean doRatiosDiffer(String linkCode, int year, int otherYear) {
+        long key = ((long) year << 32) | (otherYear & 0xffffffffL);
+        return yearRatioDifferences.computeIfAbsent(linkCode, c -> new HashMap<>()).computeIfAbsent(key, k -> {
+            BigDecimal current = get(linkCode, year);
+            BigDecimal toUse = get(linkCode, otherYear);
+            if (current == null || toUse == null)
+                return false;
+            BigDecimal total = toUse.add(current);
+            if (total.signum() == 0)
+                return false;
+            return current.divide(total, 3, BigDecimal.ROUND_HALF_EVEN).compareTo(toUse.divide(total, 3, BigDecimal.ROUND_HALF_EVEN)) != 0;
+        });
+    }
+
+    /**
+     * The square kilometres of a set of Link codes in one year, with the ratio of each Link code within their total.
+     */
+    final class Shares {
+        final Map<String, BigDecimal> squareKilometres = new HashMap<>(); // Contains the Link codes with a value in that year
+        final Set<String> missing = new TreeSet<>(); // Contains the Link codes present in the table without a value in that year
+        final BigDecimal total; // The total of the square kilometres, null if none of the Link codes has a value
+        private final Map<String, BigDecimal> ratios = new HashMap<>();
+
+        /**
+         * Constructor for the Shares class, calculating the total and the ratios.
+         *
+         * @param linkCodes List<String> the Link codes to calculate the shares for.
+         * @param year      int the year to calculate the shares for.
+         */
+        private Shares(List<String> linkCodes, int year) {
+            BigDecimal sum = null;
+            for (String linkCode : linkCodes) {
+                if (!contains(linkCode))
+                    continue;
+                BigDecimal km2 = get(linkCode, year);
+                if (km2 == null) {
+                    missing.add(linkCode);
+                    continue;
+                }
+                sum = sum == null ? km2 : sum.add(km2);
+                squareKilometres.put(linkCode, km2);
+            }
+            total = sum;
+            if (total != null && total.signum() != 0) {
+                for (Map.Entry<String, BigDecimal> entry : squareKilometres.entrySet()) {
+                    ratios.put(entry.getKey(), entry.getValue().divide(total, BigDecimal.ROUND_HALF_EVEN));
+                }
+            }
+        }
+
+        /**
+         * Returns the ratio of the Link code within the total, rounded to the scale of its square kilometres.
+         *
+         * @param linkCode String the Link code to get the ratio for.
+         * @return BigDecimal the ratio, or null if the Link code has no value or the total is zero.
+         */
+        BigDecimal getRatio(String linkCode) {
+            return ratios.get(linkCode);
+        }
+
+        /**
+         * Checks whether there is a total to calculate ratios with.
+         *
+         * @return a boolean which states whether the total is present and not zero.
+         */
+        boolean hasTotal() {
+            return total != null && total.signum() != 0;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package org.iish.dorpen;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * The export and the notes as the two sheets of one XLSX workbook, for the researchers who open the output in Excel.
+ * The workbook is streamed: only the last rows of each sheet are kept in memory and the rows before them are flushed to
+ * compressed temporary files, so the memory used stays the same however many Link codes and years there are.
+ * The numbers of houses are numeric cells, the Link codes, N/A and the notes are text.
+ */
+final class XlsxExport implements Closeable {
+
+    static final int ROW_WINDOW = 100; // The number of rows per sheet kept in memory
+
+    private final SXSSFWorkbook workbook = new SXSSFWorkbook(ROW_WINDOW);
+    private final SXSSFSheet export;
+    private final SXSSFSheet notes;
+    private int rows = 0;
+
+    /**
+     * Constructor for the XlsxExport class, which starts both sheets with the header row.
+     *
+     * @param headerRow List<String> the header row, the Code column followed by the years.
+     */
+    XlsxExport(List<String> headerRow) {
+        workbook.setCompressTempFiles(true);
+        export = workbook.createSheet("Export");
+        notes = workbook.createSheet("Notes");
+        for (SXSSFSheet sheet : new SXSSFSheet[]{export, notes}) {
+            Row row = sheet.createRow(rows);
+            for (int i = 0; i < headerRow.size(); i++) {
+                row.createCell(i).setCellValue(headerRow.get(i));
+            }
+            sheet.createFreezePane(1, 1);
+        }
+        rows++;
+    }
+
+    /**
+     * Adds the row of a village complex to both sheets.
+     *
+     * @param exportRow List<String> the Link code followed by the number of houses per year, or N/A.
+     * @param notesRow  List<String> the Link code followed by the note per year.
+     */
+    void addRow(List<String> exportRow, List<String> notesRow) {
+        Row row = export.createRow(rows);
+        for (int i = 0; i < exportRow.size(); i++) {
+            String value = exportRow.get(i);
+            if (i == 0 || value.equals("N/A"))
+                row.createCell(i).setCellValue(value);
+            else
+                row.createCell(i).setCellValue(Double.parseDouble(value));
+        }
+        row = notes.createRow(rows);
+        for (int i = 0; i < notesRow.size(); i++) {
+            row.createCell(i).setCellValue(notesRow.get(i));
+        }
+        rows++;
+    }
+
+    /**
+     * Writes the workbook to the file.
+     *
+     * @param path String the path of the XLSX file.
+     * @throws IOException if the file cannot be written.
+     */
+    void write(String path) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(path))) {
+            workbook.write(out);
+        }
+    }
+
+    /**
+     * Removes the temporary files of the streamed rows and closes the workbook.
+     *
+     * @throws IOException if the workbook cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        workbook.dispose();
+        workbook.close();
+    }
+}
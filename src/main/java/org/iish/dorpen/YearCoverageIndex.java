@@ -0,0 +1,131 @@
+package org.iish.dorpen;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Index of the years of a village complex, telling which years cover all the Link codes of the complex.
+ * The Link codes of a year are first raised to their parent codes, as long as there are more codes than in the complex,
+ * after which the year is complete when its Link codes are exactly those of the complex.
+ */
+final class YearCoverageIndex {
+    private final NavigableSet<Integer> completeYears = new TreeSet<>();
+
+    /**
+     * Constructor for the YearCoverageIndex class.
+     *
+     * @param links        List<String> the Link codes of the village complex.
+     * @param linksPerYear Map<Integer, Set<String>> the Link codes found per year, these are not altered.
+     * @param parentOf     Function<String, String> returns the parent of a Link code, or null if it has no parent.
+     * @param cache        Cache the cache holding the coverage already determined for the same Link codes.
+     */
+    YearCoverageIndex(List<String> links, Map<Integer, Set<String>> linksPerYear, Function<String, String> parentOf, Cache cache) {
+        for (Map.Entry<Integer, Set<String>> entry : linksPerYear.entrySet()) {
+            if (cache.isComplete(links, entry.getValue(), parentOf)) {
+                completeYears.add(entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * Returns the year nearest to the given year in which all Link codes of the complex are covered.
+     *
+     * @param year int the year to search from.
+     * @return Integer the nearest complete year, or null if there is none.
+     */
+    Integer getNearestCompleteYear(int year) {
+        return getNearestYear(completeYears, year);
+    }
+
+    /**
+     * Returns the year in the set nearest to the given year, if two years are equally near the earliest is returned.
+     *
+     * @param years NavigableSet<Integer> the years to search in.
+     * @param year  int the year to search from.
+     * @return Integer the nearest year, or null if the set is empty.
+     */
+    static Integer getNearestYear(NavigableSet<Integer> years, int year) {
+        Integer floor = years.floor(year);
+        Integer ceiling = years.ceiling(year);
+        if (floor == null)
+            return ceiling;
+        if (ceiling == null)
+            return floor;
+        return year - floor <= ceiling - year ? floor : ceiling;
+    }
+
+    /**
+     * Keeps the coverage determined for combinations of complex Link codes and year Link codes.
+     * It has to be cleared whenever the hierarchy of the Link codes changes.
+     */
+    static final class Cache {
+        private final Map<List<String>, Map<Set<String>, Boolean>> coverages = new HashMap<>();
+
+        /**
+         * Clears all the coverage kept in the cache.
+         */
+        void clear() {
+            coverages.clear();
+        }
+
+        /**
+         * Returns whether the year Link codes cover all the complex Link codes, determining it when not yet known.
+         *
+         * @param links     List<String> the Link codes of the complex.
+         * @param yearLinks Set<String> the Link codes of the year.
+         * @param parentOf  Function<String, String> returns the parent of a Link code, or null if it has no parent.
+         * @return a boolean which states whether the year is complete.
+         */
+        private boolean isComplete(List<String> links, Set<String> yearLinks, Function<String, String> parentOf) {
+            Map<Set<String>, Boolean> coveragePerYearLinks = coverages.computeIfAbsent(new ArrayList<>(links), l -> new HashMap<>());
+            Boolean complete = coveragePerYearLinks.get(yearLinks);
+            if (complete == null) {
+                complete = determineCoverage(links, yearLinks, parentOf);
+                coveragePerYearLinks.put(new TreeSet<>(yearLinks), complete);
+            }
+            return complete;
+        }
+
+        /**
+         * Raises the year Link codes that are not in the complex to their parents until there are no more codes than in the complex,
+         * then determines whether they are exactly the Link codes of the complex.
+         *
+         * @param links     List<String> the Link codes of the complex.
+         * @param yearLinks Set<String> the Link codes of the year.
+         * @param parentOf  Function<String, String> returns the parent of a Link code, or null if it has no parent.
+         * @return a boolean which states whether the year is complete.
+         */
+        private static boolean determineCoverage(List<String> links, Set<String> yearLinks, Function<String, String> parentOf) {
+            Set<String> raised = new TreeSet<>(yearLinks);
+            while (raised.size() > links.size() && !isComplete(links, raised)) {
+                List<String> parents = new ArrayList<>();
+                Iterator<String> it = raised.iterator();
+                while (it.hasNext()) {
+                    String link = it.next();
+                    if (!links.contains(link)) {
+                        String parent = parentOf.apply(link);
+                        if (parent != null) {
+                            it.remove();
+                            parents.add(parent);
+                        }
+                    }
+                }
+                if (parents.isEmpty())
+                    break;
+                raised.addAll(parents);
+            }
+            return isComplete(links, raised);
+        }
+
+        /**
+         * Checks whether the Link codes are exactly those of the complex.
+         *
+         * @param links     List<String> the Link codes of the complex.
+         * @param yearLinks Set<String> the Link codes to check.
+         * @return a boolean which states whether the Link codes are complete.
+         */
+        private static boolean isComplete(List<String> links, Set<String> yearLinks) {
+            return yearLinks.containsAll(links) && links.size() == yearLinks.size();
+        }
+    }
+}
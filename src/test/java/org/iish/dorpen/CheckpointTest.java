@@ -0,0 +1,131 @@
+package org.iish.dorpen;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that a run resumed from a checkpoint writes the same export and notes as a run from the beginning.
+ */
+public class CheckpointTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private String rawCsv;
+    private String squareKilometresCsv;
+    private String inputs;
+
+    @Before
+    public void generateDataset() throws Exception {
+        File raw = folder.newFile("raw.csv");
+        File squareKilometres = folder.newFile("km2.csv");
+        new DatasetGenerator(40, 7, 2, 0.55, 5, 0.05).write(raw.toPath(), squareKilometres.toPath());
+        rawCsv = raw.getPath();
+        squareKilometresCsv = squareKilometres.getPath();
+        inputs = raw.getName() + ", " + squareKilometres.getName();
+    }
+
+    /**
+     * Creates an engine that writes nothing but errors.
+     *
+     * @return Disaggregation the engine.
+     */
+    private static Disaggregation createEngine() {
+        Disaggregation disaggregation = new Disaggregation();
+        disaggregation.setLogger(new Log.Logger(Log.Level.ERROR, false));
+        return disaggregation;
+    }
+
+    /**
+     * Runs from the beginning, writing checkpoints if a path is given.
+     *
+     * @param name       String the name of the export and notes files.
+     * @param checkpoint File the path of the checkpoint, or null to write none.
+     * @param interval   long the time in nanoseconds between two checkpoints.
+     * @throws Exception if the run fails.
+     */
+    private void run(String name, File checkpoint, long interval) throws Exception {
+        Disaggregation disaggregation = createEngine();
+        if (checkpoint != null)
+            disaggregation.enableCheckpoints(checkpoint.getPath(), interval, inputs);
+        disaggregation.loadInputs(rawCsv, squareKilometresCsv);
+        disaggregation.updateLinks();
+        disaggregation.preSplitTheRecords();
+        disaggregation.export(new File(folder.getRoot(), name + " export.csv").getPath(), new File(folder.getRoot(), name + " notes.csv").getPath());
+    }
+
+    /**
+     * Resumes from the checkpoint, as Main does with --resume.
+     *
+     * @param name       String the name of the export and notes files.
+     * @param checkpoint File the path of the checkpoint.
+     * @throws Exception if the run fails.
+     */
+    private void resume(String name, File checkpoint) throws Exception {
+        Disaggregation disaggregation = createEngine();
+        disaggregation.enableCheckpoints(checkpoint.getPath(), Long.MAX_VALUE, inputs);
+        assertTrue(disaggregation.hasCheckpoint());
+        disaggregation.loadSquareKilometres(squareKilometresCsv);
+        disaggregation.resumeFromCheckpoint();
+        disaggregation.export(new File(folder.getRoot(), name + " export.csv").getPath(), new File(folder.getRoot(), name + " notes.csv").getPath());
+    }
+
+    /**
+     * Checks that two runs wrote the same export and notes.
+     *
+     * @param expected String the name of the files of the run from the beginning.
+     * @param actual   String the name of the files of the resumed run.
+     * @throws Exception if a file cannot be read.
+     */
+    private void assertSameFiles(String expected, String actual) throws Exception {
+        for (String file : new String[]{" export.csv", " notes.csv"}) {
+            byte[] expectedBytes = Files.readAllBytes(new File(folder.getRoot(), expected + file).toPath());
+            byte[] actualBytes = Files.readAllBytes(new File(folder.getRoot(), actual + file).toPath());
+            assertTrue(expected + file + " is empty", expectedBytes.length > 0);
+            assertArrayEquals(actual + file + " differs from " + expected + file, expectedBytes, actualBytes);
+        }
+    }
+
+    @Test
+    public void resumingBeforeTheFirstPassWritesTheSameResults() throws Exception {
+        run("whole", null, 0);
+        // With an interval that never passes, only the checkpoint before the first pass is written
+        File checkpoint = new File(folder.getRoot(), "before.bin");
+        run("checkpointed", checkpoint, Long.MAX_VALUE);
+        assertSameFiles("whole", "checkpointed");
+        resume("resumed", checkpoint);
+        assertSameFiles("whole", "resumed");
+    }
+
+    @Test
+    public void resumingAfterTheLastPassWritesTheSameResults() throws Exception {
+        run("whole", null, 0);
+        // With an interval of 0 a checkpoint is written after every pass, of which the last one is kept
+        File checkpoint = new File(folder.getRoot(), "after.bin");
+        run("checkpointed", checkpoint, 0);
+        resume("resumed", checkpoint);
+        assertSameFiles("whole", "resumed");
+    }
+
+    @Test
+    public void aCheckpointOfOtherInputsIsNotResumed() throws Exception {
+        File checkpoint = new File(folder.getRoot(), "other.bin");
+        run("checkpointed", checkpoint, Long.MAX_VALUE);
+        Disaggregation disaggregation = createEngine();
+        disaggregation.enableCheckpoints(checkpoint.getPath(), Long.MAX_VALUE, "other inputs");
+        disaggregation.loadSquareKilometres(squareKilometresCsv);
+        try {
+            disaggregation.resumeFromCheckpoint();
+            fail("A checkpoint of other input files cannot be resumed");
+        } catch (IOException expected) {
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package org.iish.dorpen;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.*;
+
+import static org.junit.Assert.fail;
+
+/**
+ * Runs every phase over generated datasets of 1, 2, 4 and 8 times BASE_ROOT_CODES root codes,
+ * and fits the growth exponent of the time of each phase against the number of raw rows.
+ * A phase fails when its time grows faster than its bound beyond the tolerance,
+ * so a change that makes a phase grow faster than it does now is caught and named before the actual database runs into it.
+ * Every phase is bound by nlogn, except the ones that are known to grow faster, which are bound by the growth they have now:
+ * the splitting of the records and the converting of the records grow as n2. These bounds are to be lowered as the phases are improved.
+ * As it takes about half a minute, the test is only run with the complexity profile, E.G. "mvn test -Pcomplexity".
+ */
+public class ComplexityCurveTest {
+
+    private static final int BASE_ROOT_CODES = 25;
+    private static final int[] SIZES = {1, 2, 4, 8};
+    private static final int REPEATS = 3;
+    private static final double TOLERANCE = 0.35; // The excess of the exponent over the bound that is allowed for the noise of the timing
+    private static final double MINIMUM_MILLIS = 20; // The time of the largest size below which a phase is too fast to fit
+
+    /**
+     * The growth a phase is allowed to have.
+     */
+    private enum Bound {
+        N("n"),
+        N_LOG_N("nlogn"),
+        N_SQUARED("n2");
+
+        final String name;
+
+        /**
+         * Constructor for the Bound enum.
+         *
+         * @param name String the name of the bound in the report.
+         */
+        Bound(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Returns the value of the bound for the size.
+         *
+         * @param n double the size.
+         * @return double the value of the bound.
+         */
+        double at(double n) {
+            switch (this) {
+                case N:
+                    return n;
+                case N_LOG_N:
+                    return n * Math.log(n);
+                default:
+                    return n * n;
+            }
+        }
+    }
+
+    private static final Map<PipelinePhase, Bound> BOUNDS = new EnumMap<>(PipelinePhase.class);
+
+    static {
+        for (PipelinePhase phase : PipelinePhase.values()) {
+            BOUNDS.put(phase, Bound.N_LOG_N);
+        }
+        // The phases known to grow faster than nlogn
+        BOUNDS.put(PipelinePhase.SPLIT, Bound.N_SQUARED);
+        BOUNDS.put(PipelinePhase.CONVERT, Bound.N_SQUARED);
+    }
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void everyPhaseGrowsWithinItsBound() throws Exception {
+        File directory = folder.getRoot();
+        String rawCsv = new File(directory, "raw.csv").getPath();
+        String squareKilometresCsv = new File(directory, "km2.csv").getPath();
+        String exportCsv = new File(directory, "export.csv").getPath();
+        String notesCsv = new File(directory, "notes.csv").getPath();
+        double[] rows = new double[SIZES.length];
+        double[][] millis = new double[PipelinePhase.values().length][SIZES.length]; // Contains the fastest time per phase and size
+        for (int s = -1; s < SIZES.length; s++) {
+            // The first round runs the smallest size once to warm up and is not measured
+            int size = s < 0 ? SIZES[0] : SIZES[s];
+            DatasetGenerator generator = new DatasetGenerator(BASE_ROOT_CODES * size, 1, 2, 0.55, 5, 0.05);
+            generator.write(new File(rawCsv).toPath(), new File(squareKilometresCsv).toPath());
+            if (s >= 0)
+                rows[s] = generator.getRowsWritten();
+            for (int r = 0; r < (s < 0 ? 1 : REPEATS); r++) {
+                Disaggregation disaggregation = new Disaggregation();
+                disaggregation.setLogger(new Log.Logger(Log.Level.ERROR, false));
+                for (PipelinePhase phase : PipelinePhase.values()) {
+                    long start = System.nanoTime();
+                    phase.run(disaggregation, rawCsv, squareKilometresCsv, exportCsv, notesCsv);
+                    double elapsed = (System.nanoTime() - start) / 1e6;
+                    if (s >= 0 && (r == 0 || elapsed < millis[phase.ordinal()][s]))
+                        millis[phase.ordinal()][s] = elapsed;
+                }
+            }
+        }
+
+        List<String> failures = new ArrayList<>();
+        // Contains the exponent and the times of every phase, which are part of the failure message
+        StringBuilder report = new StringBuilder(String.format(Locale.ROOT, "%-32s %10s %8s %s%n", "Phase", "Exponent", "Bound", "Milliseconds per size"));
+        for (PipelinePhase phase : PipelinePhase.values()) {
+            double[] times = millis[phase.ordinal()];
+            Bound bound = BOUNDS.get(phase);
+            StringBuilder timings = new StringBuilder();
+            double slowest = 0;
+            for (double time : times) {
+                timings.append(String.format(Locale.ROOT, " %.1f", time));
+                slowest = Math.max(slowest, time);
+            }
+            if (slowest < MINIMUM_MILLIS) {
+                report.append(String.format(Locale.ROOT, "%-32s %10s %8s%s (too fast to fit)%n", phase.methodName, "-", bound.name, timings));
+                continue;
+            }
+            double exponent = slope(rows, times, null);
+            double excess = slope(rows, times, bound);
+            report.append(String.format(Locale.ROOT, "%-32s %10.2f %8s%s%s%n", phase.methodName, exponent, bound.name, timings, excess > TOLERANCE ? " FAILED" : ""));
+            if (excess > TOLERANCE)
+                failures.add(String.format(Locale.ROOT, "Phase %s grows as n^%.2f, which is beyond the bound of %s by %.2f.", phase.methodName, exponent, bound.name, excess));
+        }
+        if (!failures.isEmpty())
+            fail(String.join(" ", failures) + System.lineSeparator() + report);
+    }
+
+    /**
+     * Fits the slope of the logarithm of the times, divided by the bound if there is one, against the logarithm of the sizes.
+     * Without a bound this is the growth exponent, with a bound it is how much faster than the bound the times grow.
+     *
+     * @param sizes double[] the sizes.
+     * @param times double[] the times for the sizes.
+     * @param bound Bound the bound to divide the times by, or null.
+     * @return double the slope of the least squares fit.
+     */
+    private static double slope(double[] sizes, double[] times, Bound bound) {
+        double meanX = 0;
+        double meanY = 0;
+        double[] x = new double[sizes.length];
+        double[] y = new double[sizes.length];
+        for (int i = 0; i < sizes.length; i++) {
+            x[i] = Math.log(sizes[i]);
+            y[i] = Math.log(Math.max(times[i], 1e-3) / (bound != null ? bound.at(sizes[i]) : 1));
+            meanX += x[i] / sizes.length;
+            meanY += y[i] / sizes.length;
+        }
+        double covariance = 0;
+        double variance = 0;
+        for (int i = 0; i < sizes.length; i++) {
+            covariance += (x[i] - meanX) * (y[i] - meanY);
+            variance += (x[i] - meanX) * (x[i] - meanX);
+        }
+        return covariance / variance;
+    }
+}
@@ -0,0 +1,75 @@
+package org.iish.dorpen;
+
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes and reads the CSV files of the tests in their temporary folder, with the format of the export.
+ */
+final class CsvFiles {
+
+    // Contains the temporary folder of the test, whose root is only there once the test runs
+    private final TemporaryFolder folder;
+
+    /**
+     * @param folder TemporaryFolder the temporary folder of the test.
+     */
+    CsvFiles(TemporaryFolder folder) {
+        this.folder = folder;
+    }
+
+    /**
+     * Returns the path of a file in the temporary folder.
+     *
+     * @param name String the name of the file.
+     * @return String the path of the file.
+     */
+    String path(String name) {
+        return new File(folder.getRoot(), name).getPath();
+    }
+
+    /**
+     * Writes a CSV file with the rows given, the first being the header row.
+     *
+     * @param name String the name of the file.
+     * @param rows String[] the rows, with their values separated by a semicolon.
+     * @return String the path of the file.
+     * @throws IOException if the file cannot be written.
+     */
+    String write(String name, String... rows) throws IOException {
+        try (PrintWriter writer = new PrintWriter(path(name))) {
+            for (String row : rows) {
+                writer.print(row + "\r\n");
+            }
+        }
+        return path(name);
+    }
+
+    /**
+     * Reads the rows of a CSV file, the header row included.
+     *
+     * @param path String the path of the file.
+     * @return List<List<String>> the values of every row.
+     * @throws IOException if the file cannot be read.
+     */
+    static List<List<String>> read(String path) throws IOException {
+        List<List<String>> rows = new ArrayList<>();
+        try (CSVParser parser = CSVParser.parse(new FileReader(path), Disaggregation.csvFormat)) {
+            rows.add(new ArrayList<>(parser.getHeaderMap().keySet()));
+            for (CSVRecord record : parser) {
+                List<String> values = new ArrayList<>();
+                record.forEach(values::add);
+                rows.add(values);
+            }
+        }
+        return rows;
+    }
+}
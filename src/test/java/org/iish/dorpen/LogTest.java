@@ -0,0 +1,53 @@
+package org.iish.dorpen;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the levels and the quiet mode of the loggers.
+ */
+public class LogTest {
+
+    @Test
+    public void leavingTheQuietModeReturnsToTheLevelFromBefore() {
+        Log.Logger logger = new Log.Logger(Log.Level.DEBUG, true);
+        logger.setQuiet(true);
+        assertTrue(logger.isQuiet());
+        assertFalse(logger.isEnabled(Log.Level.INFO));
+        assertTrue(logger.isEnabled(Log.Level.WARN));
+        logger.setQuiet(false);
+        assertFalse(logger.isQuiet());
+        assertEquals(Log.Level.DEBUG, logger.getLevel());
+    }
+
+    @Test
+    public void theQuietModeKeepsAHigherLevel() {
+        Log.Logger logger = new Log.Logger(Log.Level.ERROR, true);
+        logger.setQuiet(true);
+        assertFalse(logger.isEnabled(Log.Level.WARN));
+        logger.setQuiet(false);
+        assertEquals(Log.Level.ERROR, logger.getLevel());
+    }
+
+    @Test
+    public void aLevelSetInTheQuietModeAppliesOnceItIsLeft() {
+        Log.Logger logger = new Log.Logger(Log.Level.INFO, true);
+        logger.setQuiet(true);
+        logger.setLevel(Log.Level.DEBUG);
+        assertFalse(logger.isEnabled(Log.Level.DEBUG));
+        logger.setQuiet(false);
+        assertTrue(logger.isEnabled(Log.Level.DEBUG));
+    }
+
+    @Test
+    public void aQuietLoggerLeavesItsParentAsItIs() {
+        Log.Logger parent = new Log.Logger(Log.Level.DEBUG, true);
+        Log.Logger quiet = parent.quiet();
+        assertTrue(quiet.isQuiet());
+        assertFalse(quiet.isEnabled(Log.Level.INFO));
+        assertTrue(quiet.isEnabled(Log.Level.ERROR));
+        assertFalse(parent.isQuiet());
+        assertTrue(parent.isEnabled(Log.Level.DEBUG));
+    }
+}
@@ -0,0 +1,378 @@
+package org.iish.dorpen;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the Parquet export by reading the file back with a reader of its own, following the Parquet format rather than the writer:
+ * the footer in the Thrift compact protocol, the page headers, the GZIP compressed pages, the definition levels and the dictionaries.
+ */
+public class ParquetExportTest {
+
+    private static final String[] COLUMNS = {"code", "year", "houses", "note", "year_used_to_calculate"};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * A row as it is added to the export.
+     */
+    private static final class Row {
+        final String code;
+        final int year;
+        final BigDecimal houses;
+        final NoteState note;
+        final int yearUsedToCalculate;
+
+        /**
+         * Constructor for the Row class.
+         *
+         * @param number int the number of the row, from which its values are derived.
+         */
+        Row(int number) {
+            code = String.format(Locale.ROOT, "HO%04dA", number / 5);
+            year = 1600 + number % 5 * 10;
+            houses = number % 7 == 0 ? null : new BigDecimal(number).movePointLeft(3);
+            note = number % 11 == 0 ? null : NoteState.values()[number % NoteState.values().length];
+            yearUsedToCalculate = number % 3 == 0 ? 0 : 1500 + number % 200;
+        }
+    }
+
+    @Test
+    public void readsBackTheRowsOfEveryRowGroup() throws Exception {
+        int rowCount = ParquetExport.ROW_GROUP_SIZE + 1234;
+        File file = folder.newFile("export.parquet");
+        try (ParquetExport export = new ParquetExport(file.getPath())) {
+            for (int i = 0; i < rowCount; i++) {
+                Row row = new Row(i);
+                export.addRow(row.code, row.year, row.houses, row.note, row.yearUsedToCalculate);
+            }
+            export.finish();
+        }
+
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        assertEquals("PAR1", new String(bytes, 0, 4, StandardCharsets.US_ASCII));
+        assertEquals("PAR1", new String(bytes, bytes.length - 4, 4, StandardCharsets.US_ASCII));
+        int footerLength = ByteBuffer.wrap(bytes, bytes.length - 8, 4).order(ByteOrder.LITTLE_ENDIAN).getInt();
+        Map<Integer, Object> footer = new ThriftReader(bytes, bytes.length - 8 - footerLength).readStruct();
+
+        assertEquals(1, footer.get(1));
+        List<?> schema = (List<?>) footer.get(2);
+        assertEquals(COLUMNS.length + 1, schema.size());
+        assertEquals(COLUMNS.length, struct(schema.get(0)).get(5));
+        Map<String, Boolean> optional = new HashMap<>(); // Contains per column whether its values can be empty
+        for (int c = 0; c < COLUMNS.length; c++) {
+            Map<Integer, Object> element = struct(schema.get(c + 1));
+            assertEquals(COLUMNS[c], string(element.get(4)));
+            optional.put(COLUMNS[c], element.get(3).equals(1));
+        }
+        assertEquals(Arrays.asList(false, false, true, true, true), Arrays.asList(optional.get("code"), optional.get("year"), optional.get("houses"), optional.get("note"), optional.get("year_used_to_calculate")));
+        assertEquals((long) rowCount, footer.get(3));
+
+        List<?> rowGroups = (List<?>) footer.get(4);
+        assertEquals(2, rowGroups.size());
+        int first = 0;
+        for (Object rowGroupElement : rowGroups) {
+            Map<Integer, Object> rowGroup = struct(rowGroupElement);
+            int rows = (int) (long) (Long) rowGroup.get(3);
+            List<?> chunks = (List<?>) rowGroup.get(1);
+            assertEquals(COLUMNS.length, chunks.size());
+            List<List<Object>> values = new ArrayList<>();
+            for (Object chunk : chunks) {
+                Map<Integer, Object> metaData = struct(struct(chunk).get(3));
+                assertEquals(2, metaData.get(4)); // GZIP
+                assertEquals((long) rows, metaData.get(5));
+                values.add(readColumn(bytes, metaData, optional.get(string(((List<?>) metaData.get(3)).get(0))), rows));
+            }
+            for (int i = 0; i < rows; i++) {
+                Row row = new Row(first + i);
+                assertEquals(row.code, values.get(0).get(i));
+                assertEquals(row.year, values.get(1).get(i));
+                assertEquals(row.houses != null ? row.houses.doubleValue() : null, values.get(2).get(i));
+                assertEquals(row.note != null ? row.note.name() : null, values.get(3).get(i));
+                assertEquals(row.yearUsedToCalculate != 0 ? row.yearUsedToCalculate : null, values.get(4).get(i));
+            }
+            first += rows;
+        }
+        assertEquals(rowCount, first);
+    }
+
+    @Test
+    public void removesAFileThatIsNotFinished() throws Exception {
+        File file = folder.newFile("unfinished.parquet");
+        try (ParquetExport export = new ParquetExport(file.getPath())) {
+            export.addRow("HO0001", 1600, BigDecimal.ONE, NoteState.SOURCE, 0);
+        }
+        assertFalse(file.exists());
+    }
+
+    /**
+     * Reads the values of a column chunk, the dictionary page if it has one and the data page, with null for the empty values.
+     *
+     * @param bytes    byte[] the file.
+     * @param metaData Map<Integer, Object> the meta data of the column chunk.
+     * @param optional boolean which states whether the values can be empty, so the page starts with the definition levels.
+     * @param rows     int the number of rows of the row group.
+     * @return List<Object> the values of the rows.
+     * @throws IOException if a page cannot be decompressed.
+     */
+    private static List<Object> readColumn(byte[] bytes, Map<Integer, Object> metaData, boolean optional, int rows) throws IOException {
+        int type = (Integer) metaData.get(1);
+        List<String> dictionary = null;
+        if (metaData.containsKey(11)) {
+            ThriftReader reader = new ThriftReader(bytes, (int) (long) (Long) metaData.get(11));
+            Map<Integer, Object> header = reader.readStruct();
+            assertEquals(2, header.get(1));
+            ByteBuffer page = readPage(bytes, reader.position, header);
+            int size = (Integer) struct(header.get(7)).get(1);
+            dictionary = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                byte[] value = new byte[page.getInt()];
+                page.get(value);
+                dictionary.add(new String(value, StandardCharsets.UTF_8));
+            }
+        }
+
+        ThriftReader reader = new ThriftReader(bytes, (int) (long) (Long) metaData.get(9));
+        Map<Integer, Object> header = reader.readStruct();
+        assertEquals(0, header.get(1));
+        assertEquals(rows, struct(header.get(5)).get(1));
+        ByteBuffer page = readPage(bytes, reader.position, header);
+        int[] levels = new int[rows];
+        if (optional) {
+            int length = page.getInt();
+            ByteBuffer levelBytes = page.slice();
+            levelBytes.limit(length);
+            levels = readHybrid(levelBytes, rows, 1);
+            page.position(page.position() + length);
+        } else {
+            Arrays.fill(levels, 1);
+        }
+        int present = 0;
+        for (int level : levels) {
+            present += level;
+        }
+        int[] indices = dictionary != null ? readHybrid(page, present, page.get()) : null;
+        List<Object> values = new ArrayList<>();
+        int value = 0;
+        for (int level : levels) {
+            if (level == 0) {
+                values.add(null);
+            } else if (dictionary != null) {
+                values.add(dictionary.get(indices[value++]));
+            } else if (type == 1) {
+                values.add(page.getInt());
+            } else {
+                values.add(page.getDouble());
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Reads a GZIP compressed page following its header.
+     *
+     * @param bytes    byte[] the file.
+     * @param position int the position of the page, right after its header.
+     * @param header   Map<Integer, Object> the header of the page.
+     * @return ByteBuffer the page after decompression, with its numbers read least significant byte first.
+     * @throws IOException if the page cannot be decompressed.
+     */
+    private static ByteBuffer readPage(byte[] bytes, int position, Map<Integer, Object> header) throws IOException {
+        int uncompressedSize = (Integer) header.get(2);
+        int compressedSize = (Integer) header.get(3);
+        ByteArrayOutputStream page = new ByteArrayOutputStream();
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(bytes, position, compressedSize))) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = gzip.read(buffer)) > 0) {
+                page.write(buffer, 0, read);
+            }
+        }
+        assertEquals(uncompressedSize, page.size());
+        return ByteBuffer.wrap(page.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Reads numbers in the hybrid of run length encoding and bit packing.
+     *
+     * @param in       ByteBuffer the encoded numbers, of which the position is moved past them.
+     * @param count    int the number of numbers to read.
+     * @param bitWidth int the number of bits per number.
+     * @return int[] the numbers.
+     */
+    private static int[] readHybrid(ByteBuffer in, int count, int bitWidth) {
+        int[] numbers = new int[count];
+        int read = 0;
+        while (read < count) {
+            long header = readVarint(in);
+            if ((header & 1) == 0) {
+                int repeats = (int) (header >>> 1);
+                int value = 0;
+                for (int b = 0; b < bitWidth; b += 8) {
+                    value |= (in.get() & 0xFF) << b;
+                }
+                for (int i = 0; i < repeats && read < count; i++) {
+                    numbers[read++] = value;
+                }
+            } else {
+                int values = (int) (header >>> 1) * 8;
+                long bits = 0;
+                int bitCount = 0;
+                for (int i = 0; i < values; i++) {
+                    while (bitCount < bitWidth) {
+                        bits |= (long) (in.get() & 0xFF) << bitCount;
+                        bitCount += 8;
+                    }
+                    int value = (int) (bits & ((1L << bitWidth) - 1));
+                    bits >>>= bitWidth;
+                    bitCount -= bitWidth;
+                    if (read < count)
+                        numbers[read++] = value;
+                }
+            }
+        }
+        return numbers;
+    }
+
+    /**
+     * Reads a number written in seven bits per byte.
+     *
+     * @param in ByteBuffer the bytes.
+     * @return long the number.
+     */
+    private static long readVarint(ByteBuffer in) {
+        long value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = in.get() & 0xFF;
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    /**
+     * Casts a value read by the ThriftReader to a structure.
+     *
+     * @param value Object the value.
+     * @return Map<Integer, Object> the fields of the structure by their number.
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<Integer, Object> struct(Object value) {
+        return (Map<Integer, Object>) value;
+    }
+
+    /**
+     * Converts a binary value read by the ThriftReader to a string.
+     *
+     * @param value Object the value.
+     * @return String the string.
+     */
+    private static String string(Object value) {
+        return new String((byte[]) value, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads Thrift structures in the compact protocol into maps of their fields by number.
+     */
+    private static final class ThriftReader {
+        private final ByteBuffer in;
+        int position;
+
+        /**
+         * Constructor for the ThriftReader class.
+         *
+         * @param bytes    byte[] the bytes.
+         * @param position int the position of the structure to read.
+         */
+        ThriftReader(byte[] bytes, int position) {
+            this.in = ByteBuffer.wrap(bytes);
+            this.in.position(position);
+            this.position = position;
+        }
+
+        /**
+         * Reads a structure, after which the position is right after it.
+         *
+         * @return Map<Integer, Object> the fields by their number.
+         */
+        Map<Integer, Object> readStruct() {
+            Map<Integer, Object> fields = new TreeMap<>();
+            int field = 0;
+            while (true) {
+                int header = in.get() & 0xFF;
+                if (header == 0)
+                    break;
+                int type = header & 0x0F;
+                int delta = header >>> 4;
+                field = delta != 0 ? field + delta : zigzag(readVarint(in));
+                fields.put(field, readValue(type));
+            }
+            position = in.position();
+            return fields;
+        }
+
+        /**
+         * Reads a value of the type.
+         *
+         * @param type int the type in the compact protocol.
+         * @return Object the value.
+         */
+        private Object readValue(int type) {
+            switch (type) {
+                case 1:
+                    return true;
+                case 2:
+                    return false;
+                case 5:
+                    return zigzag(readVarint(in));
+                case 6:
+                    long value = readVarint(in);
+                    return (value >>> 1) ^ -(value & 1);
+                case 8:
+                    byte[] bytes = new byte[(int) readVarint(in)];
+                    in.get(bytes);
+                    return bytes;
+                case 9:
+                    int header = in.get() & 0xFF;
+                    int size = header >>> 4 == 15 ? (int) readVarint(in) : header >>> 4;
+                    List<Object> elements = new ArrayList<>();
+                    for (int i = 0; i < size; i++) {
+                        elements.add(readValue(header & 0x0F));
+                    }
+                    return elements;
+                case 12:
+                    return readStruct();
+                default:
+                    throw new IllegalStateException("Unexpected type " + type);
+            }
+        }
+
+        /**
+         * Decodes a zigzag encoded 32 bit number.
+         *
+         * @param value long the encoded number.
+         * @return int the number.
+         */
+        private static int zigzag(long value) {
+            return (int) (value >>> 1) ^ -(int) (value & 1);
+        }
+    }
+}
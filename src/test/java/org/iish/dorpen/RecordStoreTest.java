@@ -0,0 +1,96 @@
+package org.iish.dorpen;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the running totals of the RecordStore and the detection of houses leaking while records are split.
+ */
+public class RecordStoreTest {
+
+    /**
+     * Creates a record.
+     *
+     * @param id     String the id of the record.
+     * @param year   int the year of the record.
+     * @param houses String the number of houses, or null if missing.
+     * @param links  String... the Link codes of the record.
+     * @return Record the record.
+     */
+    private static Record record(String id, int year, String houses, String... links) {
+        Record record = new Record();
+        record.id = id;
+        record.year = year;
+        record.houses = houses != null ? new BigDecimal(houses) : null;
+        record.links.addAll(Arrays.asList(links));
+        record.note = NoteState.SOURCE;
+        return record;
+    }
+
+    @Test
+    public void keepsTheTotalsWhilePuttingReplacingAndRemoving() {
+        RecordStore store = new RecordStore();
+        store.put(record("1", 1600, "10", "HO0001A", "HO0001B"));
+        store.put(record("2", 1600, "5", "HO0002"));
+        store.put(record("3", 1700, null, "HO0003"));
+        assertEquals(0, new BigDecimal("15").compareTo(store.getHouses()));
+        assertEquals(0, new BigDecimal("15").compareTo(store.getHousesPerYear().get(1600)));
+        assertFalse(store.getHousesPerYear().containsKey(1700));
+        assertEquals(1, store.getRecordsWithMultipleLinks());
+
+        // Replacing a record takes the totals of the record it replaces out
+        store.put(record("1", 1600, "4", "HO0001A"));
+        assertEquals(0, new BigDecimal("9").compareTo(store.getHouses()));
+        assertEquals(0, store.getRecordsWithMultipleLinks());
+
+        assertNotNull(store.remove("2"));
+        assertNull(store.remove("2"));
+        assertEquals(0, new BigDecimal("4").compareTo(store.getHouses()));
+        assertEquals(2, store.size());
+        assertEquals(4, store.getRecordsPut());
+        assertEquals(1, store.getRecordsRemoved());
+        assertEquals(0, new BigDecimal("19").compareTo(store.getHousesPut()));
+    }
+
+    @Test
+    public void countsTheRecordsWithMultipleLinksWhenTheirLinksChange() {
+        RecordStore store = new RecordStore();
+        Record record = record("1", 1600, "10", "HO0001A", "HO0001B");
+        store.put(record);
+        record.links.remove("HO0001B");
+        store.linksChanged(record, 2);
+        assertEquals(0, store.getRecordsWithMultipleLinks());
+        record.links.add("HO0001C");
+        store.linksChanged(record, 1);
+        assertEquals(1, store.getRecordsWithMultipleLinks());
+        assertEquals(2, store.getLinksChanged());
+    }
+
+    @Test
+    public void reportsTheYearsThatLeakHousesBeyondTheTolerance() {
+        RecordStore store = new RecordStore();
+        store.put(record("1", 1600, "10", "HO0001A", "HO0001B"));
+        store.put(record("2", 1700, "6", "HO0002"));
+        SortedMap<Integer, BigDecimal> checked = new TreeMap<>(store.getHousesPerYear());
+
+        // A split that rounds keeps the houses within the tolerance
+        store.remove("1");
+        store.put(record("1a", 1600, "3.333", "HO0001A"));
+        store.put(record("1b", 1600, "6.666", "HO0001B"));
+        assertTrue(store.getLeaks(checked, new BigDecimal("0.002")).isEmpty());
+
+        // A split that loses a part, and a year of which all records are gone, are reported with their change
+        store.remove("1b");
+        store.remove("2");
+        SortedMap<Integer, BigDecimal> leaks = store.getLeaks(checked, new BigDecimal("0.002"));
+        assertEquals(2, leaks.size());
+        assertEquals(0, new BigDecimal("-6.667").compareTo(leaks.get(1600)));
+        assertEquals(0, new BigDecimal("-6").compareTo(leaks.get(1700)));
+    }
+}
@@ -0,0 +1,163 @@
+package org.iish.dorpen;
+
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the lookups of a result store that spans several blocks, and that a run writes the results of its export and notes.
+ */
+public class ResultStoreTest {
+
+    private static final int CODES = 100;
+    private static final int[] YEARS = {1600, 1650, 1700, 1750, 1800};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Returns the Link code of a number, so the Link codes are in the order of their numbers.
+     *
+     * @param number int the number.
+     * @return String the Link code, E.G. HO0001A for 1.
+     */
+    private static String getCode(int number) {
+        return String.format("HO%04dA", number);
+    }
+
+    /**
+     * Writes a result store of CODES Link codes with a result in every year, of which the number of houses is the number of the result.
+     * There are 5 results per Link code and 128 per block, so the results of some Link codes are split over two blocks.
+     *
+     * @return ResultStore the result store.
+     * @throws IOException if the result store cannot be written.
+     */
+    private ResultStore writeStore() throws IOException {
+        String path = new File(folder.getRoot(), "results.bin").getPath();
+        try (ResultStore.Writer writer = new ResultStore.Writer(path)) {
+            for (int code = 0; code < CODES; code++) {
+                for (int year = 0; year < YEARS.length; year++) {
+                    int number = code * YEARS.length + year;
+                    writer.add(getCode(code), YEARS[year], BigDecimal.valueOf(number, 3), number % 2 == 0 ? NoteState.SOURCE : NoteState.YEAR, YEARS[year] - 50);
+                }
+            }
+            // A year without a number of houses and a note is left out
+            writer.add(getCode(CODES), YEARS[0], null, null, 0);
+            writer.finish();
+        }
+        return new ResultStore(path);
+    }
+
+    /**
+     * Checks a result as it is written by writeStore.
+     *
+     * @param result ResultStore.Result the result.
+     * @param code   int the number of its Link code.
+     * @param year   int the index of its year.
+     */
+    private static void assertResult(ResultStore.Result result, int code, int year) {
+        int number = code * YEARS.length + year;
+        assertEquals(getCode(code), result.getCode());
+        assertEquals(YEARS[year], result.getYear());
+        assertEquals(BigDecimal.valueOf(number, 3), result.getHouses());
+        assertEquals(number % 2 == 0 ? NoteState.SOURCE : NoteState.YEAR, result.getNote());
+        assertEquals(YEARS[year] - 50, result.getYearUsedToCalculate());
+    }
+
+    @Test
+    public void theResultsOfALinkCodeAreFoundAcrossABlockBoundary() throws Exception {
+        ResultStore store = writeStore();
+        assertEquals(CODES * YEARS.length, store.size());
+        // Link code 25 has its first 3 results at the end of the first block and its last 2 at the start of the second
+        int code = ResultStore.BLOCK_SIZE / YEARS.length;
+        List<ResultStore.Result> results = store.get(getCode(code), Integer.MIN_VALUE, Integer.MAX_VALUE);
+        assertEquals(YEARS.length, results.size());
+        for (int year = 0; year < YEARS.length; year++) {
+            assertResult(results.get(year), code, year);
+        }
+        results = store.get(getCode(code), YEARS[3], YEARS[4]);
+        assertEquals(2, results.size());
+        assertResult(results.get(0), code, 3);
+        assertResult(results.get(1), code, 4);
+        // The first and the last Link code, and Link codes that are not in the store
+        assertResult(store.get(getCode(0), YEARS[0], YEARS[0]).get(0), 0, 0);
+        assertResult(store.get(getCode(CODES - 1), YEARS[4], YEARS[4]).get(0), CODES - 1, 4);
+        assertTrue(store.get("HO0000", Integer.MIN_VALUE, Integer.MAX_VALUE).isEmpty());
+        assertTrue(store.get(getCode(CODES), Integer.MIN_VALUE, Integer.MAX_VALUE).isEmpty());
+    }
+
+    @Test
+    public void theResultsOfAPrefixAreFoundAcrossBlocks() throws Exception {
+        ResultStore store = writeStore();
+        // HO002 covers Link codes 20 up to 29, whose results are in the first and the second block
+        List<ResultStore.Result> results = store.getPrefix("HO002", Integer.MIN_VALUE, Integer.MAX_VALUE);
+        assertEquals(10 * YEARS.length, results.size());
+        for (int i = 0; i < results.size(); i++) {
+            assertResult(results.get(i), 20 + i / YEARS.length, i % YEARS.length);
+        }
+        results = store.getPrefix("HO005", YEARS[1], YEARS[1]);
+        assertEquals(10, results.size());
+        for (int i = 0; i < results.size(); i++) {
+            assertResult(results.get(i), 50 + i, 1);
+        }
+        assertEquals(CODES * YEARS.length, store.getPrefix("", Integer.MIN_VALUE, Integer.MAX_VALUE).size());
+        assertTrue(store.getPrefix("HO9", Integer.MIN_VALUE, Integer.MAX_VALUE).isEmpty());
+
+        Iterator<ResultStore.Result> iterator = store.iterator();
+        for (int i = 0; i < CODES * YEARS.length; i++) {
+            assertResult(iterator.next(), i / YEARS.length, i % YEARS.length);
+        }
+        assertFalse(iterator.hasNext());
+    }
+
+    @Test
+    public void theResultsOfARunAreThoseOfItsExportAndNotes() throws Exception {
+        File raw = folder.newFile("raw.csv");
+        File squareKilometres = folder.newFile("km2.csv");
+        new DatasetGenerator(40, 3, 2, 0.55, 5, 0.05).write(raw.toPath(), squareKilometres.toPath());
+        Disaggregation disaggregation = new Disaggregation();
+        disaggregation.setLogger(new Log.Logger(Log.Level.ERROR, false));
+        disaggregation.loadInputs(raw.getPath(), squareKilometres.getPath());
+        disaggregation.updateLinks();
+        disaggregation.preSplitTheRecords();
+        String exportPath = new File(folder.getRoot(), "export.csv").getPath();
+        String notesPath = new File(folder.getRoot(), "notes.csv").getPath();
+        String storePath = new File(folder.getRoot(), "results.bin").getPath();
+        disaggregation.export(exportPath, notesPath);
+        long written = disaggregation.writeResultStore(storePath);
+
+        ResultStore store = new ResultStore(storePath);
+        assertEquals(written, store.size());
+        Iterator<ResultStore.Result> results = store.iterator();
+        try (CSVParser export = CSVParser.parse(new FileReader(exportPath), Disaggregation.csvFormat);
+             CSVParser notes = CSVParser.parse(new FileReader(notesPath), Disaggregation.csvFormat)) {
+            List<String> headerRow = new ArrayList<>(export.getHeaderMap().keySet());
+            Iterator<CSVRecord> notesRows = notes.iterator();
+            for (CSVRecord exportRow : export) {
+                CSVRecord notesRow = notesRows.next();
+                for (int i = 1; i < headerRow.size(); i++) {
+                    if (exportRow.get(i).equals("N/A") && notesRow.get(i).equals("N/A"))
+                        continue;
+                    ResultStore.Result result = results.next();
+                    assertEquals(exportRow.get(0), result.getCode());
+                    assertEquals(Integer.parseInt(headerRow.get(i)), result.getYear());
+                    assertEquals(exportRow.get(i), result.getHouses() != null ? result.getHouses().toString() : "N/A");
+                    assertEquals(notesRow.get(i), result.getNote() != null ? result.getNote().getState(result.getYearUsedToCalculate()) : "N/A");
+                }
+            }
+        }
+        assertFalse(results.hasNext());
+    }
+}
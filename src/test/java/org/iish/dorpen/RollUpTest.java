@@ -0,0 +1,78 @@
+package org.iish.dorpen;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the totals of the roll-up at every level of the hierarchy of Link codes, and that an export out of order is refused.
+ */
+public class RollUpTest {
+
+    private static final String TOTAL = NoteState.ROLL_UP.getState(0);
+    private static final String PARTIAL = NoteState.ROLL_UP_PARTIAL.getState(0);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final CsvFiles files = new CsvFiles(folder);
+
+    @Test
+    public void theTotalsAddUpThePartsUnlessALinkCodeHasItsOwnNumber() throws Exception {
+        String export = files.write("export.csv",
+                "Code;1600;1650",
+                "HO0001A;10;N/A",
+                "HO0001B;5.5;3",
+                "HO0002;7;8",
+                "HO0003;100;N/A",
+                "HO0003A;60;20",
+                "HO0003B;40;N/A",
+                "HO0004AA;1;N/A",
+                "HO0004AB;2;N/A");
+        String notes = files.write("notes.csv",
+                "Code;1600;1650",
+                "HO0001A;Bron;N/A",
+                "HO0001B;Bron;Jaar 1600",
+                "HO0002;Bron;Bron",
+                "HO0003;Bron;N/A",
+                "HO0003A;Oppervlakte;Bron",
+                "HO0003B;Oppervlakte;N/A",
+                "HO0004AA;Bron;N/A",
+                "HO0004AB;Bron;N/A");
+        long rows = RollUp.write(export, notes, files.path("roll-up.csv"), files.path("roll-up notes.csv"));
+
+        // Only the Link codes with parts are written, each after its parts, so HO0002 is left out and HO0004A comes before HO0004
+        assertEquals(4, rows);
+        assertEquals(Arrays.asList(
+                Arrays.asList("Code", "1600", "1650"),
+                // HO0001B has no number of houses in 1650, so the total of 1650 is partial
+                Arrays.asList("HO0001", "15.500", "3.000"),
+                // HO0003 has its own number of houses in 1600, of which its parts are a split; in 1650 only HO0003A has one
+                Arrays.asList("HO0003", "100", "20.000"),
+                Arrays.asList("HO0004A", "3.000", "N/A"),
+                Arrays.asList("HO0004", "3.000", "N/A")), CsvFiles.read(files.path("roll-up.csv")));
+        assertEquals(Arrays.asList(
+                Arrays.asList("Code", "1600", "1650"),
+                Arrays.asList("HO0001", TOTAL, PARTIAL),
+                Arrays.asList("HO0003", "Bron", PARTIAL),
+                Arrays.asList("HO0004A", TOTAL, "N/A"),
+                Arrays.asList("HO0004", TOTAL, "N/A")), CsvFiles.read(files.path("roll-up notes.csv")));
+    }
+
+    @Test
+    public void anExportOutOfOrderIsRefused() throws Exception {
+        String export = files.write("export.csv", "Code;1600", "HO0002;1", "HO0001;2");
+        String notes = files.write("notes.csv", "Code;1600", "HO0002;Bron", "HO0001;Bron");
+        try {
+            RollUp.write(export, notes, files.path("roll-up.csv"), files.path("roll-up notes.csv"));
+            fail("The roll-up needs the export in the order of its Link codes");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("is not in the order of its Link codes at HO0001"));
+        }
+    }
+}
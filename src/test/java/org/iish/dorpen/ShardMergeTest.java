@@ -0,0 +1,195 @@
+package org.iish.dorpen;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that the merge of the shards writes the files and the result store of a partitioned run, which are those of a run of all the raw data,
+ * also when the shards run as processes of their own, and that the merge refuses shards that are not of the same run.
+ */
+public class ShardMergeTest {
+
+    private static final int SHARDS = 3;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final CsvFiles files = new CsvFiles(folder);
+
+    private String rawCsv;
+    private String squareKilometresCsv;
+
+    @Before
+    public void generateDataset() throws Exception {
+        File raw = folder.newFile("raw.csv");
+        File squareKilometres = folder.newFile("km2.csv");
+        new DatasetGenerator(40, 11, 2, 0.55, 5, 0.05).write(raw.toPath(), squareKilometres.toPath());
+        rawCsv = raw.getPath();
+        squareKilometresCsv = squareKilometres.getPath();
+    }
+
+    /**
+     * Writes the export and notes files of a run of all the raw data, to which the merge of the shards is compared.
+     *
+     * @throws Exception if the raw data is not valid or the files cannot be written.
+     */
+    private void writeWholeRun() throws Exception {
+        Disaggregation whole = new Disaggregation();
+        whole.setLogger(new Log.Logger(Log.Level.ERROR, false));
+        whole.loadInputs(rawCsv, squareKilometresCsv);
+        whole.updateLinks();
+        whole.preSplitTheRecords();
+        whole.export(files.path("whole export.csv"), files.path("whole notes.csv"));
+    }
+
+    /**
+     * Asserts that two files have the same bytes.
+     *
+     * @param expected String the path of the expected file.
+     * @param actual   String the path of the file to check.
+     * @throws IOException if a file cannot be read.
+     */
+    private static void assertSameBytes(String expected, String actual) throws IOException {
+        assertArrayEquals(new File(actual).getName() + " differs from " + new File(expected).getName(),
+                Files.readAllBytes(Paths.get(expected)), Files.readAllBytes(Paths.get(actual)));
+    }
+
+    @Test
+    public void mergingTheShardsWritesThePartitionedRun() throws Exception {
+        writeWholeRun();
+
+        RootCodePartitions partitioned = new RootCodePartitions(rawCsv, squareKilometresCsv);
+        partitioned.enableResultStore(files.path("partitioned results.bin"));
+        partitioned.export(files.path("partitioned export.csv"), files.path("partitioned notes.csv"));
+
+        // The shards split their partitions in lockstep, so they run at the same time, as they would on several machines.
+        String exchangeDirectory = folder.newFolder("shards").getPath();
+        List<String> exportPaths = new ArrayList<>();
+        List<String> notesPaths = new ArrayList<>();
+        List<String> storePaths = new ArrayList<>();
+        List<Future<?>> shards = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(SHARDS);
+        try {
+            for (int shard = 1; shard <= SHARDS; shard++) {
+                RootCodePartitions partitions = new RootCodePartitions(rawCsv, squareKilometresCsv);
+                partitions.setShard(shard, SHARDS, exchangeDirectory);
+                String exportPath = files.path("shard " + shard + " export.csv");
+                String notesPath = files.path("shard " + shard + " notes.csv");
+                exportPaths.add(exportPath);
+                notesPaths.add(notesPath);
+                storePaths.add(files.path("shard " + shard + " results.bin"));
+                partitions.enableResultStore(storePaths.get(shard - 1));
+                shards.add(executor.submit(() -> {
+                    partitions.export(exportPath, notesPath);
+                    return null;
+                }));
+            }
+            for (Future<?> shard : shards) {
+                shard.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        long rows = ShardMerge.merge(exportPaths, notesPaths, files.path("merged export.csv"), files.path("merged notes.csv"));
+        ShardMerge.mergeResultStores(storePaths, files.path("merged results.bin"));
+
+        for (String file : new String[]{" export.csv", " notes.csv", " results.bin"}) {
+            assertSameBytes(files.path("partitioned" + file), files.path("merged" + file));
+        }
+        // The partitions are split in lockstep, so the merge is the same as a run of all the raw data
+        assertSameBytes(files.path("whole export.csv"), files.path("merged export.csv"));
+        assertSameBytes(files.path("whole notes.csv"), files.path("merged notes.csv"));
+        assertEquals(rows, CsvFiles.read(files.path("merged export.csv")).size() - 1);
+    }
+
+    @Test
+    public void shardsRunAsProcessesOfTheirOwnMergeIntoTheWholeRun() throws Exception {
+        writeWholeRun();
+
+        // Every shard is a Java virtual machine of its own, started in the output folder as the paths of Main end in \ on Windows
+        File output = folder.newFolder("output");
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        List<Process> processes = new ArrayList<>();
+        List<File> logs = new ArrayList<>();
+        try {
+            for (int shard = 1; shard <= SHARDS; shard++) {
+                logs.add(new File(folder.getRoot(), "shard " + shard + " log.txt"));
+                processes.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), Main.class.getName(),
+                        rawCsv, squareKilometresCsv, ".", ".", "--shard=" + shard + "/" + SHARDS)
+                        .directory(output)
+                        .redirectErrorStream(true)
+                        .redirectOutput(logs.get(shard - 1))
+                        .start());
+            }
+            for (int shard = 1; shard <= SHARDS; shard++) {
+                assertTrue("Shard " + shard + " did not finish in time", processes.get(shard - 1).waitFor(5, TimeUnit.MINUTES));
+                assertEquals("Shard " + shard + " failed: " + new String(Files.readAllBytes(logs.get(shard - 1).toPath()), StandardCharsets.UTF_8),
+                        0, processes.get(shard - 1).exitValue());
+            }
+        } finally {
+            for (Process process : processes) {
+                process.destroyForcibly();
+            }
+        }
+
+        List<String> exportPaths = new ArrayList<>();
+        List<String> notesPaths = new ArrayList<>();
+        for (int shard = 1; shard <= SHARDS; shard++) {
+            exportPaths.add(new File(output, ShardMerge.getExportPath(".", shard, SHARDS, ".csv")).getPath());
+            notesPaths.add(new File(output, ShardMerge.getNotesPath(".", shard, SHARDS, ".csv")).getPath());
+        }
+        ShardMerge.merge(exportPaths, notesPaths, files.path("merged export.csv"), files.path("merged notes.csv"));
+
+        assertSameBytes(files.path("whole export.csv"), files.path("merged export.csv"));
+        assertSameBytes(files.path("whole notes.csv"), files.path("merged notes.csv"));
+    }
+
+    @Test
+    public void aLinkCodeInTwoShardsIsRefused() throws Exception {
+        List<String> exportPaths = Arrays.asList(
+                files.write("export 1.csv", "Code;1600", "HO0001A;10", "HO0002;5"),
+                files.write("export 2.csv", "Code;1600", "HO0001B;3", "HO0002;5"));
+        List<String> notesPaths = Arrays.asList(
+                files.write("notes 1.csv", "Code;1600", "HO0001A;N/A", "HO0002;N/A"),
+                files.write("notes 2.csv", "Code;1600", "HO0001B;N/A", "HO0002;N/A"));
+        try {
+            ShardMerge.merge(exportPaths, notesPaths, files.path("merged export.csv"), files.path("merged notes.csv"));
+            fail("A Link code cannot be in more than one shard");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("HO0002 is in more than one shard"));
+        }
+    }
+
+    @Test
+    public void shardsWithOtherYearsAreRefused() throws Exception {
+        List<String> exportPaths = Arrays.asList(
+                files.write("export 1.csv", "Code;1600;1650", "HO0001;10;12"),
+                files.write("export 2.csv", "Code;1600;1700", "HO0002;5;6"));
+        List<String> notesPaths = Arrays.asList(
+                files.write("notes 1.csv", "Code;1600;1650", "HO0001;N/A;N/A"),
+                files.write("notes 2.csv", "Code;1600;1700", "HO0002;N/A;N/A"));
+        try {
+            ShardMerge.merge(exportPaths, notesPaths, files.path("merged export.csv"), files.path("merged notes.csv"));
+            fail("Shards with other years are not of the same run");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("the shards are not of the same run"));
+        }
+    }
+}